@@ -0,0 +1,52 @@
+-- created 2016-10-20
+
+-- This script creates the tables used by the trust log retention job:
+-- mw_ta_log_current has the latest overall trust status of each host, and
+-- mw_ta_log_archive and mw_module_manifest_log_archive have the records moved
+-- out of mw_ta_log, bucketed by day (yyyymmdd) of the attestation.
+
+CREATE TABLE `mw_ta_log_current` (
+  `host_id` int(11) NOT NULL,
+  `ta_log_id` int(11) NOT NULL,
+  `trust_status` tinyint(1) NOT NULL,
+  `error` varchar(500) DEFAULT NULL,
+  `updated_on` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  PRIMARY KEY (`host_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+
+CREATE TABLE `mw_ta_log_archive` (
+  `id` int(11) NOT NULL,
+  `host_id` int(11) NOT NULL,
+  `mle_id` int(11) NOT NULL,
+  `manifest_name` varchar(25) NOT NULL,
+  `manifest_value` varchar(100) NOT NULL,
+  `trust_status` tinyint(1) NOT NULL,
+  `error` varchar(500) DEFAULT NULL,
+  `updated_on` timestamp NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  `uuid_hex` char(36) NULL,
+  `host_uuid_hex` char(36) NULL,
+  `bucket` int(11) NOT NULL,
+  PRIMARY KEY (`id`),
+  KEY `idx_ta_log_archive_bucket` (`bucket`, `host_id`, `updated_on`),
+  KEY `idx_ta_log_archive_host_id` (`host_id`, `updated_on`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+
+CREATE TABLE `mw_module_manifest_log_archive` (
+  `id` int(11) NOT NULL,
+  `ta_log_id` int(11) NOT NULL,
+  `name` varchar(100) DEFAULT NULL,
+  `value` varchar(100) DEFAULT NULL,
+  `whitelist_value` varchar(100) DEFAULT NULL,
+  PRIMARY KEY (`id`),
+  KEY `idx_module_manifest_log_archive_ta_log_id` (`ta_log_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=latin1;
+
+ALTER TABLE `mw_ta_log` 
+ADD INDEX `idx_ta_log_host_id_updated_on` (`Host_ID` ASC, `Updated_On` ASC) ,
+ADD INDEX `idx_ta_log_updated_on` (`Updated_On` ASC) ;
+
+INSERT INTO `mw_ta_log_current` (`host_id`, `ta_log_id`, `trust_status`, `error`, `updated_on`)
+  SELECT t.Host_ID, t.ID, t.Trust_Status, t.Error, t.Updated_On FROM mw_ta_log t
+  WHERE t.MLE_ID = 0 AND t.ID = (SELECT MAX(l.ID) FROM mw_ta_log l WHERE l.Host_ID = t.Host_ID AND l.MLE_ID = 0);
+
+INSERT INTO `mw_changelog` (`ID`, `APPLIED_AT`, `DESCRIPTION`) VALUES (20161020120000, NOW(), 'Patch for creating the current trust status and trust log archive tables.');
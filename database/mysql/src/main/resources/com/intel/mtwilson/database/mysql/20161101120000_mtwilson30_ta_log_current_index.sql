@@ -0,0 +1,9 @@
+-- created 2016-11-01
+
+-- This script adds the index used to page through the current trust status
+-- of hosts ordered by the time of their latest attestation.
+
+ALTER TABLE `mw_ta_log_current` 
+ADD INDEX `idx_ta_log_current_updated_on` (`updated_on` ASC, `host_id` ASC) ;
+
+INSERT INTO `mw_changelog` (`ID`, `APPLIED_AT`, `DESCRIPTION`) VALUES (20161101120000, NOW(), 'Patch for adding the current trust status index used by the host trust summary API.');
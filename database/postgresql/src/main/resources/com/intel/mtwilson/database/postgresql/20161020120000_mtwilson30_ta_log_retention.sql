@@ -0,0 +1,53 @@
+-- created 2016-10-20
+
+-- This script creates the tables used by the trust log retention job:
+-- mw_ta_log_current has the latest overall trust status of each host, and
+-- mw_ta_log_archive and mw_module_manifest_log_archive have the records moved
+-- out of mw_ta_log, bucketed by day (yyyymmdd) of the attestation.
+
+CREATE TABLE mw_ta_log_current (
+  host_id integer NOT NULL,
+  ta_log_id integer NOT NULL,
+  trust_status boolean NOT NULL,
+  error varchar(500) DEFAULT NULL,
+  updated_on timestamp NOT NULL,
+  PRIMARY KEY (host_id)
+);
+
+CREATE TABLE mw_ta_log_archive (
+  id integer NOT NULL,
+  host_id integer NOT NULL,
+  mle_id integer NOT NULL,
+  manifest_name varchar(25) NOT NULL,
+  manifest_value varchar(100) NOT NULL,
+  trust_status boolean NOT NULL,
+  error varchar(500) DEFAULT NULL,
+  updated_on timestamp NOT NULL,
+  uuid_hex char(36) NULL,
+  host_uuid_hex char(36) NULL,
+  bucket integer NOT NULL,
+  PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_ta_log_archive_bucket on mw_ta_log_archive (bucket ASC, host_id ASC, updated_on ASC);
+CREATE INDEX idx_ta_log_archive_host_id on mw_ta_log_archive (host_id ASC, updated_on ASC);
+
+CREATE TABLE mw_module_manifest_log_archive (
+  id integer NOT NULL,
+  ta_log_id integer NOT NULL,
+  name varchar(100) DEFAULT NULL,
+  value varchar(100) DEFAULT NULL,
+  whitelist_value varchar(100) DEFAULT NULL,
+  PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_module_manifest_log_archive_ta_log_id on mw_module_manifest_log_archive (ta_log_id ASC);
+
+CREATE INDEX idx_ta_log_host_id_updated_on on mw_ta_log (host_id ASC, updated_on ASC);
+CREATE INDEX idx_ta_log_updated_on on mw_ta_log (updated_on ASC);
+
+INSERT INTO mw_ta_log_current (host_id, ta_log_id, trust_status, error, updated_on)
+  SELECT t.host_id, t.id, t.trust_status, t.error, t.updated_on FROM mw_ta_log t
+  WHERE t.mle_id = 0 AND t.id = (SELECT MAX(l.id) FROM mw_ta_log l WHERE l.host_id = t.host_id AND l.mle_id = 0);
+
+INSERT INTO mw_changelog (ID, APPLIED_AT, DESCRIPTION) VALUES (20161020120000, NOW(), 'Patch for creating the current trust status and trust log archive tables.');
@@ -1,6 +1,7 @@
 package com.intel.mtwilson.model;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
@@ -8,6 +9,9 @@ import com.intel.dcsg.cpg.crypto.Sha1Digest;
 import com.intel.dcsg.cpg.crypto.AbstractDigest;
 import com.intel.dcsg.cpg.crypto.DigestAlgorithm;
 import com.intel.dcsg.cpg.validation.ObjectModel;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.List;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
@@ -41,6 +45,10 @@ import org.apache.commons.lang3.builder.HashCodeBuilder;
 public abstract class PcrEventLog<T extends Measurement> extends ObjectModel {
     private final PcrIndex pcrIndex;
     private final List<T> eventLog = new ArrayList<>();
+    // memoized result of getExtendedValue()
+    private transient byte[] extendedValue = null;
+    private transient int extendedCount = 0;
+    private transient Measurement extendedLast = null;
 
     public PcrEventLog(PcrIndex pcrIndex) {
         this.pcrIndex = pcrIndex;
@@ -82,6 +90,53 @@ public abstract class PcrEventLog<T extends Measurement> extends ObjectModel {
         return false;
     }
     
+    /**
+     * Computes the value the PCR should have after extending each
+     * measurement in the event log, in order, starting from zero.
+     * 
+     * The result is remembered, so when several rules or policies check the
+     * same event log the hash chain is computed only once. Measurements are
+     * only appended to an event log while it is being collected from the
+     * host; if more were appended since the last call, only the new ones are
+     * extended. The chain is computed with one MessageDigest and one buffer
+     * instead of a new digest object for each measurement.
+     * 
+     * @return a new byte array with the extended value
+     */
+    @JsonIgnore
+    public synchronized byte[] getExtendedValue() {
+        int count = eventLog.size();
+        boolean reuse = extendedValue != null && count >= extendedCount && (extendedCount == 0 || eventLog.get(extendedCount - 1) == extendedLast);
+        if( reuse && count == extendedCount ) {
+            return extendedValue.clone();
+        }
+        MessageDigest md = newMessageDigest(getPcrBank());
+        byte[] value = reuse ? extendedValue.clone() : new byte[md.getDigestLength()];
+        try {
+            for(int i = reuse ? extendedCount : 0; i < count; i++) {
+                md.update(value);
+                md.update(eventLog.get(i).getValue().toByteArray());
+                md.digest(value, 0, value.length);
+            }
+        }
+        catch(DigestException e) {
+            throw new IllegalStateException("Cannot extend event log", e);
+        }
+        extendedValue = value;
+        extendedCount = count;
+        extendedLast = count > 0 ? eventLog.get(count - 1) : null;
+        return value.clone();
+    }
+    
+    private static MessageDigest newMessageDigest(DigestAlgorithm bank) {
+        try {
+            return MessageDigest.getInstance(bank == DigestAlgorithm.SHA256 ? "SHA-256" : "SHA-1");
+        }
+        catch(NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Digest algorithm not available: "+bank, e);
+        }
+    }
+    
     /**
      * Returns a string representing the PCR manifest, one PCR index-value pair
      * per line. Only non-null PCRs are represented in the output. 
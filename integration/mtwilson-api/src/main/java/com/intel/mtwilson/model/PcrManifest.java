@@ -51,6 +51,9 @@ public class PcrManifest extends ObjectModel {
     private final PcrEventLogSha1[] pcrEventLogsSha1 = new PcrEventLogSha1[24];
     private final PcrEventLogSha256[] pcrEventLogsSha256 = new PcrEventLogSha256[24];
     private String measurementXml;
+    // memoized result of getXmlMeasurementLog()
+    private transient XmlMeasurementLog xmlMeasurementLog = null;
+    private transient String xmlMeasurementLogSource = null;
     private byte[] ProvisionedTag; //this is additional field added to support the new way of assetag attestation -- Haidong
 
     public byte[] getProvisionedTag() {
@@ -412,6 +415,24 @@ public class PcrManifest extends ObjectModel {
         this.measurementXml = measurementXml;
     }
 
+    /**
+     * Parses the measurement XML reported by the host. The result is
+     * remembered, so when several rules check the same host report the XML
+     * is parsed only once; it is parsed again if setMeasurementXml is called
+     * or a different PCR index is requested.
+     * 
+     * @param pcrIndex the PCR that the measurements are extended into
+     * @return the measurement log; callers must not modify it
+     */
+    @JsonIgnore
+    public synchronized XmlMeasurementLog getXmlMeasurementLog(PcrIndex pcrIndex) {
+        if( xmlMeasurementLog == null || xmlMeasurementLogSource != measurementXml || !xmlMeasurementLog.getPcrIndex().equals(pcrIndex) ) {
+            xmlMeasurementLog = new XmlMeasurementLog(pcrIndex, measurementXml);
+            xmlMeasurementLogSource = measurementXml;
+        }
+        return xmlMeasurementLog;
+    }
+
     private PcrEventLog[] getEventLogBank(DigestAlgorithm bank) {
         switch(bank) {
             case SHA1:
@@ -7,17 +7,16 @@ import com.intel.dcsg.cpg.validation.ObjectModel;
 import java.util.ArrayList;
 import java.util.List;
 import org.apache.commons.lang3.builder.HashCodeBuilder;
-import com.intel.mtwilson.measurement.xml.Measurements;
-import com.intel.mtwilson.measurement.xml.MeasurementType;
 import com.intel.mtwilson.measurement.xml.DirectoryMeasurementType;
 import com.intel.mtwilson.measurement.xml.FileMeasurementType;
-import com.intel.dcsg.cpg.xml.JAXB;
-import java.io.IOException;
+import java.io.StringReader;
 import java.util.HashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.slf4j.LoggerFactory;
 
 //import org.codehaus.jackson.annotate.JsonValue;
@@ -35,10 +34,15 @@ import org.slf4j.LoggerFactory;
  * all the measurements of the individual modules using the XmlMeasurementLogEquals and 
  * XmlMeasurementLogIntegrity policies.
  * 
+ * The XML is read with a streaming parser that creates the measurements as it
+ * reads each File and Dir element, so a large measurement log is not also held
+ * in memory as a document tree.
+ * 
  */
 public class XmlMeasurementLog extends ObjectModel {
    
     private org.slf4j.Logger log = LoggerFactory.getLogger(getClass());
+    private static final XMLInputFactory xmlInputFactory = createXmlInputFactory();
     private final PcrIndex pcrIndex;
     private final List<Measurement> measurements = new ArrayList<>();
 
@@ -54,40 +58,57 @@ public class XmlMeasurementLog extends ObjectModel {
         log.debug("XmlMeasurementLog Constructor: Parsed with output {}.", xmlMeasurementLog);
     }
     
+    private static XMLInputFactory createXmlInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+    
     private void parseXmlMeasurementLog(String xmlMeasurements) {
         
-        JAXB measurementLogJaxb = new JAXB();        
         if (xmlMeasurements != null && !xmlMeasurements.isEmpty()) {
             try {
                 
-                Measurements measurements = measurementLogJaxb.read(xmlMeasurements, Measurements.class);
-                if (measurements.getMeasurements().size() > 0) {
-                    for (MeasurementType measurementLogEntry : measurements.getMeasurements()) {
-                        if (measurementLogEntry.getClass().equals(DirectoryMeasurementType.class)) {
-                            DirectoryMeasurementType dirEntry = (DirectoryMeasurementType) measurementLogEntry;
-                            log.debug("Directory details {} - {} - {} - {}", dirEntry.getPath(), dirEntry.getValue(), dirEntry.getExclude(), dirEntry.getInclude());
+                XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(new StringReader(xmlMeasurements));
+                try {
+                    while (reader.hasNext()) {
+                        if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+                            continue;
+                        }
+                        if (reader.getLocalName().equals("Dir")) {
+                            String path = reader.getAttributeValue(null, "Path");
+                            String include = reader.getAttributeValue(null, "Include");
+                            String exclude = reader.getAttributeValue(null, "Exclude");
+                            String value = reader.getElementText().trim();
+                            log.debug("Directory details {} - {} - {} - {}", path, value, exclude, include);
                             
                             HashMap<String,String> moduleInfo = new HashMap<>();
                             moduleInfo.put("Type", DirectoryMeasurementType.class.getSimpleName());
-                            moduleInfo.put("Include", dirEntry.getInclude());
-                            moduleInfo.put("Exclude", dirEntry.getExclude());
+                            moduleInfo.put("Include", include);
+                            moduleInfo.put("Exclude", exclude);
                             
-                            Measurement newDirModule = new MeasurementSha1(Sha1Digest.valueOfHex(dirEntry.getValue()), dirEntry.getPath(), moduleInfo);
+                            Measurement newDirModule = new MeasurementSha1(Sha1Digest.valueOfHex(value), path, moduleInfo);
                             this.measurements.add(newDirModule);
-                        } else {
-                            FileMeasurementType fileEntry = (FileMeasurementType) measurementLogEntry;
-                            log.debug("File details {} - {}", fileEntry.getPath(), fileEntry.getValue());
+                        } else if (reader.getLocalName().equals("File")) {
+                            String path = reader.getAttributeValue(null, "Path");
+                            String value = reader.getElementText().trim();
+                            log.debug("File details {} - {}", path, value);
 
                             HashMap<String,String> moduleInfo = new HashMap<>();
                             moduleInfo.put("Type", FileMeasurementType.class.getSimpleName());
                             
-                            Measurement newFileModule = new MeasurementSha1(Sha1Digest.valueOfHex(fileEntry.getValue()), fileEntry.getPath(), moduleInfo);
+                            Measurement newFileModule = new MeasurementSha1(Sha1Digest.valueOfHex(value), path, moduleInfo);
                             this.measurements.add(newFileModule);
                         }                            
                     }
+                } finally {
+                    reader.close();
                 }
                 
-            } catch (    IOException | JAXBException | XMLStreamException ex) {
+            } catch (XMLStreamException ex) {
+                // a log that cannot be parsed has no measurements, as when the whole document was unmarshalled at once
+                this.measurements.clear();
                 Logger.getLogger(XmlMeasurementLog.class.getName()).log(Level.SEVERE, null, ex);
             }
         }        
@@ -130,11 +151,11 @@ public class XmlMeasurementLog extends ObjectModel {
 //    @JsonValue
     @Override
     public String toString() {
-        String result = String.format("PCR %d module manifest:", pcrIndex.toInteger());
+        StringBuilder result = new StringBuilder(String.format("PCR %d module manifest:", pcrIndex.toInteger()));
         for(Measurement m : measurements) {
-            result = result.concat(m.getValue().toString()+" "+m.getLabel()+"\n");
+            result.append(m.getValue().toString()).append(" ").append(m.getLabel()).append("\n");
         }
-        return result;
+        return result.toString();
     }
     
     @Override
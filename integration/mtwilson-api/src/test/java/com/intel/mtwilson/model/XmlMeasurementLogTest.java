@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.model;
+
+import com.intel.dcsg.cpg.crypto.Sha1Digest;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class XmlMeasurementLogTest {
+    private static final String XML = "<Measurements xmlns=\"mtwilson:trustdirector:measurements:1.1\" DigestAlg=\"sha1\">\n"
+            + "    <Dir Path=\"/boot\" Include=\".*\" Exclude=\"\">1a39a3ee5e6b4b0d3255bfef95601890afd80709</Dir>\n"
+            + "    <File Path=\"/boot/grub/stage1\">\n 2a39a3ee5e6b4b0d3255bfef95601890afd80709\n </File>\n"
+            + "</Measurements>";
+
+    @Test
+    public void testParseDirectoriesAndFiles() {
+        XmlMeasurementLog log = new XmlMeasurementLog(PcrIndex.PCR19, XML);
+        assertEquals(2, log.getMeasurements().size());
+        Measurement dir = log.getMeasurements().get(0);
+        assertEquals("/boot", dir.getLabel());
+        assertEquals("DirectoryMeasurementType", dir.getInfo().get("Type"));
+        assertEquals(".*", dir.getInfo().get("Include"));
+        assertEquals("", dir.getInfo().get("Exclude"));
+        Measurement file = log.getMeasurements().get(1);
+        assertEquals("/boot/grub/stage1", file.getLabel());
+        assertEquals("FileMeasurementType", file.getInfo().get("Type"));
+        assertTrue(log.contains(Sha1Digest.valueOfHex("2a39a3ee5e6b4b0d3255bfef95601890afd80709")));
+    }
+
+    @Test
+    public void testInvalidXmlHasNoMeasurements() {
+        XmlMeasurementLog log = new XmlMeasurementLog(PcrIndex.PCR19, XML.substring(0, XML.length() - 10));
+        assertTrue(log.getMeasurements().isEmpty());
+    }
+
+    @Test
+    public void testPcrManifestParsesOnce() {
+        PcrManifest pcrManifest = new PcrManifest();
+        pcrManifest.setMeasurementXml(XML);
+        XmlMeasurementLog log = pcrManifest.getXmlMeasurementLog(PcrIndex.PCR19);
+        assertSame(log, pcrManifest.getXmlMeasurementLog(PcrIndex.PCR19));
+        pcrManifest.setMeasurementXml(XML.replace("stage1", "stage2"));
+        assertNotSame(log, pcrManifest.getXmlMeasurementLog(PcrIndex.PCR19));
+        assertEquals("/boot/grub/stage2", pcrManifest.getXmlMeasurementLog(PcrIndex.PCR19).getMeasurements().get(1).getLabel());
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package test.digest;
+
+import com.intel.dcsg.cpg.crypto.Sha1Digest;
+import com.intel.dcsg.cpg.crypto.Sha256Digest;
+import com.intel.mtwilson.model.MeasurementSha1;
+import com.intel.mtwilson.model.MeasurementSha256;
+import com.intel.mtwilson.model.PcrEventLogSha1;
+import com.intel.mtwilson.model.PcrEventLogSha256;
+import com.intel.mtwilson.model.PcrIndex;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that PcrEventLog.getExtendedValue gives the same result as
+ * extending the digests one at a time.
+ */
+public class PcrEventLogExtendTest {
+
+    private Sha1Digest sha1(int i) {
+        byte[] value = new byte[20];
+        value[0] = (byte) i;
+        value[19] = (byte) (i >> 8);
+        return new Sha1Digest(value);
+    }
+
+    @Test
+    public void testSha1ExtendedValue() {
+        PcrEventLogSha1 eventLog = new PcrEventLogSha1(PcrIndex.PCR19);
+        Sha1Digest expected = Sha1Digest.ZERO;
+        for (int i = 0; i < 50; i++) {
+            eventLog.getEventLog().add(new MeasurementSha1(sha1(i), "module" + i));
+            expected = expected.extend(sha1(i).toByteArray());
+        }
+        assertArrayEquals(expected.toByteArray(), eventLog.getExtendedValue());
+        // memoized result
+        assertArrayEquals(expected.toByteArray(), eventLog.getExtendedValue());
+    }
+
+    @Test
+    public void testSha1ExtendedValueAfterAppend() {
+        PcrEventLogSha1 eventLog = new PcrEventLogSha1(PcrIndex.PCR19);
+        eventLog.getEventLog().add(new MeasurementSha1(sha1(1), "module1"));
+        byte[] first = eventLog.getExtendedValue();
+        eventLog.getEventLog().add(new MeasurementSha1(sha1(2), "module2"));
+        Sha1Digest expected = Sha1Digest.ZERO.extend(sha1(1).toByteArray()).extend(sha1(2).toByteArray());
+        assertArrayEquals(Sha1Digest.ZERO.extend(sha1(1).toByteArray()).toByteArray(), first);
+        assertArrayEquals(expected.toByteArray(), eventLog.getExtendedValue());
+    }
+
+    @Test
+    public void testSha256ExtendedValue() {
+        PcrEventLogSha256 eventLog = new PcrEventLogSha256(PcrIndex.PCR19);
+        Sha256Digest expected = new Sha256Digest(new byte[32]);
+        for (int i = 0; i < 10; i++) {
+            byte[] value = new byte[32];
+            value[0] = (byte) i;
+            eventLog.getEventLog().add(new MeasurementSha256(new Sha256Digest(value), "module" + i));
+            expected = expected.extend(value);
+        }
+        assertArrayEquals(expected.toByteArray(), eventLog.getExtendedValue());
+    }
+
+    @Test
+    public void testEmptyEventLog() {
+        PcrEventLogSha1 eventLog = new PcrEventLogSha1(PcrIndex.PCR19);
+        assertArrayEquals(new byte[20], eventLog.getExtendedValue());
+    }
+}
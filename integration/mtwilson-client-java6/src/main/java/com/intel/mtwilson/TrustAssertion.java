@@ -4,6 +4,7 @@
  */
 package com.intel.mtwilson;
 
+import com.intel.mtwilson.saml.VerifiedAssertionCache;
 import java.security.cert.X509Certificate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,5 +23,9 @@ public class TrustAssertion extends com.intel.mtwilson.saml.TrustAssertion {
     public TrustAssertion(X509Certificate[] trustedSigners, String xml) {
         super(trustedSigners, xml);
     }
+
+    public TrustAssertion(X509Certificate[] trustedSigners, String xml, VerifiedAssertionCache cache) {
+        super(trustedSigners, xml, cache);
+    }
     
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+import org.apache.commons.dbcp.BasicDataSource;
+
+/**
+ * One connection pool per database, shared by the JDBI DAOs, jOOQ and the
+ * JPA persistence units, so that opening a DAO borrows a pooled connection
+ * instead of setting up a new pool or a new connection. Persistence units
+ * and DAOs that use the same url and user get the same pool.
+ *
+ * The pool is configured with the dbcp.* properties copied by
+ * MyPersistenceManager.copyDbcpProperties. Prepared statements are pooled
+ * per connection unless dbcp.pool.prepared.statements is false.
+ *
+ * The number of active and idle connections and the time spent waiting
+ * for a connection are available from the getters and toString.
+ */
+public class MyDataSource implements DataSource {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(MyDataSource.class);
+    private static final long SLOW_WAIT_MILLIS = 100;
+    private static final ConcurrentHashMap<String, MyDataSource> dataSources = new ConcurrentHashMap<>();
+    private final BasicDataSource pool;
+    private final AtomicLong connections = new AtomicLong();
+    private final AtomicLong waitMillis = new AtomicLong();
+    private final AtomicLong maxWaitMillis = new AtomicLong();
+
+    protected MyDataSource(BasicDataSource pool) {
+        this.pool = pool;
+    }
+
+    /**
+     *
+     * @return the shared data source for the ASDataPU database, which is also used by the JDBI DAOs
+     */
+    public static MyDataSource getASData() {
+        return getDataSource(MyPersistenceManager.getASDataJpaProperties(My.configuration()));
+    }
+
+    /**
+     *
+     * @param jpaProperties properties from MyPersistenceManager, with the javax.persistence.jdbc and dbcp settings
+     * @return the shared data source for the url and user in the properties
+     */
+    public static MyDataSource getDataSource(Properties jpaProperties) {
+        String key = jpaProperties.getProperty("javax.persistence.jdbc.url") + " " + jpaProperties.getProperty("javax.persistence.jdbc.user");
+        MyDataSource dataSource = dataSources.get(key);
+        if (dataSource == null) {
+            synchronized (dataSources) {
+                dataSource = dataSources.get(key);
+                if (dataSource == null) {
+                    dataSource = new MyDataSource(createPool(jpaProperties));
+                    dataSources.put(key, dataSource);
+                    log.debug("Created connection pool for {}", jpaProperties.getProperty("javax.persistence.jdbc.url"));
+                }
+            }
+        }
+        return dataSource;
+    }
+
+    private static BasicDataSource createPool(Properties jpaProperties) {
+        BasicDataSource pool = new BasicDataSource();
+        pool.setDriverClassName(jpaProperties.getProperty("javax.persistence.jdbc.driver"));
+        pool.setUrl(jpaProperties.getProperty("javax.persistence.jdbc.url"));
+        pool.setUsername(jpaProperties.getProperty("javax.persistence.jdbc.user"));
+        pool.setPassword(jpaProperties.getProperty("javax.persistence.jdbc.password"));
+        pool.setMaxActive(Integer.parseInt(jpaProperties.getProperty("dbcp.max.active", "100")));
+        pool.setMaxIdle(Integer.parseInt(jpaProperties.getProperty("dbcp.max.idle", "64")));
+        pool.setMinIdle(Integer.parseInt(jpaProperties.getProperty("dbcp.min.idle", "1")));
+        pool.setMaxWait(Long.parseLong(jpaProperties.getProperty("dbcp.max.wait", "-1")));
+        String validationQuery = jpaProperties.getProperty("dbcp.validation.query", "");
+        if (!validationQuery.isEmpty()) {
+            pool.setValidationQuery(validationQuery);
+        }
+        pool.setTestOnBorrow(Boolean.valueOf(jpaProperties.getProperty("dbcp.validation.on.borrow", "true")));
+        pool.setTestOnReturn(Boolean.valueOf(jpaProperties.getProperty("dbcp.validation.on.return", "false")));
+        pool.setPoolPreparedStatements(Boolean.valueOf(jpaProperties.getProperty("dbcp.pool.prepared.statements", "true")));
+        pool.setMaxOpenPreparedStatements(Integer.parseInt(jpaProperties.getProperty("dbcp.max.open.prepared.statements", "100")));
+        return pool;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.currentTimeMillis();
+        Connection connection = pool.getConnection();
+        recordWait(System.currentTimeMillis() - start);
+        return connection;
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.currentTimeMillis();
+        Connection connection = pool.getConnection(username, password);
+        recordWait(System.currentTimeMillis() - start);
+        return connection;
+    }
+
+    private void recordWait(long wait) {
+        connections.incrementAndGet();
+        waitMillis.addAndGet(wait);
+        long max = maxWaitMillis.get();
+        while (wait > max && !maxWaitMillis.compareAndSet(max, wait)) {
+            max = maxWaitMillis.get();
+        }
+        if (wait >= SLOW_WAIT_MILLIS) {
+            log.debug("performance: waited {}ms for a database connection; {}", wait, this);
+        }
+    }
+
+    public int getNumActive() {
+        return pool.getNumActive();
+    }
+
+    public int getNumIdle() {
+        return pool.getNumIdle();
+    }
+
+    public long getConnectionCount() {
+        return connections.get();
+    }
+
+    public long getTotalWaitMillis() {
+        return waitMillis.get();
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis.get();
+    }
+
+    /**
+     *
+     * @return average time in milliseconds spent waiting for a connection
+     */
+    public double getAverageWaitMillis() {
+        long count = connections.get();
+        return count == 0 ? 0 : (double) waitMillis.get() / count;
+    }
+
+    /**
+     * Closes the idle connections and the pool. Connections that are still
+     * borrowed are closed when they are returned.
+     *
+     * @throws SQLException
+     */
+    public void close() throws SQLException {
+        pool.close();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return pool.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        pool.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        pool.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return pool.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return pool.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || pool.isWrapperFor(iface);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MyDataSource[active=%d, idle=%d, connections=%d, averageWait=%.1fms, maxWait=%dms]", getNumActive(), getNumIdle(), getConnectionCount(), getAverageWaitMillis(), getMaxWaitMillis());
+    }
+}
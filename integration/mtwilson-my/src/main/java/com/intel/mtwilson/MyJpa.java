@@ -197,6 +197,12 @@ public class MyJpa {
 //		if( mwTaLog == null ) { mwTaLog = new TblTaLogJpaController(pm.getASData()); }
 //		return mwTaLog;
 	}
+    public TblTaLogArchiveJpaController mwTaLogArchive() throws IOException {
+        return new TblTaLogArchiveJpaController(pm.getASData());
+    }
+    public TblTaLogCurrentJpaController mwTaLogCurrent() throws IOException {
+        return new TblTaLogCurrentJpaController(pm.getASData());
+    }
     public MwProcessorMappingJpaController mwProcessorMapping() throws IOException {
         return new MwProcessorMappingJpaController(pm.getASData());
 //		if( mwProcessorMapping == null ) { mwProcessorMapping = new MwProcessorMappingJpaController(pm.getASData()); }
@@ -44,9 +44,22 @@ public class MyPersistenceManager extends PersistenceManager {
     public void configure() {
         log.debug("MyPersistenceManager: Database Host: {}", jdbcProperties.getProperty("mtwilson.db.host"));
         MyConfiguration c = new MyConfiguration(jdbcProperties);
-        addPersistenceUnit("ASDataPU", getASDataJpaProperties(c));
-        addPersistenceUnit("MSDataPU", getMSDataJpaProperties(c));
-        addPersistenceUnit("AuditDataPU", getAuditDataJpaProperties(c));
+        addPersistenceUnit("ASDataPU", withSharedDataSource(getASDataJpaProperties(c)));
+        addPersistenceUnit("MSDataPU", withSharedDataSource(getMSDataJpaProperties(c)));
+        addPersistenceUnit("AuditDataPU", withSharedDataSource(getAuditDataJpaProperties(c)));
+    }
+    
+    /**
+     * Sets the non-JTA data source of the persistence unit to the connection
+     * pool shared with the JDBI DAOs, so EclipseLink does not open its own
+     * connections to the same database.
+     * 
+     * @param jpaProperties
+     * @return the same properties
+     */
+    private static Properties withSharedDataSource(Properties jpaProperties) {
+        jpaProperties.put("javax.persistence.nonJtaDataSource", MyDataSource.getDataSource(jpaProperties));
+        return jpaProperties;
     }
     public EntityManagerFactory getASData() {
         return getEntityManagerFactory("ASDataPU");
@@ -133,6 +146,9 @@ public class MyPersistenceManager extends PersistenceManager {
         prop.setProperty("dbcp.validation.query", myConfig.getString("dbcp.validation.query","")); // for example SELECT 1 ; we provide empty string default because Properties would throw NullPointerException for a null value
         prop.setProperty("dbcp.validation.on.borrow",String.valueOf( myConfig.getBoolean("dbcp.validation.on.borrow", true))); 
         prop.setProperty("dbcp.validation.on.return", String.valueOf(myConfig.getBoolean("dbcp.validation.on.return", false))); 
+        prop.setProperty("dbcp.max.wait", String.valueOf(myConfig.getLong("dbcp.max.wait", -1))); // milliseconds to wait for a connection, -1 waits indefinitely
+        prop.setProperty("dbcp.pool.prepared.statements", String.valueOf(myConfig.getBoolean("dbcp.pool.prepared.statements", true)));
+        prop.setProperty("dbcp.max.open.prepared.statements", String.valueOf(myConfig.getInt("dbcp.max.open.prepared.statements", 100)));
     }
     
     
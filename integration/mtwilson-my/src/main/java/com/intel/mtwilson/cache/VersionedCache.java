@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of values loaded from the database, for records that can
+ * be changed by other requests while a value is being loaded.
+ *
+ * A caller reads the version before loading a value and passes it to put.
+ * Invalidating an entry or clearing the cache changes the version, so a
+ * value that was loaded while the records changed is not stored. Several
+ * caches can share a version when one change invalidates all of them.
+ *
+ * Entries expire after the time to live in case a record is changed by
+ * another process. When the cache is full, expired entries are removed and
+ * new values are not stored until there is room again.
+ *
+ * @param <V> the type of the cached values
+ */
+public class VersionedCache<V> {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(VersionedCache.class);
+    private final String name;
+    private final int maxEntries;
+    private final long timeToLiveMillis;
+    private final AtomicLong version;
+    private final ConcurrentHashMap<String, Entry<V>> map = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     *
+     * @param name used in log messages
+     * @param maxEntries
+     * @param timeToLiveMillis
+     */
+    public VersionedCache(String name, int maxEntries, long timeToLiveMillis) {
+        this(name, maxEntries, timeToLiveMillis, new AtomicLong());
+    }
+
+    /**
+     *
+     * @param name used in log messages
+     * @param maxEntries
+     * @param timeToLiveMillis
+     * @param version shared with other caches that are invalidated together
+     */
+    public VersionedCache(String name, int maxEntries, long timeToLiveMillis, AtomicLong version) {
+        this.name = name;
+        this.maxEntries = maxEntries;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.version = version;
+    }
+
+    private static class Entry<V> {
+        private final V value;
+        private final long created;
+
+        private Entry(V value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+    }
+
+    /**
+     * Read the version before loading a value, and pass it to the put
+     * method.
+     *
+     * @return the current version, which changes whenever an entry is invalidated
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     *
+     * @param key
+     * @return the cached value, or null if there is none or it expired
+     */
+    public V get(String key) {
+        Entry<V> entry = map.get(key);
+        if (entry != null) {
+            if (System.currentTimeMillis() - entry.created < timeToLiveMillis) {
+                hits.incrementAndGet();
+                return entry.value;
+            }
+            map.remove(key, entry);
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stores the value unless the cache is full or the version changed since
+     * the caller read it.
+     *
+     * @param key
+     * @param value null values are not stored
+     * @param version from getVersion, read before the value was loaded
+     */
+    public void put(String key, V value, long version) {
+        if (value == null) {
+            return;
+        }
+        if (map.size() >= maxEntries) {
+            removeExpired(System.currentTimeMillis());
+            if (map.size() >= maxEntries) {
+                log.debug("{} cache is full; not caching {}", name, key);
+                return;
+            }
+        }
+        Entry<V> entry = new Entry<>(value, System.currentTimeMillis());
+        map.put(key, entry);
+        // checked after storing so that an invalidation running concurrently either sees the entry or changes the version
+        if (version != this.version.get()) {
+            map.remove(key, entry);
+            log.debug("Not caching {} {} because it changed while it was loaded", name, key);
+        }
+    }
+
+    private void removeExpired(long now) {
+        Iterator<Map.Entry<String, Entry<V>>> it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().getValue().created >= timeToLiveMillis) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Changes the version and removes the entry.
+     *
+     * @param key
+     */
+    public void invalidate(String key) {
+        version.incrementAndGet();
+        map.remove(key);
+    }
+
+    /**
+     * Changes the version and removes all entries.
+     */
+    public void clear() {
+        version.incrementAndGet();
+        map.clear();
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("VersionedCache[name=%s, size=%d, hits=%d, misses=%d]", name, size(), getHitCount(), getMissCount());
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson;
+
+import java.util.Properties;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class MyDataSourceTest {
+
+    private Properties createJpaProperties(String url, String user) {
+        Properties jpaProperties = new Properties();
+        jpaProperties.setProperty("javax.persistence.jdbc.driver", "org.postgresql.Driver");
+        jpaProperties.setProperty("javax.persistence.jdbc.url", url);
+        jpaProperties.setProperty("javax.persistence.jdbc.user", user);
+        jpaProperties.setProperty("javax.persistence.jdbc.password", "password");
+        return jpaProperties;
+    }
+
+    @Test
+    public void testSharedPerUrlAndUser() {
+        MyDataSource dataSource = MyDataSource.getDataSource(createJpaProperties("jdbc:postgresql://127.0.0.1:5432/mw_as", "root"));
+        assertSame(dataSource, MyDataSource.getDataSource(createJpaProperties("jdbc:postgresql://127.0.0.1:5432/mw_as", "root")));
+        assertNotSame(dataSource, MyDataSource.getDataSource(createJpaProperties("jdbc:postgresql://127.0.0.1:5432/mw_as", "audit")));
+        assertNotSame(dataSource, MyDataSource.getDataSource(createJpaProperties("jdbc:postgresql://127.0.0.1:5432/mw_audit", "root")));
+    }
+
+    @Test
+    public void testNoConnectionsUntilUsed() {
+        MyDataSource dataSource = MyDataSource.getDataSource(createJpaProperties("jdbc:postgresql://127.0.0.1:5432/mw_test", "root"));
+        assertEquals(0, dataSource.getNumActive());
+        assertEquals(0, dataSource.getConnectionCount());
+        assertEquals(0, dataSource.getAverageWaitMillis(), 0.001);
+    }
+}
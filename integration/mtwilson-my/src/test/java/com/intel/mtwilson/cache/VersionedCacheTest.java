@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.cache;
+
+import java.util.concurrent.atomic.AtomicLong;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class VersionedCacheTest {
+
+    @Test
+    public void testInvalidate() {
+        VersionedCache<String> cache = new VersionedCache<>("Test", 10, 60000);
+        cache.put("a", "1", cache.getVersion());
+        cache.put("b", "2", cache.getVersion());
+        assertEquals("1", cache.get("a"));
+        cache.invalidate("a");
+        assertNull(cache.get("a"));
+        assertEquals("2", cache.get("b"));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testNotStoredIfInvalidatedWhileLoading() {
+        VersionedCache<String> cache = new VersionedCache<>("Test", 10, 60000);
+        long version = cache.getVersion();
+        cache.invalidate("b");
+        cache.put("a", "1", version);
+        assertNull(cache.get("a"));
+        cache.put("a", "1", cache.getVersion());
+        assertEquals("1", cache.get("a"));
+    }
+
+    @Test
+    public void testSharedVersion() {
+        AtomicLong version = new AtomicLong();
+        VersionedCache<String> first = new VersionedCache<>("First", 10, 60000, version);
+        VersionedCache<String> second = new VersionedCache<>("Second", 10, 60000, version);
+        long loaded = second.getVersion();
+        first.clear();
+        second.put("a", "1", loaded);
+        assertNull(second.get("a"));
+    }
+
+    @Test
+    public void testExpiredAndFull() throws InterruptedException {
+        VersionedCache<String> cache = new VersionedCache<>("Test", 1, 50);
+        cache.put("a", "1", cache.getVersion());
+        cache.put("b", "2", cache.getVersion());
+        assertEquals("1", cache.get("a"));
+        assertNull(cache.get("b"));
+        Thread.sleep(100);
+        assertNull(cache.get("a"));
+        cache.put("b", "2", cache.getVersion());
+        assertEquals("2", cache.get("b"));
+    }
+}
@@ -23,6 +23,7 @@ import com.intel.mtwilson.datatypes.Vendor;
 import com.intel.mtwilson.datatypes.xml.HostTrustXmlResponse;
 import com.intel.mtwilson.i18n.ErrorCode;
 import com.intel.mtwilson.model.Hostname;
+import com.intel.mtwilson.saml.VerifiedAssertionCache;
 import java.io.IOException;
 import java.security.SignatureException;
 import java.security.cert.X509Certificate;
@@ -86,7 +87,7 @@ public class DemoPortalServicesImpl implements IDemoPortalServices {
 	                	log.debug("getTrustStatusForHost: Getting trust Information for Host "+hostTrustXmlResponse.getName());
 	                	if (hostTrustXmlResponse.getAssertion() != null) {
                                         log.debug("There is an assertion from hostTrustXmlResponse");
-	                		TrustAssertion trustAssertion = new TrustAssertion(trustedCertificates, hostTrustXmlResponse.getAssertion());
+	                		TrustAssertion trustAssertion = new TrustAssertion(trustedCertificates, hostTrustXmlResponse.getAssertion(), VerifiedAssertionCache.getInstance());
 	                		if( trustAssertion.isValid() ) {
                                 log.info("getTrustStatusForHost: Trust assertion is valid");
 	                			hostVOs.add(ConverterUtil.getTrustedHostVoFromTrustAssertion(hostDetails, trustAssertion,null));
@@ -572,7 +573,7 @@ public class DemoPortalServicesImpl implements IDemoPortalServices {
 			List<HostTrustXmlResponse> trust = apiClientServices.getSamlForMultipleHosts(hostnames, false);
 
             for (HostTrustXmlResponse hostTrustXmlResponse : trust) {
-                TrustAssertion trustAssertion = new TrustAssertion(trustedCertificates, hostTrustXmlResponse.getAssertion());
+                TrustAssertion trustAssertion = new TrustAssertion(trustedCertificates, hostTrustXmlResponse.getAssertion(), VerifiedAssertionCache.getInstance());
                 if( trustAssertion.isValid() ) {
                 	//Store SAML Assertion into a String.
                     xmloutput = hostTrustXmlResponse.getAssertion();
@@ -26,9 +26,12 @@ import com.intel.mountwilson.datamodel.HostVmMappingVO;
 import com.intel.mountwilson.datamodel.MLEDataVO;
 import com.intel.mountwilson.datamodel.OEMDataVO;
 import com.intel.mountwilson.datamodel.OSDataVO;
+import com.intel.mountwilson.datamodel.TrustedHostVO;
 import com.intel.mountwilson.datamodel.VmmHostDataVo;
 import com.intel.mountwilson.util.BasicView;
+import com.intel.mountwilson.util.ConverterUtil;
 import com.intel.mountwilson.util.JSONView;
+import com.intel.mountwilson.util.ProxyApiClient;
 import com.intel.mtwilson.ApiClient;
 import com.intel.mtwilson.agent.vmware.VMwareClient;
 import com.intel.mtwilson.agent.vmware.VMwareConnectionPool;
@@ -45,6 +48,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.lang.reflect.Type;
 import java.net.URL;
+import java.net.URLEncoder;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -71,6 +75,7 @@ import org.apache.commons.lang.StringEscapeUtils;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.intel.dcsg.cpg.extensions.Extensions;
 import com.intel.dcsg.cpg.i18n.LocaleUtil;
@@ -1478,17 +1483,14 @@ private TlsPolicy createTlsPolicyForVcenter(String vCenterConnection, String tls
      */
     public ModelAndView getDashBoardData(HttpServletRequest req, HttpServletResponse res) {
         //log.info("DemoPortalDataController.getDashBoardData >>");
-        Map<Integer, List<HostDetailsEntityVO>> map;
         ModelAndView responseView = new ModelAndView(new JSONView());
         try {
-            //Get map view for All Host based on the value of Page_NO(this values is available from TDPConfig) 
-            map = getAllHostDetailsFromDB(req);
-
-            //calling into a Service layer to get trust status for Host on Page No 1(using map.get(1)).
-            responseView.addObject("hostVo", demoPortalServices.getTrustStatusForHost(map.get(1), getAttestationService(req, AttestationService.class), getTrustedCertificates(req)));
-
-            //setting no of page required to show all Host data while applying pagination in JSP
-            responseView.addObject("noOfPages", map.size());
+            //getting the latest trust status of the hosts on the first page
+            List<TrustedHostVO> hostVOs = getHostTrustSummaries(req, null, responseView);
+            if (hostVOs.isEmpty()) {
+                throw new DemoPortalException("Currently there are no hosts configured in the system.");
+            }
+            responseView.addObject("hostVo", hostVOs);
         } catch (Exception e) {
             log.error(e.toString());
             responseView.addObject("hostVo", "");
@@ -1518,8 +1520,11 @@ private TlsPolicy createTlsPolicyForVcenter(String vCenterConnection, String tls
     }
 
     /**
-     * Method is used to get trust status of host for selected page no. Method
-     * will get called when user choose any page no from pagination.
+     * Method is used to get trust status of host for selected page. Method
+     * will get called when user choose the next or previous page from
+     * pagination. The "after" parameter is the cursor of the selected page,
+     * returned as "next" with the page before it, and is empty for the first
+     * page.
      *
      * @param req
      * @param res
@@ -1529,16 +1534,8 @@ private TlsPolicy createTlsPolicyForVcenter(String vCenterConnection, String tls
         //log.info("DemoPortalDataController.getHostTrustSatusForPageNo >>");
         ModelAndView responseView = new ModelAndView(new JSONView());
         try {
-            //getting selected Page No.
-            int selectedPage = Integer.parseInt(req.getParameter("pageNo"));
-            HttpSession session = req.getSession();
-            @SuppressWarnings("unchecked")
-            //getting Map view of all Host stored into session while calling getDashBoardData().
-            Map<Integer, List<HostDetailsEntityVO>> mapOfData = (Map<Integer, List<HostDetailsEntityVO>>) session.getAttribute("HostVoList");
-
-            //calling into a Service layer to get trust status of Host for selected Page No.
-            responseView.addObject("hostVo", demoPortalServices.getTrustStatusForHost(mapOfData.get(selectedPage), getAttestationService(req, AttestationService.class), getTrustedCertificates(req)));
-            responseView.addObject("noOfPages", mapOfData.size());
+            //getting the latest trust status of the hosts on the selected page
+            responseView.addObject("hostVo", getHostTrustSummaries(req, req.getParameter("after"), responseView));
         } catch (Exception e) {
             log.error(e.toString());
             e.printStackTrace();
@@ -2084,6 +2081,44 @@ private TlsPolicy createTlsPolicyForVcenter(String vCenterConnection, String tls
         return map;
     }
 
+    /**
+     * Gets one page of hosts with their latest trust status from the v2
+     * host-trust-summaries API, which reads the status recorded by the last
+     * attestation of each host, so the hosts are not attested again and no
+     * SAML assertions are fetched or verified. Only the cursor of the page
+     * is kept by the browser; nothing is stored in the session.
+     *
+     * @param req
+     * @param after cursor of the page, or null for the first page
+     * @param responseView the cursor of the next page is added as "next" if there are more hosts
+     * @return
+     * @throws Exception
+     */
+    private List<TrustedHostVO> getHostTrustSummaries(HttpServletRequest req, String after, ModelAndView responseView) throws Exception {
+        ProxyApiClient apiClient = getAttestationService(req, ProxyApiClient.class);
+        if (apiClient == null) {
+            throw new DemoPortalException("Failed to initialize the API client object.");
+        }
+        String pageSize = TDPConfig.getConfiguration().getString("mtwilson.tdbp.paginationRowCount", "10"); // providing default value because it's not a critical configuration setting
+        String query = "pageSize=" + URLEncoder.encode(pageSize, "UTF-8");
+        if (after != null && !after.isEmpty()) {
+            query += "&after=" + URLEncoder.encode(after, "UTF-8");
+        }
+        ApiResponse response = apiClient.getJson(req, "host-trust-summaries", query);
+        if (response.httpStatusCode != HttpServletResponse.SC_OK) {
+            throw new DemoPortalException("Cannot get host trust status: " + response.httpStatusCode + " " + response.httpReasonPhrase);
+        }
+        JsonNode collection = mapper.readTree(response.content);
+        List<TrustedHostVO> hostVOs = new ArrayList<TrustedHostVO>();
+        for (JsonNode summary : collection.path("host_trust_summaries")) {
+            hostVOs.add(ConverterUtil.getTrustedHostVoFromTrustSummary(summary));
+        }
+        if (collection.hasNonNull("next")) {
+            responseView.addObject("next", collection.get("next").asText());
+        }
+        return hostVOs;
+    }
+
     /**
      * This method will return a AttestationService/ApiClient Object from a
      * Session. This object is stored into Session at time of user login. Check
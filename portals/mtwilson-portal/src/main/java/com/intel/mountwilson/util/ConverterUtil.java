@@ -3,6 +3,7 @@
  */
 package com.intel.mountwilson.util;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.intel.mountwilson.common.TDPConfig;
 import com.intel.mountwilson.constant.HelperConstant;
 import com.intel.mountwilson.datamodel.HostDetailsEntityVO;
@@ -41,6 +42,7 @@ import java.util.Set;
 import java.util.TimeZone;
 import java.util.regex.Pattern;
 import javax.ws.rs.core.MultivaluedMap;
+import javax.xml.bind.DatatypeConverter;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Source;
 import javax.xml.transform.Transformer;
@@ -241,6 +243,60 @@ public class ConverterUtil {
 		
 		return hostVO;
 	}
+
+	/**
+	 * Converts a row of the v2 host-trust-summaries response, which is the
+	 * latest trust status recorded for the host, without fetching or
+	 * verifying its trust assertion.
+	 * 
+	 * @param summary a host_trust_summaries element
+	 * @return
+	 */
+	public static TrustedHostVO getTrustedHostVoFromTrustSummary(JsonNode summary) {
+		HostDetailsEntityVO hostDetailsEntityVO = new HostDetailsEntityVO();
+		hostDetailsEntityVO.setHostId(getConvertedHostName(getText(summary, "host_name")));
+		hostDetailsEntityVO.setHostName(getText(summary, "host_name"));
+		hostDetailsEntityVO.setVmmName(getText(summary, "os_name")+" "+getText(summary, "os_version")+HelperConstant.OS_VMM_INFORMATION_SEPERATOR+getText(summary, "vmm_name"));
+		hostDetailsEntityVO.setLocation(summary.hasNonNull("location") ? summary.get("location").asText() : null);
+		// sets the os and hypervisor images and unknown status
+		TrustedHostVO hostVO = getTrustedHostVoFromTrustAssertion(hostDetailsEntityVO, null, null);
+		hostVO.setBiosStatus(getTrustImage(summary.get("bios_trusted")));
+		hostVO.setVmmStatus(getTrustImage(summary.get("vmm_trusted")));
+		hostVO.setAssetTagStatus(getTrustImage(summary.get("asset_tag_trusted")));
+		hostVO.setOverAllStatus(getTrustImage(summary.get("trusted")));
+		hostVO.setOverAllStatusBoolean(summary.path("trusted").asBoolean(false));
+		if (summary.hasNonNull("asset_tag_trusted")) {
+			hostVO.setAssetTagDetails(summary.get("asset_tag_trusted").asBoolean() ? "Trusted" : "Un-Trusted");
+		} else {
+			hostVO.setAssetTagDetails("Not verified");
+		}
+		if (summary.hasNonNull("verified_on")) {
+			JsonNode verifiedOn = summary.get("verified_on");
+			Date date = verifiedOn.isNumber() ? new Date(verifiedOn.asLong()) : DatatypeConverter.parseDateTime(verifiedOn.asText()).getTime();
+			DateFormat df = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm'Z'");
+			df.setTimeZone(TimeZone.getTimeZone("UTC"));
+			hostVO.setUpdatedOn(df.format(date));
+			hostVO.setErrorCode(0);
+		} else {
+			hostVO.setUpdatedOn("");
+			hostVO.setErrorMessage("Not verified");
+		}
+		return hostVO;
+	}
+
+	private static String getText(JsonNode node, String fieldName) {
+		return node.hasNonNull(fieldName) ? node.get(fieldName).asText() : "";
+	}
+
+	private static String getTrustImage(JsonNode trusted) {
+		if (trusted == null || trusted.isNull()) {
+			return TDPConfig.getConfiguration().getString(HelperConstant.IMAGE_TRUSTED_UNKNOWN);
+		}
+		if (trusted.asBoolean()) {
+			return TDPConfig.getConfiguration().getString(HelperConstant.IMAGE_TRUSTED_TRUE);
+		}
+		return TDPConfig.getConfiguration().getString(HelperConstant.IMAGE_TRUSTED_FALSE);
+	}
         
     public static String formateXMLString(String inputXML){
         StreamResult xmlOutput;
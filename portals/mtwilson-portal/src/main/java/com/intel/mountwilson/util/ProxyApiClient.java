@@ -129,8 +129,7 @@ public class ProxyApiClient extends ApiClient {
             
         log.debug("Request URI: {}", request.getRequestURI()); // looks like this:  /mtwilson-portal/v2proxy/configurations
         log.debug("Request URL: {}", request.getRequestURL()); // looks like this:  https://10.1.71.49:8443/mtwilson-portal/v2proxy/configurations
-        int pathIndex = request.getRequestURL().toString().indexOf(request.getRequestURI());
-        String server = request.getRequestURL().toString().substring(0, pathIndex);
+        String server = getServer(request);
 //        String server = String.format("%s://%s:%d", request.getScheme(), request.getLocalName(), request.getLocalPort()); // this is wrong because if client sends https://192.168.1.100:8443  but the local /etc/hosts file has 192.168.1.100 mapped to "testserver"  then we would see here https://testserver:8443 which is fine for networking but will cause the signature on the original request to be unverifiable by the server (since the client signed the URL *they* used, not the URL we are rewriting - so we have to keep it the same)
         String urltext = String.format("%s/mtwilson/v2/%s%s%s", server, proxyUrl, querySeparator, queryString);
         log.debug("Proxy URL: {}", urltext);
@@ -178,6 +177,35 @@ public class ProxyApiClient extends ApiClient {
         throw new IOException("Proxy failed for request: " + urltext);
     }
     
+    private String getServer(HttpServletRequest request) {
+        int pathIndex = request.getRequestURL().toString().indexOf(request.getRequestURI());
+        return request.getRequestURL().toString().substring(0, pathIndex);
+    }
+    
+    /**
+     * Gets a mtwilson v2 resource as JSON using the credentials of the portal
+     * user, from the same server that received the portal request.
+     * 
+     * @param request the portal request
+     * @param path for example host-trust-summaries
+     * @param queryString url-encoded query parameters, or an empty string
+     * @return the response, which may be an error response
+     * @throws Exception 
+     */
+    public ApiResponse getJson(HttpServletRequest request, String path, String queryString) throws Exception {
+        String querySeparator = "?";
+        if( queryString.isEmpty()) { querySeparator = ""; }
+        String urltext = String.format("%s/mtwilson/v2/%s%s%s", getServer(request), path, querySeparator, queryString);
+        log.debug("Get URL: {}", urltext);
+        Headers headers = new Headers();
+        headers.add("Accept", MediaType.APPLICATION_JSON);
+        ApiResponse response = httpGet(urltext, headers);
+        if( response == null ) {
+            throw new IOException("Request failed: " + urltext);
+        }
+        return response;
+    }
+    
     /***** UNUSED
     private void removeDuplicateParameters(MutableQuery query) {
         HashSet<String> keys = new HashSet<String>();
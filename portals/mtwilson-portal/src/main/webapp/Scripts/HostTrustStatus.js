@@ -4,6 +4,8 @@ var locationPolicyError = false;
 var VMWareHost = [];
 var VMWareHostLocation = [];
 var selectedHost = [];
+//Cursors of the host trust status pages seen so far, the cursor of page n is at index n-1. 
+var hostTrustPageCursors = [''];
 
 //Called on load of HostTrustStatus..jsp
 $(function() {
@@ -20,8 +22,9 @@ function populateHostTrustDetails(responsJSON) {
 		$('#mainTrustDetailsDivHidden').show();
 		$('#refresh_all').show();
 		populateHostTrustDataIntoTable(responsJSON.hostVo);
-		//This statement will create pagination div based on the no_of_pages
-		applyPagination('hostTrustPaginationDiv',responsJSON.noOfPages,fngetHostTrustNextPage,1);
+		//This statement will create pagination div for the first page and the next page, if any
+		hostTrustPageCursors = [''];
+		applyHostTrustPagination(responsJSON.next,1);
 	}else {
                 if(responsJSON.noHosts) {
                     $('#hostTrustPaginationDiv').html('<span>'+getHTMLEscapedMessage(responsJSON.message)+'</span>');
@@ -116,16 +119,26 @@ function fnGetTrustSamlDetails(hostName) {
 
 }
 
+/*Pages are fetched with the cursor returned with the page before them, so the pagination
+  shows the pages seen so far and the next page when the server returned its cursor.*/
+function applyHostTrustPagination(next,pageNo) {
+	if (next != undefined && hostTrustPageCursors.length == pageNo) {
+		hostTrustPageCursors.push(next);
+	}
+	applyPagination('hostTrustPaginationDiv',hostTrustPageCursors.length,fngetHostTrustNextPage,pageNo);
+}
+
 function fngetHostTrustNextPage(pageNo) {
 	$('#errorMessage').html('');
 	$('#mainTrustDetailsDiv').prepend(disabledDiv);
-	sendJSONAjaxRequest(false, 'getData/getHostTrustSatusForPageNo.html', "pageNo="+pageNo, fnUpdateTableForPage, null);
+	sendJSONAjaxRequest(false, 'getData/getHostTrustSatusForPageNo.html', "after="+encodeURIComponent(hostTrustPageCursors[pageNo-1]), fnUpdateTableForPage, null, pageNo);
 }
 
-function fnUpdateTableForPage(responseJSON) {
+function fnUpdateTableForPage(responseJSON,pageNo) {
 	$('#disabledDiv').remove();
 	if (responseJSON.result) {
 		populateHostTrustDataIntoTable(responseJSON.hostVo);
+		applyHostTrustPagination(responseJSON.next,pageNo);
 	}else {
 		$('#errorMessage').html(getHTMLEscapedMessage(responseJSON.message));
 	}
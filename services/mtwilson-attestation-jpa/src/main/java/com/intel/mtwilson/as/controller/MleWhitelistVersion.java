@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.controller;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A counter that is incremented whenever an MLE or its PCR, module, or
+ * measurement log whitelist changes. Anything derived from the whitelist
+ * tables, such as compiled trust policies, records the version it was
+ * derived from and is discarded when the version changes.
+ *
+ * Callers should increment the version after committing the change, so that
+ * a trust policy compiled concurrently from the old whitelist is not kept.
+ * When the changed MLE is known, callers pass its id so that caches keyed by
+ * MLE, such as the parsed measurement log whitelists, can remove its entry.
+ */
+public class MleWhitelistVersion {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(MleWhitelistVersion.class);
+    private static final AtomicLong version = new AtomicLong();
+    private static final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public static interface Listener {
+        /**
+         * Called after the MLE or its whitelist was updated or deleted.
+         *
+         * @param mleId
+         */
+        void whitelistChanged(Integer mleId);
+    }
+
+    public static long get() {
+        return version.get();
+    }
+
+    public static void increment() {
+        long current = version.incrementAndGet();
+        log.debug("MLE whitelist version is now {}", current);
+    }
+
+    /**
+     * Increments the version and notifies the listeners that the MLE changed.
+     *
+     * @param mleId the MLE that changed, or null if it is not known
+     */
+    public static void increment(Integer mleId) {
+        increment();
+        if (mleId == null) {
+            return;
+        }
+        for (Listener listener : listeners) {
+            try {
+                listener.whitelistChanged(mleId);
+            } catch (RuntimeException e) {
+                log.warn("MLE whitelist listener failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    public static void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+}
@@ -45,6 +45,7 @@ public class MwMeasurementXmlJpaController implements Serializable {
             em.getTransaction().begin();
             em.persist(mwMeasurementXml);
             em.getTransaction().commit();
+            MleWhitelistVersion.increment(getMleId(mwMeasurementXml));
         } catch (Exception ex) {
             if (findMwMeasurementXml(mwMeasurementXml.getId()) != null) {
                 throw new PreexistingEntityException("MwMeasurementXml " + mwMeasurementXml + " already exists.", ex);
@@ -61,6 +62,7 @@ public class MwMeasurementXmlJpaController implements Serializable {
             em.getTransaction().begin();
             em.merge(mwMeasurementXml);
             em.getTransaction().commit();
+            MleWhitelistVersion.increment(getMleId(mwMeasurementXml));
         } catch (Exception ex) {
             String msg = ex.getLocalizedMessage();
             if (msg == null || msg.length() == 0) {
@@ -86,13 +88,19 @@ public class MwMeasurementXmlJpaController implements Serializable {
             } catch (EntityNotFoundException enfe) {
                 throw new NonexistentEntityException("The mwMeasurementXml with id " + id + " no longer exists.", enfe);
             }
+            Integer mleId = getMleId(mwMeasurementXml);
             em.remove(mwMeasurementXml);
             em.getTransaction().commit();
+            MleWhitelistVersion.increment(mleId);
         } finally {
             em.close();
         }
     }
 
+    private Integer getMleId(MwMeasurementXml mwMeasurementXml) {
+        return mwMeasurementXml.getMleId() == null ? null : mwMeasurementXml.getMleId().getId();
+    }
+
     public List<MwMeasurementXml> findMwMeasurementXmlEntities() {
         return findMwMeasurementXmlEntities(true, -1, -1);
     }
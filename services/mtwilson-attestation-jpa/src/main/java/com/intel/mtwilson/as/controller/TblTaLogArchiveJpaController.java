@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.controller;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Moves old records from mw_ta_log and mw_module_manifest_log to
+ * mw_ta_log_archive and mw_module_manifest_log_archive, reduces the archived
+ * history to one attestation per host per day, and deletes archived records
+ * past their retention. Archived records keep their ids and are bucketed by
+ * the day (yyyymmdd) of the attestation.
+ *
+ * The latest attestation of each host, as recorded in mw_ta_log_current, is
+ * never archived so reports and trust status lookups always find it in
+ * mw_ta_log.
+ *
+ * Each method processes at most the given number of trust log records in
+ * one transaction and returns the number processed, so callers repeat it
+ * until it returns less than the batch size.
+ */
+public class TblTaLogArchiveJpaController implements Serializable {
+    private static final String TA_LOG_COLUMNS = "id, host_id, mle_id, manifest_name, manifest_value, trust_status, error, updated_on, uuid_hex, host_uuid_hex";
+    private static final String MODULE_LOG_COLUMNS = "id, ta_log_id, name, value, whitelist_value";
+    private EntityManagerFactory emf = null;
+
+    public TblTaLogArchiveJpaController(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    public EntityManager getEntityManager() {
+        return emf.createEntityManager();
+    }
+
+    /**
+     *
+     * @param date
+     * @return the archive bucket of the date, for example 20161020
+     */
+    public static int getBucket(Date date) {
+        return Integer.parseInt(new SimpleDateFormat("yyyyMMdd").format(date));
+    }
+
+    /**
+     * Records the latest overall trust status of hosts that are missing from
+     * mw_ta_log_current, for example hosts attested before the table was
+     * created, and removes the status of deleted hosts.
+     *
+     * @return number of hosts added
+     * @throws SQLException
+     */
+    public int updateCurrentStatus() throws SQLException {
+        EntityManager em = getEntityManager();
+        try {
+            em.getTransaction().begin();
+            Connection connection = em.unwrap(Connection.class);
+            int added;
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO mw_ta_log_current (host_id, ta_log_id, trust_status, error, updated_on) SELECT t.host_id, t.id, t.trust_status, t.error, t.updated_on FROM mw_ta_log t WHERE t.mle_id = 0 AND t.id = (SELECT MAX(l.id) FROM mw_ta_log l WHERE l.host_id = t.host_id AND l.mle_id = 0) AND NOT EXISTS (SELECT 1 FROM mw_ta_log_current c WHERE c.host_id = t.host_id)")) {
+                added = statement.executeUpdate();
+            }
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM mw_ta_log_current WHERE host_id NOT IN (SELECT id FROM mw_hosts)")) {
+                statement.executeUpdate();
+            }
+            em.getTransaction().commit();
+            return added;
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    /**
+     * Moves trust log records older than the given time, except the latest
+     * attestation of each host, and their module manifest log records to the
+     * archive tables.
+     *
+     * @param before
+     * @param batchSize maximum number of trust log records to move
+     * @return number of trust log records moved
+     * @throws SQLException
+     */
+    public int archive(Date before, int batchSize) throws SQLException {
+        EntityManager em = getEntityManager();
+        try {
+            em.getTransaction().begin();
+            Connection connection = em.unwrap(Connection.class);
+            ArrayList<Integer> ids = new ArrayList<>();
+            try (PreparedStatement select = connection.prepareStatement("SELECT " + TA_LOG_COLUMNS + " FROM mw_ta_log t WHERE t.updated_on < ? AND NOT EXISTS (SELECT 1 FROM mw_ta_log_current c WHERE c.host_id = t.host_id AND c.updated_on = t.updated_on) ORDER BY t.id LIMIT ?");
+                    PreparedStatement insert = connection.prepareStatement("INSERT INTO mw_ta_log_archive (" + TA_LOG_COLUMNS + ", bucket) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                select.setTimestamp(1, new Timestamp(before.getTime()));
+                select.setInt(2, batchSize);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getInt(1));
+                        insert.setInt(1, rs.getInt(1));
+                        insert.setInt(2, rs.getInt(2));
+                        insert.setInt(3, rs.getInt(3));
+                        insert.setString(4, rs.getString(4));
+                        insert.setString(5, rs.getString(5));
+                        insert.setBoolean(6, rs.getBoolean(6));
+                        insert.setString(7, rs.getString(7));
+                        insert.setTimestamp(8, rs.getTimestamp(8));
+                        insert.setString(9, rs.getString(9));
+                        insert.setString(10, rs.getString(10));
+                        insert.setInt(11, getBucket(rs.getTimestamp(8)));
+                        insert.addBatch();
+                    }
+                }
+                if (ids.isEmpty()) {
+                    return 0;
+                }
+                insert.executeBatch();
+            }
+            String in = placeholders(ids.size());
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO mw_module_manifest_log_archive (" + MODULE_LOG_COLUMNS + ") SELECT " + MODULE_LOG_COLUMNS + " FROM mw_module_manifest_log WHERE ta_log_id IN (" + in + ")")) {
+                setIds(statement, ids);
+                statement.executeUpdate();
+            }
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM mw_module_manifest_log WHERE ta_log_id IN (" + in + ")")) {
+                setIds(statement, ids);
+                statement.executeUpdate();
+            }
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM mw_ta_log WHERE id IN (" + in + ")")) {
+                setIds(statement, ids);
+                statement.executeUpdate();
+            }
+            em.getTransaction().commit();
+            return ids.size();
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    /**
+     * Deletes archived records older than the given time except the last
+     * attestation of each host on each day. All records of one attestation
+     * have the same updated_on time.
+     *
+     * @param before
+     * @param batchSize maximum number of trust log records to delete
+     * @return number of trust log records deleted
+     * @throws SQLException
+     */
+    public int downsample(Date before, int batchSize) throws SQLException {
+        return delete("SELECT a.id FROM mw_ta_log_archive a WHERE a.bucket < ? AND a.updated_on < (SELECT MAX(b.updated_on) FROM mw_ta_log_archive b WHERE b.bucket = a.bucket AND b.host_id = a.host_id) ORDER BY a.id LIMIT ?", getBucket(before), batchSize);
+    }
+
+    /**
+     * Deletes archived records of days before the given time.
+     *
+     * @param before
+     * @param batchSize maximum number of trust log records to delete
+     * @return number of trust log records deleted
+     * @throws SQLException
+     */
+    public int delete(Date before, int batchSize) throws SQLException {
+        return delete("SELECT a.id FROM mw_ta_log_archive a WHERE a.bucket < ? ORDER BY a.id LIMIT ?", getBucket(before), batchSize);
+    }
+
+    private int delete(String query, int bucket, int batchSize) throws SQLException {
+        EntityManager em = getEntityManager();
+        try {
+            em.getTransaction().begin();
+            Connection connection = em.unwrap(Connection.class);
+            ArrayList<Integer> ids = new ArrayList<>();
+            try (PreparedStatement select = connection.prepareStatement(query)) {
+                select.setInt(1, bucket);
+                select.setInt(2, batchSize);
+                try (ResultSet rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getInt(1));
+                    }
+                }
+            }
+            if (ids.isEmpty()) {
+                return 0;
+            }
+            String in = placeholders(ids.size());
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM mw_module_manifest_log_archive WHERE ta_log_id IN (" + in + ")")) {
+                setIds(statement, ids);
+                statement.executeUpdate();
+            }
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM mw_ta_log_archive WHERE id IN (" + in + ")")) {
+                setIds(statement, ids);
+                statement.executeUpdate();
+            }
+            em.getTransaction().commit();
+            return ids.size();
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+        return placeholders.toString();
+    }
+
+    private static void setIds(PreparedStatement statement, List<Integer> ids) throws SQLException {
+        for (int i = 0; i < ids.size(); i++) {
+            statement.setInt(i + 1, ids.get(i));
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.controller;
+
+import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Reads the latest trust status of hosts from mw_ta_log_current together
+ * with the host name, location and VMM, one page at a time.
+ *
+ * Pages are selected with a keyset (the sort value and host id of the last
+ * row of the previous page) instead of an offset, and the keyset condition
+ * is written as a range on the sort columns so each page is read from an
+ * index regardless of how many hosts precede it: the index on mw_hosts
+ * (name) when sorting by name, and the index on mw_ta_log_current
+ * (updated_on, host_id) when sorting by the time of the latest attestation.
+ * Hosts that were never attested are included with a null status. When
+ * sorting by time they are read separately in order of host id, before all
+ * attested hosts in ascending order and after them in descending order.
+ */
+public class TblTaLogCurrentJpaController implements Serializable {
+    private static final Pattern STATUS_PATTERN = Pattern.compile("BIOS:(\\d+),VMM:(\\d+)");
+    private static final String COLUMNS = "SELECT h.id, h.name, h.uuid_hex, h.location, o.name, o.version, m.name, m.version, c.trust_status, c.error, c.updated_on";
+    private static final String VMM_JOINS = " LEFT JOIN mw_mle m ON m.id = h.vmm_mle_id LEFT JOIN mw_os o ON o.id = m.os_id";
+    private EntityManagerFactory emf = null;
+
+    public TblTaLogCurrentJpaController(EntityManagerFactory emf) {
+        this.emf = emf;
+    }
+
+    public EntityManager getEntityManager() {
+        return emf.createEntityManager();
+    }
+
+    public static enum SortField {
+        NAME, UPDATED_ON
+    }
+
+    public static enum StatusFilter {
+        TRUSTED, UNTRUSTED, UNKNOWN
+    }
+
+    /**
+     * The latest trust status of one host. The trust status, BIOS and VMM
+     * flags and update time are null if the host was never attested.
+     */
+    public static class Row {
+        private int hostId;
+        private String hostName;
+        private String hostUuid;
+        private String location;
+        private String osName;
+        private String osVersion;
+        private String vmmName;
+        private String vmmVersion;
+        private Boolean trustStatus;
+        private Boolean biosTrusted;
+        private Boolean vmmTrusted;
+        private Date updatedOn;
+
+        public int getHostId() {
+            return hostId;
+        }
+
+        public String getHostName() {
+            return hostName;
+        }
+
+        public String getHostUuid() {
+            return hostUuid;
+        }
+
+        public String getLocation() {
+            return location;
+        }
+
+        public String getOsName() {
+            return osName;
+        }
+
+        public String getOsVersion() {
+            return osVersion;
+        }
+
+        public String getVmmName() {
+            return vmmName;
+        }
+
+        public String getVmmVersion() {
+            return vmmVersion;
+        }
+
+        public Boolean getTrustStatus() {
+            return trustStatus;
+        }
+
+        public Boolean getBiosTrusted() {
+            return biosTrusted;
+        }
+
+        public Boolean getVmmTrusted() {
+            return vmmTrusted;
+        }
+
+        public Date getUpdatedOn() {
+            return updatedOn;
+        }
+    }
+
+    /**
+     * Search parameters. The after* fields are the sort value and host id
+     * of the last row of the previous page, or null for the first page.
+     */
+    public static class Query {
+        public SortField sort = SortField.NAME;
+        public boolean descending = false;
+        public String nameContains;
+        public StatusFilter status;
+        public String afterName;
+        public Date afterUpdatedOn;
+        public Integer afterHostId;
+        public int limit = 10;
+    }
+
+    /**
+     *
+     * @param query
+     * @return at most query.limit rows following the keyset in the query
+     * @throws SQLException
+     */
+    public List<Row> search(Query query) throws SQLException {
+        EntityManager em = getEntityManager();
+        try {
+            // EclipseLink only provides the connection within a transaction
+            em.getTransaction().begin();
+            Connection connection = em.unwrap(Connection.class);
+            ArrayList<Row> rows = new ArrayList<>();
+            if (query.sort == SortField.UPDATED_ON) {
+                searchByUpdatedOn(connection, query, rows);
+            } else {
+                select(connection, byName(query), query.limit, rows);
+            }
+            return rows;
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    private void searchByUpdatedOn(Connection connection, Query query, List<Row> rows) throws SQLException {
+        boolean attested = query.status != StatusFilter.UNKNOWN;
+        boolean unattested = query.status == null || query.status == StatusFilter.UNKNOWN;
+        // the cursor of a host that was never attested has no update time
+        boolean afterUnattested = query.afterHostId != null && query.afterUpdatedOn == null;
+        if (query.descending) {
+            if (attested && !afterUnattested) {
+                select(connection, attestedByUpdatedOn(query, query.afterHostId != null), query.limit, rows);
+            }
+            if (unattested && rows.size() < query.limit) {
+                select(connection, unattestedById(query, afterUnattested), query.limit, rows);
+            }
+        } else {
+            if (unattested && (query.afterHostId == null || afterUnattested)) {
+                select(connection, unattestedById(query, afterUnattested), query.limit, rows);
+            }
+            if (attested && rows.size() < query.limit) {
+                select(connection, attestedByUpdatedOn(query, !afterUnattested && query.afterHostId != null), query.limit, rows);
+            }
+        }
+    }
+
+    private static Select byName(Query query) {
+        Select select = new Select(" FROM mw_hosts h LEFT JOIN mw_ta_log_current c ON c.host_id = h.id");
+        filter(select, query);
+        if (query.status == StatusFilter.UNKNOWN) {
+            select.append(" AND c.host_id IS NULL");
+        }
+        if (query.afterHostId != null) {
+            String comparison = query.descending ? "<" : ">";
+            select.append(" AND h.name " + comparison + "= ? AND (h.name " + comparison + " ? OR h.id " + comparison + " ?)", query.afterName, query.afterName, query.afterHostId);
+        }
+        String direction = query.descending ? " DESC" : " ASC";
+        return select.append(" ORDER BY h.name" + direction + ", h.id" + direction);
+    }
+
+    private static Select attestedByUpdatedOn(Query query, boolean keyset) {
+        Select select = new Select(" FROM mw_ta_log_current c INNER JOIN mw_hosts h ON h.id = c.host_id");
+        filter(select, query);
+        if (keyset) {
+            String comparison = query.descending ? "<" : ">";
+            Timestamp after = new Timestamp(query.afterUpdatedOn.getTime());
+            select.append(" AND c.updated_on " + comparison + "= ? AND (c.updated_on " + comparison + " ? OR c.host_id " + comparison + " ?)", after, after, query.afterHostId);
+        }
+        String direction = query.descending ? " DESC" : " ASC";
+        return select.append(" ORDER BY c.updated_on" + direction + ", c.host_id" + direction);
+    }
+
+    private static Select unattestedById(Query query, boolean keyset) {
+        Select select = new Select(" FROM mw_hosts h LEFT JOIN mw_ta_log_current c ON c.host_id = h.id");
+        filter(select, query);
+        select.append(" AND c.host_id IS NULL");
+        if (keyset) {
+            select.append(query.descending ? " AND h.id < ?" : " AND h.id > ?", query.afterHostId);
+        }
+        return select.append(query.descending ? " ORDER BY h.id DESC" : " ORDER BY h.id ASC");
+    }
+
+    private static void filter(Select select, Query query) {
+        if (query.nameContains != null && !query.nameContains.isEmpty()) {
+            select.append(" AND LOWER(h.name) LIKE ? ESCAPE '!'", "%" + escapeLike(query.nameContains.toLowerCase()) + "%");
+        }
+        if (query.status == StatusFilter.TRUSTED || query.status == StatusFilter.UNTRUSTED) {
+            select.append(" AND c.trust_status = ?", query.status == StatusFilter.TRUSTED);
+        }
+    }
+
+    /**
+     * Adds the rows of the statement to the list until it has the given
+     * number of rows. The row limit is set on the statement instead of
+     * with a LIMIT clause, which is not supported by every database.
+     */
+    private static void select(Connection connection, Select select, int limit, List<Row> rows) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(select.sql.toString())) {
+            for (int i = 0; i < select.parameters.size(); i++) {
+                statement.setObject(i + 1, select.parameters.get(i));
+            }
+            statement.setMaxRows(limit - rows.size());
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    rows.add(toRow(rs));
+                }
+            }
+        }
+    }
+
+    private static class Select {
+        private final StringBuilder sql = new StringBuilder(COLUMNS);
+        private final ArrayList<Object> parameters = new ArrayList<>();
+
+        private Select(String from) {
+            sql.append(from).append(VMM_JOINS).append(" WHERE 1=1");
+        }
+
+        private Select append(String text, Object... values) {
+            sql.append(text);
+            parameters.addAll(Arrays.asList(values));
+            return this;
+        }
+    }
+
+    private static Row toRow(ResultSet rs) throws SQLException {
+        Row row = new Row();
+        row.hostId = rs.getInt(1);
+        row.hostName = rs.getString(2);
+        row.hostUuid = rs.getString(3);
+        row.location = rs.getString(4);
+        row.osName = rs.getString(5);
+        row.osVersion = rs.getString(6);
+        row.vmmName = rs.getString(7);
+        row.vmmVersion = rs.getString(8);
+        boolean trustStatus = rs.getBoolean(9);
+        if (!rs.wasNull()) {
+            row.trustStatus = trustStatus;
+            Boolean[] status = parseStatus(rs.getString(10));
+            if (status != null) {
+                row.biosTrusted = status[0];
+                row.vmmTrusted = status[1];
+            }
+        }
+        Timestamp updatedOn = rs.getTimestamp(11);
+        row.updatedOn = updatedOn == null ? null : new Date(updatedOn.getTime());
+        return row;
+    }
+
+    /**
+     * The error column of the overall trust status record holds the BIOS
+     * and VMM status written by HostTrustBO, for example "BIOS:1,VMM:0".
+     *
+     * @param error
+     * @return the BIOS and VMM trust status, or null if the text is not in that format
+     */
+    public static Boolean[] parseStatus(String error) {
+        if (error == null) {
+            return null;
+        }
+        Matcher matcher = STATUS_PATTERN.matcher(error);
+        if (!matcher.find()) {
+            return null;
+        }
+        return new Boolean[]{"1".equals(matcher.group(1)), "1".equals(matcher.group(2))};
+    }
+
+    /**
+     *
+     * @param text
+     * @return the text with the LIKE wildcards and the escape character '!' escaped
+     */
+    public static String escapeLike(String text) {
+        return text.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+}
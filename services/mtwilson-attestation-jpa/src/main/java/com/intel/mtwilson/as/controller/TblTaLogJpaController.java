@@ -8,6 +8,12 @@ import com.intel.mtwilson.as.controller.exceptions.ASDataException;
 import com.intel.mtwilson.as.controller.exceptions.IllegalOrphanException;
 import com.intel.mtwilson.as.controller.exceptions.NonexistentEntityException;
 import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Timestamp;
 import javax.persistence.Query;
 import javax.persistence.EntityNotFoundException;
 import javax.persistence.criteria.CriteriaQuery;
@@ -27,6 +33,7 @@ import javax.persistence.EntityManagerFactory;
  * @author dsmagadx
  */
 public class TblTaLogJpaController implements Serializable {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(TblTaLogJpaController.class);
     public TblTaLogJpaController( EntityManagerFactory emf) {
         this.emf = emf;
     }
@@ -118,6 +125,155 @@ public class TblTaLogJpaController implements Serializable {
         }
     }
 
+    /**
+     * Inserts the trust log records and their module manifest log records
+     * with one JDBC batch per table in a single transaction. EclipseLink does
+     * not batch inserts of entities with IDENTITY ids, so the statements are
+     * written here instead of persisting each entity. The generated ids are
+     * set on the trust log records so the module manifest log records can
+     * refer to them; each module manifest log record must refer to one of
+     * the given trust log records.
+     *
+     * @param taLogs
+     * @param moduleLogs
+     * @throws SQLException
+     */
+    public void createAll(List<TblTaLog> taLogs, List<TblModuleManifestLog> moduleLogs) throws SQLException {
+        EntityManager em = getEntityManager();
+        try {
+            em.getTransaction().begin();
+            Connection connection = em.unwrap(Connection.class);
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO mw_ta_log (host_id, mle_id, manifest_name, manifest_value, trust_status, error, updated_on, uuid_hex, host_uuid_hex) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)", new String[] { "id" })) {
+                for (TblTaLog taLog : taLogs) {
+                    statement.setInt(1, taLog.getHostID());
+                    statement.setInt(2, taLog.getMleId());
+                    statement.setString(3, taLog.getManifestName());
+                    statement.setString(4, taLog.getManifestValue());
+                    statement.setBoolean(5, taLog.getTrustStatus());
+                    statement.setString(6, taLog.getError());
+                    statement.setTimestamp(7, taLog.getUpdatedOn() == null ? null : new Timestamp(taLog.getUpdatedOn().getTime()));
+                    statement.setString(8, taLog.getUuid_hex());
+                    statement.setString(9, taLog.getHost_uuid_hex());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+                    for (TblTaLog taLog : taLogs) {
+                        if (!generatedKeys.next()) {
+                            throw new SQLException("Missing generated id for mw_ta_log record");
+                        }
+                        taLog.setId(generatedKeys.getInt(1));
+                    }
+                }
+            }
+            if (moduleLogs != null && !moduleLogs.isEmpty()) {
+                try (PreparedStatement statement = connection.prepareStatement("INSERT INTO mw_module_manifest_log (name, value, whitelist_value, ta_log_id) VALUES (?, ?, ?, ?)")) {
+                    for (TblModuleManifestLog moduleLog : moduleLogs) {
+                        statement.setString(1, moduleLog.getName());
+                        statement.setString(2, moduleLog.getValue());
+                        statement.setString(3, moduleLog.getWhitelistValue());
+                        statement.setInt(4, moduleLog.getTaLogId().getId());
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+            }
+            em.getTransaction().commit();
+        } catch (SQLException | RuntimeException e) {
+            // the ids assigned above were rolled back with the transaction
+            for (TblTaLog taLog : taLogs) {
+                taLog.setId(null);
+            }
+            throw e;
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+        updateCurrentStatus(taLogs);
+    }
+
+    /**
+     * Records the overall trust status records (MLE id 0) in
+     * mw_ta_log_current, unless a later status is already recorded for the
+     * host. This is done in its own transaction after the trust log records
+     * are committed; if it fails the lookups fall back to mw_ta_log.
+     *
+     * @param taLogs trust log records with ids
+     */
+    public void updateCurrentStatus(List<TblTaLog> taLogs) {
+        EntityManager em = getEntityManager();
+        try {
+            em.getTransaction().begin();
+            Connection connection = em.unwrap(Connection.class);
+            try (PreparedStatement select = connection.prepareStatement("SELECT updated_on FROM mw_ta_log_current WHERE host_id = ?");
+                    PreparedStatement update = connection.prepareStatement("UPDATE mw_ta_log_current SET ta_log_id = ?, trust_status = ?, error = ?, updated_on = ? WHERE host_id = ? AND updated_on <= ?");
+                    PreparedStatement insert = connection.prepareStatement("INSERT INTO mw_ta_log_current (ta_log_id, trust_status, error, updated_on, host_id) VALUES (?, ?, ?, ?, ?)")) {
+                for (TblTaLog taLog : taLogs) {
+                    if (taLog.getMleId() != 0 || taLog.getId() == null || taLog.getUpdatedOn() == null) {
+                        continue;
+                    }
+                    select.setInt(1, taLog.getHostID());
+                    boolean exists;
+                    try (ResultSet rs = select.executeQuery()) {
+                        exists = rs.next();
+                    }
+                    if (!exists) {
+                        Savepoint savepoint = connection.setSavepoint();
+                        try {
+                            setCurrentStatus(insert, taLog);
+                            insert.executeUpdate();
+                            continue;
+                        } catch (SQLException e) {
+                            // another attestation of the same host inserted its status first
+                            connection.rollback(savepoint);
+                        }
+                    }
+                    setCurrentStatus(update, taLog);
+                    update.setTimestamp(6, new Timestamp(taLog.getUpdatedOn().getTime()));
+                    update.executeUpdate();
+                }
+            }
+            em.getTransaction().commit();
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Cannot update current trust status: {}", e.getMessage());
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
+    private void setCurrentStatus(PreparedStatement statement, TblTaLog taLog) throws SQLException {
+        statement.setInt(1, taLog.getId());
+        statement.setBoolean(2, taLog.getTrustStatus());
+        statement.setString(3, taLog.getError());
+        statement.setTimestamp(4, new Timestamp(taLog.getUpdatedOn().getTime()));
+        statement.setInt(5, taLog.getHostID());
+    }
+
+    /**
+     *
+     * @param hostId
+     * @return the id of the latest overall trust status record of the host, or null if it is not in mw_ta_log_current
+     */
+    private Integer findCurrentTaLogId(EntityManager em, int hostId) {
+        try {
+            Query query = em.createNativeQuery("SELECT ta_log_id FROM mw_ta_log_current WHERE host_id = ?1");
+            query.setParameter(1, hostId);
+            List<?> ids = query.getResultList();
+            if (ids.isEmpty() || ids.get(0) == null) {
+                return null;
+            }
+            return ((Number) ids.get(0)).intValue();
+        } catch (RuntimeException e) {
+            log.debug("Cannot find current trust status of host {}: {}", hostId, e.getMessage());
+            return null;
+        }
+    }
+
     public void destroy(Integer id) throws IllegalOrphanException, NonexistentEntityException {
         EntityManager em = getEntityManager();
         try {
@@ -141,6 +297,7 @@ public class TblTaLogJpaController implements Serializable {
                 throw new IllegalOrphanException(illegalOrphanMessages);
             }
             em.remove(tblTaLog);
+            em.createNativeQuery("DELETE FROM mw_ta_log_current WHERE ta_log_id = ?1").setParameter(1, id).executeUpdate();
             em.getTransaction().commit();
         } finally {
                 em.close();
@@ -234,6 +391,13 @@ public class TblTaLogJpaController implements Serializable {
         Date lastUpdateTs = null;
         EntityManager em = getEntityManager();
         try {
+            Integer currentId = findCurrentTaLogId(em, hostId);
+            if (currentId != null) {
+                TblTaLog current = em.find(TblTaLog.class, currentId);
+                if (current != null) {
+                    return current.getUpdatedOn();
+                }
+            }
             Query query = em.createNamedQuery("TblTaLog.findLastStatusTs");
             query.setParameter("hostID", hostId);
             query.setMaxResults(1);
@@ -266,6 +430,13 @@ public class TblTaLogJpaController implements Serializable {
 
         EntityManager em = getEntityManager();
         try {
+            Integer currentId = findCurrentTaLogId(em, hostId);
+            if (currentId != null) {
+                TblTaLog current = em.find(TblTaLog.class, currentId);
+                if (current != null) {
+                    return current.getUpdatedOn() != null && current.getUpdatedOn().after(expiryTime) ? current : null;
+                }
+            }
             Query query = em.createNamedQuery("TblTaLog.getHostTALogEntryBefore");
             query.setParameter("hostId", hostId);
             query.setParameter("expiryTs", expiryTime);
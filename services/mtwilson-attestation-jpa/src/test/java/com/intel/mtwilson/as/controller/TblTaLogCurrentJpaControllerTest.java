@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.controller;
+
+import com.intel.mtwilson.as.controller.TblTaLogCurrentJpaController.Query;
+import com.intel.mtwilson.as.controller.TblTaLogCurrentJpaController.Row;
+import com.intel.mtwilson.as.controller.TblTaLogCurrentJpaController.SortField;
+import com.intel.mtwilson.as.controller.TblTaLogCurrentJpaController.StatusFilter;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+import static org.junit.Assert.*;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Runs the host trust summary queries against an in-memory Derby database
+ * through the ASDataPU persistence unit.
+ */
+public class TblTaLogCurrentJpaControllerTest {
+    private static final String URL = "jdbc:derby:memory:taLogCurrentTest";
+    private static EntityManagerFactory factory;
+    private static TblTaLogCurrentJpaController controller;
+
+    @BeforeClass
+    public static void setUpClass() throws SQLException {
+        try (Connection connection = DriverManager.getConnection(URL + ";create=true");
+                Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE mw_os (id integer NOT NULL PRIMARY KEY, name varchar(50), version varchar(50))");
+            statement.executeUpdate("CREATE TABLE mw_mle (id integer NOT NULL PRIMARY KEY, name varchar(100), version varchar(100), os_id integer)");
+            statement.executeUpdate("CREATE TABLE mw_hosts (id integer NOT NULL PRIMARY KEY, name varchar(40) NOT NULL, uuid_hex char(36), location varchar(200), vmm_mle_id integer)");
+            statement.executeUpdate("CREATE TABLE mw_ta_log_current (host_id integer NOT NULL PRIMARY KEY, ta_log_id integer NOT NULL, trust_status boolean NOT NULL, error varchar(500), updated_on timestamp NOT NULL)");
+            statement.executeUpdate("INSERT INTO mw_os VALUES (1, 'RHEL', '7.2')");
+            statement.executeUpdate("INSERT INTO mw_mle VALUES (1, 'KVM', '2.0', 1)");
+            // host1 and host4 were never attested; host3 and host5 were attested at the same time
+            statement.executeUpdate("INSERT INTO mw_hosts VALUES (1, 'host1', 'uuid-1', 'lab', 1), (2, 'host2', 'uuid-2', 'lab', 1), (3, 'host3', 'uuid-3', 'lab', 1), (4, 'host4', 'uuid-4', 'lab', 1), (5, 'host5', 'uuid-5', 'lab', 1)");
+            statement.executeUpdate("INSERT INTO mw_ta_log_current VALUES (2, 12, true, 'BIOS:1,VMM:1', TIMESTAMP('2016-11-01 10:00:00')), (3, 13, false, 'BIOS:1,VMM:0', TIMESTAMP('2016-11-01 08:00:00')), (5, 15, true, 'BIOS:1,VMM:1', TIMESTAMP('2016-11-01 08:00:00'))");
+        }
+        Properties properties = new Properties();
+        properties.setProperty("eclipselink.persistencexml", "META-INF/persistence-ASDataPU.xml");
+        properties.setProperty("javax.persistence.jdbc.driver", "org.apache.derby.jdbc.EmbeddedDriver");
+        properties.setProperty("javax.persistence.jdbc.url", URL);
+        properties.setProperty("javax.persistence.jdbc.user", "");
+        properties.setProperty("javax.persistence.jdbc.password", "");
+        factory = Persistence.createEntityManagerFactory("ASDataPU", properties);
+        controller = new TblTaLogCurrentJpaController(factory);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        if (factory != null) {
+            factory.close();
+        }
+        try {
+            DriverManager.getConnection(URL + ";drop=true");
+        } catch (SQLException e) {
+            // derby reports a dropped database with an exception
+        }
+    }
+
+    /**
+     * Reads all pages with the keyset of the last row of each page, like
+     * HostTrustSummaryRepository does with its cursor.
+     */
+    private List<String> readAllPages(Query query, int pageSize) throws SQLException {
+        ArrayList<String> names = new ArrayList<>();
+        query.limit = pageSize;
+        while (true) {
+            List<Row> rows = controller.search(query);
+            assertTrue(rows.size() <= pageSize);
+            for (Row row : rows) {
+                names.add(row.getHostName());
+            }
+            if (rows.size() < pageSize) {
+                return names;
+            }
+            Row last = rows.get(rows.size() - 1);
+            query.afterHostId = last.getHostId();
+            query.afterName = last.getHostName();
+            query.afterUpdatedOn = last.getUpdatedOn();
+        }
+    }
+
+    @Test
+    public void testSearchByName() throws SQLException {
+        List<Row> rows = controller.search(new Query());
+        assertEquals(5, rows.size());
+        Row host3 = rows.get(2);
+        assertEquals("host3", host3.getHostName());
+        assertEquals("uuid-3", host3.getHostUuid());
+        assertEquals("RHEL", host3.getOsName());
+        assertEquals("KVM", host3.getVmmName());
+        assertFalse(host3.getTrustStatus());
+        assertTrue(host3.getBiosTrusted());
+        assertFalse(host3.getVmmTrusted());
+        assertNotNull(host3.getUpdatedOn());
+        assertNull(rows.get(0).getTrustStatus());
+        assertNull(rows.get(0).getUpdatedOn());
+        assertEquals(Arrays.asList("host1", "host2", "host3", "host4", "host5"), readAllPages(new Query(), 2));
+        Query descending = new Query();
+        descending.descending = true;
+        assertEquals(Arrays.asList("host5", "host4", "host3", "host2", "host1"), readAllPages(descending, 2));
+    }
+
+    @Test
+    public void testSearchByUpdatedOn() throws SQLException {
+        Query ascending = new Query();
+        ascending.sort = SortField.UPDATED_ON;
+        assertEquals(Arrays.asList("host1", "host4", "host3", "host5", "host2"), readAllPages(ascending, 2));
+        Query descending = new Query();
+        descending.sort = SortField.UPDATED_ON;
+        descending.descending = true;
+        assertEquals(Arrays.asList("host2", "host5", "host3", "host4", "host1"), readAllPages(descending, 2));
+        Query single = new Query();
+        single.sort = SortField.UPDATED_ON;
+        assertEquals(Arrays.asList("host1", "host4", "host3", "host5", "host2"), readAllPages(single, 1));
+    }
+
+    @Test
+    public void testSearchWithFilters() throws SQLException {
+        Query trusted = new Query();
+        trusted.sort = SortField.UPDATED_ON;
+        trusted.status = StatusFilter.TRUSTED;
+        assertEquals(Arrays.asList("host5", "host2"), readAllPages(trusted, 1));
+        Query unknown = new Query();
+        unknown.sort = SortField.UPDATED_ON;
+        unknown.status = StatusFilter.UNKNOWN;
+        assertEquals(Arrays.asList("host1", "host4"), readAllPages(unknown, 1));
+        Query untrusted = new Query();
+        untrusted.status = StatusFilter.UNTRUSTED;
+        assertEquals(Arrays.asList("host3"), readAllPages(untrusted, 10));
+        Query name = new Query();
+        name.nameContains = "ST4";
+        assertEquals(Arrays.asList("host4"), readAllPages(name, 10));
+        name.nameContains = "host_";
+        assertTrue(readAllPages(name, 10).isEmpty());
+    }
+}
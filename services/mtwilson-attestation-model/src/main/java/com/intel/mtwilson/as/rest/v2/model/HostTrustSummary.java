@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.rest.v2.model;
+
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
+import com.intel.mtwilson.jaxrs2.Document;
+import java.util.Date;
+
+/**
+ * The latest known trust status of a host, as recorded by its last
+ * attestation. The trust flags and verification time are null when they
+ * are not known, for example for a host that was never attested.
+ */
+@JacksonXmlRootElement(localName="host_trust_summary")
+public class HostTrustSummary extends Document {
+
+    private String hostUuid;
+    private String hostName;
+    private String location;
+    private String osName;
+    private String osVersion;
+    private String vmmName;
+    private String vmmVersion;
+    private Boolean trusted;
+    private Boolean biosTrusted;
+    private Boolean vmmTrusted;
+    private Boolean assetTagTrusted;
+    private Date verifiedOn;
+
+    public String getHostUuid() {
+        return hostUuid;
+    }
+
+    public void setHostUuid(String hostUuid) {
+        this.hostUuid = hostUuid;
+    }
+
+    public String getHostName() {
+        return hostName;
+    }
+
+    public void setHostName(String hostName) {
+        this.hostName = hostName;
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public void setLocation(String location) {
+        this.location = location;
+    }
+
+    public String getOsName() {
+        return osName;
+    }
+
+    public void setOsName(String osName) {
+        this.osName = osName;
+    }
+
+    public String getOsVersion() {
+        return osVersion;
+    }
+
+    public void setOsVersion(String osVersion) {
+        this.osVersion = osVersion;
+    }
+
+    public String getVmmName() {
+        return vmmName;
+    }
+
+    public void setVmmName(String vmmName) {
+        this.vmmName = vmmName;
+    }
+
+    public String getVmmVersion() {
+        return vmmVersion;
+    }
+
+    public void setVmmVersion(String vmmVersion) {
+        this.vmmVersion = vmmVersion;
+    }
+
+    public Boolean getTrusted() {
+        return trusted;
+    }
+
+    public void setTrusted(Boolean trusted) {
+        this.trusted = trusted;
+    }
+
+    public Boolean getBiosTrusted() {
+        return biosTrusted;
+    }
+
+    public void setBiosTrusted(Boolean biosTrusted) {
+        this.biosTrusted = biosTrusted;
+    }
+
+    public Boolean getVmmTrusted() {
+        return vmmTrusted;
+    }
+
+    public void setVmmTrusted(Boolean vmmTrusted) {
+        this.vmmTrusted = vmmTrusted;
+    }
+
+    public Boolean getAssetTagTrusted() {
+        return assetTagTrusted;
+    }
+
+    public void setAssetTagTrusted(Boolean assetTagTrusted) {
+        this.assetTagTrusted = assetTagTrusted;
+    }
+
+    public Date getVerifiedOn() {
+        return verifiedOn;
+    }
+
+    public void setVerifiedOn(Date verifiedOn) {
+        this.verifiedOn = verifiedOn;
+    }
+
+}
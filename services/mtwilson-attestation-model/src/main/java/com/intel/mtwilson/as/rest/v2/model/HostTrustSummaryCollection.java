@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.rest.v2.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlElementWrapper;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
+import com.intel.mtwilson.jaxrs2.DocumentCollection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One page of host trust summaries. The next cursor is set when there are
+ * more hosts after this page; pass it as the "after" query parameter to
+ * get the next page.
+ */
+@JacksonXmlRootElement(localName="host_trust_summary_collection")
+public class HostTrustSummaryCollection extends DocumentCollection<HostTrustSummary> {
+
+    private final ArrayList<HostTrustSummary> hostTrustSummaries = new ArrayList<HostTrustSummary>();
+    private String next;
+
+    @JsonSerialize(include=JsonSerialize.Inclusion.ALWAYS) // jackson 1.9
+    @JsonInclude(JsonInclude.Include.ALWAYS)                // jackson 2.0
+    @JacksonXmlElementWrapper(localName="host_trust_summaries")
+    @JacksonXmlProperty(localName="host_trust_summary")
+    public List<HostTrustSummary> getHostTrustSummaries() { return hostTrustSummaries; }
+
+    public String getNext() {
+        return next;
+    }
+
+    public void setNext(String next) {
+        this.next = next;
+    }
+
+    @Override
+    public List<HostTrustSummary> getDocuments() {
+        return getHostTrustSummaries();
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.rest.v2.model;
+
+import com.intel.dcsg.cpg.validation.Regex;
+import com.intel.dcsg.cpg.validation.RegexPatterns;
+import com.intel.mtwilson.jaxrs2.DefaultFilterCriteria;
+import com.intel.mtwilson.repository.FilterCriteria;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.QueryParam;
+
+/**
+ * Example: ?sort=verified_on&amp;order=desc&amp;status=untrusted&amp;pageSize=20
+ *
+ * sort is name (default) or verified_on; order is asc (default) or desc;
+ * status is trusted, untrusted or unknown (never attested). The after
+ * parameter is the next cursor returned with the previous page and is only
+ * valid with the same sort, order and filters.
+ */
+public class HostTrustSummaryFilterCriteria extends DefaultFilterCriteria implements FilterCriteria<HostTrustSummary> {
+
+    @QueryParam("nameContains")
+    @Regex(RegexPatterns.ANY_VALUE)
+    public String nameContains;
+    @QueryParam("status")
+    @Regex("(?i:trusted|untrusted|unknown)")
+    public String status;
+    @QueryParam("sort")
+    @Regex("(?i:name|verified_on)")
+    public String sort;
+    @QueryParam("order")
+    @Regex("(?i:asc|desc)")
+    public String order;
+    @QueryParam("after")
+    @Regex("(?:[a-zA-Z0-9_=-]+)")
+    public String after;
+    @QueryParam("pageSize")
+    @DefaultValue("10")
+    public int pageSize;
+
+}
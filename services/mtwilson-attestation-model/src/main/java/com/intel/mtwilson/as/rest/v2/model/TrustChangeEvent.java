@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.rest.v2.model;
+
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
+import com.intel.mtwilson.jaxrs2.Document;
+import java.util.Date;
+
+/**
+ * A change of a host's trust status found by an attestation.
+ */
+@JacksonXmlRootElement(localName="trust_change_event")
+public class TrustChangeEvent extends Document {
+
+    private long sequence;
+    private String hostUuid;
+    private String hostName;
+    private boolean trusted;
+    private boolean biosTrusted;
+    private boolean vmmTrusted;
+    private boolean assetTagTrusted;
+    private Date verifiedOn;
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    public String getHostUuid() {
+        return hostUuid;
+    }
+
+    public void setHostUuid(String hostUuid) {
+        this.hostUuid = hostUuid;
+    }
+
+    public String getHostName() {
+        return hostName;
+    }
+
+    public void setHostName(String hostName) {
+        this.hostName = hostName;
+    }
+
+    public boolean isTrusted() {
+        return trusted;
+    }
+
+    public void setTrusted(boolean trusted) {
+        this.trusted = trusted;
+    }
+
+    public boolean isBiosTrusted() {
+        return biosTrusted;
+    }
+
+    public void setBiosTrusted(boolean biosTrusted) {
+        this.biosTrusted = biosTrusted;
+    }
+
+    public boolean isVmmTrusted() {
+        return vmmTrusted;
+    }
+
+    public void setVmmTrusted(boolean vmmTrusted) {
+        this.vmmTrusted = vmmTrusted;
+    }
+
+    public boolean isAssetTagTrusted() {
+        return assetTagTrusted;
+    }
+
+    public void setAssetTagTrusted(boolean assetTagTrusted) {
+        this.assetTagTrusted = assetTagTrusted;
+    }
+
+    public Date getVerifiedOn() {
+        return verifiedOn;
+    }
+
+    public void setVerifiedOn(Date verifiedOn) {
+        this.verifiedOn = verifiedOn;
+    }
+
+}
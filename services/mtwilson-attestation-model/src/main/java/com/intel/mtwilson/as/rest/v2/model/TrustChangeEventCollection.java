@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.rest.v2.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlElementWrapper;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
+import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlRootElement;
+import com.intel.mtwilson.jaxrs2.DocumentCollection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Trust change events after the requested sequence number. The next
+ * sequence number is always set and is passed as the "after" query
+ * parameter of the following request. If missed is true, some events were
+ * already discarded (or the server was restarted) and the consumer should
+ * read the current status of its hosts again, for example from
+ * host-trust-summaries.
+ */
+@JacksonXmlRootElement(localName="trust_change_event_collection")
+public class TrustChangeEventCollection extends DocumentCollection<TrustChangeEvent> {
+
+    private final ArrayList<TrustChangeEvent> trustChangeEvents = new ArrayList<TrustChangeEvent>();
+    private long next;
+    private boolean missed;
+
+    @JsonSerialize(include=JsonSerialize.Inclusion.ALWAYS) // jackson 1.9
+    @JsonInclude(JsonInclude.Include.ALWAYS)                // jackson 2.0
+    @JacksonXmlElementWrapper(localName="trust_change_events")
+    @JacksonXmlProperty(localName="trust_change_event")
+    public List<TrustChangeEvent> getTrustChangeEvents() { return trustChangeEvents; }
+
+    public long getNext() {
+        return next;
+    }
+
+    public void setNext(long next) {
+        this.next = next;
+    }
+
+    public boolean isMissed() {
+        return missed;
+    }
+
+    public void setMissed(boolean missed) {
+        this.missed = missed;
+    }
+
+    @Override
+    public List<TrustChangeEvent> getDocuments() {
+        return getTrustChangeEvents();
+    }
+
+}
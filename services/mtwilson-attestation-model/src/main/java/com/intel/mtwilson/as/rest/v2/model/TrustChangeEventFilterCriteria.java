@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.rest.v2.model;
+
+import com.intel.dcsg.cpg.validation.Regex;
+import com.intel.dcsg.cpg.validation.RegexPatterns;
+import com.intel.mtwilson.jaxrs2.DefaultFilterCriteria;
+import com.intel.mtwilson.repository.FilterCriteria;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.QueryParam;
+
+/**
+ * Example: ?after=1477958400000001&amp;timeout=30&amp;status=untrusted
+ *
+ * after is the next sequence number returned by the previous request; if it
+ * is omitted only events recorded after the request are returned. timeout
+ * is the number of seconds to wait for an event (0 to 60). host_id and
+ * nameEqualTo are comma-separated lists of host ids and names; status is
+ * trusted or untrusted.
+ */
+public class TrustChangeEventFilterCriteria extends DefaultFilterCriteria implements FilterCriteria<TrustChangeEvent> {
+
+    @QueryParam("after")
+    public Long after;
+    @QueryParam("timeout")
+    @DefaultValue("30")
+    public int timeout;
+    @QueryParam("host_id")
+    @Regex("(?:[a-fA-F0-9-]+(?:,[a-fA-F0-9-]+)*)")
+    public String hostUuids;
+    @QueryParam("nameEqualTo")
+    @Regex(RegexPatterns.ANY_VALUE)
+    public String hostNames;
+    @QueryParam("status")
+    @Regex("(?i:trusted|untrusted)")
+    public String status;
+    @QueryParam("pageSize")
+    @DefaultValue("100")
+    public int pageSize;
+
+}
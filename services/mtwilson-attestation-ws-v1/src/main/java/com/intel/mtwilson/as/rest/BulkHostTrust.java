@@ -13,6 +13,11 @@ import com.intel.mtwilson.datatypes.TxtHostRecord;
 import com.intel.mtwilson.datatypes.TxtHostRecordList;
 import com.intel.mtwilson.launcher.ws.ext.V1;
 import com.intel.mtwilson.model.Nonce;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -25,6 +30,7 @@ import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
 import org.apache.shiro.authz.annotation.RequiresPermissions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,6 +54,9 @@ public class BulkHostTrust {
          * REST Web Service Example: GET /hosts/trust?hosts=host_name_1
          * ,host_name_2,host_name_3&force_verify=true
          *
+         * The response is streamed: each host is written as soon as its
+         * attestation completes.
+         *
          * @param hosts
          * @param forceVerify
          * @return
@@ -57,10 +66,10 @@ public class BulkHostTrust {
         @Path("/trust/saml")
         //@RolesAllowed({"Attestation", "Report"})
         @RequiresPermissions("host_attestations:create,retrieve")
-        public String getTrustSaml(
+        public StreamingOutput getTrustSaml(
                 @QueryParam("hosts") String hosts,
                 @QueryParam("challenge") String challengeHex,
-                @QueryParam("force_verify") @DefaultValue("false") Boolean forceVerify,
+                @QueryParam("force_verify") @DefaultValue("false") final Boolean forceVerify,
                 //                        @QueryParam("threads") @DefaultValue("5") Integer threads, // bug #503 max threads now global and configured in properties file
                 @QueryParam("timeout") Integer timeout) {
             
@@ -78,7 +87,7 @@ public class BulkHostTrust {
                                 "hosts");
                 }
 
-                Set<String> hostSet = new HashSet<>();
+                final Set<String> hostSet = new HashSet<>();
                 // bug #783  make sure that we only pass to the next layer hostnames that are likely to be valid 
                 for(String host : Arrays.asList(hosts.split(","))) {
                     log.debug("Host: '{}'", host);
@@ -87,20 +96,26 @@ public class BulkHostTrust {
                     }
                 }
                 
-                BulkHostTrustBO bulkHostTrustBO = new BulkHostTrustBO(timeout);
+                final BulkHostTrustBO bulkHostTrustBO = new BulkHostTrustBO(timeout);
 
+                final Nonce challenge;
                 if( challengeHex == null || challengeHex.isEmpty() ) {
-                    return bulkHostTrustBO.getBulkTrustSaml(hostSet, forceVerify);
+                    challenge = null;
                 }
                 else {
                     if( !Digest.sha1().isValidHex(challengeHex) ) {
                         throw new ASException(com.intel.mtwilson.i18n.ErrorCode.AS_INVALID_INPUT, "challenge");
                     }
-                    Nonce challenge = new Nonce(Digest.sha1().valueHex(challengeHex).getBytes());
-
-                    return bulkHostTrustBO.getBulkTrustSaml(hostSet, forceVerify, challenge);
+                    challenge = new Nonce(Digest.sha1().valueHex(challengeHex).getBytes());
                 }
 
+                return new StreamingOutput() {
+                    @Override
+                    public void write(OutputStream output) throws IOException {
+                        Writer writer = new OutputStreamWriter(output, Charset.forName("UTF-8"));
+                        bulkHostTrustBO.writeBulkTrustSaml(hostSet, forceVerify, challenge, writer);
+                    }
+                };
         }
 
         /**
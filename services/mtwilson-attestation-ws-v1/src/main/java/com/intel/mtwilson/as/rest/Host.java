@@ -88,7 +88,9 @@ public class Host {
     @GET
     @Produces({MediaType.APPLICATION_JSON})
     @Path("/aik-{aik}/trust.json")
-    public HostTrustResponse getTrustByAik(@PathParam("aik")String aikFingerprint) {
+    public HostTrustResponse getTrustByAik(
+            @PathParam("aik")String aikFingerprint,
+            @QueryParam("force_verify") @DefaultValue("false") Boolean forceVerify) {
         ValidationUtil.validate(aikFingerprint);
         if( aikFingerprint == null || aikFingerprint.isEmpty() ) { throw new ValidationException("Missing hostNames parameter"); }
                 else {
@@ -96,7 +98,7 @@ public class Host {
             // 0.5.1 returned MediaType.TEXT_PLAIN string like "BIOS:0,VMM:0" :  return new HostTrustBO().getTrustStatusString(new Hostname(hostName)); // datatype.Hostname            
             Sha1Digest aikId = new Sha1Digest(aikFingerprint);
             if( aikId.isValid() ) {
-                HostTrustStatus trust = ASComponentFactory.getHostTrustBO().getTrustStatusByAik(aikId);
+                HostTrustStatus trust = ASComponentFactory.getHostTrustBO().getTrustStatusByAikWithCache(aikId, forceVerify);
                 return new HostTrustResponse(new Hostname(aikId.toString()), trust);                
             }
             throw new ASException(ErrorCode.HTTP_INVALID_REQUEST, "Invalid AIK fingerprint: must be SHA1 digest");
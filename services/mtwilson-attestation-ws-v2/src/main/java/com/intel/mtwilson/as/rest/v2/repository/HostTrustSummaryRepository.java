@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.rest.v2.repository;
+
+import com.intel.mtwilson.My;
+import com.intel.mtwilson.as.business.trust.HostTrustCache;
+import com.intel.mtwilson.as.controller.TblTaLogCurrentJpaController;
+import com.intel.mtwilson.as.rest.v2.model.HostTrustSummary;
+import com.intel.mtwilson.as.rest.v2.model.HostTrustSummaryCollection;
+import com.intel.mtwilson.as.rest.v2.model.HostTrustSummaryFilterCriteria;
+import com.intel.mtwilson.repository.RepositoryInvalidInputException;
+import com.intel.mtwilson.repository.RepositorySearchException;
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.List;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+
+/**
+ * Lists the latest trust status of hosts from mw_ta_log_current without
+ * attesting them or creating SAML assertions, for dashboards that show
+ * many hosts at once.
+ *
+ * The asset tag status is not stored with the trust log, so it is only
+ * reported for hosts whose trust status is in the host trust cache.
+ */
+public class HostTrustSummaryRepository {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(HostTrustSummaryRepository.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    public static final int MAX_PAGE_SIZE = 500;
+
+    @RequiresPermissions("host_attestations:search")
+    public HostTrustSummaryCollection search(HostTrustSummaryFilterCriteria criteria) {
+        log.debug("HostTrustSummary:Search - Got request to search for host trust summaries.");
+        TblTaLogCurrentJpaController.Query query = createQuery(criteria);
+        HostTrustSummaryCollection objCollection = new HostTrustSummaryCollection();
+        try {
+            long start = System.currentTimeMillis();
+            // read one more row than requested to know if there is a next page
+            int pageSize = query.limit;
+            query.limit = pageSize + 1;
+            List<TblTaLogCurrentJpaController.Row> rows = My.jpa().mwTaLogCurrent().search(query);
+            HostTrustCache cache = HostTrustCache.getInstance();
+            for (int i = 0; i < rows.size() && i < pageSize; i++) {
+                objCollection.getHostTrustSummaries().add(convert(rows.get(i), cache));
+            }
+            if (rows.size() > pageSize) {
+                TblTaLogCurrentJpaController.Row last = rows.get(pageSize - 1);
+                objCollection.setNext(encodeCursor(query.sort, last.getHostId(), last.getHostName(), last.getUpdatedOn()));
+            }
+            log.debug("performance: read {} host trust summaries in {}ms", objCollection.getHostTrustSummaries().size(), System.currentTimeMillis() - start);
+        } catch (Exception ex) {
+            log.error("HostTrustSummary:Search - Error during search for host trust summaries.", ex);
+            throw new RepositorySearchException(ex, criteria);
+        }
+        return objCollection;
+    }
+
+    private TblTaLogCurrentJpaController.Query createQuery(HostTrustSummaryFilterCriteria criteria) {
+        TblTaLogCurrentJpaController.Query query = new TblTaLogCurrentJpaController.Query();
+        if (criteria.pageSize < 1 || criteria.pageSize > MAX_PAGE_SIZE) {
+            log.error("HostTrustSummary:Search - Page size {} is not between 1 and {}.", criteria.pageSize, MAX_PAGE_SIZE);
+            throw new RepositoryInvalidInputException();
+        }
+        query.limit = criteria.pageSize;
+        if (criteria.sort != null && criteria.sort.equalsIgnoreCase("verified_on")) {
+            query.sort = TblTaLogCurrentJpaController.SortField.UPDATED_ON;
+        }
+        query.descending = criteria.order != null && criteria.order.equalsIgnoreCase("desc");
+        query.nameContains = criteria.nameContains;
+        if (criteria.status != null && !criteria.status.isEmpty()) {
+            query.status = TblTaLogCurrentJpaController.StatusFilter.valueOf(criteria.status.toUpperCase());
+        }
+        if (criteria.after != null && !criteria.after.isEmpty()) {
+            decodeCursor(criteria.after, query);
+        }
+        return query;
+    }
+
+    private HostTrustSummary convert(TblTaLogCurrentJpaController.Row row, HostTrustCache cache) {
+        HostTrustSummary summary = new HostTrustSummary();
+        summary.setHostUuid(row.getHostUuid());
+        summary.setHostName(row.getHostName());
+        summary.setLocation(row.getLocation());
+        summary.setOsName(row.getOsName());
+        summary.setOsVersion(row.getOsVersion());
+        summary.setVmmName(row.getVmmName());
+        summary.setVmmVersion(row.getVmmVersion());
+        summary.setTrusted(row.getTrustStatus());
+        summary.setBiosTrusted(row.getBiosTrusted());
+        summary.setVmmTrusted(row.getVmmTrusted());
+        summary.setVerifiedOn(row.getUpdatedOn());
+        if (cache != null && row.getTrustStatus() != null) {
+            HostTrustCache.Entry entry = cache.getByName(row.getHostName());
+            if (entry != null) {
+                summary.setAssetTagTrusted(entry.getStatus().asset_tag);
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * The cursor is the sort value and host id of the last row of the page,
+     * encoded with URL-safe base64 so it can be passed back as a query
+     * parameter. It is opaque to clients.
+     *
+     * @param sort
+     * @param hostId
+     * @param hostName
+     * @param updatedOn
+     * @return the cursor for the page after the row
+     */
+    static String encodeCursor(TblTaLogCurrentJpaController.SortField sort, int hostId, String hostName, Date updatedOn) {
+        String value;
+        if (sort == TblTaLogCurrentJpaController.SortField.UPDATED_ON) {
+            value = String.valueOf(updatedOn == null ? 0L : updatedOn.getTime());
+        } else {
+            value = hostName;
+        }
+        return Base64.encodeBase64URLSafeString((hostId + ":" + value).getBytes(UTF8));
+    }
+
+    static void decodeCursor(String cursor, TblTaLogCurrentJpaController.Query query) {
+        String text = new String(Base64.decodeBase64(cursor), UTF8);
+        int separator = text.indexOf(':');
+        try {
+            if (separator < 1) {
+                throw new IllegalArgumentException("Missing separator");
+            }
+            query.afterHostId = Integer.valueOf(text.substring(0, separator));
+            String value = text.substring(separator + 1);
+            if (query.sort == TblTaLogCurrentJpaController.SortField.UPDATED_ON) {
+                long time = Long.parseLong(value);
+                query.afterUpdatedOn = time == 0L ? null : new Date(time);
+            } else {
+                query.afterName = value;
+            }
+        } catch (IllegalArgumentException e) {
+            log.error("HostTrustSummary:Search - Invalid cursor: {}", e.getMessage());
+            throw new RepositoryInvalidInputException();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.rest.v2.resource;
+
+import com.intel.dcsg.cpg.validation.ValidationUtil;
+import com.intel.mtwilson.as.rest.v2.model.HostTrustSummaryCollection;
+import com.intel.mtwilson.as.rest.v2.model.HostTrustSummaryFilterCriteria;
+import com.intel.mtwilson.as.rest.v2.repository.HostTrustSummaryRepository;
+import com.intel.mtwilson.jaxrs2.mediatype.DataMediaType;
+import com.intel.mtwilson.launcher.ws.ext.V2;
+import javax.ws.rs.BeanParam;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+
+/**
+ * Read-only list of the latest trust status of each host, one page at a
+ * time, for the dashboard. Unlike host-attestations it does not attest the
+ * hosts or return SAML assertions.
+ *
+ * Example: GET /v2/host-trust-summaries?sort=verified_on&amp;order=desc&amp;pageSize=20
+ * and then GET /v2/host-trust-summaries?sort=verified_on&amp;order=desc&amp;pageSize=20&amp;after={next}
+ * with the next cursor from the previous response.
+ */
+@V2
+@Path("/host-trust-summaries")
+public class HostTrustSummaries {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(HostTrustSummaries.class);
+    private HostTrustSummaryRepository repository;
+
+    public HostTrustSummaries() {
+        repository = new HostTrustSummaryRepository();
+    }
+
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, DataMediaType.APPLICATION_YAML, DataMediaType.TEXT_YAML})
+    public HostTrustSummaryCollection searchCollection(@BeanParam HostTrustSummaryFilterCriteria criteria) {
+        log.debug("searchCollection: sort {} order {} pageSize {}", criteria.sort, criteria.order, criteria.pageSize);
+        ValidationUtil.validate(criteria);
+        return repository.search(criteria);
+    }
+
+}
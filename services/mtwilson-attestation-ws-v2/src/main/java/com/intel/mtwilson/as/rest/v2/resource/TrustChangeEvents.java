@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.rest.v2.resource;
+
+import com.intel.dcsg.cpg.validation.ValidationUtil;
+import com.intel.mtwilson.as.business.trust.TrustChangeEventLog;
+import com.intel.mtwilson.as.rest.v2.model.TrustChangeEvent;
+import com.intel.mtwilson.as.rest.v2.model.TrustChangeEventCollection;
+import com.intel.mtwilson.as.rest.v2.model.TrustChangeEventFilterCriteria;
+import com.intel.mtwilson.jaxrs2.mediatype.DataMediaType;
+import com.intel.mtwilson.launcher.ws.ext.V2;
+import com.intel.mtwilson.repository.RepositoryInvalidInputException;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.BeanParam;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.container.TimeoutHandler;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.apache.shiro.authz.annotation.RequiresPermissions;
+
+/**
+ * Long-poll feed of host trust status changes, so that dashboards and
+ * orchestrators do not have to poll the trust status of every host.
+ *
+ * A request returns the matching events after the given sequence number as
+ * soon as there is at least one, or an empty list with the same next
+ * sequence number when the timeout expires. Consumers repeat the request
+ * with the returned next sequence number, also after reconnecting. Waiting
+ * requests are suspended and do not hold a request thread, and events are
+ * read from memory, so consumers do not add database load. Waiting requests
+ * are resumed on a small pool of threads so that writing a response to a
+ * slow consumer does not delay the notification of the others.
+ *
+ * Example: GET /v2/trust-change-events?after=1477958400000001&amp;timeout=30&amp;status=untrusted
+ */
+@V2
+@Path("/trust-change-events")
+public class TrustChangeEvents {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(TrustChangeEvents.class);
+    public static final int MAX_TIMEOUT_SECONDS = 60;
+    public static final int MAX_PAGE_SIZE = 1000;
+    private static final ExecutorService resumeExecutor = Executors.newFixedThreadPool(2, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "trust-change-event-resume");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    @GET
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, DataMediaType.APPLICATION_YAML, DataMediaType.TEXT_YAML})
+    @RequiresPermissions("host_attestations:search")
+    public void searchCollection(@BeanParam TrustChangeEventFilterCriteria criteria, @Suspended final AsyncResponse asyncResponse) {
+        log.debug("searchCollection: after {} timeout {}", criteria.after, criteria.timeout);
+        ValidationUtil.validate(criteria);
+        if (criteria.timeout < 0 || criteria.timeout > MAX_TIMEOUT_SECONDS || criteria.pageSize < 1 || criteria.pageSize > MAX_PAGE_SIZE) {
+            log.error("TrustChangeEvents:Search - Timeout {} or page size {} is out of range.", criteria.timeout, criteria.pageSize);
+            throw new RepositoryInvalidInputException();
+        }
+        final TrustChangeEventLog eventLog = TrustChangeEventLog.getInstance();
+        if (eventLog == null) {
+            log.error("TrustChangeEvents:Search - Trust change event log is disabled.");
+            throw new WebApplicationException(Response.Status.SERVICE_UNAVAILABLE);
+        }
+        final long after = criteria.after == null ? eventLog.getSequence() : criteria.after;
+        final TrustChangeEventLog.Filter filter = createFilter(criteria);
+        final int pageSize = criteria.pageSize;
+        TrustChangeEventLog.Page page = eventLog.getEventsAfter(after, filter, pageSize);
+        if (!page.getEvents().isEmpty() || page.isMissed() || criteria.timeout == 0) {
+            asyncResponse.resume(convert(page));
+            return;
+        }
+        final TrustChangeEventLog.Listener listener = new TrustChangeEventLog.Listener() {
+            @Override
+            public boolean onEvent(TrustChangeEventLog.Event event) {
+                if (!filter.matches(event)) {
+                    return false;
+                }
+                // the listener is called on the event log's dispatcher thread, which must not wait for the response to be written
+                try {
+                    resumeExecutor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            asyncResponse.resume(convert(eventLog.getEventsAfter(after, filter, pageSize)));
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    log.warn("Cannot resume trust change event request: {}", e.getMessage());
+                    asyncResponse.cancel();
+                }
+                return true;
+            }
+        };
+        asyncResponse.setTimeoutHandler(new TimeoutHandler() {
+            @Override
+            public void handleTimeout(AsyncResponse response) {
+                eventLog.removeListener(listener);
+                response.resume(convert(eventLog.getEventsAfter(after, filter, pageSize)));
+            }
+        });
+        asyncResponse.register(new CompletionCallback() {
+            @Override
+            public void onComplete(Throwable throwable) {
+                eventLog.removeListener(listener);
+            }
+        });
+        asyncResponse.setTimeout(criteria.timeout, TimeUnit.SECONDS);
+        eventLog.addListener(listener);
+        // an event may have been recorded before the listener was added
+        page = eventLog.getEventsAfter(after, filter, pageSize);
+        if (!page.getEvents().isEmpty() || page.isMissed()) {
+            eventLog.removeListener(listener);
+            asyncResponse.resume(convert(page));
+        }
+    }
+
+    private TrustChangeEventLog.Filter createFilter(TrustChangeEventFilterCriteria criteria) {
+        HashSet<String> hostUuids = new HashSet<>();
+        if (criteria.hostUuids != null && !criteria.hostUuids.isEmpty()) {
+            for (String hostUuid : criteria.hostUuids.split(",")) {
+                hostUuids.add(hostUuid.trim().toLowerCase());
+            }
+        }
+        HashSet<String> hostNames = new HashSet<>();
+        if (criteria.hostNames != null && !criteria.hostNames.isEmpty()) {
+            for (String hostName : criteria.hostNames.split(",")) {
+                hostNames.add(hostName.trim());
+            }
+        }
+        Boolean trusted = null;
+        if (criteria.status != null && !criteria.status.isEmpty()) {
+            trusted = criteria.status.equalsIgnoreCase("trusted");
+        }
+        return new TrustChangeEventLog.Filter(hostUuids, hostNames, trusted);
+    }
+
+    private static TrustChangeEventCollection convert(TrustChangeEventLog.Page page) {
+        TrustChangeEventCollection collection = new TrustChangeEventCollection();
+        for (TrustChangeEventLog.Event event : page.getEvents()) {
+            TrustChangeEvent item = new TrustChangeEvent();
+            item.setSequence(event.getSequence());
+            item.setHostUuid(event.getHostUuid());
+            item.setHostName(event.getHostName());
+            item.setTrusted(event.isTrusted());
+            item.setBiosTrusted(event.isBiosTrusted());
+            item.setVmmTrusted(event.isVmmTrusted());
+            item.setAssetTagTrusted(event.isAssetTagTrusted());
+            item.setVerifiedOn(event.getVerifiedOn());
+            collection.getTrustChangeEvents().add(item);
+        }
+        collection.setNext(page.getNext());
+        collection.setMissed(page.isMissed());
+        return collection;
+    }
+
+}
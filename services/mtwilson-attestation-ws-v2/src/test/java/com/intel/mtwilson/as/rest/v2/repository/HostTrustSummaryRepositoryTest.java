@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.rest.v2.repository;
+
+import com.intel.mtwilson.as.controller.TblTaLogCurrentJpaController;
+import com.intel.mtwilson.as.controller.TblTaLogCurrentJpaController.SortField;
+import com.intel.mtwilson.repository.RepositoryInvalidInputException;
+import java.util.Date;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class HostTrustSummaryRepositoryTest {
+
+    @Test
+    public void testNameCursor() {
+        String cursor = HostTrustSummaryRepository.encodeCursor(SortField.NAME, 42, "host:1.example.com", null);
+        assertTrue(cursor.matches("[a-zA-Z0-9_-]+"));
+        TblTaLogCurrentJpaController.Query query = new TblTaLogCurrentJpaController.Query();
+        HostTrustSummaryRepository.decodeCursor(cursor, query);
+        assertEquals(Integer.valueOf(42), query.afterHostId);
+        assertEquals("host:1.example.com", query.afterName);
+    }
+
+    @Test
+    public void testUpdatedOnCursor() {
+        Date updatedOn = new Date(1477958400000L);
+        TblTaLogCurrentJpaController.Query query = new TblTaLogCurrentJpaController.Query();
+        query.sort = SortField.UPDATED_ON;
+        HostTrustSummaryRepository.decodeCursor(HostTrustSummaryRepository.encodeCursor(SortField.UPDATED_ON, 7, "host", updatedOn), query);
+        assertEquals(Integer.valueOf(7), query.afterHostId);
+        assertEquals(updatedOn, query.afterUpdatedOn);
+        HostTrustSummaryRepository.decodeCursor(HostTrustSummaryRepository.encodeCursor(SortField.UPDATED_ON, 8, "host", null), query);
+        assertEquals(Integer.valueOf(8), query.afterHostId);
+        assertNull(query.afterUpdatedOn);
+    }
+
+    @Test(expected = RepositoryInvalidInputException.class)
+    public void testInvalidCursor() {
+        HostTrustSummaryRepository.decodeCursor("bm90LWEtY3Vyc29y", new TblTaLogCurrentJpaController.Query());
+    }
+
+    @Test
+    public void testParseStatus() {
+        assertArrayEquals(new Boolean[]{true, false}, TblTaLogCurrentJpaController.parseStatus("BIOS:1,VMM:0"));
+        assertNull(TblTaLogCurrentJpaController.parseStatus("Host is not reachable"));
+        assertNull(TblTaLogCurrentJpaController.parseStatus(null));
+        assertEquals("a!%b!_c!!", TblTaLogCurrentJpaController.escapeLike("a%b_c!"));
+    }
+}
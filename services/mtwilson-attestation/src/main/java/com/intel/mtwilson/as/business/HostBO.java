@@ -10,6 +10,8 @@ import com.intel.mountwilson.as.common.ASException;
 import com.intel.mtwilson.My;
 import com.intel.mtwilson.agent.HostAgent;
 import com.intel.mtwilson.agent.HostAgentFactory;
+import com.intel.mtwilson.as.business.trust.HostTrustCache;
+import com.intel.mtwilson.as.business.trust.TrustChangeEventLog;
 import com.intel.mtwilson.as.controller.TblHostSpecificManifestJpaController;
 import com.intel.mtwilson.as.controller.TblHostsJpaController;
 import com.intel.mtwilson.as.controller.TblMleJpaController;
@@ -35,6 +37,7 @@ import com.intel.mtwilson.datatypes.*;
 import com.intel.mtwilson.model.*;
 import com.intel.mtwilson.model.PcrIndex;
 import com.intel.mtwilson.tls.policy.TlsPolicyChoice;
+import com.intel.mtwilson.tls.policy.factory.TlsPolicyCache;
 import com.intel.mtwilson.tls.policy.factory.impl.TblHostsTlsPolicyFactory;
 import com.intel.mtwilson.tls.policy.jdbi.TlsPolicyDAO;
 import com.intel.mtwilson.tls.policy.jdbi.TlsPolicyJdbiFactory;
@@ -366,7 +369,11 @@ public class HostBO {
 
     private void deletePrivateTlsPolicy(TblHosts target) throws IOException {
         try(TlsPolicyDAO tlsPolicyDao = TlsPolicyJdbiFactory.tlsPolicyDAO()) {
+            TlsPolicyRecord existingTlsPolicy = tlsPolicyDao.findPrivateTlsPolicyByHostId(target.getUuid_hex());
             tlsPolicyDao.deletePrivateTlsPolicyByHostId(target.getUuid_hex());
+            if( existingTlsPolicy != null ) {
+                TlsPolicyCache.invalidateTlsPolicy(existingTlsPolicy.getId().toString());
+            }
         }        
     }
 
@@ -424,6 +431,7 @@ public class HostBO {
                     JsonTlsPolicyWriter tlsPolicyWriter = new JsonTlsPolicyWriter();
                     existingTlsPolicy.setContent(tlsPolicyWriter.write(target.getTlsPolicyDescriptor()));
                     tlsPolicyDao.updateTlsPolicy(existingTlsPolicy);
+                    TlsPolicyCache.invalidateTlsPolicy(existingTlsPolicy.getId().toString());
                     target.setTlsPolicyId(existingTlsPolicy.getId().toString()); // automatically clears the old tls policy name and tls keystore fields as well as the new tls policy descriptor field
                 }
             }
@@ -584,6 +592,7 @@ public class HostBO {
                         
 			My.jpa().mwHosts().edit(tblHosts);
 			log.info("Updated host: {}", tblHosts.getName());
+                        invalidateCachedTrustStatus(tblHosts);
                         
                         if(tblHostSpecificManifests != null){
                             log.debug("Updating Host Specific Manifest in database");
@@ -634,6 +643,7 @@ public class HostBO {
 
                         My.jpa().mwHosts().destroy(tblHosts.getId());
                         log.info("Deleted host: {}", hostName.toString());
+                        invalidateCachedTrustStatus(tblHosts);
                         
                         // Now that the host is deleted, we need to remove any asset tag certificate mapped to this host
                         unmapAssetTagCertFromHost(tblHosts.getId(), tblHosts.getName());
@@ -698,6 +708,22 @@ public class HostBO {
                 }
         }
 
+        /**
+         * Removes the host's trust status from the in-memory cache so the
+         * next request does not see a status recorded for the old host record,
+         * and reports the next attestation of the host as a trust change.
+         */
+        private void invalidateCachedTrustStatus(TblHosts tblHosts) {
+                HostTrustCache cache = HostTrustCache.getInstance();
+                if (cache != null) {
+                        cache.invalidate(tblHosts.getId());
+                }
+                TrustChangeEventLog eventLog = TrustChangeEventLog.getInstance();
+                if (eventLog != null) {
+                        eventLog.remove(tblHosts.getId());
+                }
+        }
+
         private void deleteTALogs(Integer hostId) throws IllegalOrphanException, IOException {
 
                 TblTaLogJpaController tblTaLogJpaController = My.jpa().mwTaLog(); // new TblTaLogJpaController(getEntityManagerFactory());
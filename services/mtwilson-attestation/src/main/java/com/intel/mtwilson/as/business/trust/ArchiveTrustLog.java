@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.business.trust;
+
+import com.intel.mtwilson.My;
+import com.intel.mtwilson.as.controller.TblTaLogArchiveJpaController;
+import com.intel.mtwilson.launcher.ext.annotations.Background;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Calendar;
+import java.util.Date;
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Applies the trust log retention policy. Attestations older than
+ * mtwilson.talog.archive.after.days are moved from mw_ta_log to the archive
+ * tables, except the latest attestation of each host. Archived attestations
+ * older than mtwilson.talog.downsample.after.days are reduced to the last
+ * attestation of each host on each day, and archived attestations older than
+ * mtwilson.talog.delete.after.days are deleted. A value of 0 disables the
+ * step.
+ *
+ * Configuration:
+ * mtwilson.talog.retention.enabled (default true)
+ * mtwilson.talog.retention.interval.minutes (default 60)
+ * mtwilson.talog.retention.batch.size (default 1000 records per transaction)
+ * mtwilson.talog.archive.after.days (default 30)
+ * mtwilson.talog.downsample.after.days (default 90)
+ * mtwilson.talog.delete.after.days (default 0)
+ */
+@Background
+public class ArchiveTrustLog implements Runnable {
+
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ArchiveTrustLog.class);
+    private static volatile long lastRun = 0;
+
+    @Override
+    public void run() {
+        Configuration configuration = My.configuration().getConfiguration();
+        if (!configuration.getBoolean("mtwilson.talog.retention.enabled", true)) {
+            return;
+        }
+        long interval = configuration.getLong("mtwilson.talog.retention.interval.minutes", 60) * 60000L;
+        if (System.currentTimeMillis() - lastRun < interval) {
+            return;
+        }
+        lastRun = System.currentTimeMillis();
+        int batchSize = configuration.getInt("mtwilson.talog.retention.batch.size", 1000);
+        int archiveAfterDays = configuration.getInt("mtwilson.talog.archive.after.days", 30);
+        int downsampleAfterDays = configuration.getInt("mtwilson.talog.downsample.after.days", 90);
+        int deleteAfterDays = configuration.getInt("mtwilson.talog.delete.after.days", 0);
+        try {
+            long start = System.currentTimeMillis();
+            TblTaLogArchiveJpaController archive = My.jpa().mwTaLogArchive();
+            int added = archive.updateCurrentStatus();
+            int archived = 0, downsampled = 0, deleted = 0;
+            if (archiveAfterDays > 0) {
+                Date before = daysAgo(archiveAfterDays);
+                int count;
+                do {
+                    count = archive.archive(before, batchSize);
+                    archived += count;
+                } while (count == batchSize);
+            }
+            if (downsampleAfterDays > 0) {
+                Date before = daysAgo(downsampleAfterDays);
+                int count;
+                do {
+                    count = archive.downsample(before, batchSize);
+                    downsampled += count;
+                } while (count == batchSize);
+            }
+            if (deleteAfterDays > 0) {
+                Date before = daysAgo(deleteAfterDays);
+                int count;
+                do {
+                    count = archive.delete(before, batchSize);
+                    deleted += count;
+                } while (count == batchSize);
+            }
+            log.debug("performance: trust log retention added {} current status records, archived {}, downsampled {}, deleted {} records in {}ms", added, archived, downsampled, deleted, System.currentTimeMillis() - start);
+        } catch (IOException | SQLException e) {
+            log.error("Error while archiving old trust logs", e);
+        }
+    }
+
+    private Date daysAgo(int days) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.DATE, -days);
+        return calendar.getTime();
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.business.trust;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs bulk host attestations as a staged pipeline instead of one blocking
+ * task per host:
+ *
+ * 1. fetch: contact the trust agent (and check the cache), on the I/O pool
+ * 2. verify: apply the trust policy and sign assertions, on the compute pool
+ * 3. persist: record the result in the database, on the persist pool
+ *
+ * Each batch limits how many of its hosts are in flight at once so that
+ * concurrent bulk requests share the I/O pool instead of one request
+ * queueing thousands of hosts ahead of the others. Each host has its own
+ * deadline which starts when its fetch stage starts; when it expires the
+ * fetch is cancelled and the host is reported as timed out. The next host
+ * of the batch is started only when the cancelled fetch has returned, so a
+ * fetch that does not respond to the interrupt still counts against the
+ * batch limit. Results are delivered to the batch listener in completion
+ * order.
+ *
+ * The listener may be called from any of the pipeline threads.
+ */
+public class AttestationPipeline {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(AttestationPipeline.class);
+    private final ExecutorService ioExecutor;
+    private final ExecutorService computeExecutor;
+    private final ExecutorService persistExecutor;
+    private final ScheduledExecutorService scheduler;
+    private final int maxInFlightPerBatch;
+
+    /**
+     *
+     * @param ioExecutor runs the fetch stage; its size limits concurrent trust agent connections
+     * @param computeExecutor runs the verify stage; normally one thread per processor
+     * @param persistExecutor runs the persist stage; its size limits the database connections used by attestations
+     * @param scheduler used for the per-host deadlines
+     * @param maxInFlightPerBatch maximum number of hosts from one batch in the pipeline at the same time
+     */
+    public AttestationPipeline(ExecutorService ioExecutor, ExecutorService computeExecutor, ExecutorService persistExecutor, ScheduledExecutorService scheduler, int maxInFlightPerBatch) {
+        this.ioExecutor = ioExecutor;
+        this.computeExecutor = computeExecutor;
+        this.persistExecutor = persistExecutor;
+        this.scheduler = scheduler;
+        this.maxInFlightPerBatch = maxInFlightPerBatch;
+    }
+
+    public static interface ResultListener<T> {
+        void hostCompleted(String hostname, T result);
+    }
+
+    /**
+     * One host's attestation, split into the pipeline stages. The stages of
+     * a task are called in order, never concurrently, so implementations
+     * can keep intermediate state in fields.
+     *
+     * @param <T> the per-host result type
+     */
+    public static abstract class HostTask<T> {
+        private final String hostname;
+
+        protected HostTask(String hostname) {
+            this.hostname = hostname;
+        }
+
+        public String getHostname() {
+            return hostname;
+        }
+
+        /**
+         * Called on the I/O pool.
+         *
+         * @return a result to complete the host without the verify and persist stages (for example a cached status), or null to continue
+         */
+        protected abstract T fetch() throws Exception;
+
+        /**
+         * Called on the compute pool after fetch returned null.
+         */
+        protected abstract void verify() throws Exception;
+
+        /**
+         * Called on the persist pool after verify.
+         *
+         * @return the result for the host
+         */
+        protected abstract T persist() throws Exception;
+
+        /**
+         * Called on the persist pool when any stage throws an exception,
+         * so implementations may record the error in the database.
+         *
+         * @param e
+         * @return the error result for the host
+         */
+        protected abstract T failed(Exception e);
+
+        /**
+         * Called on the scheduler thread when the host deadline expires;
+         * must not block.
+         *
+         * @return the timeout result for the host
+         */
+        protected abstract T timedOut();
+    }
+
+    /**
+     * Starts the attestation of all the tasks and returns immediately.
+     *
+     * @param tasks
+     * @param timeoutSeconds deadline for each host
+     * @param listener receives each host result as it completes
+     * @return a handle to wait for the batch to complete
+     */
+    public <T> Batch<T> submit(Collection<? extends HostTask<T>> tasks, long timeoutSeconds, ResultListener<T> listener) {
+        Batch<T> batch = new Batch<>(tasks, timeoutSeconds, listener);
+        batch.start();
+        return batch;
+    }
+
+    public class Batch<T> {
+        private final Iterator<? extends HostTask<T>> pending;
+        private final long timeoutSeconds;
+        private final ResultListener<T> listener;
+        private final CountDownLatch remaining;
+        private final List<Execution<T>> started;
+
+        private Batch(Collection<? extends HostTask<T>> tasks, long timeoutSeconds, ResultListener<T> listener) {
+            this.pending = new ArrayList<>(tasks).iterator();
+            this.timeoutSeconds = timeoutSeconds;
+            this.listener = listener;
+            this.remaining = new CountDownLatch(tasks.size());
+            this.started = new ArrayList<>(tasks.size());
+        }
+
+        private void start() {
+            int n = Math.max(1, maxInFlightPerBatch);
+            for (int i = 0; i < n; i++) {
+                startNext();
+            }
+        }
+
+        private void startNext() {
+            Execution<T> execution;
+            synchronized (this) {
+                if (!pending.hasNext()) {
+                    return;
+                }
+                execution = new Execution<>(this, pending.next());
+                started.add(execution);
+            }
+            try {
+                execution.fetchFuture = ioExecutor.submit(execution.fetchStage);
+            } catch (RejectedExecutionException e) {
+                execution.fail(e);
+            }
+        }
+
+        private void completed(Execution<T> execution, T result) {
+            try {
+                listener.hostCompleted(execution.task.getHostname(), result);
+            } catch (RuntimeException e) {
+                log.error("Error while delivering result for host {}", execution.task.getHostname(), e);
+            }
+            remaining.countDown();
+        }
+
+        /**
+         * Waits for every host in the batch to complete, time out, or fail.
+         *
+         * @param timeout
+         * @param unit
+         * @return true if all hosts completed, false if the wait timed out
+         * @throws InterruptedException
+         */
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            return remaining.await(timeout, unit);
+        }
+
+        /**
+         * Reports any hosts that have not completed as timed out and cancels
+         * their remaining work. Used when the caller stops waiting.
+         */
+        public void cancel() {
+            List<Execution<T>> executions;
+            synchronized (this) {
+                while (pending.hasNext()) {
+                    started.add(new Execution<>(this, pending.next()));
+                }
+                executions = new ArrayList<>(started);
+            }
+            for (Execution<T> execution : executions) {
+                execution.timeout();
+            }
+        }
+    }
+
+    private class Execution<T> {
+        private final Batch<T> batch;
+        private final HostTask<T> task;
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        // the host keeps its place in the batch while its result is pending or its fetch is running
+        private final AtomicInteger holds = new AtomicInteger(1);
+        private volatile Future<?> fetchFuture;
+        private volatile ScheduledFuture<?> deadline;
+
+        private Execution(Batch<T> batch, HostTask<T> task) {
+            this.batch = batch;
+            this.task = task;
+        }
+
+        private void complete(T result) {
+            if (done.compareAndSet(false, true)) {
+                if (deadline != null) {
+                    deadline.cancel(false);
+                }
+                batch.completed(this, result);
+                release();
+            }
+        }
+
+        /**
+         *
+         * @return true if the fetch may run, false if the host already released its place
+         */
+        private boolean hold() {
+            while (true) {
+                int current = holds.get();
+                if (current == 0) {
+                    return false;
+                }
+                if (holds.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        private void release() {
+            if (holds.decrementAndGet() == 0) {
+                batch.startNext();
+            }
+        }
+
+        private void timeout() {
+            if (done.compareAndSet(false, true)) {
+                log.debug("Attestation of host {} exceeded timeout of {} seconds", task.getHostname(), batch.timeoutSeconds);
+                if (fetchFuture != null) {
+                    fetchFuture.cancel(true);
+                }
+                batch.completed(this, task.timedOut());
+                release();
+            }
+        }
+
+        private void fail(final Exception e) {
+            if (done.get()) {
+                return;
+            }
+            try {
+                persistExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!done.get()) {
+                            complete(task.failed(e));
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException ree) {
+                log.error("Cannot record attestation error for host {}", task.getHostname(), ree);
+                complete(task.timedOut());
+            }
+        }
+
+        private final Runnable fetchStage = new Runnable() {
+            @Override
+            public void run() {
+                if (!hold()) {
+                    return;
+                }
+                try {
+                    fetch();
+                } finally {
+                    release();
+                }
+            }
+        };
+
+        private void fetch() {
+            if (done.get()) {
+                return;
+            }
+            deadline = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    timeout();
+                }
+            }, batch.timeoutSeconds, TimeUnit.SECONDS);
+            try {
+                long start = System.currentTimeMillis();
+                T cached = task.fetch();
+                log.trace("performance: pipeline fetch {}: {}ms", task.getHostname(), System.currentTimeMillis() - start);
+                if (cached != null) {
+                    complete(cached);
+                    return;
+                }
+                computeExecutor.execute(verifyStage);
+            } catch (Exception e) {
+                fail(e);
+            }
+        }
+
+        private final Runnable verifyStage = new Runnable() {
+            @Override
+            public void run() {
+                if (done.get()) {
+                    return;
+                }
+                try {
+                    long start = System.currentTimeMillis();
+                    task.verify();
+                    log.trace("performance: pipeline verify {}: {}ms", task.getHostname(), System.currentTimeMillis() - start);
+                    persistExecutor.execute(persistStage);
+                } catch (Exception e) {
+                    fail(e);
+                }
+            }
+        };
+
+        private final Runnable persistStage = new Runnable() {
+            @Override
+            public void run() {
+                // the attestation was completed so it is recorded even if the
+                // host was already reported as timed out
+                T result;
+                try {
+                    long start = System.currentTimeMillis();
+                    result = task.persist();
+                    log.trace("performance: pipeline persist {}: {}ms", task.getHostname(), System.currentTimeMillis() - start);
+                } catch (Exception e) {
+                    result = task.failed(e);
+                }
+                complete(result);
+            }
+        };
+    }
+}
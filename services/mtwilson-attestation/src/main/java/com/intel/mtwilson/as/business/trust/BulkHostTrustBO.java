@@ -4,29 +4,50 @@
  */
 package com.intel.mtwilson.as.business.trust;
 
+import com.intel.dcsg.cpg.io.UUID;
 import com.intel.mountwilson.as.common.ASException;
+import com.intel.mtwilson.My;
+import com.intel.mtwilson.agent.HostAgent;
+import com.intel.mtwilson.as.data.TblHosts;
+import com.intel.mtwilson.as.data.TblSamlAssertion;
+import com.intel.mtwilson.as.rest.v2.model.HostAttestation;
 import com.intel.mtwilson.datatypes.BulkHostTrustResponse;
 import com.intel.mtwilson.i18n.ErrorCode;
 import com.intel.mtwilson.datatypes.HostTrust;
+import com.intel.mtwilson.model.Hostname;
 import com.intel.mtwilson.model.Nonce;
+import com.intel.mtwilson.policy.HostReport;
+import com.intel.mtwilson.policy.TrustReport;
 import com.intel.mtwilson.threads.Attestation;
+import com.intel.mtwilson.util.ASDataCipher;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
-import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- *
+ * Attests many hosts at once using the attestation pipeline: the trust
+ * agents are contacted on the I/O pool, the trust policy is applied on the
+ * compute pool, and the results are recorded on the persist pool.
+ * The timeout applies to each host individually. The request as a whole
+ * waits at most the timeout plus a short grace period for recording the
+ * results; hosts that have not completed by then, for example because they
+ * were still queued behind other hosts of the batch, are reported as timed
+ * out.
+ * 
  * @author jbuhacoff
  */
 public class BulkHostTrustBO {
 
+    private static final int GRACE_SECONDS = 30; // time for the persist stage to record the results of hosts that reached their deadline
     private Logger log = LoggerFactory.getLogger(getClass());
 //    private HostTrustBO hostTrustBO = ASComponentFactory.getHostTrustBO(); 
     private int timeout;
@@ -41,34 +62,9 @@ public class BulkHostTrustBO {
 
     public String getBulkTrustSaml(Set<String> hosts, boolean forceVerify, Nonce challenge) {
         try {
-            log.debug("getBulkTrustSaml started at {}", System.currentTimeMillis());
-            Set<HostQuoteSaml> tasks = new HashSet<>();
-            for (String host : hosts) {
-                HostQuoteSaml task = new HostQuoteSaml(host, forceVerify, challenge);
-                tasks.add(task);
-            }
-            
-            log.debug("getBulkTrustSaml invokeAll with timeout: {} seconds", timeout);
-            Attestation.getExecutor().invokeAll(tasks, timeout, TimeUnit.SECONDS);
-            List<String> results = new ArrayList<>();
-            for (HostQuoteSaml task : tasks) {
-                // Bug:547 - Since the comment mentioned that the return value will not be used and the java.util.concurrent.TimeoutException was being thrown
-                // by the get statement, we are ignoring the exception and continuing.
-                if (task.getResult() == null) {
-                    log.debug("getBulkTrustSaml null for {}", task.hostname);
-                    results.add(task.getTimeoutResult());
-                } else if (task.isError()) {
-                    log.debug("getBulkTrustSaml error for {}", task.hostname);
-                    results.add(task.getResult()); // already an error response
-                } else {
-                    log.debug("getBulkTrustSaml result for {}", task.hostname);
-                    results.add(task.getResult());
-                }
-            }
-
-            String report = String.format("<Hosts>%s</Hosts>", StringUtils.join(results, ""));
-            log.debug("getBulkTrustSaml finished at {}", System.currentTimeMillis());
-            return report;
+            StringWriter report = new StringWriter();
+            writeBulkTrustSaml(hosts, forceVerify, challenge, report);
+            return report.toString();
         } catch (Exception ex) {
             // throw new ASException(ex);
             // Bug: 1038 - prevent leaks in error messages to client
@@ -78,53 +74,93 @@ public class BulkHostTrustBO {
         }
     }
 
+    /**
+     * Writes the bulk SAML report for the hosts, one host at a time in
+     * completion order as soon as each attestation completes, and flushes
+     * after each host. Only the hosts in flight and the results not yet
+     * written are kept in memory instead of the whole report.
+     * 
+     * Once the report has started the response status cannot change, so
+     * host errors and timeouts are reported in each host element as before.
+     * If the writer fails, for example because the client disconnected, the
+     * hosts that have not completed are cancelled.
+     * 
+     * @param hosts
+     * @param forceVerify
+     * @param challenge may be null
+     * @param out
+     * @throws IOException if the report cannot be written
+     */
+    public void writeBulkTrustSaml(Set<String> hosts, boolean forceVerify, Nonce challenge, Writer out) throws IOException {
+        log.debug("getBulkTrustSaml started at {}", System.currentTimeMillis());
+        List<HostQuoteSaml> tasks = new ArrayList<>();
+        for (String host : hosts) {
+            HostQuoteSaml task = new HostQuoteSaml(host, forceVerify, challenge);
+            tasks.add(task);
+        }
+
+        log.debug("getBulkTrustSaml with timeout: {} seconds per host", timeout);
+        final LinkedBlockingQueue<String> results = new LinkedBlockingQueue<>();
+        AttestationPipeline.Batch<String> batch = Attestation.getPipeline().submit(tasks, timeout, new AttestationPipeline.ResultListener<String>() {
+            @Override
+            public void hostCompleted(String hostname, String result) {
+                log.debug("Attestation completed for {}", hostname);
+                results.add(result);
+            }
+        });
+        long maxWait = getMaxWait();
+        long deadline = System.currentTimeMillis() + maxWait * 1000;
+        boolean cancelled = false;
+        boolean completed = false;
+        try {
+            out.write("<Hosts>");
+            out.flush();
+            int written = 0;
+            while (written < tasks.size()) {
+                // after cancel() the remaining hosts are reported as timed out right away
+                long wait = cancelled ? 1000 : deadline - System.currentTimeMillis();
+                String result = results.poll(Math.max(0, wait), TimeUnit.MILLISECONDS);
+                if (result == null) {
+                    if (cancelled) {
+                        log.warn("Bulk attestation is missing {} results after cancel", tasks.size() - written);
+                        break;
+                    }
+                    log.warn("Bulk attestation did not complete within {} seconds", maxWait);
+                    batch.cancel();
+                    cancelled = true;
+                    continue;
+                }
+                out.write(result);
+                out.flush();
+                written++;
+            }
+            out.write("</Hosts>");
+            out.flush();
+            completed = true;
+            log.debug("getBulkTrustSaml finished at {}", System.currentTimeMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing bulk trust report");
+        } finally {
+            if (!completed && !cancelled) {
+                batch.cancel();
+            }
+        }
+    }
+
     public BulkHostTrustResponse getBulkTrustJson(Set<String> hosts, boolean forceVerify) {
         return getBulkTrustJson(hosts, forceVerify, null);
     }
 
     public BulkHostTrustResponse getBulkTrustJson(Set<String> hosts, boolean forceVerify, Nonce challenge) {
         try {
-
-            Set<HostQuoteJson> tasks = new HashSet<HostQuoteJson>();
-//            ExecutorService scheduler = Executors.newFixedThreadPool(maxThreads);
-            ArrayList<Future<?>> taskStatus = new ArrayList<Future<?>>();
-
-            List<HostTrust> results = new ArrayList<HostTrust>();
-
+            List<HostQuoteJson> tasks = new ArrayList<>();
             for (String host : hosts) {
                 HostQuoteJson task = new HostQuoteJson(host, forceVerify, challenge);
                 tasks.add(task);
-                Future<?> status = Attestation.getExecutor().submit(task);
-                taskStatus.add(status);
             }
 
-            for (Future<?> status : taskStatus) {
-                try {
-                    status.get(timeout, TimeUnit.SECONDS); // return value will always be null because we submitted "Runnable" tasks
-                } catch (Exception e) {
-                    log.error("Error while waiting for task to complete: {}", e);
-                }
-            }
-
-//            scheduler.shutdown();
-
-//            if( scheduler.awaitTermination(timeout, TimeUnit.SECONDS) ) {
-//                log.info("All tasks completed on time");
-//            }
-//            else {
-//                log.info("Timeout reached before all tasks completed"); // should set the error code ErrorCode.AS_ASYNC_TIMEOUT on the ones that timed out (no result available)
-//            }
-
-
-            for (HostQuoteJson task : tasks) {
-                if (task.getResult() == null) {
-                    results.add(task.getTimeoutResult());
-                } else if (task.isError()) {
-                    results.add(task.getResult()); // already in error format
-                } else {
-                    results.add(task.getResult());
-                }
-            }
+            List<HostTrust> results = attest(tasks);
 
             BulkHostTrustResponse report = new BulkHostTrustResponse();
             for (HostTrust result : results) {
@@ -139,116 +175,201 @@ public class BulkHostTrustBO {
             throw new ASException(ErrorCode.AS_BULK_HOST_TRUST_ERROR, ex.getClass().getSimpleName());
         }
     }
+    
+    /**
+     * Runs the tasks in the attestation pipeline and waits for all of them
+     * to complete or time out.
+     * 
+     * @param tasks
+     * @return the results in completion order
+     * @throws InterruptedException 
+     */
+    private <T> List<T> attest(List<? extends AttestationPipeline.HostTask<T>> tasks) throws InterruptedException {
+        final List<T> results = Collections.synchronizedList(new ArrayList<T>(tasks.size()));
+        AttestationPipeline.Batch<T> batch = Attestation.getPipeline().submit(tasks, timeout, new AttestationPipeline.ResultListener<T>() {
+            @Override
+            public void hostCompleted(String hostname, T result) {
+                log.debug("Attestation completed for {}", hostname);
+                results.add(result);
+            }
+        });
+        long maxWait = getMaxWait();
+        if (!batch.await(maxWait, TimeUnit.SECONDS)) {
+            log.warn("Bulk attestation did not complete within {} seconds", maxWait);
+            batch.cancel();
+        }
+        synchronized (results) {
+            return new ArrayList<>(results);
+        }
+    }
 
-    private class HostQuoteSaml implements Runnable, Callable<String> {
+    /**
+     * The wait does not grow with the number of hosts, so a large batch
+     * cannot hold the request for longer than a single host may take.
+     * 
+     * @return seconds to wait for the whole batch
+     */
+    private long getMaxWait() {
+        return (long)timeout + GRACE_SECONDS;
+    }
+
+    private class HostQuoteSaml extends AttestationPipeline.HostTask<String> {
 
-        private String hostname = null; // example: "10.1.71.174"
         private boolean forceVerify;
-        private String result = null;
-        private boolean isError = false;
         private Nonce challenge = null;
+        private HostTrustBO hostTrustBO = new HostTrustBO();
+        private String hostAttestationUuid = new UUID().toString();
+        private boolean attesting = false;
+        private TblHosts tblHosts;
+        private HostAgent agent;
+        private HostReport hostReport;
+        private TrustReport trustReport;
+        private TblSamlAssertion tblSamlAssertion;
 
         public HostQuoteSaml(String hostname, boolean forceVerify, Nonce challenge) {
-            this.hostname = hostname;
+            super(hostname); // example: "10.1.71.174"
             this.forceVerify = forceVerify;
             this.challenge = challenge;
         }
 
         @Override
-        public void run() {
-            if (isError()) {
-                return;
-            } // avoid clobbering previous error
-            try {
-//        HostBO hostBO = new HostBO();
-                HostTrustBO hostTrustBO = new HostTrustBO();
-//        hostTrustBO.setHostBO(hostBO);
-
-                String saml = hostTrustBO.getTrustWithSaml(hostname, forceVerify, challenge);
-                result = String.format("<Host><Name>%s</Name><ErrorCode>%s</ErrorCode><Assertion><![CDATA[%s]]></Assertion></Host>", hostname, ErrorCode.OK.toString(), saml);
-            } catch (ASException e) {
-                isError = true;
-                result = String.format("<Host><Name>%s</Name><ErrorCode>%s</ErrorCode><ErrorMessage>%s</ErrorMessage></Host>", hostname, e.getErrorCode().toString(), e.getErrorMessage());
-            } catch (Exception e) {
-                isError = true;
-                // result = String.format("<Host><Name>%s</Name><ErrorCode>%s</ErrorCode><ErrorMessage>%s</ErrorMessage></Host>", hostname, ErrorCode.UNKNOWN_ERROR.toString(), e.getLocalizedMessage());
-                result = String.format("<Host><Name>%s</Name><ErrorCode>%s</ErrorCode><ErrorMessage>%s</ErrorMessage></Host>",
-                        hostname, ErrorCode.AS_HOST_TRUST_ERROR.toString(), String.format(ErrorCode.AS_HOST_TRUST_ERROR.getMessage(), e.getClass().getSimpleName()));
+        protected String fetch() throws Exception {
+            if( ASDataCipher.cipher == null ) {
+                log.warn("ASDataCipher was not initialized");
+                My.initDataEncryptionKey();
+            }
+            tblHosts = hostTrustBO.getHostByName(new Hostname(getHostname()));
+            if (tblHosts == null) {
+                throw new ASException(ErrorCode.AS_HOST_NOT_FOUND, getHostname());
+            }
+            if (!forceVerify) {
+                try {
+                    HostAttestation cached = hostTrustBO.getCachedHostAttestation(tblHosts);
+                    if (cached != null) {
+                        return getSuccessResult(cached.getSaml());
+                    }
+                } catch (ASException e) {
+                    return getErrorResult(e);
+                }
+            }
+            agent = hostTrustBO.getHostAgentForAttestation(tblHosts, tblHosts.getName());
+            if (!agent.isTpmPresent()) {
+                throw new ASException(ErrorCode.AS_TPM_NOT_SUPPORTED, getHostname());
             }
+            attesting = true;
+            hostReport = hostTrustBO.getHostReport(tblHosts, agent, challenge);
+            return null;
         }
 
-        public boolean isError() {
-            return isError;
+        @Override
+        protected void verify() throws Exception {
+            trustReport = hostTrustBO.evaluateHostReport(tblHosts, tblHosts.getName(), hostReport, agent);
+            tblSamlAssertion = hostTrustBO.createSamlAssertion(tblHosts, hostAttestationUuid, trustReport);
         }
 
-        public String getResult() {
-            return result;
+        @Override
+        protected String persist() throws Exception {
+            hostTrustBO.logTrustReport(tblHosts, trustReport); // Need to cache the attestation report ### v1 requirement to log to mw_ta_log
+            My.jpa().mwSamlAssertion().create(tblSamlAssertion);
+            return getSuccessResult(tblSamlAssertion.getSaml());
         }
 
-        public String getHostname() {
-            return hostname;
+        @Override
+        protected String failed(Exception e) {
+            log.error("Cannot obtain host trust for {}", getHostname(), e);
+            if (!attesting) {
+                return getErrorResult(e);
+            }
+            try {
+                hostTrustBO.saveErrorSamlAssertion(tblHosts, hostAttestationUuid, e);
+                return getErrorResult(new ASException(e, ErrorCode.AS_HOST_TRUST_ERROR, e.getClass().getSimpleName()));
+            } catch (ASException ex) {
+                return getErrorResult(ex);
+            }
         }
 
-        public String getTimeoutResult() {
-            return String.format("<Host><Name>%s</Name><ErrorCode>%s</ErrorCode><ErrorMessage>%s</ErrorMessage></Host>", hostname, ErrorCode.AS_ASYNC_TIMEOUT.toString(), "Exceeded timeout of " + timeout + " seconds");
+        @Override
+        protected String timedOut() {
+            return String.format("<Host><Name>%s</Name><ErrorCode>%s</ErrorCode><ErrorMessage>%s</ErrorMessage></Host>", getHostname(), ErrorCode.AS_ASYNC_TIMEOUT.toString(), "Exceeded timeout of " + timeout + " seconds");
         }
 
-        @Override
-        public String call() throws Exception {
-            run();
-            return null;
+        private String getSuccessResult(String saml) {
+            return String.format("<Host><Name>%s</Name><ErrorCode>%s</ErrorCode><Assertion><![CDATA[%s]]></Assertion></Host>", getHostname(), ErrorCode.OK.toString(), saml);
+        }
+
+        private String getErrorResult(Exception e) {
+            if (e instanceof ASException) {
+                ASException ase = (ASException) e;
+                return String.format("<Host><Name>%s</Name><ErrorCode>%s</ErrorCode><ErrorMessage>%s</ErrorMessage></Host>", getHostname(), ase.getErrorCode().toString(), ase.getErrorMessage());
+            }
+            // result = String.format("<Host><Name>%s</Name><ErrorCode>%s</ErrorCode><ErrorMessage>%s</ErrorMessage></Host>", hostname, ErrorCode.UNKNOWN_ERROR.toString(), e.getLocalizedMessage());
+            return String.format("<Host><Name>%s</Name><ErrorCode>%s</ErrorCode><ErrorMessage>%s</ErrorMessage></Host>",
+                    getHostname(), ErrorCode.AS_HOST_TRUST_ERROR.toString(), String.format(ErrorCode.AS_HOST_TRUST_ERROR.getMessage(), e.getClass().getSimpleName()));
         }
     }
 
-    private class HostQuoteJson implements Runnable {
+    private class HostQuoteJson extends AttestationPipeline.HostTask<HostTrust> {
 
-        private String hostname = null; // example: "10.1.71.174"
         private boolean forceVerify;
-        private HostTrust result = null;
-        private boolean isError = false;
         private Nonce challenge = null;
+        private HostTrustBO hostTrustBO = new HostTrustBO();
+        private TblHosts tblHosts;
+        private HostAgent agent;
+        private HostReport hostReport;
+        private TrustReport trustReport;
 
         public HostQuoteJson(String hostname, boolean forceVerify, Nonce challenge) {
-            this.hostname = hostname;
+            super(hostname); // example: "10.1.71.174"
             this.forceVerify = forceVerify;
             this.challenge = challenge;
         }
 
         @Override
-        public void run() {
-            if (isError()) {
-                return;
-            } // avoid clobbering previous error
-            try {
-                HostTrustBO hostTrustBO = new HostTrustBO();
-//                HostBO hostBO = new HostBO();
-//        hostTrustBO.setHostBO(hostBO);
-
-
-                result = hostTrustBO.getTrustWithCache(hostname, forceVerify, challenge);
-            } catch (ASException e) {
-                isError = true;
-                result = new HostTrust(e.getErrorCode(), e.getMessage(), hostname, null, null);
-            } catch (Exception e) {
-                isError = true;
-                result = new HostTrust(ErrorCode.AS_HOST_TRUST_ERROR, String.format(ErrorCode.AS_HOST_TRUST_ERROR.getMessage(), e.getClass().getSimpleName()), hostname, null, null);
+        protected HostTrust fetch() throws Exception {
+            if (!forceVerify) {
+                HostTrust cached = hostTrustBO.getCachedHostTrust(getHostname());
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            tblHosts = hostTrustBO.getHostByName(new Hostname(getHostname()));
+            if (tblHosts == null) {
+                throw new ASException(ErrorCode.AS_HOST_NOT_FOUND, getHostname());
             }
+            if (!forceVerify) {
+                HostTrust cached = hostTrustBO.getCachedHostTrust(tblHosts, getHostname());
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            agent = hostTrustBO.getHostAgentForAttestation(tblHosts, getHostname());
+            hostReport = hostTrustBO.getHostReport(tblHosts, agent, challenge);
+            return null;
         }
 
-        public boolean isError() {
-            return isError;
+        @Override
+        protected void verify() throws Exception {
+            trustReport = hostTrustBO.evaluateHostReport(tblHosts, getHostname(), hostReport, agent);
         }
 
-        public HostTrust getResult() {
-            return result;
+        @Override
+        protected HostTrust persist() throws Exception {
+            return hostTrustBO.toHostTrust(getHostname(), hostTrustBO.saveTrustReport(tblHosts, getHostname(), trustReport));
         }
 
-        public String getHostname() {
-            return hostname;
+        @Override
+        protected HostTrust failed(Exception e) {
+            log.error("Error while getting trust for host {}", getHostname(), e);
+            if (e instanceof ASException) {
+                ASException ase = (ASException) e;
+                return new HostTrust(ase.getErrorCode(), ase.getErrorMessage(), getHostname(), null, null);
+            }
+            return new HostTrust(ErrorCode.AS_HOST_TRUST_ERROR, String.format(ErrorCode.AS_HOST_TRUST_ERROR.getMessage(), e.getClass().getSimpleName()), getHostname(), null, null);
         }
 
-        public HostTrust getTimeoutResult() {
-            return new HostTrust(ErrorCode.AS_ASYNC_TIMEOUT, "Exceeded timeout of " + timeout + " seconds", hostname, null, null);
+        @Override
+        protected HostTrust timedOut() {
+            return new HostTrust(ErrorCode.AS_ASYNC_TIMEOUT, "Exceeded timeout of " + timeout + " seconds", getHostname(), null, null);
         }
     }
 }
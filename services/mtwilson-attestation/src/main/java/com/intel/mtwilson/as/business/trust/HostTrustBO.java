@@ -32,9 +32,6 @@ import com.intel.mtwilson.datatypes.*;
 import com.intel.dcsg.cpg.io.FileResource;
 import com.intel.dcsg.cpg.io.Resource;
 import com.intel.dcsg.cpg.io.UUID;
-import com.intel.mtwilson.as.controller.exceptions.ASDataException;
-import com.intel.mtwilson.as.controller.exceptions.IllegalOrphanException;
-import com.intel.mtwilson.as.controller.exceptions.NonexistentEntityException;
 import com.intel.mtwilson.as.data.TblPcrManifest;
 import com.intel.mtwilson.as.rest.v2.model.HostAttestation;
 import com.intel.mtwilson.jaxrs2.provider.JacksonObjectMapperProvider;
@@ -82,6 +79,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Response.Status;
 import javax.xml.crypto.MarshalException;
@@ -154,6 +152,43 @@ public class HostTrustBO {
         }
     }
     
+    /**
+     * Like getTrustStatusWithCache, but finds the host by its AIK public key
+     * SHA1 fingerprint. A cached trust status is returned without looking up
+     * the host record.
+     * 
+     * @param aik the AIK public key SHA1 fingerprint
+     * @param forceVerify true to attest the host even if a recent trust status is available
+     * @return 
+     */
+    public HostTrustStatus getTrustStatusByAikWithCache(Sha1Digest aik, Boolean forceVerify) throws IOException {
+        if( aik == null ) { throw new IllegalArgumentException("missing AIK fingerprint"); }
+        if(forceVerify != true){
+            HostTrustCache cache = HostTrustCache.getInstance();
+            if( cache != null ) {
+                HostTrustCache.Entry entry = cache.getByAik(aik.toString());
+                if( entry != null ) {
+                    return entry.getStatus();
+                }
+            }
+        }
+        try {
+            TblHosts tblHosts = getHostByAik(aik);
+            if( tblHosts != null && forceVerify != true ) {
+                TblTaLog tblTaLog = My.jpa().mwTaLog().getHostTALogEntryBefore(tblHosts.getId() , getCacheStaleAfter() );
+                if(tblTaLog != null) {
+                    cacheTrustStatus(tblHosts, tblTaLog);
+                    return getHostTrustStatusObj(tblTaLog);
+                }
+            }
+            return getTrustStatus(tblHosts, aik.toString());
+        }
+        catch(IOException e) {
+            log.error("Cannot get trust status for {}", aik.toString(), e); // log the error for sysadmin to troubleshoot, since we are not allowing the original exception to propagate
+            throw new IOException("Cannot get trust status for "+aik.toString()); // rethrowing to make sure that the hostname is not leaked from an exception message; we only provide the AIK in the message
+        }
+    }
+    
     /**
      * This function verifies the host's PCR measurements against the possible MLE whitelists that it could be mapped to
      * and accordingly returns backs the caller the correct MLE name (both BIOS and VMM) using which the host can be 
@@ -292,7 +327,7 @@ public class HostTrustBO {
                     }
                     
                     Policy trustPolicy = hostTrustPolicyFactory.loadTrustPolicyForMLEVerification(tblHosts, tblHosts.getName()); 
-                    PolicyEngine policyEngine = new PolicyEngine();
+                    PolicyEngine policyEngine = createPolicyEngine(true);
                     TrustReport trustReport = policyEngine.apply(hostReport, trustPolicy);
 
                     // Let us update the TxtHostRecord object with the details. We will use that object for host registration later                        
@@ -374,7 +409,7 @@ public class HostTrustBO {
                     }
 
                     Policy trustPolicy = hostTrustPolicyFactory.loadTrustPolicyForMLEVerification(tblHosts, tblHosts.getName()); 
-                    PolicyEngine policyEngine = new PolicyEngine();
+                    PolicyEngine policyEngine = createPolicyEngine(true);
                     TrustReport trustReport = policyEngine.apply(hostReport, trustPolicy);
 
                     // Let us update the TxtHostRecord object with the details. We will use it for host registration later                        
@@ -528,7 +563,7 @@ public class HostTrustBO {
                         Policy trustPolicy = hostTrustPolicyFactory.loadTrustPolicyForHost(tblHosts, tblHosts.getName()); 
                         long t1 = System.currentTimeMillis();
                         log.trace("performance: hostTrustPolicyFactory.loadTrustPolicyForHost: {}ms", t1-t0);
-                        PolicyEngine policyEngine = new PolicyEngine();
+                        PolicyEngine policyEngine = createPolicyEngine(true);
                         TrustReport tempTrustReport = policyEngine.apply(hostReport, trustPolicy);
                        long t2 = System.currentTimeMillis();
                         log.trace("performance: policyEngine.apply: {}ms", t2-t1);
@@ -611,7 +646,7 @@ public class HostTrustBO {
                         tblHosts.setVmmMleId(vmmMLE);
 
                         Policy trustPolicy = hostTrustPolicyFactory.loadTrustPolicyForMLEVerification(tblHosts, tblHosts.getName()); 
-                        PolicyEngine policyEngine = new PolicyEngine();
+                        PolicyEngine policyEngine = createPolicyEngine(true);
                         TrustReport tempTrustReport = policyEngine.apply(hostReport, trustPolicy);
 
                         if (tempTrustReport != null && tempTrustReport.isTrustedForMarker(TrustMarker.VMM.name())) {
@@ -668,7 +703,7 @@ public class HostTrustBO {
 
             tblHosts.setId(hostID);
             Policy trustPolicy = hostTrustPolicyFactory.loadTrustPolicyForHost(tblHosts, tblHosts.getName()); 
-            PolicyEngine policyEngine = new PolicyEngine();
+            PolicyEngine policyEngine = createPolicyEngine(configuration.getBoolean("mtwilson.policy.failfast", false));
             TrustReport finalTrustReport = policyEngine.apply(hostReport, trustPolicy);            
             
             long updateHostIfUntrustedStop = System.currentTimeMillis();
@@ -712,6 +747,24 @@ public class HostTrustBO {
         log.debug( "OS name for host is {}", tblHosts.getVmmMleId().getOsId().getName());
 
         TrustReport trustReport = getTrustReportForHost(tblHosts, hostId, challenge); // issue #4978 use specified nonce, if available
+        HostTrustStatus trust = saveTrustReport(tblHosts, hostId, trustReport);
+        
+        log.debug( "Verfication Time {}", (System.currentTimeMillis() - start));
+
+        return trust;
+    }
+    
+    /**
+     * Records the outcome of an attestation in mw_ta_log and the audit syslog.
+     * This is the database part of getTrustStatus, separated so that the bulk 
+     * attestation pipeline can run it in its persistence stage.
+     * 
+     * @param tblHosts
+     * @param hostId used in the audit log
+     * @param trustReport
+     * @return the overall trust status that was recorded
+     */
+    public HostTrustStatus saveTrustReport(TblHosts tblHosts, String hostId, TrustReport trustReport) {
         List<RuleResult> results = trustReport.getResults();
         for (RuleResult res : results) {
             log.debug("Trust Report Rule Name: {} - status is {}.", res.getRuleName(), res.isTrusted());
@@ -738,15 +791,12 @@ public class HostTrustBO {
         trust.asset_tag = trustReport.isTrustedForMarker(TrustMarker.ASSET_TAG.name());
         
         Date today = new Date(System.currentTimeMillis()); // create the date here and pass it down, in order to ensure that all created records use the same timestamp
-        logOverallTrustStatus(tblHosts, trust, today);
-        logPcrTrustStatus(tblHosts, trustReport, today);
+        logTrustStatus(tblHosts, trust, trustReport, today);
         
 
         String userName = new AuditLogger().getAuditUserName();
         Object[] paramArray = {userName, hostId, trust.bios, trust.vmm, trust.asset_tag};
         log.info(sysLogMarker, "User_Name: {} Host_Name: {} BIOS_Trust: {} VMM_Trust: {} AT_Trust: {}.", paramArray);
-        
-        log.debug( "Verfication Time {}", (System.currentTimeMillis() - start));
 
         return trust;
     }
@@ -763,8 +813,7 @@ public class HostTrustBO {
         trust.asset_tag = trustReport.isTrustedForMarker(TrustMarker.ASSET_TAG.name());
         
         Date today = new Date(System.currentTimeMillis()); // create the date here and pass it down, in order to ensure that all created records use the same timestamp
-        logOverallTrustStatus(tblHosts, trust, today);
-        logPcrTrustStatus(tblHosts, trustReport, today);
+        logTrustStatus(tblHosts, trust, trustReport, today);
         
     }
     
@@ -780,6 +829,20 @@ public class HostTrustBO {
      * @throws IOException 
      */
     public TrustReport getTrustReportForHost(TblHosts tblHosts, String hostId, Nonce challenge) throws IOException {
+        HostAgent agent = getHostAgentForAttestation(tblHosts, hostId);
+        HostReport hostReport = getHostReport(tblHosts, agent, challenge);
+        return evaluateHostReport(tblHosts, hostId, hostReport, agent);
+    }
+    
+    /**
+     * Creates the host agent for the host and checks that the host has
+     * TPM and Intel TXT enabled.
+     * 
+     * @param tblHosts
+     * @param hostId hostname or aik sha1
+     * @return 
+     */
+    public HostAgent getHostAgentForAttestation(TblHosts tblHosts, String hostId) {
         // bug #538 first check if the host supports tpm
         HostAgentFactory factory = new HostAgentFactory();
         long getAgentStart = System.currentTimeMillis(); 
@@ -790,8 +853,20 @@ public class HostTrustBO {
             throw new ASException(ErrorCode.AS_INTEL_TXT_NOT_ENABLED, hostId);
         }
         tblHosts.setAddOnConnectionInfo(factory.getHostConnectionString());
-        
-        
+        return agent;
+    }
+    
+    /**
+     * Retrieves the PCR manifest and AIK from the host and looks up the
+     * host's asset tag certificate. This is the part of the attestation that
+     * waits on the network.
+     * 
+     * @param tblHosts
+     * @param agent from getHostAgentForAttestation
+     * @param challenge is optional; may be null
+     * @return 
+     */
+    public HostReport getHostReport(TblHosts tblHosts, HostAgent agent, Nonce challenge) throws IOException {
         long getAgentManifestStart = System.currentTimeMillis(); 
         PcrManifest pcrManifest;
         if( challenge == null ) {
@@ -820,8 +895,6 @@ public class HostTrustBO {
             long getAikStop = System.currentTimeMillis();
             log.trace("performance: getAik or getAikCertificate: {}ms", getAikStop-getAikStart);
         }
-        
-        HostTrustPolicyManager hostTrustPolicyFactory = new HostTrustPolicyManager(My.persistenceManager().getASData());
 
         try {
             log.debug("Checking if there are any asset tag certificates mapped to host with ID : {}", tblHosts.getId());
@@ -840,14 +913,26 @@ public class HostTrustBO {
             // We cannot do anything ... just log the error and proceed
             log.info("Error during look up of asset tag certificates for the host {}", tblHosts.getName());
         }
-        
-        
+        return hostReport;
+    }
+    
+    /**
+     * Loads the trust policy for the host and applies it to the host report.
+     * 
+     * @param tblHosts
+     * @param hostId hostname or aik sha1
+     * @param hostReport from getHostReport
+     * @param agent used to update the host's MLE mapping if it is not trusted
+     * @return 
+     */
+    public TrustReport evaluateHostReport(TblHosts tblHosts, String hostId, HostReport hostReport, HostAgent agent) throws IOException {
+        HostTrustPolicyManager hostTrustPolicyFactory = new HostTrustPolicyManager(My.persistenceManager().getASData());
         long getTrustPolicyStart = System.currentTimeMillis();
         Policy trustPolicy = hostTrustPolicyFactory.loadTrustPolicyForHost(tblHosts, hostId); // must include both bios and vmm policies
         long getTrustPolicyStop = System.currentTimeMillis();
         log.trace("performance: loadTrustPolicyForHost: {}ms", getTrustPolicyStop-getTrustPolicyStart);
 //        trustPolicy.setName(policy for hostId) // do we even need a name? or is that just a management thing for the app?
-        PolicyEngine policyEngine = new PolicyEngine();
+        PolicyEngine policyEngine = createPolicyEngine(configuration.getBoolean("mtwilson.policy.failfast", false));
         long applyPolicyStart = System.currentTimeMillis();
         TrustReport trustReport = policyEngine.apply(hostReport, trustPolicy);
         long applyPolicyStop = System.currentTimeMillis();
@@ -860,6 +945,34 @@ public class HostTrustBO {
         return trustReport;
     }
 
+    /**
+     * Rules are applied in parallel on a shared pool unless 
+     * mtwilson.policy.parallel=false.
+     * 
+     * @param failFast true when only the trust status of each marker is needed, false when the report must include all the faults
+     * @return 
+     */
+    private PolicyEngine createPolicyEngine(boolean failFast) {
+        PolicyEngine policyEngine = new PolicyEngine();
+        policyEngine.setForkJoinPool(PolicyPoolHolder.pool);
+        policyEngine.setFailFast(failFast);
+        return policyEngine;
+    }
+    
+    private static class PolicyPoolHolder {
+        private static final ForkJoinPool pool = createPool();
+        
+        private static ForkJoinPool createPool() {
+            Configuration conf = My.configuration().getConfiguration();
+            if( !conf.getBoolean("mtwilson.policy.parallel", true) ) {
+                return null;
+            }
+            int threads = conf.getInt("mtwilson.policy.parallel.threads", Runtime.getRuntime().availableProcessors());
+            log.debug("Creating policy engine pool with n={}", threads);
+            return new ForkJoinPool(threads);
+        }
+    }
+
     /**
      * 
      * @param hostName must not be null
@@ -972,7 +1085,32 @@ public class HostTrustBO {
 
     }
     * */
-    private void logOverallTrustStatus(TblHosts host, HostTrustStatus status, Date today) {
+    /**
+     * Collects the overall and PCR trust status records of the attestation
+     * and writes them together. The overall status is written even if the
+     * PCR trust status cannot be logged, and the host trust cache and trust
+     * change event log are updated only after it was written.
+     */
+    private void logTrustStatus(TblHosts host, HostTrustStatus status, TrustReport report, Date today) {
+        TrustLog trustLog = new TrustLog();
+        logOverallTrustStatus(host, status, today, trustLog);
+        try {
+            logPcrTrustStatus(host, report, today, trustLog);
+        } finally {
+            TrustLogWriter.getInstance().write(trustLog);
+            // only after the write, so the cache and the event log never have a status that is not in mw_ta_log or queued for it
+            HostTrustCache cache = HostTrustCache.getInstance();
+            if( cache != null ) {
+                cache.put(host, status, getCacheExpiry(today));
+            }
+            TrustChangeEventLog eventLog = TrustChangeEventLog.getInstance();
+            if( eventLog != null ) {
+                eventLog.record(host, status, today);
+            }
+        }
+    }
+
+    private void logOverallTrustStatus(TblHosts host, HostTrustStatus status, Date today, TrustLog trustLog) {
         try {
             TblTaLog taLog = new TblTaLog();
             taLog.setHostID(host.getId());
@@ -985,9 +1123,8 @@ public class HostTrustBO {
             taLog.setUuid_hex(new UUID().toString());
             taLog.setUpdatedOn(today);
 
-            TblTaLogJpaController talog = My.jpa().mwTaLog();
+            trustLog.add(taLog); // overall status
             
-            talog.create(taLog); // overall status
     /*        
             // bios
             TblTaLog taLogBios = new TblTaLog();
@@ -1010,9 +1147,9 @@ public class HostTrustBO {
             taLogVmm.setUpdatedOn(today);
             talog.create(taLogVmm);
             */
-        } catch (IOException ex) {
+        } catch (RuntimeException ex) {
             log.error("Error during logging of the overall trust status", ex);
-            throw new ASException(ErrorCode.SYSTEM_ERROR, ex.getClass().getSimpleName());
+            throw ex;
         }
     }
     
@@ -1024,10 +1161,8 @@ public class HostTrustBO {
      * @param host
      * @param report 
      */
-    private void logPcrTrustStatus(TblHosts host, TrustReport report, Date today) {
+    private void logPcrTrustStatus(TblHosts host, TrustReport report, Date today, TrustLog trustLog) {
         try {
-            TblTaLogJpaController talogJpa = My.jpa().mwTaLog();
-            TblModuleManifestLogJpaController moduleLogJpa = My.jpa().mwModuleManifestLog();
             List<String> biosPcrList = Arrays.asList(host.getBiosMleId().getRequiredManifestList().split(","));
             List<String> vmmPcrList = Arrays.asList(host.getVmmMleId().getRequiredManifestList().split(","));
             List<RuleResult> results = report.getResults();
@@ -1226,26 +1361,13 @@ public class HostTrustBO {
                             }
                             
                             if (pcr != null) {
-                                if (pcr.getId() != null) {
-                                    log.debug("TaTblLog ID {} already exists.", pcr.getId());
-                                    pcr = talogJpa.findTblTaLog(pcr.getId());
-                                }
                                 pcr.setTrustStatus(false); 
                                 if (pcr.getError()== null || pcr.getError().isEmpty())
                                     pcr.setError("Missing modules");
                                 else
                                     pcr.setError(pcr.getError() + " and " + " Missing modules");
-                                if (pcr.getId() == null) {
-                                    log.debug("TaTblLog ID does not exist. Creating a new one. {}-{}", pcr.getTrustStatus(), pcr.getError());
-                                    talogJpa.create(pcr);
-                                } else {                            
-                                    try {
-                                        log.debug("Editing the existing TaTblLog ID. {}-{}", pcr.getTrustStatus(), pcr.getError());
-                                        talogJpa.edit(pcr);
-                                    } catch (IllegalOrphanException | NonexistentEntityException | ASDataException ex) {
-                                        log.error("Error updating the status in the TaLog table.", ex);
-                                    }
-                                }
+                                log.debug("Adding TaTblLog to the trust log. {}-{}", pcr.getTrustStatus(), pcr.getError());
+                                trustLog.add(pcr);
                                 taLogMap.put(missingEntriesFault.getPcrIndex() + type, pcr);
 
                                 Set<Measurement> missingEntries = missingEntriesFault.getMissingEntries();
@@ -1268,7 +1390,7 @@ public class HostTrustBO {
                                     event.setTaLogId(pcr);
                                     event.setValue( found == null ? "" : found.getValue().toString() ); // we don't know from our report what the "actual" value is since we only logged that an expected value was missing... so maybe there's a module with the same name and wrong value in the host report, which we don't know here... see comment above,  this probably needs to change.
                                     event.setWhitelistValue(m.getValue().toString());
-                                    moduleLogJpa.create(event);
+                                    trustLog.add(event);
                                 }
                             }
                         }
@@ -1300,26 +1422,13 @@ public class HostTrustBO {
                             PcrEventLogMissingExpectedEntries missingEntriesFault = (PcrEventLogMissingExpectedEntries)fault;
                             
                             if (pcr != null) {
-                                if (pcr.getId() != null) {
-                                    log.debug("TaTblLog ID {} already exists.", pcr.getId());
-                                    pcr = talogJpa.findTblTaLog(pcr.getId());
-                                }
                                 pcr.setTrustStatus(false); 
                                 if (pcr.getError()== null || pcr.getError().isEmpty())
                                     pcr.setError("Missing modules");
                                 else
                                     pcr.setError(pcr.getError() + " and " + " Missing modules");
-                                if (pcr.getId() == null) {
-                                    log.debug("TaTblLog ID does not exist. Creating a new one. {}-{}", pcr.getTrustStatus(), pcr.getError());
-                                    talogJpa.create(pcr);
-                                } else {                            
-                                    try {
-                                        log.debug("Editing the existing TaTblLog ID. {}-{}", pcr.getTrustStatus(), pcr.getError());
-                                        talogJpa.edit(pcr);
-                                    } catch (IllegalOrphanException | NonexistentEntityException | ASDataException ex) {
-                                        log.error("Error updating the status in the TaLog table.", ex);
-                                    }
-                                }
+                                log.debug("Adding TaTblLog to the trust log. {}-{}", pcr.getTrustStatus(), pcr.getError());
+                                trustLog.add(pcr);
                                 taLogMap.put(missingEntriesFault.getPcrIndex() + type, pcr);
 
                                 Set<Measurement> missingEntries = missingEntriesFault.getMissingEntries();
@@ -1348,24 +1457,19 @@ public class HostTrustBO {
                                         }
                                     }
                                     // does the host have a module with the same name but different value? if so, we should log it in TblModuleManifestLog... but from here we don't have access to the HostReport.
-                                    TblModuleManifestLog findByTaLogIdAndName = moduleLogJpa.findByTaLogIdAndName(pcr, mInfo.get("ComponentName"));
+                                    TblModuleManifestLog findByTaLogIdAndName = trustLog.findModuleLog(pcr, mInfo.get("ComponentName"));
                                     if (findByTaLogIdAndName == null) {
                                         TblModuleManifestLog event = new TblModuleManifestLog();
                                         event.setName(mInfo.get("ComponentName"));
                                         event.setTaLogId(pcr);
                                         event.setValue( found == null ? "" : found.getValue().toString() ); // we don't know from our report what the "actual" value is since we only logged that an expected value was missing... so maybe there's a module with the same name and wrong value in the host report, which we don't know here... see comment above,  this probably needs to change.
                                         event.setWhitelistValue(m.getValue().toString()); // since this is a additional module on the host, the white list would be null
-                                        moduleLogJpa.create(event);
+                                        trustLog.add(event);
                                     } else {
                                         if (findByTaLogIdAndName.getValue() == null || findByTaLogIdAndName.getValue().isEmpty())
                                             findByTaLogIdAndName.setValue(found == null ? "" : found.getValue().toString() );
                                         if (findByTaLogIdAndName.getWhitelistValue() == null || findByTaLogIdAndName.getWhitelistValue().isEmpty())
                                             findByTaLogIdAndName.setWhitelistValue(m.getValue().toString());
-                                        try {
-                                            moduleLogJpa.edit(findByTaLogIdAndName);
-                                        } catch (NonexistentEntityException | ASDataException ex) {
-                                            log.error("Exception while updating the module manifest log record.", ex);
-                                        }
                                     }
                                 }
                             }
@@ -1375,26 +1479,13 @@ public class HostTrustBO {
                             PcrEventLogContainsUnexpectedEntries unexpectedEntriesFault = (PcrEventLogContainsUnexpectedEntries)fault;
 
                             if (pcr != null) {
-                                if (pcr.getId() != null) {
-                                    log.debug("TaTblLog ID {} already exists.", pcr.getId());
-                                    pcr = talogJpa.findTblTaLog(pcr.getId());
-                                }
                                 pcr.setTrustStatus(false);
                                 if (pcr.getError() == null || pcr.getError().isEmpty())
                                     pcr.setError("Additional modules");
                                 else
                                     pcr.setError(pcr.getError() + " and " + "Additional modules");
-                                if (pcr.getId() == null) {
-                                    log.debug("TaTblLog ID does not exist. Creating a new one. {}-{}", pcr.getTrustStatus(), pcr.getError());
-                                    talogJpa.create(pcr);
-                                } else {
-                                    try {
-                                        log.debug("Editing the existing TaTblLog ID. {}-{}", pcr.getTrustStatus(), pcr.getError());
-                                        talogJpa.edit(pcr);
-                                    } catch (Exception ex) {
-                                        log.error("Error updating the status in the TaLog table.", ex);
-                                    }
-                                }
+                                log.debug("Adding TaTblLog to the trust log. {}-{}", pcr.getTrustStatus(), pcr.getError());
+                                trustLog.add(pcr);
                                 taLogMap.put(unexpectedEntriesFault.getPcrIndex() + type, pcr);
 
                                 List<Measurement> unexpectedEntries = unexpectedEntriesFault.getUnexpectedEntries();
@@ -1423,24 +1514,19 @@ public class HostTrustBO {
                                         }
                                     }
                                     // does the host have a module with the same name but different value? if so, we should log it in TblModuleManifestLog... but from here we don't have access to the HostReport.
-                                    TblModuleManifestLog findByTaLogIdAndName = moduleLogJpa.findByTaLogIdAndName(pcr, mInfo.get("ComponentName"));
+                                    TblModuleManifestLog findByTaLogIdAndName = trustLog.findModuleLog(pcr, mInfo.get("ComponentName"));
                                     if (findByTaLogIdAndName == null) {
                                         TblModuleManifestLog event = new TblModuleManifestLog();
                                         event.setName(mInfo.get("FullComponentName"));
                                         event.setTaLogId(pcr);
                                         event.setValue( found == null ? "" : found.getValue().toString() ); // we don't know from our report what the "actual" value is since we only logged that an expected value was missing... so maybe there's a module with the same name and wrong value in the host report, which we don't know here... see comment above,  this probably needs to change.
                                         event.setWhitelistValue(""); // since this is a additional module on the host, the white list would be null
-                                        moduleLogJpa.create(event);
+                                        trustLog.add(event);
                                     } else {
                                         if (findByTaLogIdAndName.getValue() == null || findByTaLogIdAndName.getValue().isEmpty())
                                             findByTaLogIdAndName.setValue(found == null ? "" : found.getValue().toString() );
                                         if (findByTaLogIdAndName.getWhitelistValue() == null || findByTaLogIdAndName.getWhitelistValue().isEmpty())
                                             findByTaLogIdAndName.setWhitelistValue("");
-                                        try {
-                                            moduleLogJpa.edit(findByTaLogIdAndName);
-                                        } catch (NonexistentEntityException | ASDataException ex) {
-                                            log.error("Exception while updating the module manifest log record.", ex);
-                                        }
                                     }
                                 }
                             }
@@ -1478,27 +1564,13 @@ public class HostTrustBO {
                             XmlMeasurementLogValueMismatchEntries mismatchEntriesFault = (XmlMeasurementLogValueMismatchEntries)fault;
 
                             if (pcr != null) {
-                                if (pcr.getId() != null) {
-                                    log.debug("TaTblLog ID {} already exists.", pcr.getId());
-                                    pcr = talogJpa.findTblTaLog(pcr.getId());
-                                }
                                 pcr.setTrustStatus(false); 
                                 if (pcr.getError()== null || pcr.getError().isEmpty())
                                     pcr.setError("Mismatch of tbootxm modules");
                                 else
                                     pcr.setError(pcr.getError() + " and " + " Mismatch of tbootxm modules");
-                                if (pcr.getId() == null) {
-                                    log.debug("TaTblLog ID does not exist. Creating a new one. {}-{}", pcr.getTrustStatus(), pcr.getError());
-                                    talogJpa.create(pcr);
-                                    log.debug("TaTblLog ID created - {}", pcr.getId());
-                                } else {                            
-                                    try {
-                                        log.debug("Editing the existing TaTblLog ID {} . {} - {}", pcr.getId(), pcr.getTrustStatus(), pcr.getError());
-                                        talogJpa.edit(pcr);
-                                    } catch (IllegalOrphanException | NonexistentEntityException | ASDataException ex) {
-                                        log.error("Error updating the status in the TaLog table.", ex);
-                                    }
-                                }
+                                log.debug("Adding TaTblLog to the trust log. {}-{}", pcr.getTrustStatus(), pcr.getError());
+                                trustLog.add(pcr);
                                 taLogMap.put(mismatchEntriesFault.getPcrIndex() + type, pcr);
 
                                 Set<Measurement> mismatchEntries = mismatchEntriesFault.getMismatchEntries();
@@ -1510,14 +1582,14 @@ public class HostTrustBO {
                                         throw new ASException(ErrorCode.AS_MISSING_PCR_MANIFEST);
                                     }
 
-                                    TblModuleManifestLog findByTaLogIdAndName = moduleLogJpa.findByTaLogIdAndName(pcr, m.getLabel());
+                                    TblModuleManifestLog findByTaLogIdAndName = trustLog.findModuleLog(pcr, m.getLabel());
                                     if (findByTaLogIdAndName == null) {
                                         TblModuleManifestLog event = new TblModuleManifestLog();
                                         event.setName("tbootxm-" + m.getLabel());
                                         event.setTaLogId(pcr);
                                         event.setValue(mInfo.get("Actual_Value"));
                                         event.setWhitelistValue(m.getValue().toString());
-                                        moduleLogJpa.create(event);
+                                        trustLog.add(event);
                                     } 
                                 }
                             }
@@ -1527,27 +1599,13 @@ public class HostTrustBO {
                             XmlMeasurementLogMissingExpectedEntries missingEntriesFault = (XmlMeasurementLogMissingExpectedEntries)fault;
 
                             if (pcr != null) {
-                                if (pcr.getId() != null) {
-                                    log.debug("TaTblLog ID {} already exists.", pcr.getId());
-                                    pcr = talogJpa.findTblTaLog(pcr.getId());
-                                }
                                 pcr.setTrustStatus(false); 
                                 if (pcr.getError()== null || pcr.getError().isEmpty())
                                     pcr.setError("Missing tbootxm modules");
                                 else
                                     pcr.setError(pcr.getError() + " and " + " Missing tbootxm modules");
-                                if (pcr.getId() == null) {
-                                    log.debug("TaTblLog ID does not exist. Creating a new one. {}-{}", pcr.getTrustStatus(), pcr.getError());
-                                    talogJpa.create(pcr);
-                                    log.debug("TaTblLog ID created - {}", pcr.getId());
-                                } else {                            
-                                    try {
-                                        log.debug("Editing the existing TaTblLog ID {} . {} - {}", pcr.getId(), pcr.getTrustStatus(), pcr.getError());
-                                        talogJpa.edit(pcr);
-                                    } catch (IllegalOrphanException | NonexistentEntityException | ASDataException ex) {
-                                        log.error("Error updating the status in the TaLog table.", ex);
-                                    }
-                                }
+                                log.debug("Adding TaTblLog to the trust log. {}-{}", pcr.getTrustStatus(), pcr.getError());
+                                trustLog.add(pcr);
                                 taLogMap.put(missingEntriesFault.getPcrIndex() + type, pcr);
 
                                 Set<Measurement> missingEntries = missingEntriesFault.getMissingEntries();
@@ -1558,14 +1616,14 @@ public class HostTrustBO {
                                         throw new ASException(ErrorCode.AS_MISSING_PCR_MANIFEST);
                                     }
 
-                                    TblModuleManifestLog findByTaLogIdAndName = moduleLogJpa.findByTaLogIdAndName(pcr, m.getLabel());
+                                    TblModuleManifestLog findByTaLogIdAndName = trustLog.findModuleLog(pcr, m.getLabel());
                                     if (findByTaLogIdAndName == null) {
                                         TblModuleManifestLog event = new TblModuleManifestLog();
                                         event.setName("tbootxm-" + m.getLabel());
                                         event.setTaLogId(pcr);
                                         event.setValue(""); // Since the module is missing, there is no current value.
                                         event.setWhitelistValue(m.getValue().toString());
-                                        moduleLogJpa.create(event);
+                                        trustLog.add(event);
                                     } 
                                 }
                             }
@@ -1575,27 +1633,13 @@ public class HostTrustBO {
                             XmlMeasurementLogContainsUnexpectedEntries unexpectedEntriesFault = (XmlMeasurementLogContainsUnexpectedEntries)fault;
 
                             if (pcr != null) {
-                                if (pcr.getId() != null) {
-                                    log.debug("TaTblLog ID {} already exists.", pcr.getId());
-                                    pcr = talogJpa.findTblTaLog(pcr.getId());
-                                }
                                 pcr.setTrustStatus(false); 
                                 if (pcr.getError()== null || pcr.getError().isEmpty())
                                     pcr.setError("Containing unexpected tbootxm modules");
                                 else
                                     pcr.setError(pcr.getError() + " and " + " Containing unexpected tbootxm modules");
-                                if (pcr.getId() == null) {
-                                    log.debug("TaTblLog ID does not exist. Creating a new one. {}-{}", pcr.getTrustStatus(), pcr.getError());
-                                    talogJpa.create(pcr);
-                                    log.debug("TaTblLog ID created - {}", pcr.getId());
-                                } else {                            
-                                    try {
-                                        log.debug("Editing the existing TaTblLog ID {} . {} - {}", pcr.getId(), pcr.getTrustStatus(), pcr.getError());
-                                        talogJpa.edit(pcr);
-                                    } catch (IllegalOrphanException | NonexistentEntityException | ASDataException ex) {
-                                        log.error("Error updating the status in the TaLog table.", ex);
-                                    }
-                                }
+                                log.debug("Adding TaTblLog to the trust log. {}-{}", pcr.getTrustStatus(), pcr.getError());
+                                trustLog.add(pcr);
                                 taLogMap.put(unexpectedEntriesFault.getPcrIndex() + type, pcr);
 
                                 List<Measurement> unexpectedEntries = unexpectedEntriesFault.getUnexpectedEntries();
@@ -1606,14 +1650,14 @@ public class HostTrustBO {
                                         throw new ASException(ErrorCode.AS_MISSING_PCR_MANIFEST);
                                     }
 
-                                    TblModuleManifestLog findByTaLogIdAndName = moduleLogJpa.findByTaLogIdAndName(pcr, m.getLabel());
+                                    TblModuleManifestLog findByTaLogIdAndName = trustLog.findModuleLog(pcr, m.getLabel());
                                     if (findByTaLogIdAndName == null) {
                                         TblModuleManifestLog event = new TblModuleManifestLog();
                                         event.setName("tbootxm-" + m.getLabel());
                                         event.setTaLogId(pcr);
                                         event.setValue(m.getValue().toString()); 
                                         event.setWhitelistValue(""); // Since this is an unexpected module, there will not be any whitelist associated.
-                                        moduleLogJpa.create(event);
+                                        trustLog.add(event);
                                     } 
                                 }
                             }
@@ -1624,18 +1668,18 @@ public class HostTrustBO {
             }
             // now create all those mw_ta_log records (one per pcr)
             for(TblTaLog pcr : taLogMap.values()) {
-                if( pcr.getId() == null ) {
+                if( !trustLog.contains(pcr) ) {
                     log.debug("Creating new entry for {}.", pcr.getManifestName());
-                    talogJpa.create(pcr);
+                    trustLog.add(pcr);
                 }
             }
-        } catch (IOException ex) {
+        } catch (RuntimeException ex) {
             log.error("Error during logging of the PCR trust status", ex);
-            throw new ASException(ErrorCode.SYSTEM_ERROR, ex.getClass().getSimpleName());
+            throw ex;
         }
     }
 
-    private TblHosts getHostByName(Hostname hostName) throws IOException { // datatype.Hostname
+    public TblHosts getHostByName(Hostname hostName) throws IOException { // datatype.Hostname
         if( hostBO == null ) { throw new IllegalStateException("Invalid server configuration"); }
         try {
             long t0 = System.currentTimeMillis();
@@ -1900,49 +1944,7 @@ public class HostTrustBO {
             
             logTrustReport(tblHosts, hostTrustReport); // Need to cache the attestation report ### v1 requirement to log to mw_ta_log
 
-            HostTrustStatus trust = new HostTrustStatus();
-            trust.bios = hostTrustReport.isTrustedForMarker(TrustMarker.BIOS.name());
-            trust.vmm = hostTrustReport.isTrustedForMarker(TrustMarker.VMM.name());
-            trust.asset_tag = hostTrustReport.isTrustedForMarker(TrustMarker.ASSET_TAG.name());
-
-            TxtHostRecord data = createTxtHostRecord(tblHosts);
-            TxtHost host = new TxtHost(data, trust);
-
-            TblSamlAssertion tblSamlAssertion = new TblSamlAssertion();
-            tblSamlAssertion.setHostId(tblHosts);
-            
-            
-            tblSamlAssertion.setAssertionUuid(hostAttestationUuid);
-            tblSamlAssertion.setBiosTrust(host.isBiosTrusted());
-            tblSamlAssertion.setVmmTrust(host.isVmmTrusted());
-
-            // We need to add the Asset tag related data only if the host is provisioned for it. This is done
-            // by verifying in the asset tag certificate table. 
-            X509AttributeCertificate tagCertificate; 
-            AssetTagCertBO atagCertBO = new AssetTagCertBO();
-            MwAssetTagCertificate atagCertForHost = atagCertBO.findValidAssetTagCertForHost(tblSamlAssertion.getHostId().getId());
-            if (atagCertForHost != null) {
-                log.debug("Host has been provisioned in the system with a TAG.");
-                tagCertificate = X509AttributeCertificate.valueOf(atagCertForHost.getCertificate());
-            } else {
-                log.debug("Host has not been provisioned in the system with a TAG.");
-                tagCertificate = null;
-            }
-
-            if (tblHosts.getBindingKeyCertificate() != null && !tblHosts.getBindingKeyCertificate().isEmpty()) {
-                log.debug("Host has binding certificate");
-                host.setBindingKeyCertificate(tblHosts.getBindingKeyCertificate());
-            }
-            
-            log.debug("Creating host assertion for: {}", host.getHostName());
-            SamlAssertion samlAssertion = getSamlGenerator().generateHostAssertion(host, tagCertificate, null);
-            log.debug("Expiry {}" , samlAssertion.expiry_ts.toString());
-
-            tblSamlAssertion.setSaml(samlAssertion.assertion);
-            tblSamlAssertion.setExpiryTs(samlAssertion.expiry_ts);
-            tblSamlAssertion.setCreatedTs(samlAssertion.created_ts);
-            
-            tblSamlAssertion.setTrustReport(mapper.writeValueAsString(hostTrustReport));
+            TblSamlAssertion tblSamlAssertion = createSamlAssertion(tblHosts, hostAttestationUuid, hostTrustReport);
                 
             My.jpa().mwSamlAssertion().create(tblSamlAssertion);
 
@@ -1965,11 +1967,67 @@ public class HostTrustBO {
             throw new ASException(ErrorCode.AS_HOST_TRUST_ERROR, ex.getClass().getSimpleName());
         }
     }
+    
+    /**
+     * Generates and signs the SAML assertion for a trust report. The
+     * returned record is not saved; the caller is responsible for storing it
+     * in mw_saml_assertion.
+     * 
+     * @param tblHosts
+     * @param hostAttestationUuid
+     * @param hostTrustReport
+     * @return 
+     */
+    public TblSamlAssertion createSamlAssertion(TblHosts tblHosts, String hostAttestationUuid, TrustReport hostTrustReport) throws IOException, GeneralSecurityException, ConfigurationException, MarshallingException, XMLSignatureException, MarshalException {
+        HostTrustStatus trust = new HostTrustStatus();
+        trust.bios = hostTrustReport.isTrustedForMarker(TrustMarker.BIOS.name());
+        trust.vmm = hostTrustReport.isTrustedForMarker(TrustMarker.VMM.name());
+        trust.asset_tag = hostTrustReport.isTrustedForMarker(TrustMarker.ASSET_TAG.name());
+
+        TxtHostRecord data = createTxtHostRecord(tblHosts);
+        TxtHost host = new TxtHost(data, trust);
+
+        TblSamlAssertion tblSamlAssertion = new TblSamlAssertion();
+        tblSamlAssertion.setHostId(tblHosts);
+        
+        
+        tblSamlAssertion.setAssertionUuid(hostAttestationUuid);
+        tblSamlAssertion.setBiosTrust(host.isBiosTrusted());
+        tblSamlAssertion.setVmmTrust(host.isVmmTrusted());
+
+        // We need to add the Asset tag related data only if the host is provisioned for it. This is done
+        // by verifying in the asset tag certificate table. 
+        X509AttributeCertificate tagCertificate; 
+        AssetTagCertBO atagCertBO = new AssetTagCertBO();
+        MwAssetTagCertificate atagCertForHost = atagCertBO.findValidAssetTagCertForHost(tblSamlAssertion.getHostId().getId());
+        if (atagCertForHost != null) {
+            log.debug("Host has been provisioned in the system with a TAG.");
+            tagCertificate = X509AttributeCertificate.valueOf(atagCertForHost.getCertificate());
+        } else {
+            log.debug("Host has not been provisioned in the system with a TAG.");
+            tagCertificate = null;
+        }
+
+        if (tblHosts.getBindingKeyCertificate() != null && !tblHosts.getBindingKeyCertificate().isEmpty()) {
+            log.debug("Host has binding certificate");
+            host.setBindingKeyCertificate(tblHosts.getBindingKeyCertificate());
+        }
+        
+        log.debug("Creating host assertion for: {}", host.getHostName());
+        SamlAssertion samlAssertion = getSamlGenerator().generateHostAssertion(host, tagCertificate, null);
+        log.debug("Expiry {}" , samlAssertion.expiry_ts.toString());
+
+        tblSamlAssertion.setSaml(samlAssertion.assertion);
+        tblSamlAssertion.setExpiryTs(samlAssertion.expiry_ts);
+        tblSamlAssertion.setCreatedTs(samlAssertion.created_ts);
+        
+        tblSamlAssertion.setTrustReport(mapper.writeValueAsString(hostTrustReport));
+        return tblSamlAssertion;
+    }
 
     private SamlGenerator getSamlGenerator() throws UnknownHostException, ConfigurationException, IOException, GeneralSecurityException {
 //        String issuer = conf.getString("saml.issuer", defaultIssuer);
-        SamlGenerator saml = new SamlGenerator(Attestation.getIssuerConfiguration());
-        return saml;
+        return Attestation.getSamlGenerator();
     }
     
     public String getTrustWithSamlByAik(Sha1Digest aik, boolean forceVerify) throws IOException {
@@ -2040,19 +2098,9 @@ public class HostTrustBO {
         tblHosts.setAddOnConnectionInfo(factory.getHostConnectionString());
         
         if(forceVerify != true){
-            //TblSamlAssertion tblSamlAssertion = new TblSamlAssertionJpaController((getEntityManagerFactory())).findByHostAndExpiry(hostId);
-            long t0 = System.currentTimeMillis();
-            TblSamlAssertion tblSamlAssertion = My.jpa().mwSamlAssertion().findByHostAndExpiry(tblHosts.getName()); //hostId);
-            long t1 = System.currentTimeMillis();
-            log.trace("performance: My.jpa().mwSamlAssertion().findByHostAndExpiry: {}ms", t1-t0);
-            if(tblSamlAssertion != null){
-                if(tblSamlAssertion.getErrorMessage() == null|| tblSamlAssertion.getErrorMessage().isEmpty()) {
-                    log.debug("Found assertion in cache. Expiry time : " + tblSamlAssertion.getExpiryTs());
-                    return buildHostAttestation(tblHosts, tblSamlAssertion);
-                } else {
-                    log.debug("Found assertion in cache with error set, returning that.");
-                   throw new ASException(new Exception("("+ tblSamlAssertion.getErrorCode() + ") " + tblSamlAssertion.getErrorMessage() + " (cached on " + tblSamlAssertion.getCreatedTs().toString()  +")"));
-                }
+            HostAttestation cached = getCachedHostAttestation(tblHosts);
+            if( cached != null ) {
+                return cached;
             }
         }
         
@@ -2063,47 +2111,7 @@ public class HostTrustBO {
                 return getTrustWithSaml(tblHosts, hostId, hostAttestationUuid, challenge); // issue #4978 use specified nonce, if available
         }catch(Exception e) {
             log.error("Cannot obtain host trust, getTrustWithSaml failed", e);
-            TblSamlAssertion tblSamlAssertion = new TblSamlAssertion();
-            tblSamlAssertion.setAssertionUuid(hostAttestationUuid);
-            tblSamlAssertion.setHostId(tblHosts);
-            //TxtHost hostTxt = getHostWithTrust(new Hostname(host),tblSamlAssertion); 
-            //TxtHostRecord tmp = new TxtHostRecord();
-            //tmp.HostName = host;
-            //tmp.IPAddress = host;
-            //TxtHost hostTxt = new TxtHost(tmp);
-            
-            tblSamlAssertion.setBiosTrust(false);
-            tblSamlAssertion.setVmmTrust(false);
-            
-            try {
-                tblSamlAssertion.setSaml("");
-                int cacheTimeout=ASConfig.getConfiguration().getInt("saml.validity.seconds",3600);
-                tblSamlAssertion.setCreatedTs(Calendar.getInstance().getTime());
-                Calendar cal = Calendar.getInstance();
-                cal.add(Calendar.SECOND, cacheTimeout);
-                tblSamlAssertion.setExpiryTs(cal.getTime());
-                if(e instanceof ASException){
-                    ASException ase = (ASException) e;
-                    log.debug("e is an instance of ASExpection: " +String.valueOf(ase.getErrorCode()));
-                    tblSamlAssertion.setErrorCode(String.valueOf(ase.getErrorCode()));
-                }else{
-                    log.debug("e is NOT an instance of ASExpection: " +String.valueOf(ErrorCode.AS_HOST_TRUST_ERROR.getErrorCode()));
-                    tblSamlAssertion.setErrorCode(String.valueOf(ErrorCode.AS_HOST_TRUST_ERROR.getErrorCode()));
-                }
-                // tblSamlAssertion.setErrorMessage(e.getMessage());
-                // Bug fix for 1038
-                tblSamlAssertion.setErrorMessage(e.getClass().getSimpleName());
-                My.jpa().mwSamlAssertion().create(tblSamlAssertion);
-            }catch(Exception ex){
-                //log.debug("getTrustwithSaml caugh exception while generating error saml assertion");
-                log.error("getTrustwithSaml caugh exception while generating error saml assertion", ex);
-                // String msg = ex.getMessage();
-                String msg = ex.getClass().getSimpleName();
-                // log.debug(msg);
-                // throw new ASException(new Exception("getTrustWithSaml " + msg));
-                throw new ASException(ex, ErrorCode.AS_HOST_TRUST_ERROR, msg);
-                //throw new ASException(new Exception("Host Manifest is missing required PCRs."));
-            } 
+            saveErrorSamlAssertion(tblHosts, hostAttestationUuid, e);
             //Daniel, change the messages into meaningful thiings here
             //log.debug("e.getMessage = "+e.getMessage());
             //throw new ASException(new Exception(e.getMessage()));
@@ -2113,6 +2121,83 @@ public class HostTrustBO {
         }
     }
     
+    /**
+     * Looks for an unexpired SAML assertion for the host in mw_saml_assertion.
+     * 
+     * @param tblHosts
+     * @return the cached attestation, or null if there is none
+     * @throws ASException if the cached assertion records an attestation error
+     */
+    public HostAttestation getCachedHostAttestation(TblHosts tblHosts) throws IOException {
+        //TblSamlAssertion tblSamlAssertion = new TblSamlAssertionJpaController((getEntityManagerFactory())).findByHostAndExpiry(hostId);
+        long t0 = System.currentTimeMillis();
+        TblSamlAssertion tblSamlAssertion = My.jpa().mwSamlAssertion().findByHostAndExpiry(tblHosts.getName()); //hostId);
+        long t1 = System.currentTimeMillis();
+        log.trace("performance: My.jpa().mwSamlAssertion().findByHostAndExpiry: {}ms", t1-t0);
+        if(tblSamlAssertion != null){
+            if(tblSamlAssertion.getErrorMessage() == null|| tblSamlAssertion.getErrorMessage().isEmpty()) {
+                log.debug("Found assertion in cache. Expiry time : " + tblSamlAssertion.getExpiryTs());
+                return buildHostAttestation(tblHosts, tblSamlAssertion);
+            } else {
+                log.debug("Found assertion in cache with error set, returning that.");
+               throw new ASException(new Exception("("+ tblSamlAssertion.getErrorCode() + ") " + tblSamlAssertion.getErrorMessage() + " (cached on " + tblSamlAssertion.getCreatedTs().toString()  +")"));
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Stores an assertion with the error set so that subsequent requests
+     * for the host return the cached error until it expires.
+     * 
+     * @param tblHosts
+     * @param hostAttestationUuid
+     * @param e the reason the attestation failed
+     */
+    public void saveErrorSamlAssertion(TblHosts tblHosts, String hostAttestationUuid, Exception e) {
+        TblSamlAssertion tblSamlAssertion = new TblSamlAssertion();
+        tblSamlAssertion.setAssertionUuid(hostAttestationUuid);
+        tblSamlAssertion.setHostId(tblHosts);
+        //TxtHost hostTxt = getHostWithTrust(new Hostname(host),tblSamlAssertion); 
+        //TxtHostRecord tmp = new TxtHostRecord();
+        //tmp.HostName = host;
+        //tmp.IPAddress = host;
+        //TxtHost hostTxt = new TxtHost(tmp);
+        
+        tblSamlAssertion.setBiosTrust(false);
+        tblSamlAssertion.setVmmTrust(false);
+        
+        try {
+            tblSamlAssertion.setSaml("");
+            int cacheTimeout=ASConfig.getConfiguration().getInt("saml.validity.seconds",3600);
+            tblSamlAssertion.setCreatedTs(Calendar.getInstance().getTime());
+            Calendar cal = Calendar.getInstance();
+            cal.add(Calendar.SECOND, cacheTimeout);
+            tblSamlAssertion.setExpiryTs(cal.getTime());
+            if(e instanceof ASException){
+                ASException ase = (ASException) e;
+                log.debug("e is an instance of ASExpection: " +String.valueOf(ase.getErrorCode()));
+                tblSamlAssertion.setErrorCode(String.valueOf(ase.getErrorCode()));
+            }else{
+                log.debug("e is NOT an instance of ASExpection: " +String.valueOf(ErrorCode.AS_HOST_TRUST_ERROR.getErrorCode()));
+                tblSamlAssertion.setErrorCode(String.valueOf(ErrorCode.AS_HOST_TRUST_ERROR.getErrorCode()));
+            }
+            // tblSamlAssertion.setErrorMessage(e.getMessage());
+            // Bug fix for 1038
+            tblSamlAssertion.setErrorMessage(e.getClass().getSimpleName());
+            My.jpa().mwSamlAssertion().create(tblSamlAssertion);
+        }catch(Exception ex){
+            //log.debug("getTrustwithSaml caugh exception while generating error saml assertion");
+            log.error("getTrustwithSaml caugh exception while generating error saml assertion", ex);
+            // String msg = ex.getMessage();
+            String msg = ex.getClass().getSimpleName();
+            // log.debug(msg);
+            // throw new ASException(new Exception("getTrustWithSaml " + msg));
+            throw new ASException(ex, ErrorCode.AS_HOST_TRUST_ERROR, msg);
+            //throw new ASException(new Exception("Host Manifest is missing required PCRs."));
+        } 
+    }
+    
     public HostAttestation buildHostAttestation(TblHosts tblHosts, TblSamlAssertion tblSamlAssertion) throws IOException {
         HostAttestation hostAttestation = new HostAttestation();
         hostAttestation.setAikSha1(tblHosts.getAikSha1());
@@ -2140,14 +2225,14 @@ public class HostTrustBO {
         try {
             
             if(forceVerify != true){
+                HostTrust cachedHostTrust = getCachedHostTrust(host);
+                if( cachedHostTrust != null ) {
+                    return cachedHostTrust;
+                }
                 TblHosts tblHosts = getHostByName(new Hostname(host));
                 if(tblHosts != null){
-                    TblTaLog tblTaLog = My.jpa().mwTaLog().getHostTALogEntryBefore(tblHosts.getId() , getCacheStaleAfter() );
-
-                    // Bug 849: We need to ensure that we add the host name to the response as well. Otherwise it will just contain BIOS and VMM status.
-                    if(tblTaLog != null) {
-                        HostTrust hostTrust = getHostTrustObj(tblTaLog);
-                        hostTrust.setIpAddress(host);
+                    HostTrust hostTrust = getCachedHostTrust(tblHosts, host);
+                    if(hostTrust != null) {
                         return hostTrust;
                     }
                 }else{
@@ -2160,13 +2245,7 @@ public class HostTrustBO {
            log.debug("Getting trust and saml assertion from host.");
         
            HostTrustStatus status = getTrustStatus(new Hostname(host), challenge);
-           
-           HostTrust hostTrust = new HostTrust(ErrorCode.OK,"OK");
-           hostTrust.setBiosStatus((status.bios)?1:0);
-           hostTrust.setVmmStatus((status.vmm)?1:0);
-           hostTrust.setIpAddress(host);
-           log.debug("JSONTrust is : ", host + ":" + Boolean.toString(status.bios) + ":" + Boolean.toString(status.vmm));
-           return hostTrust;
+           return toHostTrust(host, status);
             
         } catch (ASException e) {
             log.error("Error while getting trust for host " + host,e );
@@ -2182,17 +2261,82 @@ public class HostTrustBO {
 
     }
     
+    public HostTrust toHostTrust(String host, HostTrustStatus status) {
+        HostTrust hostTrust = new HostTrust(ErrorCode.OK,"OK");
+        hostTrust.setBiosStatus((status.bios)?1:0);
+        hostTrust.setVmmStatus((status.vmm)?1:0);
+        hostTrust.setIpAddress(host);
+        log.debug("JSONTrust is : ", host + ":" + Boolean.toString(status.bios) + ":" + Boolean.toString(status.vmm));
+        return hostTrust;
+    }
+    
+    /**
+     * Looks for a trust status for the host in the in-memory cache only.
+     * 
+     * @param host the hostname
+     * @return the cached trust status, or null if there is none
+     */
+    public HostTrust getCachedHostTrust(String host) {
+        HostTrustCache cache = HostTrustCache.getInstance();
+        if( cache == null ) {
+            return null;
+        }
+        HostTrustCache.Entry entry = cache.getByName(host);
+        if( entry == null ) {
+            return null;
+        }
+        HostTrustStatus status = entry.getStatus();
+        HostTrust hostTrust = new HostTrust(ErrorCode.OK,"");
+        hostTrust.setBiosStatus((status.bios)?1:0);
+        hostTrust.setVmmStatus((status.vmm)?1:0);
+        hostTrust.setIpAddress(host);
+        return hostTrust;
+    }
+    
+    /**
+     * Looks for a trust status for the host in the in-memory cache, and then
+     * in mw_ta_log for an entry that is newer than the SAML validity period.
+     * 
+     * @param tblHosts
+     * @param host the hostname to include in the response
+     * @return the cached trust status, or null if there is none
+     */
+    public HostTrust getCachedHostTrust(TblHosts tblHosts, String host) {
+        HostTrust cachedHostTrust = getCachedHostTrust(host);
+        if( cachedHostTrust != null ) {
+            return cachedHostTrust;
+        }
+        TblTaLog tblTaLog = My.jpa().mwTaLog().getHostTALogEntryBefore(tblHosts.getId() , getCacheStaleAfter() );
+
+        // Bug 849: We need to ensure that we add the host name to the response as well. Otherwise it will just contain BIOS and VMM status.
+        if(tblTaLog != null) {
+            cacheTrustStatus(tblHosts, tblTaLog);
+            HostTrust hostTrust = getHostTrustObj(tblTaLog);
+            hostTrust.setIpAddress(host);
+            return hostTrust;
+        }
+        return null;
+    }
+    
     public HostTrustStatus getTrustStatusWithCache(String host, Boolean forceVerify) throws ASException {
         log.debug("getTrustStatusWithCache: Getting trust for host: " + host + " Force verify flag: " + forceVerify);
         
         try {
             if(forceVerify != true){
+                HostTrustCache cache = HostTrustCache.getInstance();
+                if( cache != null ) {
+                    HostTrustCache.Entry entry = cache.getByName(host);
+                    if( entry != null ) {
+                        return entry.getStatus();
+                    }
+                }
                 TblHosts tblHosts = getHostByName(new Hostname(host));
                 if(tblHosts != null){
                     TblTaLog tblTaLog = My.jpa().mwTaLog().getHostTALogEntryBefore(tblHosts.getId() , getCacheStaleAfter() );
 
                     // Bug 849: We need to ensure that we add the host name to the response as well. Otherwise it will just contain BIOS and VMM status.
                     if(tblTaLog != null) {
+                        cacheTrustStatus(tblHosts, tblTaLog);
                         HostTrustStatus hts = getHostTrustStatusObj(tblTaLog);
                         return hts;
                     }
@@ -2219,6 +2363,22 @@ public class HostTrustBO {
     private Date getCacheStaleAfter(){
         return new DateTime().minusSeconds(Attestation.getIssuerConfiguration().getValiditySeconds()).toDate();
     }
+    
+    /**
+     * 
+     * @param updatedOn when the trust status was recorded
+     * @return the time when the trust status becomes stale, in milliseconds
+     */
+    private long getCacheExpiry(Date updatedOn) {
+        return updatedOn.getTime() + Attestation.getIssuerConfiguration().getValiditySeconds() * 1000L;
+    }
+    
+    private void cacheTrustStatus(TblHosts tblHosts, TblTaLog tblTaLog) {
+        HostTrustCache cache = HostTrustCache.getInstance();
+        if( cache != null && tblTaLog.getUpdatedOn() != null ) {
+            cache.put(tblHosts, getHostTrustStatusObj(tblTaLog), getCacheExpiry(tblTaLog.getUpdatedOn()));
+        }
+    }
     private HostTrust getHostTrustObj(TblTaLog tblTaLog) {
         HostTrust hostTrust = new HostTrust(ErrorCode.OK,"");
         
@@ -2362,7 +2522,7 @@ public class HostTrustBO {
                         tblHosts.setBiosMleId(biosMLE);
 
                         Policy trustPolicy = hostTrustPolicyFactory.loadTrustPolicyForMLEVerification(tblHosts, tblHosts.getName()); 
-                        PolicyEngine policyEngine = new PolicyEngine();
+                        PolicyEngine policyEngine = createPolicyEngine(true);
                         TrustReport trustReport = policyEngine.apply(hostReport, trustPolicy);
 
                         if (trustReport != null && trustReport.isTrustedForMarker(TrustMarker.BIOS.name())) {
@@ -2445,7 +2605,7 @@ public class HostTrustBO {
                         tblHosts.setVmmMleId(vmmMLE);
 
                         Policy trustPolicy = hostTrustPolicyFactory.loadTrustPolicyForMLEVerification(tblHosts, tblHosts.getName()); 
-                        PolicyEngine policyEngine = new PolicyEngine();
+                        PolicyEngine policyEngine = createPolicyEngine(true);
                         TrustReport trustReport = policyEngine.apply(hostReport, trustPolicy);
 
 
@@ -0,0 +1,277 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.business.trust;
+
+import com.intel.mtwilson.My;
+import com.intel.mtwilson.as.data.TblHosts;
+import com.intel.mtwilson.datatypes.HostTrustStatus;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the latest trust status of each host in memory so that
+ * getTrustWithCache and getTrustStatusWithCache do not need to look up the
+ * host record and the latest mw_ta_log entry for every request.
+ *
+ * Entries can be found by host name or by AIK public key SHA1, which is the
+ * fingerprint used by the aik-{aik} resources, and expire at the same time the mw_ta_log entry they were loaded from would be
+ * considered stale (the SAML validity period). HostTrustBO refreshes the
+ * entry whenever it records a new trust status, and HostBO invalidates it
+ * when the host is updated or deleted.
+ *
+ * Configuration:
+ * mtwilson.trust.cache.enabled (default true)
+ * mtwilson.trust.cache.max (default 10000 hosts)
+ */
+public class HostTrustCache {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(HostTrustCache.class);
+    private final int maxEntries;
+    private final int evictionBatchSize;
+    private final ConcurrentHashMap<Integer, Entry> byHostId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Entry> byName = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Entry> byAik = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+
+    public HostTrustCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.evictionBatchSize = Math.max(1, maxEntries / 10);
+    }
+
+    /**
+     *
+     * @return the shared cache, or null if mtwilson.trust.cache.enabled is false
+     */
+    public static HostTrustCache getInstance() {
+        return HostTrustCacheHolder.instance;
+    }
+
+    /**
+     * A host's cached trust status and the keys it was stored under.
+     * Entries are immutable; a refresh replaces the entry.
+     */
+    public static class Entry {
+        private final Integer hostId;
+        private final String name;
+        private final String aikPublicKeySha1;
+        private final HostTrustStatus status;
+        private final long expiresAt;
+
+        private Entry(TblHosts host, HostTrustStatus status, long expiresAt) {
+            this.hostId = host.getId();
+            this.name = host.getName();
+            this.aikPublicKeySha1 = host.getAikPublicKeySha1();
+            this.status = new HostTrustStatus(status);
+            this.expiresAt = expiresAt;
+        }
+
+        public Integer getHostId() {
+            return hostId;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         *
+         * @return a copy of the cached status
+         */
+        public HostTrustStatus getStatus() {
+            return new HostTrustStatus(status);
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    public Entry getByName(String name) {
+        return get(byName, name);
+    }
+
+    public Entry getByAik(String aikPublicKeySha1) {
+        return get(byAik, aikPublicKeySha1);
+    }
+
+    private Entry get(Map<String, Entry> index, String key) {
+        if (key == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        Entry entry = index.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            if (remove(entry)) {
+                evictions.incrementAndGet();
+            }
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry;
+    }
+
+    /**
+     * Stores the trust status of the host, replacing any previous entry for
+     * the same host unless that entry expires later. The expiry is computed
+     * from the time the status was recorded, so a status loaded from an
+     * older mw_ta_log entry does not replace the status of a more recent
+     * attestation.
+     *
+     * @param host must have an id
+     * @param status
+     * @param expiresAt time in milliseconds after which the entry is no longer returned
+     */
+    public void put(TblHosts host, HostTrustStatus status, long expiresAt) {
+        if (host == null || host.getId() == null) {
+            return;
+        }
+        if (expiresAt <= System.currentTimeMillis()) {
+            return;
+        }
+        Entry entry = new Entry(host, status, expiresAt);
+        while (true) {
+            Entry previous = byHostId.putIfAbsent(entry.hostId, entry);
+            if (previous == null) {
+                break;
+            }
+            if (previous.expiresAt > expiresAt) {
+                log.debug("Not replacing the more recent cached trust status for host {}", entry.name);
+                return;
+            }
+            if (byHostId.replace(entry.hostId, previous, entry)) {
+                removeKeys(previous);
+                break;
+            }
+        }
+        if (entry.name != null) {
+            byName.put(entry.name, entry);
+        }
+        if (entry.aikPublicKeySha1 != null) {
+            byAik.put(entry.aikPublicKeySha1, entry);
+        }
+        if (byHostId.size() > maxEntries) {
+            evict();
+        }
+    }
+
+    /**
+     * Removes the entry for the host. Must be called when the host record
+     * changes or is deleted.
+     *
+     * @param hostId
+     */
+    public void invalidate(Integer hostId) {
+        if (hostId == null) {
+            return;
+        }
+        Entry entry = byHostId.remove(hostId);
+        if (entry != null) {
+            removeKeys(entry);
+            log.debug("Invalidated cached trust status for host {}", entry.name);
+        }
+    }
+
+    public void invalidateAll() {
+        byHostId.clear();
+        byName.clear();
+        byAik.clear();
+    }
+
+    private boolean remove(Entry entry) {
+        if (byHostId.remove(entry.hostId, entry)) {
+            removeKeys(entry);
+            return true;
+        }
+        return false;
+    }
+
+    private void removeKeys(Entry entry) {
+        if (entry.name != null) {
+            byName.remove(entry.name, entry);
+        }
+        if (entry.aikPublicKeySha1 != null) {
+            byAik.remove(entry.aikPublicKeySha1, entry);
+        }
+    }
+
+    /**
+     * Removes expired entries, and if the cache is still over its limit,
+     * removes entries in no particular order until it is a tenth under the
+     * limit. Each eviction scans all entries, so evicting a batch at once
+     * means a full cache is scanned once every maxEntries/10 new hosts
+     * instead of on every put. Only one thread evicts at a time; the others
+     * do not wait for it.
+     */
+    private void evict() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
+            for (Entry entry : byHostId.values()) {
+                if (entry.isExpired(now) && remove(entry)) {
+                    evictions.incrementAndGet();
+                }
+            }
+            Iterator<Entry> it = byHostId.values().iterator();
+            while (byHostId.size() > maxEntries - evictionBatchSize && it.hasNext()) {
+                if (remove(it.next())) {
+                    evictions.incrementAndGet();
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    public int size() {
+        return byHostId.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("HostTrustCache[size=%d, hits=%d, misses=%d, evictions=%d]", size(), getHitCount(), getMissCount(), getEvictionCount());
+    }
+
+    private static class HostTrustCacheHolder {
+        private static final HostTrustCache instance = createInstance();
+
+        private static HostTrustCache createInstance() {
+            if (!My.configuration().getConfiguration().getBoolean("mtwilson.trust.cache.enabled", true)) {
+                log.info("Host trust cache is disabled");
+                return null;
+            }
+            int max = My.configuration().getConfiguration().getInt("mtwilson.trust.cache.max", 10000);
+            log.debug("Creating host trust cache with max entries {}", max);
+            return new HostTrustCache(max);
+        }
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.business.trust;
+
+import com.intel.mtwilson.My;
+import com.intel.mtwilson.as.data.TblHosts;
+import com.intel.mtwilson.datatypes.HostTrustStatus;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the most recent changes of host trust status in memory so that
+ * dashboards and orchestrators can be notified of changes instead of
+ * polling the trust status of every host.
+ *
+ * An event is recorded when an attestation finds a BIOS, VMM, asset tag or
+ * overall status different from the previous attestation of the host on
+ * this server. The first attestation of each host after the server starts
+ * is always recorded. Events are numbered with increasing sequence numbers
+ * that start from the server start time in microseconds, so a sequence
+ * number from before a restart is older than all current events.
+ *
+ * Consumers read the events after the last sequence number they have seen,
+ * and may register a listener to be called when new events are recorded.
+ * Listeners are called on a single dispatcher thread, not on the thread
+ * that attested the host, so they must return quickly and hand off any
+ * blocking work such as writing a response. Reading events does not access
+ * the database.
+ *
+ * Only attestations done by this server are recorded.
+ *
+ * Configuration:
+ * mtwilson.trust.events.enabled (default true)
+ * mtwilson.trust.events.max (default 10000 events)
+ */
+public class TrustChangeEventLog {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(TrustChangeEventLog.class);
+    private final int maxEvents;
+    private final AtomicLong sequence = new AtomicLong(System.currentTimeMillis() * 1000L);
+    private final ArrayDeque<Event> events = new ArrayDeque<>();
+    private final ConcurrentHashMap<Integer, String> lastStatus = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Listener> listeners = new ConcurrentLinkedQueue<>();
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "trust-change-event-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    public TrustChangeEventLog(int maxEvents) {
+        this.maxEvents = maxEvents;
+    }
+
+    /**
+     *
+     * @return the shared event log, or null if mtwilson.trust.events.enabled is false
+     */
+    public static TrustChangeEventLog getInstance() {
+        return TrustChangeEventLogHolder.instance;
+    }
+
+    /**
+     * A change of a host's trust status.
+     */
+    public static class Event {
+        private final long sequence;
+        private final String hostUuid;
+        private final String hostName;
+        private final boolean trusted;
+        private final boolean biosTrusted;
+        private final boolean vmmTrusted;
+        private final boolean assetTagTrusted;
+        private final Date verifiedOn;
+
+        private Event(long sequence, TblHosts host, HostTrustStatus status, Date verifiedOn) {
+            this.sequence = sequence;
+            this.hostUuid = host.getUuid_hex();
+            this.hostName = host.getName();
+            this.trusted = status.bios && status.vmm;
+            this.biosTrusted = status.bios;
+            this.vmmTrusted = status.vmm;
+            this.assetTagTrusted = status.asset_tag;
+            this.verifiedOn = verifiedOn;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public String getHostUuid() {
+            return hostUuid;
+        }
+
+        public String getHostName() {
+            return hostName;
+        }
+
+        public boolean isTrusted() {
+            return trusted;
+        }
+
+        public boolean isBiosTrusted() {
+            return biosTrusted;
+        }
+
+        public boolean isVmmTrusted() {
+            return vmmTrusted;
+        }
+
+        public boolean isAssetTagTrusted() {
+            return assetTagTrusted;
+        }
+
+        public Date getVerifiedOn() {
+            return verifiedOn;
+        }
+    }
+
+    /**
+     * Selects the events a consumer is interested in. Empty sets and a null
+     * trusted status match all events.
+     */
+    public static class Filter {
+        private final Set<String> hostUuids;
+        private final Set<String> hostNames;
+        private final Boolean trusted;
+
+        public Filter(Set<String> hostUuids, Set<String> hostNames, Boolean trusted) {
+            this.hostUuids = hostUuids == null ? Collections.<String>emptySet() : hostUuids;
+            this.hostNames = hostNames == null ? Collections.<String>emptySet() : hostNames;
+            this.trusted = trusted;
+        }
+
+        public boolean matches(Event event) {
+            if (!hostUuids.isEmpty() && (event.hostUuid == null || !hostUuids.contains(event.hostUuid.toLowerCase()))) {
+                return false;
+            }
+            if (!hostNames.isEmpty() && !hostNames.contains(event.hostName)) {
+                return false;
+            }
+            return trusted == null || trusted == event.trusted;
+        }
+    }
+
+    public static class Page {
+        private final List<Event> events;
+        private final long next;
+        private final boolean missed;
+
+        private Page(List<Event> events, long next, boolean missed) {
+            this.events = events;
+            this.next = next;
+            this.missed = missed;
+        }
+
+        /**
+         *
+         * @return matching events in order of sequence number
+         */
+        public List<Event> getEvents() {
+            return events;
+        }
+
+        /**
+         *
+         * @return the sequence number to read the following events after
+         */
+        public long getNext() {
+            return next;
+        }
+
+        /**
+         *
+         * @return true if some events after the requested sequence number were already removed from the log
+         */
+        public boolean isMissed() {
+            return missed;
+        }
+    }
+
+    public static interface Listener {
+        /**
+         * Called on the dispatcher thread after an event is recorded. Must
+         * not block, because the other listeners are called after it.
+         *
+         * @param event
+         * @return true to remove the listener
+         */
+        boolean onEvent(Event event);
+    }
+
+    /**
+     * Records an event if the trust status differs from the last status
+     * recorded for the host.
+     *
+     * @param host
+     * @param status
+     * @param verifiedOn
+     * @return the event, or null if the status did not change
+     */
+    public Event record(TblHosts host, HostTrustStatus status, Date verifiedOn) {
+        String statusText = String.format("%b,%b,%b", status.bios, status.vmm, status.asset_tag);
+        String previous = lastStatus.put(host.getId(), statusText);
+        if (statusText.equals(previous)) {
+            return null;
+        }
+        final Event event;
+        synchronized (events) {
+            event = new Event(sequence.incrementAndGet(), host, status, verifiedOn);
+            events.addLast(event);
+            while (events.size() > maxEvents) {
+                events.removeFirst();
+            }
+        }
+        log.debug("Host {} trust status changed from {} to {}", host.getName(), previous, statusText);
+        if (!listeners.isEmpty()) {
+            try {
+                dispatcher.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        dispatch(event);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                log.warn("Cannot notify trust change event listeners: {}", e.getMessage());
+            }
+        }
+        return event;
+    }
+
+    private void dispatch(Event event) {
+        Iterator<Listener> it = listeners.iterator();
+        while (it.hasNext()) {
+            Listener listener = it.next();
+            try {
+                if (listener.onEvent(event)) {
+                    it.remove();
+                }
+            } catch (RuntimeException e) {
+                log.warn("Trust change event listener failed: {}", e.getMessage());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Forgets the last status of a deleted host so that a host registered
+     * again with the same id is reported.
+     *
+     * @param hostId
+     */
+    public void remove(Integer hostId) {
+        lastStatus.remove(hostId);
+    }
+
+    /**
+     *
+     * @return the sequence number of the latest event
+     */
+    public long getSequence() {
+        return sequence.get();
+    }
+
+    /**
+     *
+     * @param after sequence number of the last event seen by the consumer
+     * @param filter
+     * @param max maximum number of events to return
+     * @return the matching events after the sequence number
+     */
+    public Page getEventsAfter(long after, Filter filter, int max) {
+        ArrayList<Event> result = new ArrayList<>();
+        long next = after;
+        boolean missed;
+        synchronized (events) {
+            Event first = events.peekFirst();
+            missed = first != null && first.sequence > after + 1;
+            if (first == null && after < sequence.get()) {
+                missed = true;
+            }
+            Iterator<Event> it = events.descendingIterator();
+            // events are in order of sequence number; find the first event after the sequence number from the end
+            ArrayDeque<Event> newer = new ArrayDeque<>();
+            while (it.hasNext()) {
+                Event event = it.next();
+                if (event.sequence <= after) {
+                    break;
+                }
+                newer.addFirst(event);
+            }
+            if (missed && newer.isEmpty()) {
+                // the consumer continues after the latest event
+                next = sequence.get();
+            }
+            for (Event event : newer) {
+                next = event.sequence;
+                if (filter.matches(event)) {
+                    result.add(event);
+                    if (result.size() >= max) {
+                        break;
+                    }
+                }
+            }
+        }
+        return new Page(result, next, missed);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public int size() {
+        synchronized (events) {
+            return events.size();
+        }
+    }
+
+    public int getListenerCount() {
+        return listeners.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TrustChangeEventLog[size=%d, sequence=%d, listeners=%d]", size(), getSequence(), getListenerCount());
+    }
+
+    private static class TrustChangeEventLogHolder {
+        private static final TrustChangeEventLog instance = createInstance();
+
+        private static TrustChangeEventLog createInstance() {
+            if (!My.configuration().getConfiguration().getBoolean("mtwilson.trust.events.enabled", true)) {
+                log.info("Trust change event log is disabled");
+                return null;
+            }
+            int max = My.configuration().getConfiguration().getInt("mtwilson.trust.events.max", 10000);
+            log.debug("Creating trust change event log with max events {}", max);
+            return new TrustChangeEventLog(max);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.business.trust;
+
+import com.intel.mtwilson.as.data.TblModuleManifestLog;
+import com.intel.mtwilson.as.data.TblTaLog;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The mw_ta_log and mw_module_manifest_log records of one attestation,
+ * collected in memory so they can be inserted together by the
+ * TrustLogWriter.
+ *
+ * Records are compared by identity because new TblTaLog records do not have
+ * an id yet and TblTaLog.equals considers all of them equal.
+ */
+public class TrustLog {
+    private final ArrayList<TblTaLog> taLogs = new ArrayList<>();
+    private final Set<TblTaLog> taLogSet = Collections.newSetFromMap(new IdentityHashMap<TblTaLog, Boolean>());
+    private final ArrayList<TblModuleManifestLog> moduleLogs = new ArrayList<>();
+    private final IdentityHashMap<TblTaLog, Map<String, TblModuleManifestLog>> moduleLogsByTaLog = new IdentityHashMap<>();
+    private final long created = System.currentTimeMillis();
+
+    /**
+     * Adds the record if it was not already added. The record may still be
+     * changed after it is added, until the trust log is written.
+     *
+     * @param taLog
+     */
+    public void add(TblTaLog taLog) {
+        if (taLogSet.add(taLog)) {
+            taLogs.add(taLog);
+        }
+    }
+
+    public boolean contains(TblTaLog taLog) {
+        return taLogSet.contains(taLog);
+    }
+
+    /**
+     * Adds the module manifest log record. Its trust log record is added too
+     * if it was not already added, so it is inserted first. The trust log
+     * record and name must be set before the record is added because the
+     * record is indexed by them for findModuleLog.
+     *
+     * @param moduleLog
+     */
+    public void add(TblModuleManifestLog moduleLog) {
+        add(moduleLog.getTaLogId());
+        moduleLogs.add(moduleLog);
+        if (moduleLog.getName() != null) {
+            Map<String, TblModuleManifestLog> byName = moduleLogsByTaLog.get(moduleLog.getTaLogId());
+            if (byName == null) {
+                byName = new HashMap<>();
+                moduleLogsByTaLog.put(moduleLog.getTaLogId(), byName);
+            }
+            if (!byName.containsKey(moduleLog.getName())) {
+                byName.put(moduleLog.getName(), moduleLog);
+            }
+        }
+    }
+
+    /**
+     * Same as TblModuleManifestLogJpaController.findByTaLogIdAndName for the
+     * records in this trust log.
+     *
+     * @param taLog
+     * @param name
+     * @return the module manifest log record with the given trust log record and name, or null
+     */
+    public TblModuleManifestLog findModuleLog(TblTaLog taLog, String name) {
+        Map<String, TblModuleManifestLog> byName = moduleLogsByTaLog.get(taLog);
+        if (byName == null || name == null) {
+            return null;
+        }
+        return byName.get(name);
+    }
+
+    public List<TblTaLog> getTaLogs() {
+        return taLogs;
+    }
+
+    public List<TblModuleManifestLog> getModuleLogs() {
+        return moduleLogs;
+    }
+
+    public boolean isEmpty() {
+        return taLogs.isEmpty();
+    }
+
+    /**
+     *
+     * @return the number of records in this trust log
+     */
+    public int size() {
+        return taLogs.size() + moduleLogs.size();
+    }
+
+    /**
+     *
+     * @return time in milliseconds when this trust log was created
+     */
+    public long getCreated() {
+        return created;
+    }
+}
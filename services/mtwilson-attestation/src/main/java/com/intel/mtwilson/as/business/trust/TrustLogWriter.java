@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.business.trust;
+
+import com.intel.mountwilson.as.common.ASException;
+import com.intel.mtwilson.My;
+import com.intel.mtwilson.as.data.TblModuleManifestLog;
+import com.intel.mtwilson.as.data.TblTaLog;
+import com.intel.mtwilson.i18n.ErrorCode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Writes the mw_ta_log and mw_module_manifest_log records of each
+ * attestation with JDBC batch inserts in one transaction, instead of one
+ * JPA transaction per record.
+ *
+ * By default the records are written before the attestation returns, so
+ * anything that reads mw_ta_log afterwards (the trust dashboard, the
+ * trust status of hosts not in the cache) sees them. When
+ * mtwilson.talog.write.behind is true the trust logs are queued and a
+ * background thread writes up to mtwilson.talog.batch.size attestations in
+ * each transaction, which helps bulk attestation runs; the host trust cache
+ * still has the latest status while the records are queued. When the queue
+ * is full the caller writes its own trust log, so a slow database slows
+ * down attestation instead of losing records.
+ *
+ * Configuration:
+ * mtwilson.talog.write.behind (default false)
+ * mtwilson.talog.queue.size (default 1000 attestations)
+ * mtwilson.talog.batch.size (default 50 attestations)
+ * mtwilson.talog.flush.interval.ms (default 500)
+ */
+public class TrustLogWriter {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(TrustLogWriter.class);
+
+    /**
+     * Writes the records in one transaction.
+     */
+    public static interface Sink {
+        void write(List<TblTaLog> taLogs, List<TblModuleManifestLog> moduleLogs) throws Exception;
+    }
+
+    private final Sink sink;
+    private final ArrayBlockingQueue<TrustLog> queue; // null if write-behind is disabled
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final AtomicLong attestations = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong flushes = new AtomicLong();
+    private final AtomicLong flushMillis = new AtomicLong();
+    private final AtomicLong callerWrites = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private volatile long maxFlushMillis = 0;
+    private volatile boolean running = true;
+    private final Thread thread;
+
+    /**
+     * Creates a writer that writes each trust log before returning.
+     *
+     * @param sink
+     */
+    public TrustLogWriter(Sink sink) {
+        this.sink = sink;
+        this.queue = null;
+        this.batchSize = 1;
+        this.flushIntervalMillis = 0;
+        this.thread = null;
+    }
+
+    /**
+     * Creates a writer that queues trust logs and writes them from a
+     * background thread.
+     *
+     * @param sink
+     * @param capacity maximum number of queued attestations
+     * @param batchSize maximum number of attestations written in one transaction
+     * @param flushIntervalMillis maximum time to wait for a full batch
+     */
+    public TrustLogWriter(Sink sink, int capacity, int batchSize, long flushIntervalMillis) {
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainLoop();
+            }
+        }, "trust-log-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public static TrustLogWriter getInstance() {
+        return TrustLogWriterHolder.instance;
+    }
+
+    public boolean isWriteBehind() {
+        return queue != null;
+    }
+
+    /**
+     * Writes the trust log, or queues it if write-behind is enabled and the
+     * queue is not full.
+     *
+     * @param trustLog
+     * @throws ASException if the trust log is written by the caller and cannot be written
+     */
+    public void write(TrustLog trustLog) {
+        if (trustLog.isEmpty()) {
+            return;
+        }
+        if (queue != null && running) {
+            if (queue.offer(trustLog)) {
+                return;
+            }
+            callerWrites.incrementAndGet();
+            log.debug("Trust log queue is full; writing trust log on the calling thread");
+        }
+        try {
+            flush(trustLog.getTaLogs(), trustLog.getModuleLogs(), 1);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            log.error("Cannot write trust log: {}", e.getMessage(), e);
+            throw new ASException(ErrorCode.SYSTEM_ERROR, e.getClass().getSimpleName());
+        }
+    }
+
+    private void flush(List<TblTaLog> taLogs, List<TblModuleManifestLog> moduleLogs, int count) throws Exception {
+        long start = System.currentTimeMillis();
+        sink.write(taLogs, moduleLogs);
+        long elapsed = System.currentTimeMillis() - start;
+        attestations.addAndGet(count);
+        rows.addAndGet(taLogs.size() + moduleLogs.size());
+        flushes.incrementAndGet();
+        flushMillis.addAndGet(elapsed);
+        if (elapsed > maxFlushMillis) {
+            maxFlushMillis = elapsed;
+        }
+        log.debug("performance: wrote {} trust log records of {} attestations in {}ms", taLogs.size() + moduleLogs.size(), count, elapsed);
+    }
+
+    private void drainLoop() {
+        ArrayList<TrustLog> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                TrustLog first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.currentTimeMillis() + flushIntervalMillis;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    TrustLog next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (RuntimeException e) {
+                log.error("Trust log writer error: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<TrustLog> batch) {
+        ArrayList<TblTaLog> taLogs = new ArrayList<>();
+        ArrayList<TblModuleManifestLog> moduleLogs = new ArrayList<>();
+        for (TrustLog trustLog : batch) {
+            taLogs.addAll(trustLog.getTaLogs());
+            moduleLogs.addAll(trustLog.getModuleLogs());
+        }
+        try {
+            flush(taLogs, moduleLogs, batch.size());
+            return;
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                failed.incrementAndGet();
+                log.error("Cannot write trust log: {}", e.getMessage(), e);
+                return;
+            }
+            log.warn("Cannot write trust logs of {} attestations in one transaction, writing them separately: {}", batch.size(), e.getMessage());
+        }
+        // so that one bad record does not lose the trust logs of the other attestations in the batch
+        for (TrustLog trustLog : batch) {
+            try {
+                flush(trustLog.getTaLogs(), trustLog.getModuleLogs(), 1);
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                log.error("Cannot write trust log: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Stops accepting new trust logs and waits for the queued trust logs to
+     * be written. Trust logs written after this are written by the caller.
+     *
+     * @param timeoutMillis
+     * @throws InterruptedException
+     */
+    public void shutdown(long timeoutMillis) throws InterruptedException {
+        running = false;
+        if (thread != null) {
+            thread.join(timeoutMillis);
+        }
+    }
+
+    public int getQueueDepth() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     *
+     * @return age in milliseconds of the oldest queued trust log, or 0 if the queue is empty
+     */
+    public long getQueueLagMillis() {
+        TrustLog oldest = queue == null ? null : queue.peek();
+        return oldest == null ? 0 : System.currentTimeMillis() - oldest.getCreated();
+    }
+
+    public long getAttestationCount() {
+        return attestations.get();
+    }
+
+    public long getRowCount() {
+        return rows.get();
+    }
+
+    public long getFlushCount() {
+        return flushes.get();
+    }
+
+    public long getFlushMillis() {
+        return flushMillis.get();
+    }
+
+    public long getMaxFlushMillis() {
+        return maxFlushMillis;
+    }
+
+    /**
+     *
+     * @return number of trust logs written by the caller because the queue was full
+     */
+    public long getCallerWriteCount() {
+        return callerWrites.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TrustLogWriter[depth=%d, lag=%dms, attestations=%d, rows=%d, flushes=%d, flushTime=%dms, maxFlushTime=%dms, callerWrites=%d, failed=%d]", getQueueDepth(), getQueueLagMillis(), getAttestationCount(), getRowCount(), getFlushCount(), getFlushMillis(), getMaxFlushMillis(), getCallerWriteCount(), getFailedCount());
+    }
+
+    private static class JpaControllerSink implements Sink {
+        @Override
+        public void write(List<TblTaLog> taLogs, List<TblModuleManifestLog> moduleLogs) throws Exception {
+            My.jpa().mwTaLog().createAll(taLogs, moduleLogs);
+        }
+    }
+
+    private static class TrustLogWriterHolder {
+        private static final TrustLogWriter instance = createInstance();
+
+        private static TrustLogWriter createInstance() {
+            Configuration configuration = My.configuration().getConfiguration();
+            if (!configuration.getBoolean("mtwilson.talog.write.behind", false)) {
+                return new TrustLogWriter(new JpaControllerSink());
+            }
+            int capacity = configuration.getInt("mtwilson.talog.queue.size", 1000);
+            int batchSize = configuration.getInt("mtwilson.talog.batch.size", 50);
+            long flushInterval = configuration.getLong("mtwilson.talog.flush.interval.ms", 500);
+            log.debug("Creating write-behind trust log writer with queue size {} batch size {} flush interval {}ms", capacity, batchSize, flushInterval);
+            final TrustLogWriter writer = new TrustLogWriter(new JpaControllerSink(), capacity, batchSize, flushInterval);
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        writer.shutdown(5000);
+                    } catch (InterruptedException e) {
+                        log.warn("Interrupted while writing queued trust logs");
+                    }
+                }
+            }, "trust-log-writer-shutdown"));
+            return writer;
+        }
+    }
+}
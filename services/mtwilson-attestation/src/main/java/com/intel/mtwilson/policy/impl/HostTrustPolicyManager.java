@@ -6,6 +6,7 @@ package com.intel.mtwilson.policy.impl;
 
 import com.intel.mtwilson.My;
 import com.intel.mtwilson.as.business.AssetTagCertBO;
+import com.intel.mtwilson.as.controller.MleWhitelistVersion;
 import java.util.HashSet;
 import com.intel.mtwilson.as.data.MwAssetTagCertificate;
 import com.intel.mtwilson.as.data.TblHosts;
@@ -16,6 +17,7 @@ import com.intel.mtwilson.policy.impl.vendor.*;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import javax.persistence.EntityManagerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -107,17 +109,7 @@ public class HostTrustPolicyManager {
      */
     public Policy loadTrustPolicyForHost(TblHosts host, String hostId) {
         VendorHostTrustPolicyFactory factory = getVendorHostTrustPolicyFactoryForHost(host);        
-        HashSet<Rule> rules = new HashSet<>();
-        // only add bios policy if the host is linked with a bios mle
-        if( host.getBiosMleId() != null ) {
-            Bios bios = new Bios(host.getBiosMleId().getName(), host.getBiosMleId().getVersion(), host.getBiosMleId().getOemId().getName());
-            rules.addAll(factory.loadTrustRulesForBios(bios, host));
-        }
-        // only add vmm policy if the host is linked with a vmm mle
-        if( host.getVmmMleId() != null ) {
-            Vmm vmm = new Vmm(host.getVmmMleId().getName(), host.getVmmMleId().getVersion(), host.getVmmMleId().getOsId().getName(), host.getVmmMleId().getOsId().getVersion());
-            rules.addAll(factory.loadTrustRulesForVmm(vmm,host));
-        }
+        HashSet<Rule> rules = new HashSet<>(loadMleRules(factory, host, false));
          // only add location policy if the host is expected to be somewhere specific... otherwise, an empty location will result in a policy that can't be met
         //if( host.getLocation() != null && !host.getLocation().trim().isEmpty() ) {
         //    rules.addAll(factory.loadTrustRulesForLocation(host.getLocation(), host));
@@ -150,7 +142,49 @@ public class HostTrustPolicyManager {
     
     public Policy loadTrustPolicyForMLEVerification(TblHosts host, String hostId) {
         VendorHostTrustPolicyFactory factory = getVendorHostTrustPolicyFactoryForHost(host);        
-        HashSet<Rule> rules = new HashSet<Rule>();
+        HashSet<Rule> rules = new HashSet<Rule>(loadMleRules(factory, host, true));
+        Policy policy = new Policy(String.format("Host trust policy for host with AIK %s", hostId), rules);
+        return policy;
+    }
+
+    /**
+     * Returns the bios and vmm rules for the host's MLEs. Hosts with the same
+     * MLEs, vendor, and PCR bank share the same rules, so they are taken from
+     * the TrustPolicyCache when possible; rules for MLEs with host-specific
+     * modules are loaded for each host.
+     * 
+     * @param factory
+     * @param host
+     * @param verification true to load the vmm comparison rules used for MLE verification instead of the vmm trust rules
+     * @return the bios and vmm rules; callers must not modify the returned set
+     */
+    protected Set<Rule> loadMleRules(VendorHostTrustPolicyFactory factory, TblHosts host, boolean verification) {
+        TrustPolicyCache cache = TrustPolicyCache.getInstance();
+        if( cache == null ) {
+            return createMleRules(factory, host, verification);
+        }
+        TrustPolicyCache.Key key = new TrustPolicyCache.Key(factory.getClass().getName(),
+                host.getBiosMleId() == null ? null : host.getBiosMleId().getId(),
+                host.getVmmMleId() == null ? null : host.getVmmMleId().getId(),
+                host.getPcrBank(), verification);
+        Set<Rule> rules = cache.get(key);
+        if( rules != null ) {
+            return rules;
+        }
+        if( cache.isHostSpecific(key) ) {
+            return createMleRules(factory, host, verification);
+        }
+        long version = MleWhitelistVersion.get();
+        if( (host.getBiosMleId() != null && reader.hasHostSpecificModules(host.getBiosMleId())) || (host.getVmmMleId() != null && reader.hasHostSpecificModules(host.getVmmMleId())) ) {
+            log.debug("Trust policy for {} includes host-specific modules", key);
+            cache.putHostSpecific(key, version);
+            return createMleRules(factory, host, verification);
+        }
+        return cache.put(key, createMleRules(factory, host, verification), version);
+    }
+
+    private Set<Rule> createMleRules(VendorHostTrustPolicyFactory factory, TblHosts host, boolean verification) {
+        HashSet<Rule> rules = new HashSet<>();
         // only add bios policy if the host is linked with a bios mle
         if( host.getBiosMleId() != null ) {
             Bios bios = new Bios(host.getBiosMleId().getName(), host.getBiosMleId().getVersion(), host.getBiosMleId().getOemId().getName());
@@ -159,10 +193,14 @@ public class HostTrustPolicyManager {
         // only add vmm policy if the host is linked with a vmm mle
         if( host.getVmmMleId() != null ) {
             Vmm vmm = new Vmm(host.getVmmMleId().getName(), host.getVmmMleId().getVersion(), host.getVmmMleId().getOsId().getName(), host.getVmmMleId().getOsId().getVersion());
-            rules.addAll(factory.loadComparisonRulesForVmm(vmm,host));
+            if( verification ) {
+                rules.addAll(factory.loadComparisonRulesForVmm(vmm,host));
+            }
+            else {
+                rules.addAll(factory.loadTrustRulesForVmm(vmm,host));
+            }
         }
-        Policy policy = new Policy(String.format("Host trust policy for host with AIK %s", hostId), rules);
-        return policy;
+        return rules;
     }
 
     /*
@@ -123,6 +123,26 @@ public class JpaPolicyReader {
         return pcrs;
     }        
 
+    /**
+     * Rules for an MLE with host-specific modules are different for each
+     * host, so they cannot be shared between hosts.
+     * 
+     * @param mle
+     * @return true if any module of the MLE uses a host-specific digest value
+     */
+    public boolean hasHostSpecificModules(TblMle mle) {
+        TblMle found = mleJpaController.findMleById(mle.getId());
+        if( found == null || found.getTblModuleManifestCollection() == null ) {
+            return false;
+        }
+        for(TblModuleManifest moduleInfo : found.getTblModuleManifestCollection()) {
+            if( moduleInfo.getUseHostSpecificDigestValue() != null && moduleInfo.getUseHostSpecificDigestValue().booleanValue() ) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
     public Rule createPcrMatchesConstantRuleFromTblPcrManifest(TblPcrManifest pcrInfo, String... markers) {
         try {            
             PcrIndex pcrIndex = new PcrIndex(Integer.valueOf(pcrInfo.getName()));
@@ -453,8 +473,14 @@ public class JpaPolicyReader {
         // rules for verification
         if (finalXmlWhitelistValue != null && xmlMeasurement != null && !xmlMeasurement.getContent().isEmpty()) {
             // First lets add the measurement log verification rule
-            XmlMeasurementLog xmlMeasurementLog = new XmlMeasurementLog(PcrIndex.PCR19, xmlMeasurement.getContent());
-            XmlMeasurementLogEquals xmlMeasurementLogEqualsRule = new XmlMeasurementLogEquals(xmlMeasurementLog);
+            XmlMeasurementLogEquals xmlMeasurementLogEqualsRule;
+            XmlMeasurementLogCache whitelistCache = XmlMeasurementLogCache.getInstance();
+            if (whitelistCache == null) {
+                xmlMeasurementLogEqualsRule = new XmlMeasurementLogEquals(new XmlMeasurementLog(PcrIndex.PCR19, xmlMeasurement.getContent()));
+            } else {
+                XmlMeasurementLogCache.Entry whitelist = whitelistCache.get(vmmMle.getId(), PcrIndex.PCR19, xmlMeasurement.getContent());
+                xmlMeasurementLogEqualsRule = new XmlMeasurementLogEquals(whitelist.getMeasurementLog(), whitelist.getIndex());
+            }
             xmlMeasurementLogEqualsRule.setMarkers(TrustMarker.VMM.name());
             list.add(xmlMeasurementLogEqualsRule);
             
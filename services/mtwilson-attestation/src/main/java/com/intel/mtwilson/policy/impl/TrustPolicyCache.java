@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.policy.impl;
+
+import com.intel.mtwilson.My;
+import com.intel.mtwilson.as.controller.MleWhitelistVersion;
+import com.intel.mtwilson.policy.Rule;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the BIOS and VMM whitelist rules compiled by the vendor trust policy
+ * factories so that hosts sharing the same MLEs do not each rebuild them
+ * from the PCR and module manifest tables.
+ *
+ * Entries are keyed by vendor factory, BIOS MLE id, VMM MLE id, PCR bank,
+ * and whether the rules are for attestation or for MLE verification. Each
+ * entry records the MleWhitelistVersion it was compiled from and is
+ * discarded when the whitelist changes or when it is older than the time to
+ * live, which also picks up changes to the trusted Privacy CA list. The
+ * cached rule sets are unmodifiable; host-specific rules such as the asset
+ * tag are added to a copy for each host.
+ *
+ * Configuration:
+ * mtwilson.trustpolicy.cache.enabled (default true)
+ * mtwilson.trustpolicy.cache.max (default 1000 entries)
+ * mtwilson.trustpolicy.cache.ttl.seconds (default 600)
+ */
+public class TrustPolicyCache {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(TrustPolicyCache.class);
+    private final int maxEntries;
+    private final long timeToLiveMillis;
+    private final ConcurrentHashMap<Key, Entry> cache = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public TrustPolicyCache(int maxEntries, long timeToLiveMillis) {
+        this.maxEntries = maxEntries;
+        this.timeToLiveMillis = timeToLiveMillis;
+    }
+
+    /**
+     *
+     * @return the shared cache, or null if mtwilson.trustpolicy.cache.enabled is false
+     */
+    public static TrustPolicyCache getInstance() {
+        return TrustPolicyCacheHolder.instance;
+    }
+
+    public static class Key {
+        private final String vendor;
+        private final Integer biosMleId;
+        private final Integer vmmMleId;
+        private final String pcrBank;
+        private final boolean verification;
+
+        /**
+         *
+         * @param vendor the vendor trust policy factory
+         * @param biosMleId may be null if the host has no BIOS MLE
+         * @param vmmMleId may be null if the host has no VMM MLE
+         * @param pcrBank
+         * @param verification true for MLE verification rules, false for attestation rules
+         */
+        public Key(String vendor, Integer biosMleId, Integer vmmMleId, String pcrBank, boolean verification) {
+            this.vendor = vendor;
+            this.biosMleId = biosMleId;
+            this.vmmMleId = vmmMleId;
+            this.pcrBank = pcrBank;
+            this.verification = verification;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = vendor == null ? 0 : vendor.hashCode();
+            hash = 31 * hash + (biosMleId == null ? 0 : biosMleId.hashCode());
+            hash = 31 * hash + (vmmMleId == null ? 0 : vmmMleId.hashCode());
+            hash = 31 * hash + (pcrBank == null ? 0 : pcrBank.hashCode());
+            return 31 * hash + (verification ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return equals(vendor, other.vendor) && equals(biosMleId, other.biosMleId) && equals(vmmMleId, other.vmmMleId) && equals(pcrBank, other.pcrBank) && verification == other.verification;
+        }
+
+        private static boolean equals(Object a, Object b) {
+            return a == null ? b == null : a.equals(b);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s bios=%s vmm=%s bank=%s verification=%s", vendor, biosMleId, vmmMleId, pcrBank, verification);
+        }
+    }
+
+    private static class Entry {
+        private final Set<Rule> rules; // null if the rules are host-specific
+        private final long version;
+        private final long created;
+
+        private Entry(Set<Rule> rules, long version, long created) {
+            this.rules = rules;
+            this.version = version;
+            this.created = created;
+        }
+    }
+
+    /**
+     *
+     * @param key
+     * @return the cached rules, or null if they are not cached or the whitelist changed since they were compiled
+     */
+    public Set<Rule> get(Key key) {
+        Entry entry = getCurrent(key);
+        if (entry != null && entry.rules != null) {
+            hits.incrementAndGet();
+            return entry.rules;
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     *
+     * @param key
+     * @return true if putHostSpecific was called for the key and the whitelist did not change since then
+     */
+    public boolean isHostSpecific(Key key) {
+        Entry entry = getCurrent(key);
+        return entry != null && entry.rules == null;
+    }
+
+    private Entry getCurrent(Key key) {
+        Entry entry = cache.get(key);
+        if (entry != null && !isCurrent(entry, System.currentTimeMillis())) {
+            cache.remove(key, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     *
+     * @param key
+     * @param rules
+     * @param version the MleWhitelistVersion read before the rules were loaded from the database
+     * @return the rules as an unmodifiable set
+     */
+    public Set<Rule> put(Key key, Set<Rule> rules, long version) {
+        Set<Rule> unmodifiable = Collections.unmodifiableSet(new HashSet<>(rules));
+        put(key, new Entry(unmodifiable, version, System.currentTimeMillis()));
+        return unmodifiable;
+    }
+
+    /**
+     * Records that the rules for the key include host-specific modules and
+     * must be loaded for each host.
+     *
+     * @param key
+     * @param version the MleWhitelistVersion read before the MLE was loaded from the database
+     */
+    public void putHostSpecific(Key key, long version) {
+        put(key, new Entry(null, version, System.currentTimeMillis()));
+    }
+
+    private void put(Key key, Entry entry) {
+        if (entry.version != MleWhitelistVersion.get()) {
+            log.debug("Not caching trust policy for {} because the whitelist changed while it was loaded", key);
+            return;
+        }
+        if (cache.size() >= maxEntries) {
+            removeExpired(entry.created);
+            if (cache.size() >= maxEntries) {
+                log.debug("Trust policy cache is full; not caching {}", key);
+                return;
+            }
+        }
+        cache.put(key, entry);
+    }
+
+    private boolean isCurrent(Entry entry, long now) {
+        return entry.version == MleWhitelistVersion.get() && now - entry.created < timeToLiveMillis;
+    }
+
+    private void removeExpired(long now) {
+        Iterator<Map.Entry<Key, Entry>> it = cache.entrySet().iterator();
+        while (it.hasNext()) {
+            if (!isCurrent(it.next().getValue(), now)) {
+                it.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TrustPolicyCache[size=%d, hits=%d, misses=%d]", size(), getHitCount(), getMissCount());
+    }
+
+    private static class TrustPolicyCacheHolder {
+        private static final TrustPolicyCache instance = createInstance();
+
+        private static TrustPolicyCache createInstance() {
+            if (!My.configuration().getConfiguration().getBoolean("mtwilson.trustpolicy.cache.enabled", true)) {
+                log.info("Trust policy cache is disabled");
+                return null;
+            }
+            int max = My.configuration().getConfiguration().getInt("mtwilson.trustpolicy.cache.max", 1000);
+            long ttlSeconds = My.configuration().getConfiguration().getLong("mtwilson.trustpolicy.cache.ttl.seconds", 600);
+            log.debug("Creating trust policy cache with max entries {} time to live {} seconds", max, ttlSeconds);
+            return new TrustPolicyCache(max, ttlSeconds * 1000);
+        }
+    }
+}
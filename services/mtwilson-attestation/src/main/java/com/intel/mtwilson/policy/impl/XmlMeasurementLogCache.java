@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.policy.impl;
+
+import com.intel.dcsg.cpg.crypto.Sha256Digest;
+import com.intel.mtwilson.My;
+import com.intel.mtwilson.as.controller.MleWhitelistVersion;
+import com.intel.mtwilson.model.Measurement;
+import com.intel.mtwilson.model.PcrIndex;
+import com.intel.mtwilson.model.XmlMeasurementLog;
+import com.intel.mtwilson.policy.rule.MeasurementLogDiff;
+import com.intel.mtwilson.policy.rule.XmlMeasurementLogEquals;
+import java.nio.charset.Charset;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the parsed measurement whitelist (mw_measurement_xml) of each VMM MLE
+ * together with its digest and label index, so that the whitelist is parsed
+ * and indexed once instead of every time the VMM rules are loaded for a host.
+ *
+ * Entries are keyed by MLE id and record the SHA-256 digest of the
+ * whitelist content they were parsed from. The content is still read from
+ * the database by the caller, so a whitelist changed by another server or by
+ * the setup tools is parsed again the next time it is used. The shared cache
+ * removes the entry of an MLE when this server updates or deletes the MLE
+ * or replaces or deletes its whitelist (MleWhitelistVersion), so deleted
+ * MLEs do not keep using cache space.
+ *
+ * Configuration:
+ * mtwilson.measurement.whitelist.cache.enabled (default true)
+ * mtwilson.measurement.whitelist.cache.max (default 100 entries)
+ */
+public class XmlMeasurementLogCache {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(XmlMeasurementLogCache.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private final int maxEntries;
+    private final ConcurrentHashMap<Integer, Entry> cache = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public XmlMeasurementLogCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     *
+     * @return the shared cache, or null if mtwilson.measurement.whitelist.cache.enabled is false
+     */
+    public static XmlMeasurementLogCache getInstance() {
+        return XmlMeasurementLogCacheHolder.instance;
+    }
+
+    public static class Entry {
+        private final Sha256Digest contentDigest;
+        private final XmlMeasurementLog measurementLog;
+        private final MeasurementLogDiff.Index<Measurement> index;
+
+        private Entry(Sha256Digest contentDigest, XmlMeasurementLog measurementLog, MeasurementLogDiff.Index<Measurement> index) {
+            this.contentDigest = contentDigest;
+            this.measurementLog = measurementLog;
+            this.index = index;
+        }
+
+        public XmlMeasurementLog getMeasurementLog() {
+            return measurementLog;
+        }
+
+        public MeasurementLogDiff.Index<Measurement> getIndex() {
+            return index;
+        }
+    }
+
+    /**
+     *
+     * @param mleId
+     * @param pcrIndex
+     * @param content the whitelist xml as currently stored for the MLE
+     * @return the parsed whitelist, from the cache if it was already parsed from the same content
+     */
+    public Entry get(Integer mleId, PcrIndex pcrIndex, String content) {
+        Sha256Digest contentDigest = Sha256Digest.digestOf(content.getBytes(UTF8));
+        Entry entry = cache.get(mleId);
+        if (entry != null && entry.contentDigest.equals(contentDigest) && pcrIndex.equals(entry.measurementLog.getPcrIndex())) {
+            hits.incrementAndGet();
+            return entry;
+        }
+        misses.incrementAndGet();
+        long start = System.currentTimeMillis();
+        XmlMeasurementLog measurementLog = new XmlMeasurementLog(pcrIndex, content);
+        entry = new Entry(contentDigest, measurementLog, XmlMeasurementLogEquals.createIndex(measurementLog));
+        log.debug("performance: parsed measurement whitelist for MLE {} with {} entries in {}ms", mleId, measurementLog.getMeasurements().size(), System.currentTimeMillis() - start);
+        if (cache.size() >= maxEntries && !cache.containsKey(mleId)) {
+            log.debug("Measurement whitelist cache is full; not caching MLE {}", mleId);
+            return entry;
+        }
+        cache.put(mleId, entry);
+        return entry;
+    }
+
+    public void remove(Integer mleId) {
+        if (mleId != null && cache.remove(mleId) != null) {
+            log.debug("Removed cached measurement whitelist of MLE {}", mleId);
+        }
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("XmlMeasurementLogCache[size=%d, hits=%d, misses=%d]", size(), getHitCount(), getMissCount());
+    }
+
+    private static class XmlMeasurementLogCacheHolder {
+        private static final XmlMeasurementLogCache instance = createInstance();
+
+        private static XmlMeasurementLogCache createInstance() {
+            if (!My.configuration().getConfiguration().getBoolean("mtwilson.measurement.whitelist.cache.enabled", true)) {
+                log.info("Measurement whitelist cache is disabled");
+                return null;
+            }
+            int max = My.configuration().getConfiguration().getInt("mtwilson.measurement.whitelist.cache.max", 100);
+            log.debug("Creating measurement whitelist cache with max entries {}", max);
+            final XmlMeasurementLogCache cache = new XmlMeasurementLogCache(max);
+            MleWhitelistVersion.addListener(new MleWhitelistVersion.Listener() {
+                @Override
+                public void whitelistChanged(Integer mleId) {
+                    cache.remove(mleId);
+                }
+            });
+            return cache;
+        }
+    }
+}
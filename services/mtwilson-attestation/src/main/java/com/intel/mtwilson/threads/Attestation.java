@@ -7,14 +7,17 @@ package com.intel.mtwilson.threads;
 import com.intel.dcsg.cpg.configuration.CommonsConfiguration;
 import com.intel.mountwilson.as.common.ASConfig;
 import com.intel.mtwilson.My;
+import com.intel.mtwilson.as.business.trust.AttestationPipeline;
 import com.intel.mtwilson.as.business.trust.HostTrustBO;
 import com.intel.mtwilson.saml.IssuerConfiguration;
 import com.intel.mtwilson.saml.SamlConfiguration;
+import com.intel.mtwilson.saml.SamlGenerator;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.security.GeneralSecurityException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
@@ -22,6 +25,7 @@ import javax.servlet.ServletContextEvent;
 import javax.servlet.ServletContextListener;
 import javax.servlet.annotation.WebListener;
 import org.apache.commons.configuration.Configuration;
+import org.opensaml.xml.ConfigurationException;
 
 /**
  * Initializes the data encryption key and the SAML issuer configuration
@@ -34,6 +38,11 @@ public class Attestation implements ServletContextListener {
 
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(Attestation.class);
     private static ExecutorService executor;
+    private static ExecutorService computeExecutor;
+    private static ExecutorService persistExecutor;
+    private static ScheduledExecutorService scheduler;
+    private static AttestationPipeline pipeline;
+    private static volatile SamlGenerator samlGenerator;
 
     @Override
     public void contextInitialized(ServletContextEvent sce) {
@@ -43,6 +52,16 @@ public class Attestation implements ServletContextListener {
         int maxThreads = ASConfig.getConfiguration().getInt("mtwilson.bulktrust.threads.max", 16);
         log.debug("Creating fixed thread pool with n={}", maxThreads);
         executor = Executors.newFixedThreadPool(maxThreads, new AttestationThreadFactory());
+        int computeThreads = ASConfig.getConfiguration().getInt("mtwilson.bulktrust.compute.threads.max", Runtime.getRuntime().availableProcessors());
+        int maxInFlight = ASConfig.getConfiguration().getInt("mtwilson.bulktrust.batch.inflight.max", maxThreads);
+        log.debug("Creating attestation pipeline with compute threads n={} and in-flight hosts per request n={}", computeThreads, maxInFlight);
+        computeExecutor = Executors.newFixedThreadPool(computeThreads, new AttestationThreadFactory("Attestation-Compute-"));
+        // attestations are written concurrently, leaving half of the database connections for other requests
+        int persistThreads = ASConfig.getConfiguration().getInt("mtwilson.bulktrust.persist.threads.max", Math.max(1, Math.min(maxThreads, My.configuration().getConfiguration().getInt("dbcp.max.active", 100) / 2)));
+        log.debug("Creating attestation persist pool with n={}", persistThreads);
+        persistExecutor = Executors.newFixedThreadPool(persistThreads, new AttestationThreadFactory("Attestation-Persist-"));
+        scheduler = Executors.newSingleThreadScheduledExecutor(new AttestationThreadFactory("Attestation-Timer-"));
+        pipeline = new AttestationPipeline(executor, computeExecutor, persistExecutor, scheduler, maxInFlight);
         
         if( IssuerConfigurationHolder.samlIssuerConfiguration == null ) {
             log.error("Failed to initialize SAML issuer");
@@ -66,6 +85,13 @@ public class Attestation implements ServletContextListener {
     @Override
     public void contextDestroyed(ServletContextEvent sce) {
         log.debug("Shutdown thread pool");
+        shutdown(executor);
+        shutdown(computeExecutor);
+        shutdown(persistExecutor);
+        shutdown(scheduler);
+    }
+    
+    private void shutdown(ExecutorService executor) {
         if (executor != null) {
             executor.shutdown(); // Disable new tasks from being submitted
             try {
@@ -90,19 +116,54 @@ public class Attestation implements ServletContextListener {
         return executor;
     }
     
+    public static AttestationPipeline getPipeline() {
+        return pipeline;
+    }
+    
     public static IssuerConfiguration getIssuerConfiguration() {
         return IssuerConfigurationHolder.samlIssuerConfiguration;
     }
 
+    /**
+     * The SAML generator is thread-safe and keeps the signature factory and
+     * key info of the issuer, so one instance is used for all assertions.
+     * It is created on first use so a failure is reported to the caller
+     * and retried on the next request.
+     *
+     * @return the SAML generator for the issuer configuration
+     * @throws ConfigurationException if the SAML signature cannot be initialized
+     */
+    public static SamlGenerator getSamlGenerator() throws ConfigurationException {
+        SamlGenerator generator = samlGenerator;
+        if( generator == null ) {
+            synchronized(Attestation.class) {
+                if( samlGenerator == null ) {
+                    samlGenerator = new SamlGenerator(getIssuerConfiguration());
+                }
+                generator = samlGenerator;
+            }
+        }
+        return generator;
+    }
+
     public static class AttestationThreadFactory implements ThreadFactory {
 
         private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(AttestationThreadFactory.class);
         private static final AtomicLong sequence = new AtomicLong(0);
+        private final String prefix;
+
+        public AttestationThreadFactory() {
+            this("Attestation-");
+        }
+        
+        public AttestationThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
 
         @Override
         public Thread newThread(Runnable r) {
             log.debug("Creating thread for runnable: {}", r.getClass().getName());
-            Thread newThread = new Thread(r, "Attestation-" + sequence.incrementAndGet());
+            Thread newThread = new Thread(r, prefix + sequence.incrementAndGet());
             return newThread;
         }
     }
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.business.trust;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * These tests do not need a database or a trust agent.
+ */
+public class AttestationPipelineTest {
+    private ExecutorService ioExecutor;
+    private ExecutorService computeExecutor;
+    private ExecutorService persistExecutor;
+    private ScheduledExecutorService scheduler;
+    private final AtomicInteger fetching = new AtomicInteger();
+    private final AtomicInteger maxFetching = new AtomicInteger();
+    private final CountDownLatch unblock = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        ioExecutor = Executors.newFixedThreadPool(4);
+        computeExecutor = Executors.newFixedThreadPool(2);
+        persistExecutor = Executors.newFixedThreadPool(2);
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        unblock.countDown();
+        ioExecutor.shutdownNow();
+        computeExecutor.shutdownNow();
+        persistExecutor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * A host whose fetch ignores the interrupt when it is cancelled, like a
+     * trust agent call blocked in a socket read.
+     */
+    private class BlockedHostTask extends AttestationPipeline.HostTask<String> {
+
+        private BlockedHostTask(String hostname) {
+            super(hostname);
+        }
+
+        @Override
+        protected String fetch() throws Exception {
+            int current = fetching.incrementAndGet();
+            synchronized (maxFetching) {
+                maxFetching.set(Math.max(maxFetching.get(), current));
+            }
+            try {
+                while (true) {
+                    try {
+                        unblock.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        // keep waiting
+                    }
+                }
+                return null;
+            } finally {
+                fetching.decrementAndGet();
+            }
+        }
+
+        @Override
+        protected void verify() throws Exception {
+        }
+
+        @Override
+        protected String persist() throws Exception {
+            return "trusted:" + getHostname();
+        }
+
+        @Override
+        protected String failed(Exception e) {
+            return "failed:" + getHostname();
+        }
+
+        @Override
+        protected String timedOut() {
+            return "timeout:" + getHostname();
+        }
+    }
+
+    @Test
+    public void testTimedOutFetchKeepsItsPlaceInTheBatch() throws InterruptedException {
+        AttestationPipeline pipeline = new AttestationPipeline(ioExecutor, computeExecutor, persistExecutor, scheduler, 1);
+        final List<String> results = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch firstResult = new CountDownLatch(1);
+        AttestationPipeline.Batch<String> batch = pipeline.submit(Arrays.asList(new BlockedHostTask("host1"), new BlockedHostTask("host2")), 1, new AttestationPipeline.ResultListener<String>() {
+            @Override
+            public void hostCompleted(String hostname, String result) {
+                results.add(result);
+                firstResult.countDown();
+            }
+        });
+        assertTrue(firstResult.await(10, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("timeout:host1"), results);
+        // host2 must not start while the fetch of host1 is still running
+        Thread.sleep(200);
+        assertEquals(1, fetching.get());
+        unblock.countDown();
+        assertTrue(batch.await(10, TimeUnit.SECONDS));
+        assertEquals(1, maxFetching.get());
+        assertTrue(results.contains("trusted:host2"));
+    }
+}
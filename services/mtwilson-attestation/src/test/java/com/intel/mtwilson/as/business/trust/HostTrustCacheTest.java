@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.business.trust;
+
+import com.intel.mtwilson.as.data.TblHosts;
+import com.intel.mtwilson.datatypes.HostTrustStatus;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * These tests do not need a database.
+ */
+public class HostTrustCacheTest {
+
+    private TblHosts createHost(int id, String name) {
+        TblHosts host = new TblHosts(id);
+        host.setName(name);
+        host.setAikPublicKeySha1("aik-" + id);
+        return host;
+    }
+
+    private HostTrustStatus createStatus(boolean bios, boolean vmm) {
+        HostTrustStatus status = new HostTrustStatus();
+        status.bios = bios;
+        status.vmm = vmm;
+        return status;
+    }
+
+    @Test
+    public void testLookupByAllKeys() {
+        HostTrustCache cache = new HostTrustCache(10);
+        cache.put(createHost(1, "host1"), createStatus(true, false), System.currentTimeMillis() + 60000);
+        assertTrue(cache.getByName("host1").getStatus().bios);
+        assertFalse(cache.getByAik("aik-1").getStatus().vmm);
+        assertEquals(Integer.valueOf(1), cache.getByAik("aik-1").getHostId());
+        assertNull(cache.getByName("host2"));
+        assertEquals(3, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void testExpiredEntryIsNotReturned() throws InterruptedException {
+        HostTrustCache cache = new HostTrustCache(10);
+        cache.put(createHost(1, "host1"), createStatus(true, true), System.currentTimeMillis() + 50);
+        assertNotNull(cache.getByName("host1"));
+        Thread.sleep(100);
+        assertNull(cache.getByName("host1"));
+        assertNull(cache.getByAik("aik-1"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testInvalidateRemovesAllKeys() {
+        HostTrustCache cache = new HostTrustCache(10);
+        cache.put(createHost(1, "host1"), createStatus(true, true), System.currentTimeMillis() + 60000);
+        cache.invalidate(1);
+        assertNull(cache.getByName("host1"));
+        assertNull(cache.getByAik("aik-1"));
+    }
+
+    @Test
+    public void testRefreshAfterRenameDropsOldName() {
+        HostTrustCache cache = new HostTrustCache(10);
+        cache.put(createHost(1, "host1"), createStatus(false, false), System.currentTimeMillis() + 60000);
+        cache.put(createHost(1, "host1-renamed"), createStatus(true, true), System.currentTimeMillis() + 60000);
+        assertNull(cache.getByName("host1"));
+        assertTrue(cache.getByName("host1-renamed").getStatus().bios);
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testOlderStatusDoesNotReplaceNewerStatus() {
+        HostTrustCache cache = new HostTrustCache(10);
+        long now = System.currentTimeMillis();
+        cache.put(createHost(1, "host1"), createStatus(true, true), now + 60000);
+        cache.put(createHost(1, "host1"), createStatus(false, false), now + 30000);
+        assertTrue(cache.getByName("host1").getStatus().bios);
+        cache.put(createHost(1, "host1"), createStatus(false, false), now + 90000);
+        assertFalse(cache.getByName("host1").getStatus().bios);
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        HostTrustCache cache = new HostTrustCache(100);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(createHost(i, "host" + i), createStatus(true, true), System.currentTimeMillis() + 60000);
+        }
+        assertTrue(cache.size() <= 100);
+        assertEquals(1000 - cache.size(), cache.getEvictionCount());
+    }
+
+    @Test
+    public void testEvictionIsBatched() {
+        HostTrustCache cache = new HostTrustCache(100);
+        for (int i = 0; i <= 100; i++) {
+            cache.put(createHost(i, "host" + i), createStatus(true, true), System.currentTimeMillis() + 60000);
+        }
+        assertEquals(90, cache.size());
+        assertEquals(11, cache.getEvictionCount());
+        // the next puts fit under the limit without evicting
+        for (int i = 101; i <= 110; i++) {
+            cache.put(createHost(i, "host" + i), createStatus(true, true), System.currentTimeMillis() + 60000);
+        }
+        assertEquals(100, cache.size());
+        assertEquals(11, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testReturnedStatusIsACopy() {
+        HostTrustCache cache = new HostTrustCache(10);
+        cache.put(createHost(1, "host1"), createStatus(true, true), System.currentTimeMillis() + 60000);
+        cache.getByName("host1").getStatus().bios = false;
+        assertTrue(cache.getByName("host1").getStatus().bios);
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.business.trust;
+
+import com.intel.mtwilson.as.data.TblHosts;
+import com.intel.mtwilson.datatypes.HostTrustStatus;
+import java.util.Collections;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * These tests do not need a database.
+ */
+public class TrustChangeEventLogTest {
+    private static final TrustChangeEventLog.Filter ALL = new TrustChangeEventLog.Filter(null, null, null);
+
+    private TblHosts createHost(int id, String name) {
+        TblHosts host = new TblHosts(id);
+        host.setName(name);
+        host.setUuid_hex("uuid-" + id);
+        return host;
+    }
+
+    private HostTrustStatus createStatus(boolean bios, boolean vmm) {
+        HostTrustStatus status = new HostTrustStatus();
+        status.bios = bios;
+        status.vmm = vmm;
+        return status;
+    }
+
+    @Test
+    public void testOnlyChangesAreRecorded() {
+        TrustChangeEventLog eventLog = new TrustChangeEventLog(10);
+        long start = eventLog.getSequence();
+        TblHosts host = createHost(1, "host1");
+        assertNotNull(eventLog.record(host, createStatus(true, true), new Date()));
+        assertNull(eventLog.record(host, createStatus(true, true), new Date()));
+        TrustChangeEventLog.Event event = eventLog.record(host, createStatus(true, false), new Date());
+        assertNotNull(event);
+        assertFalse(event.isTrusted());
+        TrustChangeEventLog.Page page = eventLog.getEventsAfter(start, ALL, 10);
+        assertEquals(2, page.getEvents().size());
+        assertEquals(event.getSequence(), page.getNext());
+        assertFalse(page.isMissed());
+        eventLog.remove(1);
+        assertNotNull(eventLog.record(host, createStatus(true, false), new Date()));
+    }
+
+    @Test
+    public void testResumeAndFilter() {
+        TrustChangeEventLog eventLog = new TrustChangeEventLog(10);
+        TrustChangeEventLog.Event first = eventLog.record(createHost(1, "host1"), createStatus(true, true), new Date());
+        TrustChangeEventLog.Event second = eventLog.record(createHost(2, "host2"), createStatus(false, true), new Date());
+        TrustChangeEventLog.Page page = eventLog.getEventsAfter(first.getSequence(), ALL, 10);
+        assertEquals(1, page.getEvents().size());
+        assertEquals("host2", page.getEvents().get(0).getHostName());
+        TrustChangeEventLog.Filter host1 = new TrustChangeEventLog.Filter(Collections.singleton("uuid-1"), null, null);
+        page = eventLog.getEventsAfter(first.getSequence(), host1, 10);
+        assertTrue(page.getEvents().isEmpty());
+        assertEquals(second.getSequence(), page.getNext());
+        TrustChangeEventLog.Filter untrusted = new TrustChangeEventLog.Filter(null, null, false);
+        assertEquals(1, eventLog.getEventsAfter(first.getSequence() - 1, untrusted, 10).getEvents().size());
+    }
+
+    @Test
+    public void testMissedEvents() {
+        TrustChangeEventLog eventLog = new TrustChangeEventLog(2);
+        long start = eventLog.getSequence();
+        for (int i = 1; i <= 3; i++) {
+            eventLog.record(createHost(i, "host" + i), createStatus(true, true), new Date());
+        }
+        assertEquals(2, eventLog.size());
+        TrustChangeEventLog.Page page = eventLog.getEventsAfter(start, ALL, 10);
+        assertTrue(page.isMissed());
+        assertEquals(2, page.getEvents().size());
+        assertFalse(eventLog.getEventsAfter(start + 1, ALL, 10).isMissed());
+        // a sequence number from before a restart
+        TrustChangeEventLog restarted = new TrustChangeEventLog(2);
+        page = restarted.getEventsAfter(start - 1, ALL, 10);
+        assertTrue(page.isMissed());
+        assertEquals(restarted.getSequence(), page.getNext());
+    }
+
+    @Test
+    public void testListenerIsNotified() throws InterruptedException {
+        TrustChangeEventLog eventLog = new TrustChangeEventLog(10);
+        final CountDownLatch latch = new CountDownLatch(1);
+        eventLog.addListener(new TrustChangeEventLog.Listener() {
+            @Override
+            public boolean onEvent(TrustChangeEventLog.Event event) {
+                latch.countDown();
+                return true;
+            }
+        });
+        eventLog.record(createHost(1, "host1"), createStatus(true, true), new Date());
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(0, eventLog.getListenerCount());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.as.business.trust;
+
+import com.intel.mtwilson.as.data.TblModuleManifestLog;
+import com.intel.mtwilson.as.data.TblTaLog;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class TrustLogWriterTest {
+
+    private static class ListSink implements TrustLogWriter.Sink {
+        final List<TblTaLog> taLogs = Collections.synchronizedList(new ArrayList<TblTaLog>());
+        final List<TblModuleManifestLog> moduleLogs = Collections.synchronizedList(new ArrayList<TblModuleManifestLog>());
+        final List<Integer> transactions = Collections.synchronizedList(new ArrayList<Integer>());
+        volatile String failingHost = null;
+
+        @Override
+        public void write(List<TblTaLog> taLogs, List<TblModuleManifestLog> moduleLogs) throws Exception {
+            for (TblTaLog taLog : taLogs) {
+                if (taLog.getHost_uuid_hex().equals(failingHost)) {
+                    throw new Exception("constraint violation");
+                }
+            }
+            this.taLogs.addAll(taLogs);
+            this.moduleLogs.addAll(moduleLogs);
+            transactions.add(taLogs.size());
+        }
+    }
+
+    private TblTaLog createTaLog(String host, String pcr) {
+        TblTaLog taLog = new TblTaLog();
+        taLog.setHost_uuid_hex(host);
+        taLog.setManifestName(pcr);
+        return taLog;
+    }
+
+    private TrustLog createTrustLog(String host) {
+        TrustLog trustLog = new TrustLog();
+        trustLog.add(createTaLog(host, " "));
+        TblTaLog pcr = createTaLog(host, "18");
+        TblModuleManifestLog moduleLog = new TblModuleManifestLog();
+        moduleLog.setName("tbootxm-module");
+        moduleLog.setTaLogId(pcr);
+        trustLog.add(moduleLog);
+        trustLog.add(createTaLog(host, "19"));
+        return trustLog;
+    }
+
+    @Test
+    public void testRecordsComparedByIdentity() {
+        TrustLog trustLog = createTrustLog("host1");
+        assertEquals(3, trustLog.getTaLogs().size());
+        TblTaLog pcr = trustLog.getTaLogs().get(1);
+        trustLog.add(pcr);
+        assertEquals(3, trustLog.getTaLogs().size());
+        assertFalse(trustLog.contains(createTaLog("host1", "18")));
+        assertNotNull(trustLog.findModuleLog(pcr, "tbootxm-module"));
+        assertNull(trustLog.findModuleLog(pcr, "module"));
+        assertNull(trustLog.findModuleLog(trustLog.getTaLogs().get(2), "tbootxm-module"));
+    }
+
+    @Test
+    public void testWriteOnCaller() throws Exception {
+        ListSink sink = new ListSink();
+        TrustLogWriter writer = new TrustLogWriter(sink);
+        writer.write(createTrustLog("host1"));
+        writer.write(new TrustLog());
+        assertEquals(3, sink.taLogs.size());
+        assertEquals(1, sink.moduleLogs.size());
+        assertEquals(1, writer.getFlushCount());
+        assertEquals(4, writer.getRowCount());
+    }
+
+    @Test
+    public void testWriteBehindGroupsAttestations() throws Exception {
+        ListSink sink = new ListSink();
+        TrustLogWriter writer = new TrustLogWriter(sink, 100, 10, 200);
+        for (int i = 0; i < 10; i++) {
+            writer.write(createTrustLog("host" + i));
+        }
+        writer.shutdown(5000);
+        assertEquals(30, sink.taLogs.size());
+        assertEquals(10, sink.moduleLogs.size());
+        assertEquals(10, writer.getAttestationCount());
+        assertTrue(writer.getFlushCount() < 10);
+        assertEquals(0, writer.getQueueDepth());
+    }
+
+    @Test
+    public void testFailedBatchWrittenSeparately() throws Exception {
+        ListSink sink = new ListSink();
+        sink.failingHost = "host2";
+        TrustLogWriter writer = new TrustLogWriter(sink, 100, 10, 200);
+        for (int i = 0; i < 5; i++) {
+            writer.write(createTrustLog("host" + i));
+        }
+        writer.shutdown(5000);
+        assertEquals(12, sink.taLogs.size());
+        assertEquals(1, writer.getFailedCount());
+        assertEquals(4, writer.getAttestationCount());
+    }
+}
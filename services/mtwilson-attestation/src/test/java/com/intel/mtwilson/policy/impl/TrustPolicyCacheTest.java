@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.policy.impl;
+
+import com.intel.mtwilson.as.controller.MleWhitelistVersion;
+import com.intel.mtwilson.policy.HostReport;
+import com.intel.mtwilson.policy.Rule;
+import com.intel.mtwilson.policy.RuleResult;
+import java.util.HashSet;
+import java.util.Set;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class TrustPolicyCacheTest {
+
+    private static class TestRule implements Rule {
+        @Override
+        public RuleResult apply(HostReport hostReport) {
+            return null;
+        }
+
+        @Override
+        public String[] getMarkers() {
+            return new String[] { TrustMarker.BIOS.name() };
+        }
+    }
+
+    private Set<Rule> createRules() {
+        HashSet<Rule> rules = new HashSet<>();
+        rules.add(new TestRule());
+        return rules;
+    }
+
+    private TrustPolicyCache.Key createKey(Integer biosMleId, Integer vmmMleId) {
+        return new TrustPolicyCache.Key("intel", biosMleId, vmmMleId, "SHA1", false);
+    }
+
+    @Test
+    public void testSharedBetweenHostsWithSameMles() {
+        TrustPolicyCache cache = new TrustPolicyCache(10, 60000);
+        assertNull(cache.get(createKey(1, 2)));
+        Set<Rule> rules = cache.put(createKey(1, 2), createRules(), MleWhitelistVersion.get());
+        assertSame(rules, cache.get(createKey(1, 2)));
+        assertNull(cache.get(createKey(1, 3)));
+        assertNull(cache.get(new TrustPolicyCache.Key("intel", 1, 2, "SHA256", false)));
+        assertNull(cache.get(new TrustPolicyCache.Key("intel", 1, 2, "SHA1", true)));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testCachedRulesUnmodifiable() {
+        TrustPolicyCache cache = new TrustPolicyCache(10, 60000);
+        Set<Rule> rules = cache.put(createKey(1, null), createRules(), MleWhitelistVersion.get());
+        rules.add(new TestRule());
+    }
+
+    @Test
+    public void testWhitelistChangeInvalidates() {
+        TrustPolicyCache cache = new TrustPolicyCache(10, 60000);
+        cache.put(createKey(1, 2), createRules(), MleWhitelistVersion.get());
+        cache.putHostSpecific(createKey(1, 3), MleWhitelistVersion.get());
+        assertTrue(cache.isHostSpecific(createKey(1, 3)));
+        MleWhitelistVersion.increment();
+        assertNull(cache.get(createKey(1, 2)));
+        assertFalse(cache.isHostSpecific(createKey(1, 3)));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testNotCachedWhenWhitelistChangesDuringLoad() {
+        TrustPolicyCache cache = new TrustPolicyCache(10, 60000);
+        long version = MleWhitelistVersion.get();
+        MleWhitelistVersion.increment();
+        assertNotNull(cache.put(createKey(1, 2), createRules(), version));
+        assertNull(cache.get(createKey(1, 2)));
+    }
+
+    @Test
+    public void testExpired() throws InterruptedException {
+        TrustPolicyCache cache = new TrustPolicyCache(10, 20);
+        cache.put(createKey(1, 2), createRules(), MleWhitelistVersion.get());
+        Thread.sleep(50);
+        assertNull(cache.get(createKey(1, 2)));
+    }
+
+    @Test
+    public void testBounded() {
+        TrustPolicyCache cache = new TrustPolicyCache(2, 60000);
+        cache.put(createKey(1, 1), createRules(), MleWhitelistVersion.get());
+        cache.put(createKey(1, 2), createRules(), MleWhitelistVersion.get());
+        cache.put(createKey(1, 3), createRules(), MleWhitelistVersion.get());
+        assertEquals(2, cache.size());
+        assertNull(cache.get(createKey(1, 3)));
+    }
+}
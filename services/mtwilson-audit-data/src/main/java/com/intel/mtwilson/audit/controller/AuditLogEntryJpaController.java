@@ -8,6 +8,10 @@ import com.intel.mtwilson.audit.controller.exceptions.AuditDataException;
 import com.intel.mtwilson.audit.controller.exceptions.NonexistentEntityException;
 import com.intel.mtwilson.audit.data.AuditLogEntry;
 import java.io.Serializable;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.List;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
@@ -52,6 +56,42 @@ public class AuditLogEntryJpaController implements Serializable {
         }
     }
 
+    /**
+     * Inserts the entries with a single JDBC batch in one transaction.
+     * EclipseLink does not batch inserts of entities with IDENTITY ids, so
+     * the statement is written here instead of persisting each entity; the
+     * generated ids are not set on the entries.
+     *
+     * @param auditLogEntries
+     * @throws SQLException
+     */
+    public void createAll(List<AuditLogEntry> auditLogEntries) throws SQLException {
+        EntityManager em = getEntityManager();
+        try {
+            em.getTransaction().begin();
+            Connection connection = em.unwrap(Connection.class);
+            try (PreparedStatement statement = connection.prepareStatement("INSERT INTO mw_audit_log_entry (transaction_id, entity_id, create_dt, entity_type, finger_print, action, data) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+                for (AuditLogEntry auditLogEntry : auditLogEntries) {
+                    statement.setString(1, auditLogEntry.getTransactionId());
+                    statement.setInt(2, auditLogEntry.getEntityId());
+                    statement.setTimestamp(3, auditLogEntry.getCreateDt() == null ? null : new Timestamp(auditLogEntry.getCreateDt().getTime()));
+                    statement.setString(4, auditLogEntry.getEntityType());
+                    statement.setString(5, auditLogEntry.getFingerPrint());
+                    statement.setString(6, auditLogEntry.getAction());
+                    statement.setString(7, auditLogEntry.getData());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            em.getTransaction().commit();
+        } finally {
+            if (em.getTransaction().isActive()) {
+                em.getTransaction().rollback();
+            }
+            em.close();
+        }
+    }
+
     public void edit(AuditLogEntry auditLogEntry) throws NonexistentEntityException, AuditDataException {
         EntityManager em = getEntityManager();
         try {
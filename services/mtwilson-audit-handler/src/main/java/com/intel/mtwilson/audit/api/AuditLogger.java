@@ -5,11 +5,12 @@
 package com.intel.mtwilson.audit.api;
 
 import com.intel.mtwilson.audit.api.worker.AuditAsyncWorker;
+import com.intel.mtwilson.audit.api.worker.AuditSyncWorker;
 import com.intel.mtwilson.audit.helper.AuditHandlerException;
 import com.intel.mtwilson.audit.data.AuditContext;
 import com.intel.mtwilson.audit.data.AuditLog;
 import com.intel.mtwilson.audit.data.AuditLogEntry;
-//import com.intel.mtwilson.audit.helper.AuditConfig;
+import com.intel.mtwilson.audit.helper.AuditConfig;
 import com.intel.mtwilson.audit.helper.MtWilsonThreadLocal;
 
 import java.util.Date;
@@ -85,7 +86,10 @@ public class AuditLogger {
 
     private AuditWorker getAuditWorker() throws NamingException {
         
-        return new AuditAsyncWorker();
+        if(AuditConfig.isAsyncEnabled()) {
+            return new AuditAsyncWorker();
+        }
+        return new AuditSyncWorker();
 //        if(isAsyncEnabled){
 //        	
 //            return (AuditWorker) new InitialContext().lookup(AUDIT_LOGGER_JNDI);
@@ -5,14 +5,11 @@
 package com.intel.mtwilson.audit.api.worker;
 
 import com.intel.mtwilson.audit.api.AuditWorker;
-import com.intel.mtwilson.audit.controller.AuditLogEntryJpaController;
 import com.intel.mtwilson.audit.data.AuditLogEntry;
 import com.intel.mtwilson.audit.helper.AuditHandlerException;
-import com.intel.mtwilson.audit.helper.AuditPersistenceManager;
 //import javax.ejb.Asynchronous;
 //import javax.ejb.LocalBean;
 //import javax.ejb.Stateless;
-import javax.persistence.EntityManagerFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -24,17 +21,15 @@ import org.slf4j.LoggerFactory;
 //@LocalBean
 public class AuditAsyncWorker implements AuditWorker{
     private Logger logger = LoggerFactory.getLogger(getClass().getName());
-    
-    private static AuditPersistenceManager persistenceManager = new AuditPersistenceManager();
 
+    /**
+     * Queues the entry for the background writer; see AuditLogWriter for the
+     * batching and overflow settings.
+     */
     @Override
 //    @Asynchronous
     public void addLog(AuditLogEntry log) throws AuditHandlerException {
-        logger.debug("Creating the log entry" );
-        AuditLogEntryJpaController controller = new AuditLogEntryJpaController(null,getEntityManagerFactory() );
-        controller.create(log);
-    }
-    private EntityManagerFactory getEntityManagerFactory() {
-        return persistenceManager.getEntityManagerFactory("AuditDataPU");
+        logger.debug("Queueing the log entry" );
+        AuditLogWriter.getInstance().add(log);
     }
 }
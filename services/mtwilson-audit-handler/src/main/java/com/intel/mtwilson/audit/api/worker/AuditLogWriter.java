@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.audit.api.worker;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.intel.mtwilson.Folders;
+import com.intel.mtwilson.My;
+import com.intel.mtwilson.audit.controller.AuditLogEntryJpaController;
+import com.intel.mtwilson.audit.data.AuditLogEntry;
+import com.intel.mtwilson.audit.helper.AuditPersistenceManager;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.configuration.Configuration;
+
+/**
+ * Writes audit log entries to the database from a background thread so that
+ * audited requests do not wait for an insert and a transaction of their
+ * own.
+ *
+ * Entries are added to a bounded queue and written in batches of up to
+ * mtwilson.audit.batch.size entries, at least every
+ * mtwilson.audit.flush.interval.ms milliseconds when there is anything to
+ * write. When the queue is full the mtwilson.audit.overflow policy applies:
+ * "block" waits for room, "drop-oldest" discards the oldest queued entry,
+ * and "spill" appends the entry to mtwilson.audit.spill.file, which is
+ * written to the database when the queue is empty again. A batch that
+ * cannot be written is also spilled when the policy is "spill".
+ *
+ * Configuration:
+ * mtwilson.audit.queue.size (default 10000)
+ * mtwilson.audit.batch.size (default 100)
+ * mtwilson.audit.flush.interval.ms (default 1000)
+ * mtwilson.audit.overflow (default block)
+ * mtwilson.audit.spill.file (default audit-spill.json in the log directory)
+ */
+public class AuditLogWriter {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(AuditLogWriter.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    public static enum Overflow { BLOCK, DROP_OLDEST, SPILL }
+
+    /**
+     * Writes a batch of entries to persistent storage.
+     */
+    public static interface Sink {
+        void write(List<AuditLogEntry> entries) throws Exception;
+    }
+
+    private final ArrayBlockingQueue<AuditLogEntry> queue;
+    private final Sink sink;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final Overflow overflow;
+    private final File spillFile;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Object spillLock = new Object();
+    private final AtomicLong added = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private volatile long lastWriteLagMillis = 0;
+    private volatile boolean running = true;
+    private final Thread thread;
+
+    public AuditLogWriter(Sink sink, int capacity, int batchSize, long flushIntervalMillis, Overflow overflow, File spillFile) {
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.overflow = overflow;
+        this.spillFile = spillFile;
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainLoop();
+            }
+        }, "audit-log-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public static AuditLogWriter getInstance() {
+        return AuditLogWriterHolder.instance;
+    }
+
+    /**
+     * Queues the entry to be written. Depending on the overflow policy this
+     * method may block when the queue is full.
+     *
+     * @param entry
+     */
+    public void add(AuditLogEntry entry) {
+        added.incrementAndGet();
+        if (queue.offer(entry)) {
+            return;
+        }
+        switch (overflow) {
+            case DROP_OLDEST:
+                while (!queue.offer(entry)) {
+                    if (queue.poll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                }
+                break;
+            case SPILL:
+                spill(Collections.singletonList(entry));
+                break;
+            default:
+                try {
+                    queue.put(entry);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.incrementAndGet();
+                    log.warn("Interrupted while waiting to queue audit log entry; entry dropped");
+                }
+        }
+    }
+
+    private void drainLoop() {
+        ArrayList<AuditLogEntry> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                AuditLogEntry first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    replaySpill();
+                    continue;
+                }
+                batch.add(first);
+                // wait up to the flush interval for a full batch so that a steady trickle of entries is still written in batches
+                long deadline = System.currentTimeMillis() + flushIntervalMillis;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (batch.size() >= batchSize || remaining <= 0 || !running) {
+                        break;
+                    }
+                    AuditLogEntry next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (RuntimeException e) {
+                log.error("Audit log writer error: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<AuditLogEntry> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            sink.write(batch);
+            written.addAndGet(batch.size());
+            batches.incrementAndGet();
+            if (batch.get(0).getCreateDt() != null) {
+                lastWriteLagMillis = System.currentTimeMillis() - batch.get(0).getCreateDt().getTime();
+            }
+            log.trace("performance: wrote {} audit log entries in {}ms", batch.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("Cannot write {} audit log entries: {}", batch.size(), e.getMessage(), e);
+            if (overflow == Overflow.SPILL) {
+                spill(batch);
+            } else {
+                failed.addAndGet(batch.size());
+            }
+        }
+    }
+
+    private void spill(List<AuditLogEntry> entries) {
+        synchronized (spillLock) {
+            try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile, true), UTF8))) {
+                for (AuditLogEntry entry : entries) {
+                    out.write(mapper.writeValueAsString(entry));
+                    out.newLine();
+                }
+                spilled.addAndGet(entries.size());
+            } catch (IOException e) {
+                failed.addAndGet(entries.size());
+                log.error("Cannot spill {} audit log entries to {}: {}", entries.size(), spillFile.getAbsolutePath(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes spilled entries to the database. Called by the writer thread
+     * when the queue is empty.
+     */
+    private void replaySpill() {
+        if (spillFile == null || !spillFile.exists()) {
+            return;
+        }
+        File replayFile = new File(spillFile.getAbsolutePath() + ".replay");
+        synchronized (spillLock) {
+            if (!replayFile.exists() && !spillFile.renameTo(replayFile)) {
+                log.error("Cannot rename audit spill file {}", spillFile.getAbsolutePath());
+                return;
+            }
+        }
+        ArrayList<AuditLogEntry> batch = new ArrayList<>(batchSize);
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(replayFile), UTF8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                AuditLogEntry entry = mapper.readValue(line, AuditLogEntry.class);
+                entry.setId(null);
+                batch.add(entry);
+                if (batch.size() >= batchSize) {
+                    sink.write(batch);
+                    written.addAndGet(batch.size());
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                sink.write(batch);
+                written.addAndGet(batch.size());
+            }
+        } catch (Exception e) {
+            // the remaining entries stay in the replay file and are written on the next attempt; entries already written may be written again
+            log.error("Cannot write spilled audit log entries from {}: {}", replayFile.getAbsolutePath(), e.getMessage());
+            return;
+        }
+        if (!replayFile.delete()) {
+            log.error("Cannot delete audit spill file {}", replayFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Stops accepting new work and waits for the queued entries to be
+     * written.
+     *
+     * @param timeoutMillis
+     * @throws InterruptedException
+     */
+    public void shutdown(long timeoutMillis) throws InterruptedException {
+        running = false;
+        thread.join(timeoutMillis);
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     *
+     * @return age in milliseconds of the oldest entry waiting to be written, or 0 if the queue is empty
+     */
+    public long getQueueLagMillis() {
+        AuditLogEntry oldest = queue.peek();
+        if (oldest == null || oldest.getCreateDt() == null) {
+            return 0;
+        }
+        return System.currentTimeMillis() - oldest.getCreateDt().getTime();
+    }
+
+    /**
+     *
+     * @return time in milliseconds between creating and writing the first entry of the most recent batch
+     */
+    public long getLastWriteLagMillis() {
+        return lastWriteLagMillis;
+    }
+
+    public long getAddedCount() {
+        return added.get();
+    }
+
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getSpilledCount() {
+        return spilled.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AuditLogWriter[depth=%d, lag=%dms, added=%d, written=%d, batches=%d, dropped=%d, spilled=%d, failed=%d]", getQueueDepth(), getQueueLagMillis(), getAddedCount(), getWrittenCount(), getBatchCount(), getDroppedCount(), getSpilledCount(), getFailedCount());
+    }
+
+    private static class JpaControllerSink implements Sink {
+        private final AuditPersistenceManager persistenceManager = new AuditPersistenceManager();
+
+        @Override
+        public void write(List<AuditLogEntry> entries) throws SQLException {
+            AuditLogEntryJpaController controller = new AuditLogEntryJpaController(null, persistenceManager.getEntityManagerFactory("AuditDataPU"));
+            controller.createAll(entries);
+        }
+    }
+
+    private static class AuditLogWriterHolder {
+        private static final AuditLogWriter instance = createInstance();
+
+        private static AuditLogWriter createInstance() {
+            Configuration configuration = My.configuration().getConfiguration();
+            int capacity = configuration.getInt("mtwilson.audit.queue.size", 10000);
+            int batchSize = configuration.getInt("mtwilson.audit.batch.size", 100);
+            long flushInterval = configuration.getLong("mtwilson.audit.flush.interval.ms", 1000);
+            Overflow overflow = Overflow.valueOf(configuration.getString("mtwilson.audit.overflow", "block").trim().toUpperCase().replace('-', '_'));
+            File spillFile = new File(configuration.getString("mtwilson.audit.spill.file", Folders.log() + File.separator + "audit-spill.json"));
+            log.debug("Creating audit log writer with queue size {} batch size {} flush interval {}ms overflow {}", capacity, batchSize, flushInterval, overflow);
+            final AuditLogWriter writer = new AuditLogWriter(new JpaControllerSink(), capacity, batchSize, flushInterval, overflow, spillFile);
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        writer.shutdown(5000);
+                    } catch (InterruptedException e) {
+                        log.warn("Interrupted while writing queued audit log entries");
+                    }
+                }
+            }, "audit-log-writer-shutdown"));
+            return writer;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.audit.api.worker;
+
+import com.intel.mtwilson.audit.data.AuditLogEntry;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class AuditLogWriterTest {
+
+    private static class ListSink implements AuditLogWriter.Sink {
+        final List<AuditLogEntry> entries = Collections.synchronizedList(new ArrayList<AuditLogEntry>());
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+        final Semaphore written = new Semaphore(0); // one permit per written entry
+        final CountDownLatch failed = new CountDownLatch(1);
+        volatile boolean failing = false;
+
+        @Override
+        public void write(List<AuditLogEntry> batch) throws Exception {
+            if (failing) {
+                failed.countDown();
+                throw new Exception("database unavailable");
+            }
+            entries.addAll(batch);
+            batchSizes.add(batch.size());
+            written.release(batch.size());
+        }
+    }
+
+    /**
+     * Blocks the writer thread until released so the queue can be filled.
+     */
+    private static class BlockedSink extends ListSink {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void write(List<AuditLogEntry> batch) throws Exception {
+            entered.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            super.write(batch);
+        }
+    }
+
+    private AuditLogEntry createEntry(String action) {
+        AuditLogEntry entry = new AuditLogEntry();
+        entry.setAction(action);
+        entry.setEntityId(1);
+        entry.setEntityType("test");
+        entry.setCreateDt(new Date());
+        return entry;
+    }
+
+    private File createSpillFile() throws IOException {
+        File file = File.createTempFile("audit-spill", ".json");
+        file.delete();
+        file.deleteOnExit();
+        new File(file.getAbsolutePath() + ".replay").deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void testEntriesWrittenInBatches() throws Exception {
+        ListSink sink = new ListSink();
+        AuditLogWriter writer = new AuditLogWriter(sink, 100, 10, 50, AuditLogWriter.Overflow.BLOCK, createSpillFile());
+        for (int i = 0; i < 25; i++) {
+            writer.add(createEntry("add" + i));
+        }
+        writer.shutdown(5000);
+        assertEquals(25, sink.entries.size());
+        assertEquals("add0", sink.entries.get(0).getAction());
+        assertEquals(25, writer.getWrittenCount());
+        for (Integer size : sink.batchSizes) {
+            assertTrue(size <= 10);
+        }
+        assertEquals(0, writer.getQueueDepth());
+    }
+
+    @Test
+    public void testDropOldestWhenFull() throws Exception {
+        BlockedSink sink = new BlockedSink();
+        AuditLogWriter writer = new AuditLogWriter(sink, 5, 1, 50, AuditLogWriter.Overflow.DROP_OLDEST, createSpillFile());
+        writer.add(createEntry("first"));
+        assertTrue(sink.entered.await(5, TimeUnit.SECONDS)); // the writer thread took the first entry and waits in the sink
+        for (int i = 0; i < 10; i++) {
+            writer.add(createEntry("add" + i));
+        }
+        assertEquals(5, writer.getQueueDepth());
+        assertEquals(5, writer.getDroppedCount());
+        sink.release.countDown();
+        writer.shutdown(5000);
+        assertEquals(6, sink.entries.size());
+        assertEquals("add5", sink.entries.get(1).getAction());
+    }
+
+    @Test
+    public void testSpillWhenFullAndReplay() throws Exception {
+        BlockedSink sink = new BlockedSink();
+        File spillFile = createSpillFile();
+        AuditLogWriter writer = new AuditLogWriter(sink, 2, 1, 50, AuditLogWriter.Overflow.SPILL, spillFile);
+        writer.add(createEntry("first"));
+        assertTrue(sink.entered.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            writer.add(createEntry("add" + i));
+        }
+        assertEquals(3, writer.getSpilledCount());
+        assertTrue(spillFile.exists());
+        sink.release.countDown();
+        // the queued entries and then the spilled entries are written
+        assertTrue(sink.written.tryAcquire(6, 5, TimeUnit.SECONDS));
+        writer.shutdown(5000);
+        assertEquals(6, sink.entries.size());
+        assertFalse(spillFile.exists());
+    }
+
+    @Test
+    public void testFailedBatchSpilled() throws Exception {
+        ListSink sink = new ListSink();
+        sink.failing = true;
+        File spillFile = createSpillFile();
+        AuditLogWriter writer = new AuditLogWriter(sink, 10, 10, 50, AuditLogWriter.Overflow.SPILL, spillFile);
+        writer.add(createEntry("add"));
+        assertTrue(sink.failed.await(5, TimeUnit.SECONDS));
+        sink.failing = false;
+        // the failed batch is spilled and written again when the queue is empty
+        assertTrue(sink.written.tryAcquire(1, 5, TimeUnit.SECONDS));
+        writer.shutdown(5000);
+        assertEquals(1, writer.getSpilledCount());
+        assertEquals(1, sink.entries.size());
+        assertEquals("add", sink.entries.get(0).getAction());
+    }
+}
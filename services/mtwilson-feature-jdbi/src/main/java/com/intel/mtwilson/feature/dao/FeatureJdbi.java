@@ -4,9 +4,7 @@
  */
 package com.intel.mtwilson.feature.dao;
 
-import com.intel.dcsg.cpg.jpa.PersistenceManager;
-import com.intel.mtwilson.My;
-import com.intel.mtwilson.MyPersistenceManager;
+import com.intel.mtwilson.MyDataSource;
 import com.intel.mtwilson.feature.dao.jdbi.FeaturePermissionDAO;
 import java.io.IOException;
 import java.sql.SQLException;
@@ -19,10 +17,11 @@ public class FeatureJdbi {
 
     private static Logger log = LoggerFactory.getLogger(FeatureJdbi.class);
     public static DataSource ds = null;
+    private static volatile DBI dbi = null;
     
     synchronized public static void createDataSource() throws IOException {
         if( ds == null ) {
-            ds = PersistenceManager.createDataSource(MyPersistenceManager.getASDataJpaProperties(My.configuration()));
+            ds = MyDataSource.getASData();
        }
     }
 
@@ -38,9 +37,19 @@ public class FeatureJdbi {
         return ds;
     }
 
+    private static DBI getDBI() throws SQLException {
+        if (dbi == null) {
+            synchronized (FeatureJdbi.class) {
+                if (dbi == null) {
+                    dbi = new DBI(getDataSource());
+                }
+            }
+        }
+        return dbi;
+    }
+
     public static FeaturePermissionDAO featurePermissionDao() throws SQLException {
-        DBI dbi = new DBI(getDataSource());
-        return dbi.open(FeaturePermissionDAO.class);
+        return getDBI().open(FeaturePermissionDAO.class);
     }
 
 }
@@ -73,6 +73,7 @@ public class HostAgentFactory {
      */
     public HostAgent getHostAgent(TblHosts host) {
         // debug only
+        if( log.isDebugEnabled() ) {
         try {
         ObjectMapper mapper = new ObjectMapper();
 //        log.debug("getHostAgent TblHosts: {}", mapper.writeValueAsString(host)); // infinite recursion because of the automatic database links, tblHosts -> tblSamlAssertionCollection -> first item -> tblHosts again
@@ -81,6 +82,7 @@ public class HostAgentFactory {
         log.debug("getHostAgent TblHosts tlsPolicyName (deprecated): {}", host.getTlsPolicyName());
         log.debug("getHostAgent TblHosts tlsKeystore (deprecated): {} bytes", (host.getTlsKeystore()==null?"null":host.getTlsKeystore().length));
         } catch(Exception e) { log.error("getHostAgent cannot serialize TblHosts" ,e); }
+        }
         // debug only
         
         return getHostAgent(convert(host));
@@ -10,18 +10,33 @@ import org.apache.commons.pool.BaseKeyedPoolableObjectFactory;
 /**
  * The IntelClientFactory creates TrustAgentSecureClient instances. The 
  * TrustAgentSecureClient does not have a connect() or disconnect() method.
- * It creates a new connection for every call. This may be changed in a
- * future release.
+ * It creates a new connection for every call because the trust agent v1
+ * protocol sends one request per connection, but it reuses its TLS session
+ * so that only the first connection does a full handshake.
  * 
- * See also KeyedPoolableObjectFactory in Apache Commons Pool
+ * See also KeyedPoolableObjectFactory in Apache Commons Pool and
+ * TrustAgentClientPool
  * 
  * @author jbuhacoff
  */
 public class IntelClientFactory extends BaseKeyedPoolableObjectFactory<TlsConnection,TrustAgentSecureClient> {
+    private final int maxConnectionsPerHost;
+    
+    public IntelClientFactory() {
+        this(0);
+    }
+    
+    /**
+     * 
+     * @param maxConnectionsPerHost maximum number of concurrent connections each client will open, or 0 for no limit
+     */
+    public IntelClientFactory(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
     
     @Override
     public TrustAgentSecureClient makeObject(TlsConnection tlsConnection)  {
-        TrustAgentSecureClient client = new TrustAgentSecureClient(tlsConnection); // client has to parse the string to get ip address and port for trust agent. 
+        TrustAgentSecureClient client = new TrustAgentSecureClient(tlsConnection, maxConnectionsPerHost); // client has to parse the string to get ip address and port for trust agent. 
         return client;
     }
     
@@ -80,12 +80,12 @@ public class IntelHostAgentFactory implements VendorHostAgentFactory {
                     log.debug("Rewritten intel host url: {}", url.toExternalForm());
                 }
                 
-                TrustAgentClient client = new TrustAgentClient(properties, new TlsConnection(url, tlsPolicy));
+                TrustAgentClient client = TrustAgentClientPool.getOrCreateClient(properties, new TlsConnection(url, tlsPolicy));
                 return new IntelHostAgent2(client, hostAddress);
             }
             else /*if( url.getPort() == 9999 )*/ {
                 // assume trust agent v1
-                TrustAgentSecureClient client = new TrustAgentSecureClient(new TlsConnection(url, tlsPolicy));
+                TrustAgentSecureClient client = TrustAgentClientPool.getOrCreateSecureClient(new TlsConnection(url, tlsPolicy));
                 log.debug("Creating IntelHostAgent v1 for host {}", hostAddress); // removed  vendorConnectionString to prevent leaking secrets  with connection string {}
                 return new IntelHostAgent(client, hostAddress);
             }
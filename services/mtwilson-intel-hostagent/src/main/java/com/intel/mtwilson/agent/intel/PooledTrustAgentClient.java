@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.agent.intel;
+
+import com.intel.dcsg.cpg.io.UUID;
+import com.intel.dcsg.cpg.tls.policy.TlsConnection;
+import com.intel.mountwilson.as.common.ASConfig;
+import com.intel.mountwilson.as.common.ASException;
+import com.intel.mtwilson.i18n.ErrorCode;
+import com.intel.mtwilson.trustagent.client.jaxrs.TrustAgentClient;
+import com.intel.mtwilson.trustagent.model.HostInfo;
+import com.intel.mtwilson.trustagent.model.TpmQuoteResponse;
+import com.intel.mtwilson.trustagent.model.VMAttestationRequest;
+import com.intel.mtwilson.trustagent.model.VMAttestationResponse;
+import com.intel.mtwilson.trustagent.model.VMQuoteResponse;
+import java.net.URL;
+import java.security.cert.X509Certificate;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A trust agent v2 client shared by the TrustAgentClientPool. Like the v1
+ * TrustAgentSecureClient it limits the number of concurrent requests to
+ * the trust agent, so that its jersey client does not open more than that
+ * many connections to the host. A request that cannot start within the
+ * trust agent timeout fails.
+ *
+ * The pool closes the client when it is evicted. If requests are in
+ * progress at that time, the jersey client is closed when the last of them
+ * returns.
+ */
+public class PooledTrustAgentClient extends TrustAgentClient {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(PooledTrustAgentClient.class);
+    private static final int TIME_OUT = ASConfig.getTrustAgentTimeOutinMilliSecs();
+    private final URL url;
+    private final Semaphore permits; // null if the number of concurrent requests is not limited
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+    private volatile boolean closing = false;
+
+    /**
+     *
+     * @param properties
+     * @param tlsConnection
+     * @param maxConnections maximum number of concurrent requests to the trust agent, or 0 for no limit
+     * @throws Exception
+     */
+    public PooledTrustAgentClient(Properties properties, TlsConnection tlsConnection, int maxConnections) throws Exception {
+        super(properties, tlsConnection);
+        this.url = tlsConnection.getURL();
+        this.permits = maxConnections > 0 ? new Semaphore(maxConnections, true) : null;
+    }
+
+    private void acquire() {
+        if (permits != null) {
+            try {
+                if (!permits.tryAcquire(TIME_OUT, TimeUnit.MILLISECONDS)) {
+                    throw new ASException(ErrorCode.AS_TRUST_AGENT_CONNNECT_TIMED_OUT, url.getHost(), url.getPort(), (TIME_OUT / 1000));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting to connect to " + url.getHost(), e);
+            }
+        }
+        requests.incrementAndGet();
+    }
+
+    private void release() {
+        if (permits != null) {
+            permits.release();
+        }
+        if (requests.decrementAndGet() == 0 && closing) {
+            closeClient();
+        }
+    }
+
+    /**
+     * Closes the jersey client now, or when the requests in progress return.
+     */
+    public void close() {
+        closing = true;
+        if (requests.get() == 0) {
+            closeClient();
+        }
+    }
+
+    private void closeClient() {
+        if (closed.compareAndSet(false, true)) {
+            try {
+                getClient().close();
+                log.debug("Closed trust agent client for {}", url.getHost());
+            } catch (RuntimeException e) {
+                log.warn("Cannot close trust agent client for {}: {}", url.getHost(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     *
+     * @return number of requests in progress
+     */
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    @Override
+    public X509Certificate getAik() {
+        acquire();
+        try {
+            return super.getAik();
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public X509Certificate getAikCa() {
+        acquire();
+        try {
+            return super.getAikCa();
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public HostInfo getHostInfo() {
+        acquire();
+        try {
+            return super.getHostInfo();
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public void writeTag(byte[] tag, UUID hardwareUuid) {
+        acquire();
+        try {
+            super.writeTag(tag, hardwareUuid);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public TpmQuoteResponse getTpmQuote(byte[] nonce, int[] pcrs) {
+        acquire();
+        try {
+            return super.getTpmQuote(nonce, pcrs);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public TpmQuoteResponse getTpmQuote(byte[] nonce, int[] pcrs, String pcrBank) {
+        acquire();
+        try {
+            return super.getTpmQuote(nonce, pcrs, pcrBank);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public TpmQuoteResponse getTpmQuote(byte[] nonce, int[] pcrs, String[] pcrBanks) {
+        acquire();
+        try {
+            return super.getTpmQuote(nonce, pcrs, pcrBanks);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public X509Certificate getBindingKeyCertificate() {
+        acquire();
+        try {
+            return super.getBindingKeyCertificate();
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public VMAttestationResponse getVMAttestationStatus(String vmInstanceId) {
+        acquire();
+        try {
+            return super.getVMAttestationStatus(vmInstanceId);
+        } finally {
+            release();
+        }
+    }
+
+    @Override
+    public VMQuoteResponse getVMAttestationReport(VMAttestationRequest obj) {
+        acquire();
+        try {
+            return super.getVMAttestationReport(obj);
+        } finally {
+            release();
+        }
+    }
+}
@@ -17,6 +17,7 @@ import java.net.UnknownHostException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.security.SignatureException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.regex.Pattern;
@@ -110,6 +111,8 @@ public class TAHelper {
     private String pcrNumberUntaint = "[^0-9]";
     private String pcrValueUntaint = "[^0-9a-fA-F]";
     private boolean quoteWithIPAddress = true; // to fix issue #1038 we use this secure default
+    private boolean quoteVerifyInProcess = true; // mtwilson.tpm.quote.verifier=java (default) verifies quotes in-process, mtwilson.tpm.quote.verifier=aikqverify runs the native aikqverify tool
+    private static final TpmQuoteVerifier quoteVerifier = new TpmQuoteVerifier();
 //	private EntityManagerFactory entityManagerFactory;
     private String trustedAik = null; // host's AIK in PEM format, for use in verifying quotes (caller retrieves it from database and provides it to us)
     private boolean deleteTemporaryFiles = true;  // normally we don't need to keep them around but during debugging it's helpful to set this to false
@@ -140,6 +143,12 @@ public class TAHelper {
             aikverifyCmd = aikverifyhomeBin + File.separator + config.getString("com.intel.mountwilson.as.aikqverify.cmd", "aikqverify.exe");
         }
         quoteWithIPAddress = My.configuration().getConfiguration().getBoolean("mtwilson.tpm.quote.ipv4", true); // issue #1038
+        // the in-process verifier only understands the linux trust agent quote formats, windows hosts always use the native tools
+        quoteVerifyInProcess = !isHostWindows && !"aikqverify".equalsIgnoreCase(My.configuration().getConfiguration().getString("mtwilson.tpm.quote.verifier", "java"));
+        if (quoteVerifyInProcess) {
+            log.debug("Using in-process quote verifier");
+            return; // aikqverify files are not needed
+        }
         boolean foundAllRequiredFiles = true;
         String required[] = new String[]{aikverifyCmd, aikverifyhomeData};
         for (String filename : required) {
@@ -207,6 +216,12 @@ public class TAHelper {
             aikverifyCmd = aikverifyhomeBin + File.separator + config.getString("com.intel.mountwilson.as.aikqverify.cmd", "aikqverify.exe");
         }
         quoteWithIPAddress = My.configuration().getConfiguration().getBoolean("mtwilson.tpm.quote.ipv4", true); // issue #1038
+        // the in-process verifier only understands the linux trust agent quote formats, windows hosts always use the native tools
+        quoteVerifyInProcess = !isHostWindows && !"aikqverify".equalsIgnoreCase(My.configuration().getConfiguration().getString("mtwilson.tpm.quote.verifier", "java"));
+        if (quoteVerifyInProcess) {
+            log.debug("Using in-process quote verifier");
+            return; // aikqverify files are not needed
+        }
         boolean foundAllRequiredFiles = true;
         String required[] = new String[]{aikverifyCmd, aikverifyhomeData};
         for (String filename : required) {
@@ -385,10 +400,6 @@ public class TAHelper {
     public PcrManifest getQuoteInformationForHost(String hostname, TrustAgentSecureClient client, Nonce challenge) throws NoSuchAlgorithmException, PropertyException, JAXBException,
             UnknownHostException, IOException, KeyManagementException, CertificateException, XMLStreamException {
         //  BUG #497  START CODE SNIPPET MOVED TO INTEL HOST AGENT
-        File q;
-        File n;
-        File c;
-        File r;
         byte[] nonce;
         if( challenge == null ) {
             nonce = generateNonce(); // 20 random bytes
@@ -408,8 +419,6 @@ public class TAHelper {
             }
             verifyNonce = ByteArray.concat(ByteArray.subarray(nonce, 0, 16), ipaddress);
         }
-        String verifyNonceBase64 = Base64.encodeBase64String(verifyNonce);
-
         String sessionId = generateSessionId();
 
         // FIrst let us ensure that we have an AIK cert created on the host before trying to retrieve the quote. The trust agent
@@ -424,29 +433,16 @@ public class TAHelper {
         String quote = clientRequestType.getQuote();
         log.debug("extracted quote from response: " + quote);
 
-        q = saveQuote(quote, sessionId);
-        log.debug("saved quote with session id: " + sessionId);
-
-        // we only need to save the certificate when registring the host ... when we are just getting a quote we need to verify it using the previously saved AIK.
+        // we only need to use the host-provided certificate when registring the host ... when we are just getting a quote we need to verify it using the previously saved AIK.
+        String aikCertificate;
         if (trustedAik == null) {
-            String aikCertificate = clientRequestType.getAikcert();
+            aikCertificate = clientRequestType.getAikcert();
             log.debug("extracted aik cert from response: " + aikCertificate);
-
-            c = saveCertificate(aikCertificate, sessionId);
-            log.debug("saved host-provided AIK certificate with session id: " + sessionId);
         } else {
-            c = saveCertificate(trustedAik, sessionId);
-            log.debug("saved database-provided trusted AIK certificate with session id: " + sessionId);
+            aikCertificate = trustedAik;
+            log.debug("using database-provided trusted AIK certificate");
         }
 
-        n = saveNonce(verifyNonceBase64, sessionId);
-
-        log.debug("saved nonce with session id: " + sessionId);
-
-        r = createRSAKeyFile(sessionId);
-
-        log.debug("created RSA key file for session id: " + sessionId);
-
         // Verify if there is TCBMeasurement Data. This data would be available if we are extending the root of trust to applications and data on the OS
         String tcbMeasurementString = clientRequestType.getTcbMeasurement();
         log.debug("TCB Measurement XML is {}", tcbMeasurementString);
@@ -454,8 +450,9 @@ public class TAHelper {
         log.debug("Event log: {}", clientRequestType.getEventLog()); // issue #879
         byte[] eventLogBytes = Base64.decodeBase64(clientRequestType.getEventLog());// issue #879
         log.debug("Decoded event log length: {}", eventLogBytes == null ? null : eventLogBytes.length);// issue #879
+        String decodedEventLog = null;
         if (eventLogBytes != null) { // issue #879
-            String decodedEventLog = new String(eventLogBytes);
+            decodedEventLog = new String(eventLogBytes);
             log.debug("Event log retrieved from the host consists of: " + decodedEventLog);
 
             /*
@@ -465,37 +462,17 @@ public class TAHelper {
              *          * </pre>
              *
              */
-
-            // Since we need to add the event log details into the pcrManifest, we will pass in that information to the below function
-            PcrManifest pcrManifest = verifyQuoteAndGetPcr(sessionId, decodedEventLog);
-            log.info("Got PCR map");
-            if (tcbMeasurementString != null && !tcbMeasurementString.isEmpty())
-                pcrManifest.setMeasurementXml(tcbMeasurementString);
-
-            //log.log(Level.INFO, "PCR map = "+pcrMap); // need to untaint this first
-            if (deleteTemporaryFiles) {
-                q.delete();
-                n.delete();
-                c.delete();
-                r.delete();
-            }
-            return pcrManifest;
-        } else {
-            PcrManifest pcrManifest = verifyQuoteAndGetPcr(sessionId, null); // verify the quote but don't add any event log info to the PcrManifest. // issue #879
-            log.info("Got PCR map");
-            if (tcbMeasurementString != null && !tcbMeasurementString.isEmpty())
-                pcrManifest.setMeasurementXml(tcbMeasurementString);
-
-            //log.log(Level.INFO, "PCR map = "+pcrMap); // need to untaint this first
-            if (deleteTemporaryFiles) {
-                q.delete();
-                n.delete();
-                c.delete();
-                r.delete();
-            }
-            return pcrManifest;
         }
 
+        // Since we need to add the event log details into the pcrManifest, we will pass in that information to the below function
+        // if there is no event log we verify the quote but don't add any event log info to the PcrManifest. // issue #879
+        PcrManifest pcrManifest = verifyQuoteAndGetPcr(sessionId, "1.2", Base64.decodeBase64(quote), verifyNonce, aikCertificate, decodedEventLog);
+        log.info("Got PCR map");
+        if (tcbMeasurementString != null && !tcbMeasurementString.isEmpty())
+            pcrManifest.setMeasurementXml(tcbMeasurementString);
+
+        //log.log(Level.INFO, "PCR map = "+pcrMap); // need to untaint this first
+        return pcrManifest;
     }
 
     public PcrManifest getQuoteInformationForHost(String hostname, TrustAgentClient client) throws NoSuchAlgorithmException, PropertyException, JAXBException,
@@ -509,10 +486,6 @@ public class TAHelper {
     public PcrManifest getQuoteInformationForHost(String hostname, TrustAgentClient client, Nonce challenge) throws NoSuchAlgorithmException, PropertyException, JAXBException,
             UnknownHostException, IOException, KeyManagementException, CertificateException, XMLStreamException {
         //  BUG #497  START CODE SNIPPET MOVED TO INTEL HOST AGENT
-        File q;
-        File n;
-        File c;
-        File r;
         byte[] nonce;        
         if( challenge == null ) {
             nonce = generateNonce(); // 20 random bytes
@@ -547,19 +520,14 @@ public class TAHelper {
 
         log.debug("extracted quote from response: {}", Base64.encodeBase64String(tpmQuoteResponse.quote));
 
-        q = saveQuote(tpmQuoteResponse.quote, sessionId);
-        log.debug("saved quote with session id: " + sessionId);
-
-        // we only need to save the certificate when registring the host ... when we are just getting a quote we need to verify it using the previously saved AIK.
+        // we only need to use the host-provided certificate when registring the host ... when we are just getting a quote we need to verify it using the previously saved AIK.
+        String aikCertificate;
         if (trustedAik == null) {
-            String aikCertificate = X509Util.encodePemCertificate(tpmQuoteResponse.aik);
+            aikCertificate = X509Util.encodePemCertificate(tpmQuoteResponse.aik);
             log.debug("extracted aik cert from response: " + aikCertificate);
-
-            c = saveCertificate(aikCertificate, sessionId);
-            log.debug("saved host-provided AIK certificate with session id: " + sessionId);
         } else {
-            c = saveCertificate(trustedAik, sessionId);
-            log.debug("saved database-provided trusted AIK certificate with session id: " + sessionId);
+            aikCertificate = trustedAik;
+            log.debug("using database-provided trusted AIK certificate");
         }
 
         // for Windows host, we generate a new nonce by sha1(nonce | tag)
@@ -568,14 +536,6 @@ public class TAHelper {
             log.debug("tpmQuoteResponse.isTagProvisioned is true");
             verifyNonce = Sha1Digest.digestOf(verifyNonce).extend(tpmQuoteResponse.assetTag).toByteArray();
         }
-        
-        n = saveNonce(verifyNonce, sessionId);
-
-        log.debug("saved nonce with session id: " + sessionId);
-
-        r = createRSAKeyFile(sessionId);
-
-        log.debug("created RSA key file for session id: " + sessionId);
 
         // Verify if there is TCBMeasurement Data. This data would be available if we are extending the root of trust to applications and data on the OS
         String tcbMeasurementString = tpmQuoteResponse.tcbMeasurement;
@@ -584,41 +544,21 @@ public class TAHelper {
         log.debug("Event log: {}", tpmQuoteResponse.eventLog); // issue #879
         byte[] eventLogBytes = Base64.decodeBase64(tpmQuoteResponse.eventLog);// issue #879
         log.debug("Decoded event log length: {}", eventLogBytes == null ? null : eventLogBytes.length);// issue #879
+        String decodedEventLog = null;
         if (eventLogBytes != null) { // issue #879
-            String decodedEventLog = new String(eventLogBytes);
+            decodedEventLog = new String(eventLogBytes);
             log.debug("Event log retrieved from the host consists of: " + decodedEventLog);
-
-            // Since we need to add the event log details into the pcrManifest, we will pass in that information to the below function
-            PcrManifest pcrManifest = verifyQuoteAndGetPcr(sessionId, decodedEventLog);
-            if (tcbMeasurementString != null && !tcbMeasurementString.isEmpty())
-                pcrManifest.setMeasurementXml(tcbMeasurementString);
-            log.info("Got PCR map");
-            //log.log(Level.INFO, "PCR map = "+pcrMap); // need to untaint this first
-            if (deleteTemporaryFiles) {
-                q.delete();
-                n.delete();
-                c.delete();
-                r.delete();
-            }
-            pcrManifest.setProvisionedTag(tpmQuoteResponse.assetTag);
-            return pcrManifest;
-        } else {
-            PcrManifest pcrManifest = verifyQuoteAndGetPcr(sessionId, null); // verify the quote but don't add any event log info to the PcrManifest. // issue #879
-            log.info("Got PCR map");
-            if (tcbMeasurementString != null && !tcbMeasurementString.isEmpty())
-                pcrManifest.setMeasurementXml(tcbMeasurementString);
-
-            //log.log(Level.INFO, "PCR map = "+pcrMap); // need to untaint this first
-            if (deleteTemporaryFiles) {
-                q.delete();
-                n.delete();
-                c.delete();
-                r.delete();
-            }
-            pcrManifest.setProvisionedTag(tpmQuoteResponse.assetTag);
-            return pcrManifest;
         }
 
+        // Since we need to add the event log details into the pcrManifest, we will pass in that information to the below function
+        // if there is no event log we verify the quote but don't add any event log info to the PcrManifest. // issue #879
+        PcrManifest pcrManifest = verifyQuoteAndGetPcr(sessionId, host.TpmVersion, tpmQuoteResponse.quote, verifyNonce, aikCertificate, decodedEventLog);
+        if (tcbMeasurementString != null && !tcbMeasurementString.isEmpty())
+            pcrManifest.setMeasurementXml(tcbMeasurementString);
+        log.info("Got PCR map");
+        //log.log(Level.INFO, "PCR map = "+pcrMap); // need to untaint this first
+        pcrManifest.setProvisionedTag(tpmQuoteResponse.assetTag);
+        return pcrManifest;
     }
 
     // hostName == internetAddress.toString() or Hostname.toString() or IPAddress.toString()
@@ -854,7 +794,58 @@ public class TAHelper {
         return "rsapubkey_" + sessionId + ".key";
     }
 
-    private PcrManifest verifyQuoteAndGetPcr(String sessionId, String eventLog) {
+    /**
+     * Verifies the quote and returns the quoted PCR values, with the event log
+     * (if provided) attached to the corresponding PCRs.
+     * 
+     * By default the quote is verified in-process by TpmQuoteVerifier; when 
+     * mtwilson.tpm.quote.verifier=aikqverify or the host is a Windows host
+     * the quote, nonce, and AIK are saved to the aikqverify data folder and
+     * the native aikqverify tool is used instead.
+     * 
+     * @param sessionId used to name the temporary files for the native tool
+     * @param tpmVersion "1.2" or "2.0"
+     * @param quote
+     * @param nonce the nonce the quote is expected to include
+     * @param aikCertificate PEM-encoded AIK certificate
+     * @param eventLog may be null
+     * @return 
+     */
+    private PcrManifest verifyQuoteAndGetPcr(String sessionId, String tpmVersion, byte[] quote, byte[] nonce, String aikCertificate, String eventLog) throws IOException, CertificateException {
+        PcrManifest pcrManifest;
+        if (quoteVerifyInProcess) {
+            log.debug("verifyQuoteAndGetPcr in-process for session {}", sessionId);
+            X509Certificate aikcert = X509Util.decodePemCertificate(aikCertificate);
+            try {
+                pcrManifest = quoteVerifier.verifyQuote(tpmVersion, quote, nonce, aikcert.getPublicKey());
+            } catch (SignatureException e) {
+                throw new ASException(e, ErrorCode.AS_HOST_TRUST_ERROR, e.getMessage());
+            }
+        } else {
+            File q = saveQuote(quote, sessionId);
+            log.debug("saved quote with session id: " + sessionId);
+            File c = saveCertificate(aikCertificate, sessionId);
+            log.debug("saved AIK certificate with session id: " + sessionId);
+            File n = saveNonce(nonce, sessionId);
+            log.debug("saved nonce with session id: " + sessionId);
+            File r = createRSAKeyFile(sessionId);
+            log.debug("created RSA key file for session id: " + sessionId);
+            try {
+                pcrManifest = runAikqverify(sessionId);
+            } finally {
+                if (deleteTemporaryFiles) {
+                    q.delete();
+                    n.delete();
+                    c.delete();
+                    r.delete();
+                }
+            }
+        }
+        addEventLogToPcrManifest(pcrManifest, eventLog);
+        return pcrManifest;
+    }
+
+    private PcrManifest runAikqverify(String sessionId) {
 //        HashMap<String,PcrManifest> pcrMp = new HashMap<String,PcrManifest>();        
         PcrManifest pcrManifest = new PcrManifest();
         log.debug("verifyQuoteAndGetPcr for session {}", sessionId);
@@ -913,6 +904,10 @@ public class TAHelper {
              */
         }
 
+        return pcrManifest;
+    }
+
+    private void addEventLogToPcrManifest(PcrManifest pcrManifest, String eventLog) {
         // Now that we captured the PCR details, we need to capture the module information also into the PcrManifest object
         // Sample Format:
         // <modules>
@@ -981,9 +976,6 @@ public class TAHelper {
                 throw new IllegalStateException("Invalid measurement log", ex);
             }
         }
-
-        return pcrManifest;
-
     }
 
     /**
@@ -0,0 +1,245 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.agent.intel;
+
+import com.intel.dcsg.cpg.crypto.DigestAlgorithm;
+import com.intel.mtwilson.model.PcrFactory;
+import com.intel.mtwilson.model.PcrIndex;
+import com.intel.mtwilson.model.PcrManifest;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Arrays;
+
+/**
+ * In-process equivalent of the native aikqverify / aikqverify2 tools.
+ *
+ * The quote, challenge and AIK public key are provided as byte arrays so
+ * the caller does not need to write them to the aikqverify data folder, and
+ * the PCR values are returned directly as a PcrManifest instead of being
+ * printed to stdout and parsed back.
+ *
+ * Quote formats are the same ones produced by the Linux trust agent and
+ * accepted by the native tools:
+ *
+ * TPM 1.2:  UINT16 selectLen | select | UINT32 pcrLen | pcr values | signature
+ * (big-endian, 20-byte SHA1 pcr values, signature over TPM_QUOTE_INFO)
+ *
+ * TPM 2.0:  UINT16 attestLen | TPMS_ATTEST | TPMT_SIGNATURE | pcr values
+ * (the attest length and the TPMT_SIGNATURE header are in the trust agent's
+ * native byte order which is little-endian, TPMS_ATTEST is big-endian)
+ *
+ * Windows quotes are not handled here; TAHelper uses the native tools for them.
+ *
+ * Instances are stateless and safe to share between threads.
+ */
+public class TpmQuoteVerifier {
+    private static final int SHA1_SIZE = 20;
+    private static final int SHA256_SIZE = 32;
+    private static final int MAX_BANKS = 3;
+    private static final int TPM_ALG_SHA1 = 0x0004;
+    private static final int TPM_ALG_SHA256 = 0x000B;
+    private static final byte[] TPM_QUOTE_INFO_HEADER = new byte[] { 1, 1, 0, 0, 'Q', 'U', 'O', 'T' };
+
+    /**
+     *
+     * @param tpmVersion "1.2" or "2.0"; null is treated as "1.2"
+     * @param quote the raw quote bytes as returned by the trust agent
+     * @param challenge the nonce bytes that the quote is expected to include (after any ip address or asset tag extension)
+     * @param aikPublicKey
+     * @return a PcrManifest containing the quoted PCR values
+     * @throws SignatureException if the quote signature is invalid or the quote does not include the challenge
+     */
+    public PcrManifest verifyQuote(String tpmVersion, byte[] quote, byte[] challenge, PublicKey aikPublicKey) throws SignatureException {
+        if( "2.0".equals(tpmVersion) ) {
+            return verifyTpm2Quote(quote, challenge, aikPublicKey);
+        }
+        return verifyTpm12Quote(quote, challenge, aikPublicKey);
+    }
+
+    public PcrManifest verifyTpm12Quote(byte[] quote, byte[] challenge, PublicKey aikPublicKey) throws SignatureException {
+        if (quote == null || quote.length < 2) {
+            throw new IllegalArgumentException("Input AIK quote incorrect format");
+        }
+        int selectLen = readUint16(quote, 0);
+        if (2 + selectLen + 4 > quote.length) {
+            throw new IllegalArgumentException("Input AIK quote incorrect format");
+        }
+        int selectOffset = 2;
+        long pcrLen = readUint32(quote, 2 + selectLen);
+        if (2 + selectLen + 4 + pcrLen + SHA1_SIZE > quote.length) {
+            throw new IllegalArgumentException("Input AIK quote incorrect format");
+        }
+        int pcrOffset = selectOffset + selectLen + 4;
+        int sigOffset = pcrOffset + (int) pcrLen;
+
+        // TPM_QUOTE_INFO = header | sha1(TPM_PCR_COMPOSITE) | sha1(challenge)
+        MessageDigest sha1 = newMessageDigest("SHA-1");
+        sha1.update(quote, 0, sigOffset);
+        byte[] compositeHash = sha1.digest();
+        byte[] challengeHash = challenge == null ? new byte[SHA1_SIZE] : sha1.digest(challenge);
+        byte[] quoteInfo = new byte[TPM_QUOTE_INFO_HEADER.length + SHA1_SIZE + SHA1_SIZE];
+        System.arraycopy(TPM_QUOTE_INFO_HEADER, 0, quoteInfo, 0, TPM_QUOTE_INFO_HEADER.length);
+        System.arraycopy(compositeHash, 0, quoteInfo, TPM_QUOTE_INFO_HEADER.length, SHA1_SIZE);
+        System.arraycopy(challengeHash, 0, quoteInfo, TPM_QUOTE_INFO_HEADER.length + SHA1_SIZE, SHA1_SIZE);
+
+        if (!verifySignature("SHA1withRSA", aikPublicKey, quoteInfo, 0, quoteInfo.length, quote, sigOffset, quote.length - sigOffset)) {
+            throw new SignatureException("Bad RSA signature in quote");
+        }
+
+        PcrManifest pcrManifest = new PcrManifest();
+        int pcri = 0;
+        for (int pcr = 0; pcr < 8 * selectLen; pcr++) {
+            if ((quote[selectOffset + pcr / 8] & (1 << (pcr % 8))) != 0) {
+                int valueOffset = pcrOffset + SHA1_SIZE * pcri;
+                if (valueOffset + SHA1_SIZE > sigOffset) {
+                    throw new IllegalArgumentException("Input AIK quote incorrect format");
+                }
+                pcrManifest.setPcr(PcrFactory.newInstance(DigestAlgorithm.SHA1, PcrIndex.valueOf(pcr), Arrays.copyOfRange(quote, valueOffset, valueOffset + SHA1_SIZE)));
+                pcri++;
+            }
+        }
+        return pcrManifest;
+    }
+
+    public PcrManifest verifyTpm2Quote(byte[] quote, byte[] challenge, PublicKey aikPublicKey) throws SignatureException {
+        try {
+            int quotedInfoLen = readUint16LittleEndian(quote, 0);
+            int quotedInfoOffset = 2;
+            // qualifiedSigner: skip the magic header and type
+            int index = quotedInfoOffset + 6;
+            int nameSize = readUint16(quote, index);
+            index += 2 + nameSize;
+            int nonceSize = readUint16(quote, index);
+            index += 2;
+            int nonceOffset = index;
+            index += nonceSize;
+            if (challenge != null) {
+                if (nonceSize < challenge.length || !regionEquals(quote, nonceOffset, challenge, 0, challenge.length)) {
+                    throw new SignatureException("Received nonce does not match the challenge");
+                }
+            }
+            index += 17; // TPMS_CLOCKINFO
+            index += 8; // firmware version
+            long pcrBankCount = readUint32(quote, index);
+            if (pcrBankCount > MAX_BANKS) {
+                throw new IllegalArgumentException(String.format("Number of PCR selection array in the quote is greater than %d", MAX_BANKS));
+            }
+            index += 4;
+            int[] bankAlg = new int[(int) pcrBankCount];
+            int[] selectSize = new int[(int) pcrBankCount];
+            int[] selectOffset = new int[(int) pcrBankCount];
+            for (int i = 0; i < pcrBankCount; i++) {
+                bankAlg[i] = readUint16(quote, index);
+                index += 2;
+                selectSize[i] = quote[index] & 0xff;
+                index += 1;
+                selectOffset[i] = index;
+                index += selectSize[i];
+            }
+            int digestSize = readUint16(quote, index);
+            index += 2;
+            int digestOffset = index;
+
+            // TPMT_SIGNATURE
+            int sigOffset = quotedInfoOffset + quotedInfoLen;
+            int sigHashAlg = readUint16LittleEndian(quote, sigOffset + 2);
+            int sigSize = readUint16LittleEndian(quote, sigOffset + 4);
+            int sigValueOffset = sigOffset + 6;
+            int pcrsOffset = sigValueOffset + sigSize;
+            if (pcrsOffset >= quote.length) {
+                throw new IllegalArgumentException("No PCR values included in quote");
+            }
+
+            String signatureAlgorithm = sigHashAlg == TPM_ALG_SHA1 ? "SHA1withRSA" : "SHA256withRSA";
+            if (!verifySignature(signatureAlgorithm, aikPublicKey, quote, quotedInfoOffset, quotedInfoLen, quote, sigValueOffset, sigSize)) {
+                throw new SignatureException("Bad RSA signature in quote");
+            }
+
+            // validate the pcr digest and collect the pcr values
+            PcrManifest pcrManifest = new PcrManifest();
+            MessageDigest sha256 = newMessageDigest("SHA-256");
+            int pcrPos = pcrsOffset;
+            int count = 0;
+            for (int j = 0; j < pcrBankCount; j++) {
+                int pcrSize;
+                DigestAlgorithm bank;
+                if (bankAlg[j] == TPM_ALG_SHA1) {
+                    pcrSize = SHA1_SIZE;
+                    bank = DigestAlgorithm.SHA1;
+                } else if (bankAlg[j] == TPM_ALG_SHA256) {
+                    pcrSize = SHA256_SIZE;
+                    bank = DigestAlgorithm.SHA256;
+                } else {
+                    throw new IllegalArgumentException(String.format("Not supported PCR bank (%02x) in quote", bankAlg[j]));
+                }
+                for (int pcr = 0; pcr < 8 * selectSize[j]; pcr++) {
+                    if ((quote[selectOffset[j] + pcr / 8] & (1 << (pcr % 8))) != 0) {
+                        if (pcrPos + pcrSize > quote.length) {
+                            throw new IllegalArgumentException("Input AIK quote incorrect format");
+                        }
+                        sha256.update(quote, pcrPos, pcrSize);
+                        pcrManifest.setPcr(PcrFactory.newInstance(bank, PcrIndex.valueOf(pcr), Arrays.copyOfRange(quote, pcrPos, pcrPos + pcrSize)));
+                        pcrPos += pcrSize;
+                        count++;
+                    }
+                }
+            }
+            if (count < 1) {
+                throw new IllegalArgumentException("No PCRs selected for quote");
+            }
+            byte[] pcrsDigest = sha256.digest();
+            if (digestSize > pcrsDigest.length || !regionEquals(pcrsDigest, 0, quote, digestOffset, digestSize)) {
+                throw new SignatureException("Concatenated PCR digest does not match the digest in quote");
+            }
+            return pcrManifest;
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Input AIK quote incorrect format", e);
+        }
+    }
+
+    private boolean verifySignature(String algorithm, PublicKey publicKey, byte[] data, int dataOffset, int dataLength, byte[] signature, int signatureOffset, int signatureLength) throws SignatureException {
+        try {
+            Signature verifier = Signature.getInstance(algorithm);
+            verifier.initVerify(publicKey);
+            verifier.update(data, dataOffset, dataLength);
+            return verifier.verify(signature, signatureOffset, signatureLength);
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new SignatureException("Cannot verify quote signature with " + algorithm, e);
+        }
+    }
+
+    private static MessageDigest newMessageDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(algorithm + " not available", e);
+        }
+    }
+
+    private static boolean regionEquals(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[aOffset + i] != b[bOffset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int readUint16(byte[] buffer, int offset) {
+        return ((buffer[offset] & 0xff) << 8) | (buffer[offset + 1] & 0xff);
+    }
+
+    private static int readUint16LittleEndian(byte[] buffer, int offset) {
+        return (buffer[offset] & 0xff) | ((buffer[offset + 1] & 0xff) << 8);
+    }
+
+    private static long readUint32(byte[] buffer, int offset) {
+        return ((long) (buffer[offset] & 0xff) << 24) | ((buffer[offset + 1] & 0xff) << 16) | ((buffer[offset + 2] & 0xff) << 8) | (buffer[offset + 3] & 0xff);
+    }
+}
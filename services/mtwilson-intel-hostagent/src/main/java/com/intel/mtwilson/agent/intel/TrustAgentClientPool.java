@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.agent.intel;
+
+import com.intel.dcsg.cpg.tls.policy.TlsConnection;
+import com.intel.dcsg.cpg.tls.policy.TlsPolicy;
+import com.intel.mtwilson.My;
+import com.intel.mtwilson.tls.policy.factory.TlsPolicyCache;
+import com.intel.mtwilson.trustagent.client.jaxrs.TrustAgentClient;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares trust agent clients between host agents so that repeated
+ * attestations of the same host reuse the client's TLS session and, for
+ * trust agent v2, the kept-alive HTTPS connections of its jersey client.
+ *
+ * Clients are keyed by trust agent URL, TLS policy, and for v2 the login
+ * properties. A TLS policy built by TlsPolicyFactory is compared by the
+ * digest of its descriptor, so a policy that is built again for the same
+ * host gets the same client; other TLS policies are compared by identity.
+ * Clients that have not been used within the idle timeout are evicted.
+ *
+ * The maximum number of concurrent connections per host is enforced by
+ * the v1 TrustAgentSecureClient and the v2 PooledTrustAgentClient. An
+ * evicted v2 client is closed, which closes the kept-alive connections of
+ * its jersey client.
+ *
+ * Configuration:
+ * mtwilson.trustagent.pool.enabled (default true)
+ * mtwilson.trustagent.pool.max (default 1000 clients)
+ * mtwilson.trustagent.pool.max.per.host (default 4 concurrent connections)
+ * mtwilson.trustagent.pool.idle.seconds (default 300)
+ *
+ * See also VMwareConnectionPool
+ */
+public class TrustAgentClientPool {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(TrustAgentClientPool.class);
+    private final IntelClientFactory factory;
+    private final int maxClients;
+    private final int maxConnectionsPerHost;
+    private final long idleTimeoutMillis;
+    private final ConcurrentHashMap<Key, Entry> pool = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile long lastSweep = System.currentTimeMillis();
+
+    public TrustAgentClientPool(int maxClients, int maxConnectionsPerHost, long idleTimeoutMillis) {
+        this.factory = new IntelClientFactory(maxConnectionsPerHost);
+        this.maxClients = maxClients;
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+    }
+
+    /**
+     *
+     * @return the shared pool, or null if mtwilson.trustagent.pool.enabled is false
+     */
+    public static TrustAgentClientPool getInstance() {
+        return TrustAgentClientPoolHolder.instance;
+    }
+
+    /**
+     *
+     * @param tlsConnection
+     * @return a shared client if the pool is enabled, otherwise a new client
+     */
+    public static TrustAgentSecureClient getOrCreateSecureClient(TlsConnection tlsConnection) {
+        TrustAgentClientPool pool = getInstance();
+        if (pool == null) {
+            return new TrustAgentSecureClient(tlsConnection);
+        }
+        return pool.getSecureClient(tlsConnection);
+    }
+
+    /**
+     *
+     * @param properties
+     * @param tlsConnection
+     * @return a shared client if the pool is enabled, otherwise a new client
+     * @throws Exception if the client cannot be created
+     */
+    public static TrustAgentClient getOrCreateClient(Properties properties, TlsConnection tlsConnection) throws Exception {
+        TrustAgentClientPool pool = getInstance();
+        if (pool == null) {
+            return new TrustAgentClient(properties, tlsConnection);
+        }
+        return pool.getClient(properties, tlsConnection);
+    }
+
+    private static class Key {
+        private final String url;
+        private final Object tlsPolicyKey;
+        private final Properties properties;
+
+        private Key(String url, TlsPolicy tlsPolicy, Properties properties) {
+            this.url = url;
+            String digest = TlsPolicyCache.getDescriptorDigest(tlsPolicy);
+            this.tlsPolicyKey = digest == null ? tlsPolicy : digest;
+            this.properties = properties;
+        }
+
+        @Override
+        public int hashCode() {
+            return url.hashCode() ^ tlsPolicyKey.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return url.equals(other.url) && tlsPolicyKey.equals(other.tlsPolicyKey)
+                    && (properties == null ? other.properties == null : properties.equals(other.properties));
+        }
+    }
+
+    private static class Entry {
+        private final Object client;
+        private volatile long lastUsed;
+
+        private Entry(Object client) {
+            this.client = client;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     *
+     * @param tlsConnection trust agent v1 URL and TLS policy
+     * @return a shared client for the trust agent
+     */
+    public TrustAgentSecureClient getSecureClient(final TlsConnection tlsConnection) {
+        Key key = new Key(tlsConnection.getURL().toExternalForm(), tlsConnection.getTlsPolicy(), null);
+        try {
+            return get(key, new Callable<TrustAgentSecureClient>() {
+                @Override
+                public TrustAgentSecureClient call() {
+                    return factory.makeObject(tlsConnection);
+                }
+            });
+        }
+        catch(RuntimeException e) {
+            throw e;
+        }
+        catch(Exception e) {
+            throw new IllegalArgumentException("Cannot create trust agent client", e);
+        }
+    }
+
+    /**
+     *
+     * @param properties trust agent v2 login properties
+     * @param tlsConnection trust agent v2 URL and TLS policy
+     * @return a shared client for the trust agent
+     * @throws Exception if the client cannot be created
+     */
+    public TrustAgentClient getClient(final Properties properties, final TlsConnection tlsConnection) throws Exception {
+        final Properties copy = new Properties();
+        copy.putAll(properties);
+        Key key = new Key(tlsConnection.getURL().toExternalForm(), tlsConnection.getTlsPolicy(), copy);
+        return get(key, new Callable<TrustAgentClient>() {
+            @Override
+            public TrustAgentClient call() throws Exception {
+                return new PooledTrustAgentClient(copy, tlsConnection, maxConnectionsPerHost);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(Key key, Callable<T> creator) throws Exception {
+        long now = System.currentTimeMillis();
+        if (now - lastSweep > idleTimeoutMillis / 2) {
+            lastSweep = now;
+            evictIdle();
+        }
+        Entry entry = pool.get(key);
+        if (entry != null) {
+            hits.incrementAndGet();
+            entry.lastUsed = now;
+            return (T) entry.client;
+        }
+        misses.incrementAndGet();
+        Entry created = new Entry(creator.call());
+        Entry existing = pool.putIfAbsent(key, created);
+        if (existing != null) {
+            existing.lastUsed = now;
+            return (T) existing.client; // another thread created a client for the same trust agent first
+        }
+        log.debug("Created trust agent client for {}", key.url);
+        if (pool.size() > maxClients) {
+            evict();
+        }
+        return (T) created.client;
+    }
+
+    /**
+     * Removes clients that have not been used within the idle timeout.
+     */
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Key, Entry> mapEntry : pool.entrySet()) {
+            if (now - mapEntry.getValue().lastUsed > idleTimeoutMillis && pool.remove(mapEntry.getKey(), mapEntry.getValue())) {
+                destroy(mapEntry.getKey(), mapEntry.getValue());
+            }
+        }
+        log.debug("Trust agent client pool: {}", this);
+    }
+
+    /**
+     * Removes idle clients, and if the pool is still over its limit,
+     * removes the least recently used clients until it is under the limit.
+     * Evicting the least recently used clients first makes it unlikely that
+     * a v2 client is closed while a host agent is still using it.
+     */
+    private void evict() {
+        evictIdle();
+        List<Map.Entry<Key, Entry>> entries = new ArrayList<>(pool.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<Key, Entry>>() {
+            @Override
+            public int compare(Map.Entry<Key, Entry> o1, Map.Entry<Key, Entry> o2) {
+                return Long.compare(o1.getValue().lastUsed, o2.getValue().lastUsed);
+            }
+        });
+        for (Map.Entry<Key, Entry> mapEntry : entries) {
+            if (pool.size() <= maxClients) {
+                break;
+            }
+            if (pool.remove(mapEntry.getKey(), mapEntry.getValue())) {
+                destroy(mapEntry.getKey(), mapEntry.getValue());
+            }
+        }
+    }
+
+    /**
+     * A v1 client opens a new socket for each request so there is nothing
+     * to close; a v2 client closes its jersey client after the requests in
+     * progress return.
+     */
+    private void destroy(Key key, Entry entry) {
+        evictions.incrementAndGet();
+        if (entry.client instanceof PooledTrustAgentClient) {
+            ((PooledTrustAgentClient) entry.client).close();
+        }
+        log.debug("Evicted trust agent client for {}", key.url);
+    }
+
+    public void clear() {
+        for (Map.Entry<Key, Entry> mapEntry : pool.entrySet()) {
+            if (pool.remove(mapEntry.getKey(), mapEntry.getValue())) {
+                destroy(mapEntry.getKey(), mapEntry.getValue());
+            }
+        }
+    }
+
+    public int size() {
+        return pool.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     *
+     * @return number of connections opened by the pooled v1 clients
+     */
+    public long getConnectionCount() {
+        long count = 0;
+        for (Entry entry : pool.values()) {
+            if (entry.client instanceof TrustAgentSecureClient) {
+                count += ((TrustAgentSecureClient) entry.client).getRequestCount();
+            }
+        }
+        return count;
+    }
+
+    /**
+     *
+     * @return number of connections opened by the pooled v1 clients that resumed a TLS session
+     */
+    public long getResumedSessionCount() {
+        long count = 0;
+        for (Entry entry : pool.values()) {
+            if (entry.client instanceof TrustAgentSecureClient) {
+                count += ((TrustAgentSecureClient) entry.client).getResumedSessionCount();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TrustAgentClientPool[size=%d, hits=%d, misses=%d, evictions=%d, connections=%d, resumed=%d]", size(), getHitCount(), getMissCount(), getEvictionCount(), getConnectionCount(), getResumedSessionCount());
+    }
+
+    private static class TrustAgentClientPoolHolder {
+        private static final TrustAgentClientPool instance = createInstance();
+
+        private static TrustAgentClientPool createInstance() {
+            if (!My.configuration().getConfiguration().getBoolean("mtwilson.trustagent.pool.enabled", true)) {
+                log.info("Trust agent client pool is disabled");
+                return null;
+            }
+            int max = My.configuration().getConfiguration().getInt("mtwilson.trustagent.pool.max", 1000);
+            int maxPerHost = My.configuration().getConfiguration().getInt("mtwilson.trustagent.pool.max.per.host", 4);
+            long idleSeconds = My.configuration().getConfiguration().getLong("mtwilson.trustagent.pool.idle.seconds", 300);
+            log.debug("Creating trust agent client pool with max clients {} max connections per host {} idle timeout {} seconds", max, maxPerHost, idleSeconds);
+            return new TrustAgentClientPool(max, maxPerHost, idleSeconds * 1000);
+        }
+    }
+}
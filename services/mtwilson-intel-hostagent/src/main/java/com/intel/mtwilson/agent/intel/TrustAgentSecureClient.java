@@ -21,6 +21,7 @@ import com.intel.dcsg.cpg.tls.policy.TlsConnection;
 import com.intel.dcsg.cpg.tls.policy.TlsPolicy;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.net.MalformedURLException;
@@ -30,8 +31,13 @@ import java.net.URL;
 import java.net.UnknownHostException;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
 import javax.xml.bind.JAXBException;
@@ -42,6 +48,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.intel.dcsg.cpg.xml.JAXB;;
 
+/**
+ * The trust agent v1 protocol sends one request per connection, so the
+ * socket cannot be kept open between calls. The client keeps a single
+ * TlsConnection for the life of the client so that its SSLContext, and
+ * therefore its TLS session cache, is reused and subsequent connections to
+ * the same trust agent resume the TLS session instead of doing a full
+ * handshake. Clients are safe to share between threads; use
+ * TrustAgentClientPool to share them.
+ */
 public class TrustAgentSecureClient {
     public static final int DEFAULT_TRUST_AGENT_PORT = 9999;
     public static final String TA_ERROR_CODE = "error_code";
@@ -51,6 +66,11 @@ public class TrustAgentSecureClient {
     private int serverPort = 0;
     private byte[] data;
     private TlsPolicy tlsPolicy;
+    private final TlsConnection tlsConnection;
+    private final Semaphore permits; // null if the number of concurrent connections is not limited
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong resumedSessionCount = new AtomicLong();
+    private volatile byte[] lastSessionId = null;
     JAXB jaxb = new JAXB();
     
     private static int TIME_OUT = ASConfig.getTrustAgentTimeOutinMilliSecs();
@@ -71,8 +91,24 @@ public class TrustAgentSecureClient {
     } */
     
     public TrustAgentSecureClient(TlsConnection tlsConnection) {
+        this(tlsConnection, 0);
+    }
+
+    /**
+     * 
+     * @param tlsConnection
+     * @param maxConnections maximum number of concurrent connections this client will open to the trust agent, or 0 for no limit
+     */
+    public TrustAgentSecureClient(TlsConnection tlsConnection, int maxConnections) {
         tlsPolicy = tlsConnection.getTlsPolicy();
         parseConnectionString(tlsConnection.getURL().toExternalForm());
+        try {
+            this.tlsConnection = new TlsConnection(new URL("https://"+serverHostname+":"+serverPort), tlsPolicy);
+        }
+        catch(MalformedURLException e) {
+            throw new IllegalArgumentException("Invalid Trust Agent address: "+serverHostname+":"+serverPort, e);
+        }
+        this.permits = maxConnections > 0 ? new Semaphore(maxConnections, true) : null;
         log.debug("TrustAgentSecureClient  hostname({}) port({})", new Object[] {  serverHostname, serverPort }); // removed tlsConnection.getConnectionString(), to prevent leaking secrets
     }
 
@@ -119,20 +155,50 @@ public class TrustAgentSecureClient {
     */
 
     
-    private byte[] sendRequestWithSSLSocket() throws NoSuchAlgorithmException, NoSuchAlgorithmException, KeyManagementException, UnknownHostException, IOException {
+    private byte[] sendRequestWithSSLSocket(byte[] data) throws NoSuchAlgorithmException, NoSuchAlgorithmException, KeyManagementException, UnknownHostException, IOException {
         log.trace( "Opening connection to {} port {}", serverHostname, String.valueOf(serverPort));
         
         if( data == null ) {
         	throw new IllegalArgumentException("Attempted to send request without data");
         }
 
+        acquire();
+        try {
+            return sendRequest(data);
+        }
+        finally {
+            release();
+        }
+    }
+    
+    private void acquire() throws InterruptedIOException {
+        if( permits == null ) { return; }
+        try {
+            if( !permits.tryAcquire(TIME_OUT, TimeUnit.MILLISECONDS) ) {
+                throw new ASException(ErrorCode.AS_TRUST_AGENT_CONNNECT_TIMED_OUT,serverHostname,serverPort,(TIME_OUT/1000));
+            }
+        }
+        catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to connect to "+serverHostname);
+        }
+    }
+    
+    private void release() {
+        if( permits != null ) {
+            permits.release();
+        }
+    }
+    
+    private byte[] sendRequest(byte[] data) throws NoSuchAlgorithmException, KeyManagementException, UnknownHostException, IOException {
 //        HttpsURLConnection.setDefaultHostnameVerifier(tlsPolicy.getHostnameVerifier());
 //        SSLSocketFactory sslsocketfactory = getSSLContext().getSocketFactory();
 //        SSLSocket sock = (SSLSocket) sslsocketfactory.createSocket();
-        TlsConnection tlsConnection = new TlsConnection(new URL("https://"+serverHostname+":"+serverPort), tlsPolicy); 
-        
+        // the same TlsConnection is used for every request so the TLS session can be resumed
         try(SSLSocket sock = tlsConnection.connect()) {            
 //            sock.connect(new InetSocketAddress(serverHostname,serverPort), TIME_OUT);
+            requestCount.incrementAndGet();
+            recordSession(sock.getSession());
             InputStream sockInput = sock.getInputStream();
             OutputStream sockOutput = sock.getOutputStream();
 
@@ -149,9 +215,33 @@ public class TrustAgentSecureClient {
         }
     }
     
+    private void recordSession(SSLSession session) {
+        if( session == null ) { return; }
+        byte[] sessionId = session.getId();
+        if( lastSessionId != null && Arrays.equals(lastSessionId, sessionId) ) {
+            resumedSessionCount.incrementAndGet();
+        }
+        lastSessionId = sessionId;
+    }
+    
+    /**
+     * 
+     * @return number of connections opened to the trust agent by this client
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+    
+    /**
+     * 
+     * @return number of connections that resumed the previous TLS session instead of doing a full handshake
+     */
+    public long getResumedSessionCount() {
+        return resumedSessionCount.get();
+    }
+    
     public DaaResponse sendDaaChallenge(String challenge) throws NoSuchAlgorithmException, KeyManagementException, UnknownHostException, JAXBException, IOException, XMLStreamException {
-        this.data = challenge.getBytes();
-        byte buf[] = sendRequestWithSSLSocket();
+        byte buf[] = sendRequestWithSSLSocket(challenge.getBytes());
         // bug #1038 use secure xml parsing settings, encapsulated in cpg-xml JAXB utility
         DaaResponse response = jaxb.read(new String(buf).trim(), DaaResponse.class);
 //        JAXBContext jc = JAXBContext.newInstance("com.intel.mountwilson.ta.data.daa.response");
@@ -171,9 +261,13 @@ public class TrustAgentSecureClient {
      * @throws KeyManagementException 
      */
     public ClientRequestType sendQuoteRequest() throws UnknownHostException, IOException, JAXBException, KeyManagementException, NoSuchAlgorithmException, XMLStreamException  {
+        return sendQuoteRequest(data);
+    }
+    
+    private ClientRequestType sendQuoteRequest(byte[] data) throws UnknownHostException, IOException, JAXBException, KeyManagementException, NoSuchAlgorithmException, XMLStreamException  {
 
 
-            byte buf[] = sendRequestWithSSLSocket();
+            byte buf[] = sendRequestWithSSLSocket(data);
 
             log.info("Unmarshalling to Jaxb object.");
             
@@ -258,9 +352,8 @@ public class TrustAgentSecureClient {
 
             log.info("Sending Generate Identity");
             byte[] identityInput = "<identity_request></identity_request>".getBytes();
-            this.data = identityInput;
 
-            ClientRequestType response = sendQuoteRequest();
+            ClientRequestType response = sendQuoteRequest(identityInput);
 
             String certificate = response.getAikcert();
             
@@ -278,8 +371,7 @@ public class TrustAgentSecureClient {
         QuoteRequest quoteRequest = new QuoteRequest();
         quoteRequest.setPcrList(pcrList);
         quoteRequest.setNonce(nonce);
-        this.data = getXml(quoteRequest).getBytes();
-        ClientRequestType clientRequestType = sendQuoteRequest();
+        ClientRequestType clientRequestType = sendQuoteRequest(getXml(quoteRequest).getBytes());
         log.info("Got quote from server");
         return clientRequestType;
     }
@@ -315,10 +407,9 @@ public class TrustAgentSecureClient {
      * @return 
      */
     public HostInfo getHostInfo() {
-        this.data = "<host_info></host_info>".getBytes();
         HostInfo response;
 		try {
-			byte buf[] = sendRequestWithSSLSocket();
+			byte buf[] = sendRequestWithSSLSocket("<host_info></host_info>".getBytes());
             log.debug("TrustAgent response: {}", new String(buf).trim());
         // bug #1038 use secure xml parsing settings, encapsulated in cpg-xml JAXB utility
                         response = jaxb.read(new String(buf).trim(), HostInfo.class);
@@ -364,10 +455,9 @@ public class TrustAgentSecureClient {
      */
     public boolean setAssetTag(String assetTagHash, String uuid) {
         String xml = "<set_asset_tag><asset_tag_hash>" + assetTagHash + "</asset_tag_hash><asset_tag_uuid>" + uuid +"</asset_tag_uuid></set_asset_tag>";
-        this.data = xml.getBytes();
         
 	try {
-	    byte buf[] = sendRequestWithSSLSocket();
+	    byte buf[] = sendRequestWithSSLSocket(xml.getBytes());
             log.debug("TrustAgent response: {}", new String(buf));
         // bug #1038 use secure xml parsing settings, encapsulated in cpg-xml JAXB utility
 	    // response = jaxb.read(new String(buf).trim(), HostInfo.class);
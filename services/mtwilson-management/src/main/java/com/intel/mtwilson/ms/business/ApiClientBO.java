@@ -30,6 +30,7 @@ import com.intel.mtwilson.ms.data.ApiRoleX509;
 import com.intel.mtwilson.ms.data.ApiRoleX509PK;
 import com.intel.mtwilson.ms.data.MwPortalUser;
 import com.intel.mtwilson.shiro.jdbi.LoginDAO;
+import com.intel.mtwilson.shiro.jdbi.LoginCache;
 import com.intel.mtwilson.shiro.jdbi.MyJdbi;
 import com.intel.mtwilson.user.management.rest.v2.model.Status;
 import com.intel.mtwilson.user.management.rest.v2.model.User;
@@ -349,6 +350,7 @@ public class ApiClientBO {
                 }
                 
             }            
+            LoginCache.invalidateLogins();
         } catch (Exception ex) {
             log.error("Error while populating Shiro tables during API Client registration. ", ex);
             throw new MSException(ErrorCode.MS_API_USER_REGISTRATION_ERROR, ex.getClass().getSimpleName());
@@ -570,6 +572,7 @@ public class ApiClientBO {
                     loginDAO.deleteUser(user.getId());
                     log.info("ApiClientBO:Delete - Deleted the user {} successfully.", userName);
                 }
+                LoginCache.invalidateLogins();
 
             } catch (Exception ex) {
                 log.error("Error while deleting the V2 user tables. ", ex);
@@ -12,6 +12,7 @@ import com.intel.dcsg.cpg.io.UUID;
 import com.intel.mtwilson.*;
 import com.intel.mtwilson.agent.*;
 import com.intel.mtwilson.api.*;
+import com.intel.mtwilson.as.controller.MleWhitelistVersion;
 import com.intel.mtwilson.as.controller.MwProcessorMappingJpaController;
 import com.intel.mtwilson.as.controller.TblHostsJpaController;
 import com.intel.mtwilson.as.controller.TblLocationPcrJpaController;
@@ -1752,6 +1753,7 @@ public class HostBO {
             }
             emt.getTransaction().commit();
             emt.close();
+            MleWhitelistVersion.increment();
 
         } catch (MSException me) {
             log.error("Error during white list upload to database. " + me.getErrorCode() + " :" + me.getErrorMessage());
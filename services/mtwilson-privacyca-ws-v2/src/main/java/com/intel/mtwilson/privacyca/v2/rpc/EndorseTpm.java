@@ -10,7 +10,6 @@ import java.security.interfaces.RSAPrivateKey;
 import java.util.concurrent.Callable;
 import com.intel.mtwilson.My;
 import gov.niarl.his.privacyca.TpmUtils;
-import java.io.File;
 import org.apache.shiro.authz.annotation.RequiresPermissions;
 
 /**
@@ -36,11 +35,10 @@ public class EndorseTpm implements Callable<X509Certificate> {
     @RequiresPermissions("tpms:endorse")    
     public X509Certificate call() throws Exception {
         // load privacy ca ek signing key (cakey) and corresponding certificate (cacert)
-        String EndorsementP12Pass = My.configuration().getPrivacyCaEndorsementPassword();
-        File TpmEndorsmentP12 = My.configuration().getPrivacyCaEndorsementP12();
+        PrivacyCaKeys.CaKey endorsementKey = PrivacyCaKeys.getInstance().getEndorsementKey();
         Integer validityDays = My.configuration().getPrivacyCaEndorsementValidityDays();
-        RSAPrivateKey cakey = TpmUtils.privKeyFromP12(TpmEndorsmentP12.getAbsolutePath(), EndorsementP12Pass);
-        X509Certificate cacert = TpmUtils.certFromP12(TpmEndorsmentP12.getAbsolutePath(), EndorsementP12Pass);
+        RSAPrivateKey cakey = endorsementKey.getPrivateKey();
+        X509Certificate cacert = endorsementKey.getCertificate();
         X509Certificate ekcert = TpmUtils.makeEkCert(ekModulus, cakey, cacert, validityDays);
         log.info("Endorsed EK sha1 {} serial {}", TpmUtils.sha1hash(ekcert.getEncoded()), ekcert.getSerialNumber());
         return ekcert;
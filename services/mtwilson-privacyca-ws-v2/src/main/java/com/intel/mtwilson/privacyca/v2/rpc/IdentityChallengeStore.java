@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.privacyca.v2.rpc;
+
+import com.intel.mtwilson.My;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Keeps the identity requests that are waiting for a challenge response, so
+ * that IdentityRequestSubmitResponse finds the request from memory instead
+ * of reading it back from the privacyca-aik-requests directory.
+ *
+ * Pending challenges expire after the time to live. A challenge is not
+ * removed when it is answered, so a client that retries the response after
+ * a network error still gets its certificate, as it did when the challenges
+ * were only kept in files.
+ *
+ * When persistence is enabled each challenge is also written to the
+ * privacyca-aik-requests directory in the same format as before, and a
+ * challenge that is not in memory is read from there. Enable it when the
+ * challenge and the response may be handled by different servers or when a
+ * pending request should survive a restart.
+ *
+ * Configuration:
+ * mtwilson.privacyca.challenge.ttl.seconds (default 600)
+ * mtwilson.privacyca.challenge.max (default 10000 pending challenges)
+ * mtwilson.privacyca.challenge.persist (default false)
+ */
+public class IdentityChallengeStore {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(IdentityChallengeStore.class);
+    private final int maxEntries;
+    private final long timeToLiveMillis;
+    private final File directory;
+    private final ConcurrentHashMap<String, PendingChallenge> challenges = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     *
+     * @param maxEntries maximum number of pending challenges in memory
+     * @param timeToLiveMillis how long a client has to answer a challenge
+     * @param directory where to persist the challenges, or null to keep them only in memory
+     */
+    public IdentityChallengeStore(int maxEntries, long timeToLiveMillis, File directory) {
+        this.maxEntries = maxEntries;
+        this.timeToLiveMillis = timeToLiveMillis;
+        this.directory = directory;
+    }
+
+    public static IdentityChallengeStore getInstance() {
+        return IdentityChallengeStoreHolder.instance;
+    }
+
+    /**
+     * An identity request waiting for the client to answer the challenge.
+     * For TPM 2.0 the request is the AIK blob and the options are the AIK
+     * name. For TPM 1.2 the request is the identity proof and the options
+     * are the hex encoded trousers mode options.
+     */
+    public static class PendingChallenge {
+        private final byte[] request;
+        private final byte[] options;
+        private final byte[] endorsementCertificate;
+        private final long created;
+
+        public PendingChallenge(byte[] request, byte[] options, byte[] endorsementCertificate) {
+            this(request, options, endorsementCertificate, System.currentTimeMillis());
+        }
+
+        private PendingChallenge(byte[] request, byte[] options, byte[] endorsementCertificate, long created) {
+            this.request = request;
+            this.options = options;
+            this.endorsementCertificate = endorsementCertificate;
+            this.created = created;
+        }
+
+        public byte[] getRequest() {
+            return request;
+        }
+
+        public byte[] getOptions() {
+            return options;
+        }
+
+        public byte[] getEndorsementCertificate() {
+            return endorsementCertificate;
+        }
+    }
+
+    /**
+     *
+     * @param challengeHex the challenge sent to the client, in hex
+     * @param challenge
+     * @throws IOException if persistence is enabled and the challenge cannot be written
+     * @throws IllegalStateException if there are too many pending challenges and the challenge is new
+     */
+    public void put(String challengeHex, PendingChallenge challenge) throws IOException {
+        if (challenges.size() >= maxEntries && !challenges.containsKey(challengeHex)) {
+            removeExpired(System.currentTimeMillis());
+            if (challenges.size() >= maxEntries) {
+                log.warn("Too many pending identity requests: {}", challenges.size());
+                throw new IllegalStateException("Too many pending identity requests");
+            }
+        }
+        if (directory != null) {
+            write(challengeHex, challenge);
+        }
+        challenges.put(challengeHex, challenge);
+    }
+
+    /**
+     *
+     * @param challengeHex the decrypted challenge response, in hex
+     * @return the pending challenge, or null if it is unknown or expired
+     * @throws IOException if persistence is enabled and the challenge cannot be read
+     */
+    public PendingChallenge get(String challengeHex) throws IOException {
+        long now = System.currentTimeMillis();
+        PendingChallenge challenge = challenges.get(challengeHex);
+        if (challenge == null && directory != null) {
+            challenge = read(challengeHex);
+        }
+        if (challenge == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (now - challenge.created >= timeToLiveMillis) {
+            challenges.remove(challengeHex, challenge);
+            misses.incrementAndGet();
+            log.debug("Challenge {} expired", challengeHex);
+            return null;
+        }
+        hits.incrementAndGet();
+        return challenge;
+    }
+
+    private void removeExpired(long now) {
+        Iterator<Map.Entry<String, PendingChallenge>> it = challenges.entrySet().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().getValue().created >= timeToLiveMillis) {
+                it.remove();
+            }
+        }
+    }
+
+    private void write(String challengeHex, PendingChallenge challenge) throws IOException {
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        // the filename is the challenge (in hex) and the content is the aik blob or idproof
+        try (FileOutputStream out = new FileOutputStream(new File(directory, challengeHex))) {
+            IOUtils.write(challenge.request, out);
+        }
+        try (FileOutputStream out = new FileOutputStream(new File(directory, challengeHex + ".opt"))) {
+            IOUtils.write(challenge.options, out);
+        }
+        try (FileOutputStream out = new FileOutputStream(new File(directory, challengeHex + ".ekcert"))) {
+            IOUtils.write(challenge.endorsementCertificate, out);
+        }
+    }
+
+    private PendingChallenge read(String challengeHex) throws IOException {
+        File requestFile = new File(directory, challengeHex);
+        if (!requestFile.exists()) {
+            return null;
+        }
+        log.debug("Reading challenge {} from {}", challengeHex, directory.getAbsolutePath());
+        return new PendingChallenge(readFile(requestFile), readFile(new File(directory, challengeHex + ".opt")), readFile(new File(directory, challengeHex + ".ekcert")), requestFile.lastModified());
+    }
+
+    private byte[] readFile(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    public int size() {
+        return challenges.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("IdentityChallengeStore[size=%d, hits=%d, misses=%d]", size(), getHitCount(), getMissCount());
+    }
+
+    private static class IdentityChallengeStoreHolder {
+        private static final IdentityChallengeStore instance = createInstance();
+
+        private static IdentityChallengeStore createInstance() {
+            int max = My.configuration().getConfiguration().getInt("mtwilson.privacyca.challenge.max", 10000);
+            long ttlSeconds = My.configuration().getConfiguration().getLong("mtwilson.privacyca.challenge.ttl.seconds", 600);
+            File directory = null;
+            if (My.configuration().getConfiguration().getBoolean("mtwilson.privacyca.challenge.persist", false)) {
+                try {
+                    directory = My.repository().getDirectory("privacyca-aik-requests");
+                } catch (IOException e) {
+                    log.error("Cannot persist identity challenges; keeping them only in memory", e);
+                }
+            }
+            log.debug("Creating identity challenge store with max entries {} time to live {} seconds persisted to {}", max, ttlSeconds, directory);
+            return new IdentityChallengeStore(max, ttlSeconds * 1000, directory);
+        }
+    }
+}
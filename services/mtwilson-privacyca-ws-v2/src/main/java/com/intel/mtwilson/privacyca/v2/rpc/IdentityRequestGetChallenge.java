@@ -4,7 +4,6 @@
  */
 package com.intel.mtwilson.privacyca.v2.rpc;
 
-import com.intel.dcsg.cpg.x509.X509Util;
 import com.intel.mtwilson.My;
 import com.intel.mtwilson.launcher.ws.ext.RPC;
 import com.intel.mtwilson.privacyca.v2.model.IdentityChallenge;
@@ -21,12 +20,9 @@ import gov.niarl.his.privacyca.TpmPubKey;
 import gov.niarl.his.privacyca.TpmSymmetricKey;
 import gov.niarl.his.privacyca.TpmUtils;
 import gov.niarl.his.privacyca.TpmUtils.TpmUnsignedConversionException;
-import java.io.File;
-import java.util.List;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.KeyFactory;
@@ -34,14 +30,12 @@ import java.security.NoSuchAlgorithmException;
 import java.security.Principal;
 import java.security.PublicKey;
 import java.security.SignatureException;
-import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.security.interfaces.RSAPrivateKey;
 import java.security.interfaces.RSAPublicKey;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.RSAPublicKeySpec;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Map;
 import java.util.concurrent.Callable;
@@ -52,7 +46,6 @@ import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.ShortBufferException;
 import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.io.IOUtils;
 import org.apache.shiro.authz.annotation.RequiresPermissions;
 
 /**
@@ -101,29 +94,16 @@ public class IdentityRequestGetChallenge implements Callable<IdentityChallenge>
         return endorsementCertificate;
     }
 
-    private Map<String, X509Certificate> getEndorsementCertificates() throws IOException, CertificateException {
-        Map<String, X509Certificate> endorsementCerts = new HashMap<>();
-        File ekCacertsPemFile = My.configuration().getPrivacyCaEndorsementCacertsFile();
-        try (FileInputStream in = new FileInputStream(ekCacertsPemFile)) {
-            String ekCacertsPem = IOUtils.toString(in); // throws IOException
-            List<X509Certificate> ekCacerts = X509Util.decodePemCertificates(ekCacertsPem); // throws CertificateException
-            for (X509Certificate ekCacert : ekCacerts) {
-                log.debug("Adding issuer {}", ekCacert.getSubjectX500Principal().getName());
-                endorsementCerts.put(ekCacert.getSubjectDN().getName(), ekCacert);
-            }
-        }
-        return endorsementCerts;
-    }
-
     @Override
     @RequiresPermissions("host_aiks:certify")
     public IdentityChallenge call() throws Exception {
         log.debug("PrivacyCA.p12: {}", My.configuration().getPrivacyCaIdentityP12().getAbsolutePath());
-        RSAPrivateKey caPrivKey = TpmUtils.privKeyFromP12(My.configuration().getPrivacyCaIdentityP12().getAbsolutePath(), My.configuration().getPrivacyCaIdentityPassword());
-        X509Certificate caPubCert = TpmUtils.certFromP12(My.configuration().getPrivacyCaIdentityP12().getAbsolutePath(), My.configuration().getPrivacyCaIdentityPassword());
+        PrivacyCaKeys.CaKey identityKey = PrivacyCaKeys.getInstance().getIdentityKey();
+        RSAPrivateKey caPrivKey = identityKey.getPrivateKey();
+        X509Certificate caPubCert = identityKey.getCertificate();
 
         // load the trusted ek cacerts
-        Map<String, X509Certificate> endorsementCerts = getEndorsementCertificates();
+        Map<String, X509Certificate> endorsementCerts = PrivacyCaKeys.getInstance().getEndorsementAuthorities();
 
         TpmIdentityRequest tempEC = new TpmIdentityRequest(endorsementCertificate);
         X509Certificate ekCert = TpmUtils.certFromBytes(tempEC.decryptRaw(caPrivKey));
@@ -139,24 +119,13 @@ public class IdentityRequestGetChallenge implements Callable<IdentityChallenge>
         //if the cert is good, issue challenge
         byte[] identityRequestChallenge = TpmUtils.createRandomBytes(32);
         // save the challenge and idproof for use in identity request submit response if the client successfully answers the challenge
-        // the filename is the challenge (in hex) and the content is the idproof
-        File datadir = My.repository().getDirectory("privacyca-aik-requests"); //new File(My.filesystem().getBootstrapFilesystem().getVarPath() + File.separator + "privacyca-aik-requests"); 
-        if (!datadir.exists()) {
-            datadir.mkdirs();
-        }
-        String filename = TpmUtils.byteArrayToHexString(identityRequestChallenge); //Hex.encodeHexString(identityRequestChallenge)
-        log.debug("Filename: {}", filename);
-        String optionsFilename = filename + ".opt";
+        // the key is the challenge (in hex); the ekcert is also saved for the identity request submit response
+        String challengeHex = TpmUtils.byteArrayToHexString(identityRequestChallenge); //Hex.encodeHexString(identityRequestChallenge)
+        log.debug("Challenge: {}", challengeHex);
 
         IdentityChallenge toReturn;
         if (tpmVersion.equals("2.0")) {
-            try (FileOutputStream out = new FileOutputStream(datadir.toPath().resolve(filename).toFile())) {
-                IOUtils.write(identityRequest, out);
-            }
-
-            try (FileOutputStream out = new FileOutputStream(datadir.toPath().resolve(optionsFilename).toFile())) {
-                IOUtils.write(aikName, out);
-            }
+            IdentityChallengeStore.getInstance().put(challengeHex, new IdentityChallengeStore.PendingChallenge(identityRequest, aikName, ekCert.getEncoded()));
 
             TpmPubKey tpk = new TpmPubKey((RSAPublicKey)Tpm2Utils.getPubKeyFromAikBlob(identityRequest), 0x1, 0x4);
             toReturn = createReturn(tpk, (RSAPublicKey) ekCert.getPublicKey(), identityRequestChallenge);            
@@ -170,19 +139,13 @@ public class IdentityRequestGetChallenge implements Callable<IdentityChallenge>
                 throw new RuntimeException("Invalid identity request");
             }
 
-            try (FileOutputStream out = new FileOutputStream(datadir.toPath().resolve(filename).toFile())) {
-                IOUtils.write(idProof.toByteArray(), out);
-            }
-
-            try (FileOutputStream out = new FileOutputStream(datadir.toPath().resolve(optionsFilename).toFile())) {
-                // and save the 3 trousers mode options into a second file because they are not included 
-                Util.TpmIdentityProofOptions options = new Util.TpmIdentityProofOptions();
-                options.TrousersModeIV = idProof.getIVmode();
-                options.TrousersModeSymkeyEncscheme = idProof.getSymkeyEncscheme();
-                options.TrousersModeBlankOeap = idProof.getOeapMode();
-                String hexOptions = Util.encodeTpmIdentityProofOptionsToHex(options);
-                IOUtils.write(hexOptions, out);
-            }
+            // and save the 3 trousers mode options with the idproof because they are not included 
+            Util.TpmIdentityProofOptions options = new Util.TpmIdentityProofOptions();
+            options.TrousersModeIV = idProof.getIVmode();
+            options.TrousersModeSymkeyEncscheme = idProof.getSymkeyEncscheme();
+            options.TrousersModeBlankOeap = idProof.getOeapMode();
+            String hexOptions = Util.encodeTpmIdentityProofOptionsToHex(options);
+            IdentityChallengeStore.getInstance().put(challengeHex, new IdentityChallengeStore.PendingChallenge(idProof.toByteArray(), hexOptions.getBytes(StandardCharsets.UTF_8), ekCert.getEncoded()));
 
             //encrypt the challenge and return
             log.debug("Phase 1 details:");
@@ -193,11 +156,6 @@ public class IdentityRequestGetChallenge implements Callable<IdentityChallenge>
             //return toReturn;
 
         }
-        // also save the ekcert for the identity request submit response 
-        String ekcertFilename = filename + ".ekcert";
-        try (FileOutputStream out = new FileOutputStream(datadir.toPath().resolve(ekcertFilename).toFile())) {
-            IOUtils.write(ekCert.getEncoded(), out);
-        }
         
         return toReturn;
     }
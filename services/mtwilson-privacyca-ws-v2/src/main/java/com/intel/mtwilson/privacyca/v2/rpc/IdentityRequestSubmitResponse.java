@@ -17,10 +17,8 @@ import gov.niarl.his.privacyca.TpmKeyParams;
 import gov.niarl.his.privacyca.TpmPubKey;
 import gov.niarl.his.privacyca.TpmSymmetricKey;
 import gov.niarl.his.privacyca.TpmUtils;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -34,7 +32,6 @@ import javax.crypto.BadPaddingException;
 import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.NoSuchPaddingException;
 import javax.crypto.ShortBufferException;
-import org.apache.commons.io.IOUtils;
 import org.apache.shiro.authz.annotation.RequiresPermissions;
 
 /**
@@ -76,8 +73,9 @@ public class IdentityRequestSubmitResponse implements Callable<IdentityBlob> {
     @Override
     @RequiresPermissions("host_aiks:certify")
     public IdentityBlob call() throws Exception {
-        RSAPrivateKey caPrivKey = TpmUtils.privKeyFromP12(My.configuration().getPrivacyCaIdentityP12().getAbsolutePath(), My.configuration().getPrivacyCaIdentityPassword());
-        X509Certificate caPubCert = TpmUtils.certFromP12(My.configuration().getPrivacyCaIdentityP12().getAbsolutePath(), My.configuration().getPrivacyCaIdentityPassword());
+        PrivacyCaKeys.CaKey identityKey = PrivacyCaKeys.getInstance().getIdentityKey();
+        RSAPrivateKey caPrivKey = identityKey.getPrivateKey();
+        X509Certificate caPubCert = identityKey.getCertificate();
         int validityDays = My.configuration().getPrivacyCaIdentityValidityDays();
 
         //decrypt response
@@ -86,47 +84,27 @@ public class IdentityRequestSubmitResponse implements Callable<IdentityBlob> {
 
         TpmIdentityProof idProof;
         X509Certificate ekCert;
-        // find the existing challenge and idproof
-        // save the challenge and idproof for use in identity request submit response if the client successfully answers the challenge
-        // the filename is the challenge (in hex) and the content is the idproof
-        File datadir = My.repository().getDirectory("privacyca-aik-requests"); //new File(My.filesystem().getBootstrapFilesystem().getVarPath() + File.separator + "privacyca-aik-requests"); 
-        if (!datadir.exists()) {
-            datadir.mkdirs();
-        }
-        String filename = TpmUtils.byteArrayToHexString(decryptedIdentityRequestChallenge); //Hex.encodeHexString(identityRequestChallenge)
-        log.debug("Filename: {}", filename);
-        File challengeFile = datadir.toPath().resolve(filename).toFile();
-        if (!challengeFile.exists()) {
+        // find the existing challenge and idproof saved by the identity request get challenge
+        String challengeHex = TpmUtils.byteArrayToHexString(decryptedIdentityRequestChallenge); //Hex.encodeHexString(identityRequestChallenge)
+        log.debug("Challenge: {}", challengeHex);
+        IdentityChallengeStore.PendingChallenge challenge = IdentityChallengeStore.getInstance().get(challengeHex);
+        if (challenge == null) {
             throw new RuntimeException("Invalid challenge response");
         }
         
-        String ekcertFilename = filename + ".ekcert";
-        File ekcertFile = datadir.toPath().resolve(ekcertFilename).toFile();
-        try (FileInputStream in = new FileInputStream(ekcertFile)) {
-            byte[] ekcertBytes = IOUtils.toByteArray(in);
-            ekCert = X509Util.decodeDerCertificate(ekcertBytes);
-        }       
-        
-        String optionsFilename = filename + ".opt";
+        ekCert = X509Util.decodeDerCertificate(challenge.getEndorsementCertificate());
         
         if ("2.0".equals(tpmVersion)) {
-            try(FileInputStream aikIn = new FileInputStream(challengeFile)) {
-                byte[] aikBlob = IOUtils.toByteArray(aikIn);
-                PublicKey key = Tpm2Utils.getPubKeyFromAikBlob(aikBlob);
-                TpmPubKey k = new TpmPubKey((RSAPublicKey)key, 0x1, 0x4);                
-                byte[] certBytes = TpmUtils.makeCert(k,"His_Identity_Key", caPrivKey, caPubCert, validityDays, 0).getEncoded();
-                return createReturn(k, (RSAPublicKey)ekCert.getPublicKey(), certBytes);
-            }
+            byte[] aikBlob = challenge.getRequest();
+            PublicKey key = Tpm2Utils.getPubKeyFromAikBlob(aikBlob);
+            TpmPubKey k = new TpmPubKey((RSAPublicKey)key, 0x1, 0x4);                
+            byte[] certBytes = TpmUtils.makeCert(k,"His_Identity_Key", caPrivKey, caPubCert, validityDays, 0).getEncoded();
+            return createReturn(k, (RSAPublicKey)ekCert.getPublicKey(), certBytes);
         } else {
-            try (FileInputStream in = new FileInputStream(challengeFile)) {
-                byte[] idProofBytes = IOUtils.toByteArray(in);
-  
-                try (FileInputStream optionsIn = new FileInputStream(datadir.toPath().resolve(optionsFilename).toFile())) {
-                    String hexOptions = IOUtils.toString(optionsIn);
-                    Util.TpmIdentityProofOptions options = Util.decodeTpmIdentityProofOptionsFromHex(hexOptions);
-                    idProof = new TpmIdentityProof(idProofBytes, options.TrousersModeIV, options.TrousersModeSymkeyEncscheme, options.TrousersModeBlankOeap);
-                }
-            }
+            byte[] idProofBytes = challenge.getRequest();
+            String hexOptions = new String(challenge.getOptions(), StandardCharsets.UTF_8);
+            Util.TpmIdentityProofOptions options = Util.decodeTpmIdentityProofOptionsFromHex(hexOptions);
+            idProof = new TpmIdentityProof(idProofBytes, options.TrousersModeIV, options.TrousersModeSymkeyEncscheme, options.TrousersModeBlankOeap);
             //compare decrypted response to challenge
             //if match, create AIC; else create failure code
             byte[] certBytes = TpmUtils.makeCert(idProof, caPrivKey, caPubCert, validityDays, 0).getEncoded();
@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.privacyca.v2.rpc;
+
+import com.intel.dcsg.cpg.x509.X509Util;
+import com.intel.mtwilson.My;
+import gov.niarl.his.privacyca.TpmUtils;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAPrivateKey;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Keeps the Privacy CA identity key, the endorsement CA key and the trusted
+ * endorsement CA certificates in memory, so that identity requests do not
+ * decrypt the PKCS#12 files and parse the PEM bundle every time. Each file
+ * is loaded again when its last modified time or length changes, or when
+ * the configured password changes.
+ */
+public class PrivacyCaKeys {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(PrivacyCaKeys.class);
+    private volatile CaKey identity;
+    private volatile CaKey endorsement;
+    private volatile Authorities authorities;
+
+    public static PrivacyCaKeys getInstance() {
+        return PrivacyCaKeysHolder.instance;
+    }
+
+    /**
+     * A private key and its certificate loaded from a PKCS#12 file.
+     */
+    public static class CaKey {
+        private final String path;
+        private final long lastModified;
+        private final long length;
+        private final String password;
+        private final RSAPrivateKey privateKey;
+        private final X509Certificate certificate;
+
+        private CaKey(File file, String password) throws IOException, GeneralSecurityException, javax.security.cert.CertificateException {
+            this.path = file.getAbsolutePath();
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            this.password = password;
+            this.privateKey = TpmUtils.privKeyFromP12(path, password);
+            this.certificate = TpmUtils.certFromP12(path, password);
+        }
+
+        private boolean isCurrent(File file, String password) {
+            return path.equals(file.getAbsolutePath()) && lastModified == file.lastModified() && length == file.length() && this.password.equals(password);
+        }
+
+        public RSAPrivateKey getPrivateKey() {
+            return privateKey;
+        }
+
+        public X509Certificate getCertificate() {
+            return certificate;
+        }
+    }
+
+    private static class Authorities {
+        private final String path;
+        private final long lastModified;
+        private final long length;
+        private final Map<String, X509Certificate> bySubject;
+
+        private Authorities(File file) throws IOException, CertificateException {
+            this.path = file.getAbsolutePath();
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            HashMap<String, X509Certificate> map = new HashMap<>();
+            try (FileInputStream in = new FileInputStream(file)) {
+                String ekCacertsPem = IOUtils.toString(in); // throws IOException
+                List<X509Certificate> ekCacerts = X509Util.decodePemCertificates(ekCacertsPem); // throws CertificateException
+                for (X509Certificate ekCacert : ekCacerts) {
+                    log.debug("Adding issuer {}", ekCacert.getSubjectX500Principal().getName());
+                    map.put(ekCacert.getSubjectDN().getName(), ekCacert);
+                }
+            }
+            this.bySubject = Collections.unmodifiableMap(map);
+        }
+
+        private boolean isCurrent(File file) {
+            return path.equals(file.getAbsolutePath()) && lastModified == file.lastModified() && length == file.length();
+        }
+    }
+
+    /**
+     *
+     * @return the Privacy CA key and certificate used to issue AIK certificates
+     * @throws IOException
+     * @throws GeneralSecurityException
+     * @throws javax.security.cert.CertificateException
+     */
+    public CaKey getIdentityKey() throws IOException, GeneralSecurityException, javax.security.cert.CertificateException {
+        File file = My.configuration().getPrivacyCaIdentityP12();
+        String password = My.configuration().getPrivacyCaIdentityPassword();
+        CaKey current = identity;
+        if (current == null || !current.isCurrent(file, password)) {
+            synchronized (this) {
+                current = identity;
+                if (current == null || !current.isCurrent(file, password)) {
+                    log.debug("Loading Privacy CA identity key from {}", file.getAbsolutePath());
+                    current = new CaKey(file, password);
+                    identity = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     *
+     * @return the endorsement CA key and certificate used to issue EK certificates
+     * @throws IOException
+     * @throws GeneralSecurityException
+     * @throws javax.security.cert.CertificateException
+     */
+    public CaKey getEndorsementKey() throws IOException, GeneralSecurityException, javax.security.cert.CertificateException {
+        File file = My.configuration().getPrivacyCaEndorsementP12();
+        String password = My.configuration().getPrivacyCaEndorsementPassword();
+        CaKey current = endorsement;
+        if (current == null || !current.isCurrent(file, password)) {
+            synchronized (this) {
+                current = endorsement;
+                if (current == null || !current.isCurrent(file, password)) {
+                    log.debug("Loading endorsement CA key from {}", file.getAbsolutePath());
+                    current = new CaKey(file, password);
+                    endorsement = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     *
+     * @return the trusted endorsement CA certificates indexed by subject name; the map is read-only
+     * @throws IOException
+     * @throws CertificateException
+     */
+    public Map<String, X509Certificate> getEndorsementAuthorities() throws IOException, CertificateException {
+        File file = My.configuration().getPrivacyCaEndorsementCacertsFile();
+        Authorities current = authorities;
+        if (current == null || !current.isCurrent(file)) {
+            synchronized (this) {
+                current = authorities;
+                if (current == null || !current.isCurrent(file)) {
+                    log.debug("Loading endorsement CA certificates from {}", file.getAbsolutePath());
+                    current = new Authorities(file);
+                    authorities = current;
+                }
+            }
+        }
+        return current.bySubject;
+    }
+
+    private static class PrivacyCaKeysHolder {
+        private static final PrivacyCaKeys instance = new PrivacyCaKeys();
+    }
+}
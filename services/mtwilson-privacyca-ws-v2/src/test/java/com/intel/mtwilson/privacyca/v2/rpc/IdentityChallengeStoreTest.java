@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.privacyca.v2.rpc;
+
+import java.io.File;
+import java.nio.file.Files;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class IdentityChallengeStoreTest {
+
+    private IdentityChallengeStore.PendingChallenge createChallenge() {
+        return new IdentityChallengeStore.PendingChallenge(new byte[]{1, 2, 3}, "0101".getBytes(), new byte[]{4, 5, 6});
+    }
+
+    @Test
+    public void testAnsweredChallengeCanBeRetried() throws Exception {
+        IdentityChallengeStore store = new IdentityChallengeStore(10, 60000, null);
+        IdentityChallengeStore.PendingChallenge challenge = createChallenge();
+        store.put("aa", challenge);
+        assertSame(challenge, store.get("aa"));
+        assertSame(challenge, store.get("aa"));
+        assertNull(store.get("bb"));
+        assertEquals(2, store.getHitCount());
+        assertEquals(1, store.getMissCount());
+    }
+
+    @Test
+    public void testExpired() throws Exception {
+        IdentityChallengeStore store = new IdentityChallengeStore(10, 50, null);
+        store.put("aa", createChallenge());
+        Thread.sleep(100);
+        assertNull(store.get("aa"));
+        assertEquals(0, store.size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFull() throws Exception {
+        IdentityChallengeStore store = new IdentityChallengeStore(1, 60000, null);
+        store.put("aa", createChallenge());
+        store.put("bb", createChallenge());
+    }
+
+    @Test
+    public void testReplaceWhenFull() throws Exception {
+        IdentityChallengeStore store = new IdentityChallengeStore(1, 60000, null);
+        store.put("aa", createChallenge());
+        IdentityChallengeStore.PendingChallenge replacement = createChallenge();
+        store.put("aa", replacement);
+        assertSame(replacement, store.get("aa"));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testPersisted() throws Exception {
+        File directory = Files.createTempDirectory("privacyca-aik-requests").toFile();
+        try {
+            new IdentityChallengeStore(10, 60000, directory).put("aa", createChallenge());
+            assertTrue(new File(directory, "aa").exists());
+            assertTrue(new File(directory, "aa.opt").exists());
+            assertTrue(new File(directory, "aa.ekcert").exists());
+            // another server or a restarted server finds the challenge in the files
+            IdentityChallengeStore.PendingChallenge challenge = new IdentityChallengeStore(10, 60000, directory).get("aa");
+            assertNotNull(challenge);
+            assertArrayEquals(new byte[]{1, 2, 3}, challenge.getRequest());
+            assertArrayEquals("0101".getBytes(), challenge.getOptions());
+            assertArrayEquals(new byte[]{4, 5, 6}, challenge.getEndorsementCertificate());
+        } finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+}
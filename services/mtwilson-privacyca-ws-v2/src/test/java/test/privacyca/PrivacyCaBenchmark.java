@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package test.privacyca;
+
+import com.intel.dcsg.cpg.crypto.RsaUtil;
+import com.intel.mtwilson.privacyca.v2.rpc.IdentityChallengeStore;
+import gov.niarl.his.privacyca.TpmPubKey;
+import gov.niarl.his.privacyca.TpmUtils;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures AIK certificates issued per second when the Privacy CA key is
+ * loaded from its PKCS#12 file for each request (as the identity request
+ * RPCs did before) and when it is kept in memory, and pending challenges
+ * saved and found per second in the privacyca-aik-requests files and in
+ * memory.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=test.privacyca.PrivacyCaBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PrivacyCaBenchmark {
+    private static final String PASSWORD = "password";
+    private static final int CHALLENGES = 1000;
+    private File directory;
+    private File p12;
+    private RSAPrivateKey caPrivKey;
+    private X509Certificate caPubCert;
+    private TpmPubKey aik;
+    private byte[] aikBlob;
+    private byte[] ekCert;
+    private String[] challenges;
+    private IdentityChallengeStore fileStore;
+    private IdentityChallengeStore otherFileStore;
+    private IdentityChallengeStore memoryStore;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("privacyca-benchmark").toFile();
+        KeyPair caKey = RsaUtil.generateRsaKeyPair(2048);
+        X509Certificate caCert = RsaUtil.generateX509Certificate("CN=Privacy CA", caKey, 1);
+        KeyStore keystore = KeyStore.getInstance("PKCS12");
+        keystore.load(null, null);
+        keystore.setKeyEntry("privacyca", caKey.getPrivate(), PASSWORD.toCharArray(), new Certificate[]{caCert});
+        p12 = new File(directory, "PrivacyCA.p12");
+        try (FileOutputStream out = new FileOutputStream(p12)) {
+            keystore.store(out, PASSWORD.toCharArray());
+        }
+        caPrivKey = TpmUtils.privKeyFromP12(p12.getAbsolutePath(), PASSWORD);
+        caPubCert = TpmUtils.certFromP12(p12.getAbsolutePath(), PASSWORD);
+        KeyPair aikKey = RsaUtil.generateRsaKeyPair(2048);
+        aik = new TpmPubKey((RSAPublicKey) aikKey.getPublic(), 0x1, 0x4);
+        aikBlob = aik.toByteArray();
+        ekCert = RsaUtil.generateX509Certificate("CN=EK", RsaUtil.generateRsaKeyPair(2048), 1).getEncoded();
+        challenges = new String[CHALLENGES];
+        for (int i = 0; i < CHALLENGES; i++) {
+            challenges[i] = TpmUtils.byteArrayToHexString(TpmUtils.createRandomBytes(32));
+        }
+        File requests = new File(directory, "privacyca-aik-requests");
+        // the stores are larger than the set of challenges that the benchmarks cycle through
+        fileStore = new IdentityChallengeStore(CHALLENGES * 2, 600000, requests);
+        // a second store on the same directory always misses in memory and reads the files
+        otherFileStore = new IdentityChallengeStore(CHALLENGES * 2, 600000, requests);
+        memoryStore = new IdentityChallengeStore(CHALLENGES * 2, 600000, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    @Benchmark
+    public X509Certificate issueWithKeyFromFile() throws Exception {
+        RSAPrivateKey privateKey = TpmUtils.privKeyFromP12(p12.getAbsolutePath(), PASSWORD);
+        X509Certificate certificate = TpmUtils.certFromP12(p12.getAbsolutePath(), PASSWORD);
+        return TpmUtils.makeCert(aik, "His_Identity_Key", privateKey, certificate, 365, 0);
+    }
+
+    @Benchmark
+    public X509Certificate issueWithResidentKey() throws Exception {
+        return TpmUtils.makeCert(aik, "His_Identity_Key", caPrivKey, caPubCert, 365, 0);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public X509Certificate issueWithResidentKeyConcurrent() throws Exception {
+        return TpmUtils.makeCert(aik, "His_Identity_Key", caPrivKey, caPubCert, 365, 0);
+    }
+
+    @Benchmark
+    public IdentityChallengeStore.PendingChallenge challengeInFiles() throws Exception {
+        String challenge = challenges[next++ % CHALLENGES];
+        fileStore.put(challenge, new IdentityChallengeStore.PendingChallenge(aikBlob, aikBlob, ekCert));
+        return otherFileStore.get(challenge);
+    }
+
+    @Benchmark
+    public IdentityChallengeStore.PendingChallenge challengeInMemory() throws Exception {
+        String challenge = challenges[next++ % CHALLENGES];
+        memoryStore.put(challenge, new IdentityChallengeStore.PendingChallenge(aikBlob, aikBlob, ekCert));
+        return memoryStore.get(challenge);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PrivacyCaBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
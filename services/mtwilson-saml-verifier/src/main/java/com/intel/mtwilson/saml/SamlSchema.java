@@ -0,0 +1,217 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.saml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.net.URL;
+import java.util.ArrayList;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Source;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.ls.DOMImplementationLS;
+import org.w3c.dom.ls.LSInput;
+import org.w3c.dom.ls.LSResourceResolver;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+/**
+ * Parses and validates SAML assertions against the SAML 2.0 protocol and
+ * assertion schemas and the XML encryption and signature schemas.
+ *
+ * The schemas are read from the xsd folder on the classpath, where they are
+ * found by file name instead of being downloaded from their schema
+ * locations, and compiled the first time an assertion is parsed. The
+ * compiled schema is kept in a static field, so there is one per
+ * classloader that loads this class, and is shared by all threads.
+ *
+ * Documents are validated while they are parsed, with the schema set on
+ * the DocumentBuilderFactory, and not afterwards: only a schema-aware parse
+ * registers the assertion ID attributes as XML IDs, which the signature
+ * references ("#ID") are resolved by.
+ *
+ * See also {@code XML.parseDocumentElement} in mtwilson-util-xml
+ */
+public class SamlSchema {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(SamlSchema.class);
+    private static final String SCHEMA_PACKAGE = "xsd";
+    private static final String[] SCHEMA_LOCATIONS = new String[]{
+        "http://docs.oasis-open.org/security/saml/v2.0/saml-schema-protocol-2.0.xsd",
+        "http://docs.oasis-open.org/security/saml/v2.0/saml-schema-assertion-2.0.xsd",
+        "http://www.w3.org/TR/2002/REC-xmlenc-core-20021210/xenc-schema.xsd",
+        "http://www.w3.org/TR/2002/REC-xmldsig-core-20020212/xmldsig-core-schema.xsd"
+    };
+    private static final DocumentBuilderFactory documentBuilderFactory = createDocumentBuilderFactory();
+    private static volatile Schema schema;
+    private static volatile DocumentBuilderFactory validatingDocumentBuilderFactory;
+
+    private static DocumentBuilderFactory createDocumentBuilderFactory() {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        factory.setExpandEntityReferences(false);
+        try {
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+        } catch (ParserConfigurationException e) {
+            log.warn("Cannot disable document type declarations in SAML assertions", e);
+        }
+        return factory;
+    }
+
+    private static DocumentBuilder newDocumentBuilder() throws ParserConfigurationException {
+        // DocumentBuilderFactory is not required to be thread-safe
+        synchronized (documentBuilderFactory) {
+            return documentBuilderFactory.newDocumentBuilder();
+        }
+    }
+
+    private static DocumentBuilder newValidatingDocumentBuilder() throws ParserConfigurationException, SAXException {
+        DocumentBuilderFactory factory = validatingDocumentBuilderFactory;
+        if (factory == null) {
+            synchronized (SamlSchema.class) {
+                factory = validatingDocumentBuilderFactory;
+                if (factory == null) {
+                    factory = createDocumentBuilderFactory();
+                    factory.setSchema(getSchema());
+                    validatingDocumentBuilderFactory = factory;
+                }
+            }
+        }
+        DocumentBuilder builder;
+        synchronized (factory) {
+            builder = factory.newDocumentBuilder();
+        }
+        builder.setErrorHandler(StrictErrorHandler.INSTANCE);
+        return builder;
+    }
+
+    /**
+     *
+     * @return the compiled SAML schema
+     * @throws SAXException if the schemas cannot be read or compiled
+     * @throws ParserConfigurationException
+     */
+    public static Schema getSchema() throws SAXException, ParserConfigurationException {
+        Schema result = schema;
+        if (result == null) {
+            synchronized (SamlSchema.class) {
+                result = schema;
+                if (result == null) {
+                    result = compileSchema();
+                    schema = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static Schema compileSchema() throws SAXException, ParserConfigurationException {
+        long start = System.currentTimeMillis();
+        ClassLoader classLoader = SamlSchema.class.getClassLoader();
+        DOMImplementationLS ls = (DOMImplementationLS) newDocumentBuilder().getDOMImplementation();
+        SchemaFactory factory = SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI);
+        factory.setResourceResolver(new ClasspathResourceResolver(classLoader, ls));
+        ArrayList<Source> sources = new ArrayList<>();
+        for (String location : SCHEMA_LOCATIONS) {
+            URL resource = getSchemaResource(classLoader, location);
+            if (resource == null) {
+                throw new SAXException("Cannot find schema " + location + " in " + SCHEMA_PACKAGE);
+            }
+            sources.add(new StreamSource(resource.toExternalForm()));
+        }
+        Schema result = factory.newSchema(sources.toArray(new Source[sources.size()]));
+        log.debug("performance: compiled SAML schema in {}ms", System.currentTimeMillis() - start);
+        return result;
+    }
+
+    private static URL getSchemaResource(ClassLoader classLoader, String systemId) {
+        if (systemId == null) {
+            return null;
+        }
+        String filename = systemId.substring(systemId.lastIndexOf('/') + 1);
+        return classLoader.getResource(SCHEMA_PACKAGE + "/" + filename);
+    }
+
+    /**
+     * Parses the document and validates it with the compiled schema.
+     *
+     * @param xml
+     * @return the document element
+     * @throws ParserConfigurationException
+     * @throws SAXException if the document is not well-formed or not valid
+     * @throws IOException
+     */
+    public static Element parseDocumentElement(String xml) throws ParserConfigurationException, SAXException, IOException {
+        Document document = newValidatingDocumentBuilder().parse(new InputSource(new StringReader(xml)));
+        return document.getDocumentElement();
+    }
+
+    /**
+     * The default error handler only prints validation errors, so a
+     * document that is not valid would still be returned.
+     */
+    private static class StrictErrorHandler implements ErrorHandler {
+        private static final StrictErrorHandler INSTANCE = new StrictErrorHandler();
+
+        @Override
+        public void warning(SAXParseException exception) throws SAXException {
+            log.warn("SAML assertion schema warning: {}", exception.getMessage());
+        }
+
+        @Override
+        public void error(SAXParseException exception) throws SAXException {
+            throw exception;
+        }
+
+        @Override
+        public void fatalError(SAXParseException exception) throws SAXException {
+            throw exception;
+        }
+    }
+
+    /**
+     * Resolves the schemas and DTDs referenced by the SAML schemas to the
+     * files with the same name in the xsd folder.
+     */
+    private static class ClasspathResourceResolver implements LSResourceResolver {
+        private final ClassLoader classLoader;
+        private final DOMImplementationLS ls;
+
+        private ClasspathResourceResolver(ClassLoader classLoader, DOMImplementationLS ls) {
+            this.classLoader = classLoader;
+            this.ls = ls;
+        }
+
+        @Override
+        public LSInput resolveResource(String type, String namespaceURI, String publicId, String systemId, String baseURI) {
+            URL resource = getSchemaResource(classLoader, systemId);
+            if (resource == null) {
+                log.warn("Cannot find {} in {}", systemId, SCHEMA_PACKAGE);
+                return null;
+            }
+            try {
+                InputStream in = resource.openStream();
+                LSInput input = ls.createLSInput();
+                input.setByteStream(in);
+                input.setPublicId(publicId);
+                input.setSystemId(resource.toExternalForm());
+                return input;
+            } catch (IOException e) {
+                log.warn("Cannot read {}", resource, e);
+                return null;
+            }
+        }
+    }
+}
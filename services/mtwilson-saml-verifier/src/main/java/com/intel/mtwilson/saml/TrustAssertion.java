@@ -8,7 +8,6 @@ import com.intel.dcsg.cpg.crypto.RsaUtil;
 import com.intel.dcsg.cpg.crypto.SamlUtil;
 import com.intel.dcsg.cpg.x509.X509Util;
 import com.intel.dcsg.cpg.crypto.CryptographyException;
-import com.intel.mtwilson.xml.XML;
 import java.io.IOException;
 import java.security.KeyStoreException;
 import java.security.PublicKey;
@@ -32,6 +31,7 @@ import org.opensaml.saml2.core.Statement;
 import org.opensaml.saml2.core.SubjectConfirmation;
 import org.opensaml.saml2.core.SubjectConfirmationData;
 import org.opensaml.xml.Configuration;
+import org.opensaml.xml.ConfigurationException;
 import org.opensaml.xml.XMLObject;
 import org.opensaml.xml.io.Unmarshaller;
 import org.opensaml.xml.io.UnmarshallerFactory;
@@ -59,8 +59,9 @@ import org.xml.sax.SAXException;
 public class TrustAssertion {
 
     private final Logger log = LoggerFactory.getLogger(getClass());
+    private static volatile boolean bootstrapped = false;
     private Assertion assertion;
-    private HashMap<String, HostTrustAssertion> hostAssertionMap; //   host ->  Map of assertions about the host
+    private Map<String, HostTrustAssertion> hostAssertionMap; //   host ->  Map of assertions about the host
 //    private HashMap<String,String> assertionMap;
     private boolean isValid;
     private Exception error;
@@ -85,7 +86,35 @@ public class TrustAssertion {
      * @throws KeyStoreException
      */
     public TrustAssertion(X509Certificate[] trustedSigners, String xml) {
+        this(trustedSigners, xml, null);
+    }
+
+    /**
+     * If a cache is provided and the same xml was already verified with the
+     * same trusted signers and has not reached its NotOnOrAfter date, the
+     * assertion is taken from the cache without verifying the signature
+     * again.
+     *
+     * @param trustedSigners keystore with at least one trusted certificate with
+     * the "(saml)" tag in its alias
+     * @param xml returned from attestation service
+     * @param cache of verified assertions, for example VerifiedAssertionCache.getInstance(), or null
+     */
+    public TrustAssertion(X509Certificate[] trustedSigners, String xml, VerifiedAssertionCache cache) {
         try {
+            VerifiedAssertionCache.Key key = null;
+            if (cache != null) {
+                key = VerifiedAssertionCache.createKey(trustedSigners, xml);
+                VerifiedAssertionCache.Entry entry = cache.get(key);
+                if (entry != null) {
+                    log.debug("Found verified assertion in cache");
+                    assertion = entry.getAssertion();
+                    hostAssertionMap = entry.getHostAssertionMap();
+                    isValid = true;
+                    error = null;
+                    return;
+                }
+            }
             // is the xml signed by a trusted signer?
             Element document = readXml(xml);
             SamlUtil verifier = new SamlUtil(); // ClassNotFoundException, InstantiationException, IllegalAccessException
@@ -93,13 +122,19 @@ public class TrustAssertion {
             if (isVerified) {
                 log.info("Validated signature in xml document");
                 // populate assertions map
-                DefaultBootstrap.bootstrap(); // required to load default configs that ship with opensaml that specify how to build and parse the xml (if you don't do this you will get a null unmarshaller when you try to parse xml)
+                bootstrap(); // required to load default configs that ship with opensaml that specify how to build and parse the xml (if you don't do this you will get a null unmarshaller when you try to parse xml)
                 assertion = readAssertion(document); // ParserConfigurationException, SAXException, IOException, UnmarshallingException
 //                assertionMap = new HashMap<String,String>();        
                 hostAssertionMap = new HashMap<String, HostTrustAssertion>();
                 populateAssertionMap();
                 isValid = true;
                 error = null;
+                if (cache != null) {
+                    Date notAfter = getNotAfter();
+                    if (notAfter != null) {
+                        cache.put(key, assertion, hostAssertionMap, notAfter);
+                    }
+                }
             } else {
                 throw new IllegalArgumentException("Cannot verify XML signature");
             }
@@ -113,6 +148,21 @@ public class TrustAssertion {
         }
     }
 
+    /**
+     * Loads the OpenSAML configuration the first time it is needed instead
+     * of for every assertion.
+     */
+    private static void bootstrap() throws ConfigurationException {
+        if (!bootstrapped) {
+            synchronized (TrustAssertion.class) {
+                if (!bootstrapped) {
+                    DefaultBootstrap.bootstrap();
+                    bootstrapped = true;
+                }
+            }
+        }
+    }
+
     public boolean isValid() {
         return isValid;
     }
@@ -148,6 +198,9 @@ public class TrustAssertion {
      * included in the saml report, OR null if no such date was found
      */
     public Date getNotAfter() {
+        if (assertion.getSubject() == null) {
+            return null; // the multiple host assertion does not have a subject
+        }
         List<SubjectConfirmation> subjectConfirmations = assertion.getSubject().getSubjectConfirmations();
         Date notAfter = null;
         if (subjectConfirmations != null) {
@@ -312,16 +365,10 @@ public class TrustAssertion {
     }
 
     /**
-     * See also {@code XML.parseDocumentElement} in mtwilson-util-xml
+     * See also {@code SamlSchema.parseDocumentElement}
      */
     private Element readXml(String xmlDocument) throws ParserConfigurationException, SAXException, IOException {
-        XML xml = new XML();
-        xml.setSchemaPackageName("xsd");
-        xml.addSchemaLocation("http://docs.oasis-open.org/security/saml/v2.0/saml-schema-protocol-2.0.xsd");
-        xml.addSchemaLocation("http://docs.oasis-open.org/security/saml/v2.0/saml-schema-assertion-2.0.xsd");
-        xml.addSchemaLocation("http://www.w3.org/TR/2002/REC-xmlenc-core-20021210/xenc-schema.xsd");
-        xml.addSchemaLocation("http://www.w3.org/TR/2002/REC-xmldsig-core-20020212/xmldsig-core-schema.xsd");
-        return xml.parseDocumentElement(xmlDocument);
+        return SamlSchema.parseDocumentElement(xmlDocument);
     }
 
     private Assertion readAssertion(Element document) throws UnmarshallingException {
@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.saml;
+
+import com.intel.mtwilson.saml.TrustAssertion.HostTrustAssertion;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.opensaml.saml2.core.Assertion;
+
+/**
+ * Remembers SAML assertions whose signature was already verified, so that
+ * an assertion presented again (for example the cached host trust assertion
+ * returned to the portal on every dashboard refresh) is not parsed,
+ * validated and verified again.
+ *
+ * Entries are keyed by the SHA-256 digest of the assertion xml together with
+ * the SHA-256 digest of the trusted signer certificates it was verified
+ * with, and are kept until the earliest subject confirmation NotOnOrAfter
+ * date in the assertion. Assertions without a NotOnOrAfter date are not
+ * cached.
+ *
+ * The cached OpenSAML Assertion objects are shared by every TrustAssertion
+ * created from the same xml and must not be modified.
+ */
+public class VerifiedAssertionCache {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(VerifiedAssertionCache.class);
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final VerifiedAssertionCache instance = new VerifiedAssertionCache(10000);
+    private final int maxEntries;
+    private final ConcurrentHashMap<Key, Entry> cache = new ConcurrentHashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public VerifiedAssertionCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     *
+     * @return a cache shared by the applications in this classloader, with
+     * at most 10000 entries
+     */
+    public static VerifiedAssertionCache getInstance() {
+        return instance;
+    }
+
+    public static class Key {
+        private final byte[] assertionDigest;
+        private final byte[] trustedSignersDigest;
+        private final int hash;
+
+        private Key(byte[] assertionDigest, byte[] trustedSignersDigest) {
+            this.assertionDigest = assertionDigest;
+            this.trustedSignersDigest = trustedSignersDigest;
+            this.hash = 31 * Arrays.hashCode(assertionDigest) + Arrays.hashCode(trustedSignersDigest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return Arrays.equals(assertionDigest, other.assertionDigest) && Arrays.equals(trustedSignersDigest, other.trustedSignersDigest);
+        }
+    }
+
+    public static class Entry {
+        private final Assertion assertion;
+        private final Map<String, HostTrustAssertion> hostAssertionMap;
+        private final long notOnOrAfter;
+
+        private Entry(Assertion assertion, Map<String, HostTrustAssertion> hostAssertionMap, long notOnOrAfter) {
+            this.assertion = assertion;
+            this.hostAssertionMap = hostAssertionMap;
+            this.notOnOrAfter = notOnOrAfter;
+        }
+
+        public Assertion getAssertion() {
+            return assertion;
+        }
+
+        /**
+         *
+         * @return an unmodifiable map of host name to host trust assertion
+         */
+        public Map<String, HostTrustAssertion> getHostAssertionMap() {
+            return hostAssertionMap;
+        }
+    }
+
+    /**
+     *
+     * @param trustedSigners
+     * @param xml
+     * @return the cache key for the assertion verified with the trusted signers
+     * @throws NoSuchAlgorithmException
+     * @throws CertificateEncodingException
+     */
+    public static Key createKey(X509Certificate[] trustedSigners, String xml) throws NoSuchAlgorithmException, CertificateEncodingException {
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        byte[] assertionDigest = sha256.digest(xml.getBytes(UTF8));
+        for (X509Certificate trustedSigner : trustedSigners) {
+            sha256.update(trustedSigner.getEncoded());
+        }
+        return new Key(assertionDigest, sha256.digest());
+    }
+
+    /**
+     *
+     * @param key
+     * @return the verified assertion, or null if it is not cached or its NotOnOrAfter date has passed
+     */
+    public Entry get(Key key) {
+        Entry entry = cache.get(key);
+        if (entry != null && System.currentTimeMillis() >= entry.notOnOrAfter) {
+            cache.remove(key, entry);
+            entry = null;
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry;
+    }
+
+    /**
+     *
+     * @param key
+     * @param assertion an assertion whose signature was verified
+     * @param hostAssertionMap
+     * @param notOnOrAfter
+     * @return the cached entry, or null if the assertion is already expired or the cache is full
+     */
+    public Entry put(Key key, Assertion assertion, Map<String, HostTrustAssertion> hostAssertionMap, Date notOnOrAfter) {
+        long now = System.currentTimeMillis();
+        if (now >= notOnOrAfter.getTime()) {
+            return null;
+        }
+        if (cache.size() >= maxEntries) {
+            removeExpired(now);
+            if (cache.size() >= maxEntries) {
+                log.debug("Verified assertion cache is full");
+                return null;
+            }
+        }
+        Entry entry = new Entry(assertion, Collections.unmodifiableMap(new HashMap<>(hostAssertionMap)), notOnOrAfter.getTime());
+        cache.put(key, entry);
+        return entry;
+    }
+
+    private void removeExpired(long now) {
+        Iterator<Entry> it = cache.values().iterator();
+        while (it.hasNext()) {
+            if (now >= it.next().notOnOrAfter) {
+                it.remove();
+            }
+        }
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("VerifiedAssertionCache[size=%d, hits=%d, misses=%d]", size(), getHitCount(), getMissCount());
+    }
+}
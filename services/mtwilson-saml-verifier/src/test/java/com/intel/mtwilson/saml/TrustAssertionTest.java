@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.saml;
+
+import com.intel.dcsg.cpg.x509.X509Util;
+import java.io.InputStream;
+import java.security.cert.X509Certificate;
+import org.apache.commons.io.IOUtils;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class TrustAssertionTest {
+
+    private String getResource(String name) throws Exception {
+        try (InputStream in = getClass().getResourceAsStream(name)) {
+            return IOUtils.toString(in);
+        }
+    }
+
+    private X509Certificate[] getTrustedSigners() throws Exception {
+        return new X509Certificate[]{X509Util.decodePemCertificate(getResource("/saml.crt.pem"))};
+    }
+
+    /**
+     * The signature references the assertion by its ID attribute, which is
+     * only resolved if the document was parsed with the schema.
+     */
+    @Test
+    public void testVerifySignature() throws Exception {
+        TrustAssertion trustAssertion = new TrustAssertion(getTrustedSigners(), getResource("/saml.xml"));
+        assertTrue(String.valueOf(trustAssertion.error()), trustAssertion.isValid());
+        assertFalse(trustAssertion.getHosts().isEmpty());
+    }
+
+    @Test
+    public void testInvalidDocumentIsRejected() throws Exception {
+        String xml = getResource("/saml.xml").replaceFirst("<saml2:Issuer", "<saml2:Unexpected/><saml2:Issuer");
+        TrustAssertion trustAssertion = new TrustAssertion(getTrustedSigners(), xml);
+        assertFalse(trustAssertion.isValid());
+    }
+
+    @Test
+    public void testModifiedAssertionIsRejected() throws Exception {
+        String xml = getResource("/saml.xml").replace("https://127.0.0.1:8080", "https://127.0.0.2:8080");
+        TrustAssertion trustAssertion = new TrustAssertion(getTrustedSigners(), xml);
+        assertFalse(trustAssertion.isValid());
+    }
+}
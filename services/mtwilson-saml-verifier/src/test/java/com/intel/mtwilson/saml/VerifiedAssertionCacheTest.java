@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.saml;
+
+import com.intel.dcsg.cpg.x509.X509Util;
+import com.intel.mtwilson.saml.TrustAssertion.HostTrustAssertion;
+import java.io.InputStream;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Date;
+import org.apache.commons.io.IOUtils;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class VerifiedAssertionCacheTest {
+
+    private X509Certificate getSamlCertificate() throws Exception {
+        try (InputStream in = getClass().getResourceAsStream("/saml.crt.pem")) {
+            return X509Util.decodePemCertificate(IOUtils.toString(in));
+        }
+    }
+
+    @Test
+    public void testKeyIncludesTrustedSigners() throws Exception {
+        X509Certificate cert = getSamlCertificate();
+        VerifiedAssertionCache.Key key = VerifiedAssertionCache.createKey(new X509Certificate[]{cert}, "<xml/>");
+        assertEquals(key, VerifiedAssertionCache.createKey(new X509Certificate[]{cert}, "<xml/>"));
+        assertFalse(key.equals(VerifiedAssertionCache.createKey(new X509Certificate[0], "<xml/>")));
+        assertFalse(key.equals(VerifiedAssertionCache.createKey(new X509Certificate[]{cert}, "<xml />")));
+    }
+
+    @Test
+    public void testValidUntilNotOnOrAfter() throws Exception {
+        VerifiedAssertionCache cache = new VerifiedAssertionCache(10);
+        VerifiedAssertionCache.Key key = VerifiedAssertionCache.createKey(new X509Certificate[]{getSamlCertificate()}, "<xml/>");
+        assertNull(cache.put(key, null, Collections.<String, HostTrustAssertion>emptyMap(), new Date(System.currentTimeMillis() - 1000)));
+        assertNull(cache.get(key));
+        assertNotNull(cache.put(key, null, Collections.<String, HostTrustAssertion>emptyMap(), new Date(System.currentTimeMillis() + 100)));
+        assertNotNull(cache.get(key));
+        Thread.sleep(150);
+        assertNull(cache.get(key));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testFull() throws Exception {
+        VerifiedAssertionCache cache = new VerifiedAssertionCache(1);
+        X509Certificate[] signers = new X509Certificate[]{getSamlCertificate()};
+        Date notOnOrAfter = new Date(System.currentTimeMillis() + 60000);
+        assertNotNull(cache.put(VerifiedAssertionCache.createKey(signers, "<a/>"), null, Collections.<String, HostTrustAssertion>emptyMap(), notOnOrAfter));
+        assertNull(cache.put(VerifiedAssertionCache.createKey(signers, "<b/>"), null, Collections.<String, HostTrustAssertion>emptyMap(), notOnOrAfter));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testSchemaIsCompiledOnce() throws Exception {
+        assertSame(SamlSchema.getSchema(), SamlSchema.getSchema());
+    }
+}
@@ -3,6 +3,7 @@ package com.intel.mtwilson.saml;
 import java.io.*;
 import java.security.*;
 import java.util.Collections;
+import java.util.List;
 import javax.xml.crypto.MarshalException;
 import javax.xml.crypto.dsig.CanonicalizationMethod;
 import javax.xml.crypto.dsig.DigestMethod;
@@ -33,13 +34,39 @@ import org.w3c.dom.NodeList;
  */
 public class SAMLSignature {
 
-    private final XMLSignatureFactory factory;
+    private final Provider provider;
     private final IssuerConfiguration issuerConfiguration;
-    private final KeyInfo keyInfo;
+    private final ThreadLocal<Signer> signer = new ThreadLocal<>();
 
     /**
-     * Loads a keystore and builds a stock key-info structure for use by base
-     * classes.
+     * The XMLSignatureFactory and the signature, digest, and key info
+     * structures built from it, which are the same for every assertion.
+     * XMLSignatureFactory and the signature method are not thread-safe so
+     * each thread gets its own.
+     */
+    private static class Signer {
+        private final XMLSignatureFactory factory;
+        private final DigestMethod digestMethod;
+        private final List<Transform> transforms;
+        private final CanonicalizationMethod canonicalizationMethod;
+        private final SignatureMethod signatureMethod;
+        private final KeyInfo keyInfo;
+
+        private Signer(Provider provider, IssuerConfiguration issuerConfiguration) throws GeneralSecurityException {
+            factory = XMLSignatureFactory.getInstance("DOM", provider);
+            digestMethod = factory.newDigestMethod(DigestMethod.SHA1, null);
+            transforms = Collections.singletonList(factory.newTransform(Transform.ENVELOPED, (TransformParameterSpec) null));
+            canonicalizationMethod = factory.newCanonicalizationMethod(CanonicalizationMethod.INCLUSIVE_WITH_COMMENTS, (C14NMethodParameterSpec) null);
+            signatureMethod = factory.newSignatureMethod(SignatureMethod.RSA_SHA1, null);
+            KeyInfoFactory kFactory = factory.getKeyInfoFactory();
+            keyInfo = kFactory.newKeyInfo(Collections.singletonList(kFactory.newX509Data(Collections.singletonList(issuerConfiguration.getCertificate()))));
+        }
+    }
+
+    /**
+     * Loads the JSR105 provider and builds a stock key-info structure for use
+     * by base classes. The instance is thread-safe and should be reused for
+     * all assertions signed with the same issuer configuration.
      * @param issuerConfiguration with the private key, issuer certificate, and JSR105 provider
      * @throws java.lang.ReflectiveOperationException could be ClassNotFoundException, IllegalAccessException, or IntantiationException
      * @throws java.security.GeneralSecurityException could be KeyStoreException, NoSuchAlgorithmException, UnrecoverableEntryException, or CertificateException when accessing the private key and issuer certificate
@@ -49,11 +76,17 @@ public class SAMLSignature {
         this.issuerConfiguration = issuerConfiguration;
         
         String providerName = issuerConfiguration.getJsr105Provider();
-        factory = XMLSignatureFactory.getInstance("DOM", (Provider) Class.forName(providerName).newInstance());
-
+        provider = (Provider) Class.forName(providerName).newInstance();
+        signer.set(new Signer(provider, issuerConfiguration)); // fails early if the provider does not support the algorithms
+    }
 
-        KeyInfoFactory kFactory = factory.getKeyInfoFactory();
-        keyInfo = kFactory.newKeyInfo(Collections.singletonList(kFactory.newX509Data(Collections.singletonList(issuerConfiguration.getCertificate()))));
+    private Signer getSigner() throws GeneralSecurityException {
+        Signer current = signer.get();
+        if (current == null) {
+            current = new Signer(provider, issuerConfiguration);
+            signer.set(current);
+        }
+        return current;
     }
 
     /**
@@ -68,18 +101,20 @@ public class SAMLSignature {
      */
     public void signSAMLObject(Element target)
             throws GeneralSecurityException, XMLSignatureException, MarshalException {
+        Signer current = getSigner();
+        XMLSignatureFactory factory = current.factory;
+        // the reference holds the computed digest so it is created for each signature
         Reference ref = factory.newReference("#" + target.getAttribute("ID"),
-                factory.newDigestMethod(DigestMethod.SHA1, null),
-                Collections.singletonList(factory.newTransform(Transform.ENVELOPED, (TransformParameterSpec) null)),
+                current.digestMethod,
+                current.transforms,
                 null,
                 null);
 
-        SignedInfo signedInfo = factory.newSignedInfo(factory.newCanonicalizationMethod(CanonicalizationMethod.INCLUSIVE_WITH_COMMENTS,
-                (C14NMethodParameterSpec) null),
-                factory.newSignatureMethod(SignatureMethod.RSA_SHA1, null),
+        SignedInfo signedInfo = factory.newSignedInfo(current.canonicalizationMethod,
+                current.signatureMethod,
                 Collections.singletonList(ref));
 
-        XMLSignature signature = factory.newXMLSignature(signedInfo, keyInfo);
+        XMLSignature signature = factory.newXMLSignature(signedInfo, current.keyInfo);
         DOMSignContext signContext = new DOMSignContext(issuerConfiguration.getPrivateKey(), target);
         signature.sign(signContext);
 
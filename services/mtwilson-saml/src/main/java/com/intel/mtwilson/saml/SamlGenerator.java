@@ -48,6 +48,10 @@ import org.w3c.dom.Element;
  * Pragma: no-cache
  * But there is no harm in the client caching the attestation results for as long as THEY feel comfortable with it.
  * 
+ * A SamlGenerator is thread-safe and should be reused for all assertions of
+ * the same issuer, so the signing key, signature factory, and OpenSAML
+ * builders are prepared once instead of for every assertion.
+ * 
  * @author jbuhacoff
  */
 public class SamlGenerator {
@@ -57,7 +61,11 @@ public class SamlGenerator {
     private final IssuerConfiguration issuerConfiguration;
     private final Integer validitySeconds; // for example 3600 for one hour
     private final SAMLSignature signatureGenerator;
-    private SamlAssertion samlAssertion = null;
+    private final SAMLObjectBuilder assertionBuilder;
+    private final SAMLObjectBuilder issuerBuilder;
+    private final SAMLObjectBuilder attributeBuilder;
+    private final XMLObjectBuilder stringBuilder;
+    private final XMLObjectBuilder anyBuilder;
 //    private Resource keystoreResource = null;
     
     private static class XMLObjectBuilderFactoryHolder {
@@ -94,6 +102,11 @@ public class SamlGenerator {
     public SamlGenerator(IssuerConfiguration issuerConfiguration) throws ConfigurationException {
         this.issuerConfiguration = issuerConfiguration;
         this.builderFactory = XMLObjectBuilderFactoryHolder.builderFactory;
+        this.assertionBuilder = (SAMLObjectBuilder) builderFactory.getBuilder(Assertion.DEFAULT_ELEMENT_NAME);
+        this.issuerBuilder = (SAMLObjectBuilder) builderFactory.getBuilder(Issuer.DEFAULT_ELEMENT_NAME);
+        this.attributeBuilder = (SAMLObjectBuilder) builderFactory.getBuilder(Attribute.DEFAULT_ELEMENT_NAME);
+        this.stringBuilder = builderFactory.getBuilder(XSString.TYPE_NAME);
+        this.anyBuilder = builderFactory.getBuilder(XSAny.TYPE_NAME);
         try {
             signatureGenerator = new SAMLSignature(issuerConfiguration);
         } catch (ReflectiveOperationException | GeneralSecurityException | IOException ex) {
@@ -126,22 +139,23 @@ public class SamlGenerator {
      * @throws MarshallingException 
      */
     public SamlAssertion generateHostAssertion(TxtHost host, X509AttributeCertificate tagCertificate, Map<String, String> vmMetaData) throws MarshallingException, ConfigurationException, UnknownHostException, GeneralSecurityException, XMLSignatureException, MarshalException {
-        samlAssertion = new SamlAssertion();
-        Assertion assertion = createAssertion(host, tagCertificate, vmMetaData);
+        SamlAssertion samlAssertion = new SamlAssertion();
+        Assertion assertion = createAssertion(host, tagCertificate, vmMetaData, samlAssertion);
 
         log.debug("Generating XML elements for assertion");
         AssertionMarshaller marshaller = new AssertionMarshaller();
         Element plaintextElement = marshaller.marshall(assertion);
         
-        log.debug("Generating XML text for assertion");
-        String originalAssertionString = XMLHelper.nodeToString(plaintextElement);
-        log.debug("Assertion String: " + originalAssertionString);
+        if( log.isDebugEnabled() ) {
+            // serializing the unsigned assertion is only needed for the log
+            log.debug("Assertion String: " + XMLHelper.nodeToString(plaintextElement));
+        }
 
         // add signatures and/or encryption
         signAssertion(plaintextElement);
         
         samlAssertion.assertion =  XMLHelper.nodeToString(plaintextElement);
-        log.debug("Signed Assertion String: " + samlAssertion.assertion );
+        log.debug("Signed Assertion String: {}", samlAssertion.assertion);
         return samlAssertion;
     }
     
@@ -159,20 +173,21 @@ public class SamlGenerator {
      */
     public SamlAssertion generateHostAssertions(Collection<TxtHostWithAssetTag> hosts) throws SamlException {
         try {
-            samlAssertion = new SamlAssertion();
+            SamlAssertion samlAssertion = new SamlAssertion();
             Assertion assertion = createAssertion(hosts);
 
             AssertionMarshaller marshaller = new AssertionMarshaller();
             Element plaintextElement = marshaller.marshall(assertion);
 
-            String originalAssertionString = XMLHelper.nodeToString(plaintextElement);
-            log.debug("Assertion String: " + originalAssertionString);
+            if( log.isDebugEnabled() ) {
+                log.debug("Assertion String: " + XMLHelper.nodeToString(plaintextElement));
+            }
 
             // add signatures and/or encryption
             signAssertion(plaintextElement);
 
             samlAssertion.assertion =  XMLHelper.nodeToString(plaintextElement);
-            log.debug("Signed Assertion String: " + samlAssertion.assertion );
+            log.debug("Signed Assertion String: {}", samlAssertion.assertion);
             
             return samlAssertion;
         }
@@ -186,7 +201,6 @@ public class SamlGenerator {
         
         private Issuer createIssuer() {
             // Create Issuer
-            SAMLObjectBuilder issuerBuilder = (SAMLObjectBuilder)  builderFactory.getBuilder(Issuer.DEFAULT_ELEMENT_NAME);
             Issuer issuer = (Issuer) issuerBuilder.buildObject();
             issuer.setValue(issuerConfiguration.getIssuerName());
             return issuer;
@@ -209,11 +223,11 @@ public class SamlGenerator {
         
         // create the Subject and Subject Confirmation
         
-        private SubjectConfirmation createSubjectConfirmation(TxtHost host) throws ConfigurationException, UnknownHostException {
+        private SubjectConfirmation createSubjectConfirmation(TxtHost host, SamlAssertion samlAssertion) throws ConfigurationException, UnknownHostException {
             SAMLObjectBuilder subjectConfirmationBuilder = (SAMLObjectBuilder)  builderFactory.getBuilder(SubjectConfirmation.DEFAULT_ELEMENT_NAME);
             SubjectConfirmation subjectConfirmation = (SubjectConfirmation) subjectConfirmationBuilder.buildObject();
             subjectConfirmation.setMethod(SubjectConfirmation.METHOD_SENDER_VOUCHES); 
-            subjectConfirmation.setSubjectConfirmationData(createSubjectConfirmationData());
+            subjectConfirmation.setSubjectConfirmationData(createSubjectConfirmationData(samlAssertion));
             // Create the NameIdentifier
             SAMLObjectBuilder nameIdBuilder = (SAMLObjectBuilder) builderFactory.getBuilder(NameID.DEFAULT_ELEMENT_NAME);
             NameID nameId = (NameID) nameIdBuilder.buildObject();
@@ -230,12 +244,12 @@ public class SamlGenerator {
          * 
          * See also section 2.4.1.2 Element <SubjectConfirmationData> of http://docs.oasis-open.org/security/saml/v2.0/saml-core-2.0-os.pdf
          * 
-         * @param host
+         * @param samlAssertion receives the created and expiry times
          * @return
          * @throws ConfigurationException
          * @throws UnknownHostException 
          */
-        private SubjectConfirmationData createSubjectConfirmationData() throws ConfigurationException, UnknownHostException {
+        private SubjectConfirmationData createSubjectConfirmationData(SamlAssertion samlAssertion) throws ConfigurationException, UnknownHostException {
             SAMLObjectBuilder confirmationMethodBuilder = (SAMLObjectBuilder)  builderFactory.getBuilder(SubjectConfirmationData.DEFAULT_ELEMENT_NAME);
             SubjectConfirmationData confirmationMethod = (SubjectConfirmationData) confirmationMethodBuilder.buildObject();
             DateTime now = new DateTime();
@@ -259,12 +273,12 @@ public class SamlGenerator {
             return confirmationMethod;
         }
         
-        private Subject createSubject(TxtHost host) throws ConfigurationException, UnknownHostException {
+        private Subject createSubject(TxtHost host, SamlAssertion samlAssertion) throws ConfigurationException, UnknownHostException {
             // Create the Subject
             SAMLObjectBuilder subjectBuilder = (SAMLObjectBuilder)  builderFactory.getBuilder(Subject.DEFAULT_ELEMENT_NAME);
             Subject subject = (Subject) subjectBuilder.buildObject();
             subject.setNameID(createNameID(host));
-            subject.getSubjectConfirmations().add(createSubjectConfirmation(host));
+            subject.getSubjectConfirmations().add(createSubjectConfirmation(host, samlAssertion));
             return subject;
         }
         
@@ -279,12 +293,10 @@ public class SamlGenerator {
          * @throws ConfigurationException 
          */
 	private Attribute createStringAttribute(String name, String value) throws ConfigurationException {
-            SAMLObjectBuilder attrBuilder = (SAMLObjectBuilder)  builderFactory.getBuilder(Attribute.DEFAULT_ELEMENT_NAME);
-            Attribute attr = (Attribute) attrBuilder.buildObject();
+            Attribute attr = (Attribute) attributeBuilder.buildObject();
             attr.setName(name);
 
-            XMLObjectBuilder xmlBuilder =  builderFactory.getBuilder(XSString.TYPE_NAME);
-            XSString attrValue = (XSString) xmlBuilder.buildObject(AttributeValue.DEFAULT_ELEMENT_NAME, XSString.TYPE_NAME);
+            XSString attrValue = (XSString) stringBuilder.buildObject(AttributeValue.DEFAULT_ELEMENT_NAME, XSString.TYPE_NAME);
             attrValue.setValue(value);
 
             attr.getAttributeValues().add(attrValue);
@@ -299,12 +311,10 @@ public class SamlGenerator {
          * @throws ConfigurationException 
          */
 	private Attribute createBooleanAttribute(String name, boolean value) throws ConfigurationException {
-            SAMLObjectBuilder attrBuilder = (SAMLObjectBuilder)  builderFactory.getBuilder(Attribute.DEFAULT_ELEMENT_NAME);
-            Attribute attr = (Attribute) attrBuilder.buildObject();
+            Attribute attr = (Attribute) attributeBuilder.buildObject();
             attr.setName(name);
 
-            XMLObjectBuilder xmlBuilder =  builderFactory.getBuilder(XSAny.TYPE_NAME);
-            XSAny attrValue = (XSAny) xmlBuilder.buildObject(AttributeValue.DEFAULT_ELEMENT_NAME, XSAny.TYPE_NAME);
+            XSAny attrValue = (XSAny) anyBuilder.buildObject(AttributeValue.DEFAULT_ELEMENT_NAME, XSAny.TYPE_NAME);
             attrValue.setTextContent( value ? "true" : "false" );
 
             attr.getAttributeValues().add(attrValue);
@@ -319,8 +329,7 @@ public class SamlGenerator {
          * @throws ConfigurationException 
          */
 	private Attribute createBase64BinaryAttribute(String name, byte[] value) throws ConfigurationException {
-            SAMLObjectBuilder attrBuilder = (SAMLObjectBuilder)  builderFactory.getBuilder(Attribute.DEFAULT_ELEMENT_NAME);
-            Attribute attr = (Attribute) attrBuilder.buildObject();
+            Attribute attr = (Attribute) attributeBuilder.buildObject();
             attr.setName(name);
 
             XMLObjectBuilder xmlBuilder =  builderFactory.getBuilder(XSBase64Binary.TYPE_NAME);
@@ -456,19 +465,19 @@ public class SamlGenerator {
          * ID attribute: see section 5.4.2  "References" of http://docs.oasis-open.org/security/saml/v2.0/saml-core-2.0-os.pdf
          * 
          * @param host
+         * @param samlAssertion receives the created and expiry times
          * @return 
          */
-        private Assertion createAssertion(TxtHost host, X509AttributeCertificate tagCertificate, Map<String, String> vmMetaData) throws ConfigurationException, UnknownHostException {
+        private Assertion createAssertion(TxtHost host, X509AttributeCertificate tagCertificate, Map<String, String> vmMetaData, SamlAssertion samlAssertion) throws ConfigurationException, UnknownHostException {
             // Create the assertion
             log.debug("createAssertion for hostname: {}", host.getHostName());
-            SAMLObjectBuilder assertionBuilder = (SAMLObjectBuilder)  builderFactory.getBuilder(Assertion.DEFAULT_ELEMENT_NAME);
             Assertion assertion = (Assertion) assertionBuilder.buildObject();
             assertion.setID("HostTrustAssertion"); // ID is arbitrary, only needs to be unique WITHIN THE DOCUMENT, and is required so that the Signature element can refer to it, for example #HostTrustAssertion
             assertion.setIssuer(createIssuer());
             DateTime now = new DateTime();
             assertion.setIssueInstant(now);
             assertion.setVersion(SAMLVersion.VERSION_20);
-            assertion.setSubject(createSubject(host));
+            assertion.setSubject(createSubject(host, samlAssertion));
             assertion.getAttributeStatements().add(createHostAttributes(host, tagCertificate, vmMetaData));
 
             return assertion;
@@ -487,7 +496,6 @@ public class SamlGenerator {
          */
         private Assertion createAssertion(Collection<TxtHostWithAssetTag> hosts) throws ConfigurationException, UnknownHostException {
             // Create the assertion
-            SAMLObjectBuilder assertionBuilder = (SAMLObjectBuilder)  builderFactory.getBuilder(Assertion.DEFAULT_ELEMENT_NAME);
             Assertion assertion = (Assertion) assertionBuilder.buildObject();
             assertion.setID("MultipleHostTrustAssertion"); // ID is arbitrary, only needs to be unique WITHIN THE DOCUMENT, and is required so that the Signature element can refer to it, for example #HostTrustAssertion
             assertion.setIssuer(createIssuer());
@@ -525,9 +533,8 @@ public class SamlGenerator {
         }
         
     public SamlAssertion generateVMAssertion(TxtHost host, Map<String, String> vmMetaData) throws MarshallingException, ConfigurationException, UnknownHostException, GeneralSecurityException, XMLSignatureException, MarshalException {
-        samlAssertion = new SamlAssertion();
+        SamlAssertion samlAssertion = new SamlAssertion();
 
-        SAMLObjectBuilder assertionBuilder = (SAMLObjectBuilder) builderFactory.getBuilder(Assertion.DEFAULT_ELEMENT_NAME);
         Assertion assertion = (Assertion) assertionBuilder.buildObject();
         assertion.setID("VMTrustAssertion"); 
         assertion.setIssuer(createIssuer());
@@ -543,7 +550,7 @@ public class SamlGenerator {
         SAMLObjectBuilder subjectConfirmationBuilder = (SAMLObjectBuilder)  builderFactory.getBuilder(SubjectConfirmation.DEFAULT_ELEMENT_NAME);
         SubjectConfirmation subjectConfirmation = (SubjectConfirmation) subjectConfirmationBuilder.buildObject();
         subjectConfirmation.setMethod(SubjectConfirmation.METHOD_SENDER_VOUCHES); 
-        subjectConfirmation.setSubjectConfirmationData(createSubjectConfirmationData());
+        subjectConfirmation.setSubjectConfirmationData(createSubjectConfirmationData(samlAssertion));
         // Create the NameIdentifier
         SAMLObjectBuilder nameIdBuilder = (SAMLObjectBuilder) builderFactory.getBuilder(NameID.DEFAULT_ELEMENT_NAME);
         NameID nameId = (NameID) nameIdBuilder.buildObject();
@@ -560,14 +567,15 @@ public class SamlGenerator {
         AssertionMarshaller marshaller = new AssertionMarshaller();
         Element plaintextElement = marshaller.marshall(assertion);
 
-        String originalAssertionString = XMLHelper.nodeToString(plaintextElement);
-        log.debug("Assertion String: " + originalAssertionString);
+        if( log.isDebugEnabled() ) {
+            log.debug("Assertion String: " + XMLHelper.nodeToString(plaintextElement));
+        }
 
         // add signatures and/or encryption
         signAssertion(plaintextElement);
 
         samlAssertion.assertion = XMLHelper.nodeToString(plaintextElement);
-        log.debug("Signed Assertion String: " + samlAssertion.assertion);
+        log.debug("Signed Assertion String: {}", samlAssertion.assertion);
         return samlAssertion;
     }
 
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package test.saml;
+
+import com.intel.dcsg.cpg.configuration.PropertiesConfiguration;
+import com.intel.dcsg.cpg.crypto.RsaUtil;
+import com.intel.mtwilson.datatypes.HostTrustStatus;
+import com.intel.mtwilson.datatypes.TxtHost;
+import com.intel.mtwilson.datatypes.TxtHostRecord;
+import com.intel.mtwilson.saml.IssuerConfiguration;
+import com.intel.mtwilson.saml.SamlAssertion;
+import com.intel.mtwilson.saml.SamlGenerator;
+import com.intel.mtwilson.saml.TxtHostWithAssetTag;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures assertions per second for single-host and multi-host assertions,
+ * comparing a new SamlGenerator for each assertion (as HostTrustBO did
+ * before) with one shared SamlGenerator, on one thread and on several
+ * threads signing concurrently.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=test.saml.SamlGeneratorBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SamlGeneratorBenchmark {
+    @Param({"10", "100"})
+    public int hostCount;
+
+    private IssuerConfiguration issuerConfiguration;
+    private SamlGenerator sharedGenerator;
+    private TxtHost host;
+    private List<TxtHostWithAssetTag> hosts;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        PropertiesConfiguration configuration = new PropertiesConfiguration();
+        configuration.set("saml.issuer", "benchmark");
+        KeyPair issuerKey = RsaUtil.generateRsaKeyPair(2048);
+        X509Certificate issuerCert = RsaUtil.generateX509Certificate("CN=benchmark", issuerKey, 1);
+        issuerConfiguration = new IssuerConfiguration(issuerKey.getPrivate(), issuerCert, configuration);
+        sharedGenerator = new SamlGenerator(issuerConfiguration);
+        host = createHost(0);
+        hosts = new ArrayList<>(hostCount);
+        for (int i = 0; i < hostCount; i++) {
+            hosts.add(new TxtHostWithAssetTag(createHost(i), null));
+        }
+    }
+
+    private TxtHost createHost(int i) {
+        HostTrustStatus trust = new HostTrustStatus();
+        trust.bios = true;
+        trust.vmm = true;
+        TxtHostRecord data = new TxtHostRecord();
+        data.HostName = "host" + i;
+        data.IPAddress = "10.0." + (i / 256) + "." + (i % 256);
+        data.BIOS_Name = "Generic BIOS";
+        data.BIOS_Version = "1.0";
+        data.BIOS_Oem = "Generic OEM";
+        data.VMM_Name = "Generic VMM";
+        data.VMM_Version = "1.0";
+        data.VMM_OSName = "Generic OS";
+        data.VMM_OSVersion = "1.0";
+        return new TxtHost(data, trust);
+    }
+
+    @Benchmark
+    public SamlAssertion singleHostNewGenerator() throws Exception {
+        return new SamlGenerator(issuerConfiguration).generateHostAssertion(host, null, null);
+    }
+
+    @Benchmark
+    public SamlAssertion singleHostSharedGenerator() throws Exception {
+        return sharedGenerator.generateHostAssertion(host, null, null);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public SamlAssertion singleHostSharedGeneratorConcurrent() throws Exception {
+        return sharedGenerator.generateHostAssertion(host, null, null);
+    }
+
+    @Benchmark
+    public SamlAssertion multiHostNewGenerator() throws Exception {
+        return new SamlGenerator(issuerConfiguration).generateHostAssertions(hosts);
+    }
+
+    @Benchmark
+    public SamlAssertion multiHostSharedGenerator() throws Exception {
+        return sharedGenerator.generateHostAssertions(hosts);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public SamlAssertion multiHostSharedGeneratorConcurrent() throws Exception {
+        return sharedGenerator.generateHostAssertions(hosts);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SamlGeneratorBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -93,35 +93,54 @@ public class JdbcCertificateRealm extends AuthorizingRealm {
         for (Username username : usernames) {
             log.debug("doGetAuthorizationInfo for username: {}", username.getUsername());
         }
+        Collection<LoginCertificateId> loginCertificateIds = pc.byType(LoginCertificateId.class);
+        for (LoginCertificateId loginCertificateId : loginCertificateIds) {
+            log.debug("doGetAuthorizationInfo for login certificate id: {}", loginCertificateId.getLoginCertificateId());
+            LoginCache.Authorization authorization = findAuthorization(loginCertificateId);
+            authzInfo.addRoles(authorization.getRoles());
+            authzInfo.addStringPermissions(authorization.getPermissions());
+        }
+
+        return authzInfo;
+    }
+    
+    private LoginCache.Authorization findAuthorization(LoginCertificateId loginCertificateId) {
+        LoginCache cache = LoginCache.getInstance();
+        String key = "certificate:" + loginCertificateId.getLoginCertificateId();
+        if (cache != null) {
+            LoginCache.Authorization authorization = cache.getAuthorization(key);
+            if (authorization != null) {
+                return authorization;
+            }
+        }
+        long version = cache == null ? 0 : cache.getVersion();
+        HashSet<String> roleNames = new HashSet<>();
+        HashSet<String> stringPermissions = new HashSet<>();
         try (LoginDAO dao = MyJdbi.authz()) {
             log.debug("doGetAuthorizationInfo got DAO instance: {}", dao);
-            Collection<LoginCertificateId> loginCertificateIds = pc.byType(LoginCertificateId.class);
-            for (LoginCertificateId loginCertificateId : loginCertificateIds) {
-                log.debug("doGetAuthorizationInfo for login certificate id: {}", loginCertificateId.getLoginCertificateId());
-                
-                
-                List<Role> roles = dao.findRolesByUserLoginCertificateId(loginCertificateId.getLoginCertificateId());
-                HashSet<String> roleIds = new HashSet<>();
-                for (Role role : roles) {
-                    log.debug("doGetAuthorizationInfo found role: {}", role.getRoleName());
-                    roleIds.add(role.getId().toString());
-                    authzInfo.addRole(role.getRoleName());
-                }
-                if (!roleIds.isEmpty()) {
-                    List<RolePermission> permissions = dao.findRolePermissionsByCertificateRoleIds(roleIds);
-                    for (RolePermission permission : permissions) {
-                        log.debug("doGetAuthorizationInfo found permission: {} {} {}", permission.getPermitDomain(), permission.getPermitAction(), permission.getPermitSelection());
-                        authzInfo.addStringPermission(String.format("%s:%s:%s", permission.getPermitDomain(), permission.getPermitAction(), permission.getPermitSelection()));
-                    }
+            List<Role> roles = dao.findRolesByUserLoginCertificateId(loginCertificateId.getLoginCertificateId());
+            HashSet<String> roleIds = new HashSet<>();
+            for (Role role : roles) {
+                log.debug("doGetAuthorizationInfo found role: {}", role.getRoleName());
+                roleIds.add(role.getId().toString());
+                roleNames.add(role.getRoleName());
+            }
+            if (!roleIds.isEmpty()) {
+                List<RolePermission> permissions = dao.findRolePermissionsByCertificateRoleIds(roleIds);
+                for (RolePermission permission : permissions) {
+                    log.debug("doGetAuthorizationInfo found permission: {} {} {}", permission.getPermitDomain(), permission.getPermitAction(), permission.getPermitSelection());
+                    stringPermissions.add(String.format("%s:%s:%s", permission.getPermitDomain(), permission.getPermitAction(), permission.getPermitSelection()));
                 }
-                
             }
         } catch (Exception e) {
             log.debug("doGetAuthorizationInfo error", e);
             throw new AuthenticationException("Internal server error", e); 
         }
-
-        return authzInfo;
+        LoginCache.Authorization authorization = new LoginCache.Authorization(roleNames, stringPermissions);
+        if (cache != null) {
+            cache.putAuthorization(key, authorization, version);
+        }
+        return authorization;
     }
     
     @Override
@@ -132,71 +151,18 @@ public class JdbcCertificateRealm extends AuthorizingRealm {
         if( xToken.getPrincipal() instanceof Fingerprint ) {
             Fingerprint fingerprint = (Fingerprint)xToken.getPrincipal();
             log.debug("doGetAuthenticationInfo for fingerprint {}", fingerprint.getHex());
-            try (LoginDAO dao = MyJdbi.authz()) {
-                // anti-replay protection: check the database to see if we have already received a request with this signature
-                // it should not affect legitimate clients because if they send the same logical request twice, the timestamp and
-                // nonce would be different which would result in a different digest and signature and thus would still have be unique
-                Credential credential = (Credential)xToken.getCredentials();
-                RequestLogEntry requestLogEntry = new RequestLogEntry();
-                requestLogEntry.setDigest(Base64.encodeBase64String(credential.getDigest()));
-                requestLogEntry.setSource(xToken.getHost());
-                requestLogEntry.setInstance(localAddress);
-                requestLogEntry.setReceived(new Date());
-                requestLogEntry.setContent(xToken.getSignatureInput().toString());
-                try {
-                    // first, look at the date header in the request and compare to our current time; if it's earlier than
-                    // the earliest entry in the request log, then we have to reject it in order to prevent replay attacks
-                    // of messages that we already deleted from the request log.
-                    // clients MUST include a date header in the request and cover it with the signature.
-                    // clients SHOULD synchronize their clocks (at least for the requests) with our server clock to avoid rejecting messages unnecessarily
-                    if( xToken.getSignatureInput().headers == null || !xToken.getSignatureInput().headers.containsKey("Date") ) {
-                        log.debug("request does not include date header");
-                        return null;
-                    }
-                    // second, check if the user has specified an expiration time for the request and enforce it
-                    if( xToken.getSignatureInput().headers.containsKey("Expires") ) {
-                        Date expires = Rfc822Date.parse(xToken.getSignatureInput().headers.get("Expires"));
-                        if( requestLogEntry.getReceived().after(expires) ) {
-                            log.debug("request has expired; must be rejected");
-                            return null;
-                        }
-                    }
-                    // third, ensure that the request is not earlier than the start of our anti-replay protection window (represented by the earliest request received in the request log) 
-                    Date requestDate = Rfc822Date.parse(xToken.getSignatureInput().headers.get("Date"));
-                    RequestLogEntry earliest = dao.findRequestLogEntryByEarliestDate();
-                    if( earliest != null && requestDate.before(earliest.getReceived()) ) {
-                        log.debug("request date is before anti-replay window; must be rejected");
-                        return null;
-                    }
-                    // fourth, try to insert the request into the log - it will fail if there is already a request with the same digest
-                    log.debug("inserting request log entry with digest {} from source {} received at {} by {}", requestLogEntry.getDigest(), requestLogEntry.getSource(), requestLogEntry.getReceived(), requestLogEntry.getInstance());
-                    dao.insertRequestLogEntry(requestLogEntry);
-                    // so at this point, we have inserted a new request into the request log 
-                    // and it's protected from replay because the request digest is in the log so
-                    // if a duplicate request comes in then it won't be able to insert (above)
-                }
-                catch(Exception e) {
-                    log.debug("Cannot insert request log entry", e); // probably a duplicate, but could also be database connection issue
-                    return null;
-                }
-                
-                if( Sha256Digest.isValid(fingerprint.getBytes())) {
-                    userLoginCertificate = dao.findUserLoginCertificateBySha256(fingerprint.getBytes()); 
-                }
-                else if( Sha1Digest.isValid(fingerprint.getBytes())) {
-                    userLoginCertificate = dao.findUserLoginCertificateBySha1(fingerprint.getBytes()); 
-                }
-                else {
-                    log.error("Unsupported digest length {}", fingerprint.getBytes().length);
-                }
-                if(userLoginCertificate != null && userLoginCertificate.isEnabled() ) {
-                    user = dao.findUserById(userLoginCertificate.getUserId());
+            LoginCache cache = LoginCache.getInstance();
+            LoginCache.Login<UserLoginCertificate> login = cache == null ? null : cache.getCertificateLogin(fingerprint.getHex());
+            if( login == null ) {
+                long version = cache == null ? 0 : cache.getVersion();
+                login = findLogin(fingerprint);
+                if( login != null && cache != null ) {
+                    cache.putCertificateLogin(fingerprint.getHex(), login, version);
                 }
-    //            xToken.
-    //            userLoginCertificate = dao.findUserLoginCertificateByUsername(username);
-            } catch (Exception e) {
-                log.debug("doGetAuthenticationInfo error", e);
-                throw new AuthenticationException("Internal server error", e); 
+            }
+            if( login != null ) {
+                userLoginCertificate = login.getUserLogin();
+                user = login.getUser();
             }
         }
         if (userLoginCertificate == null || user == null) {
@@ -223,5 +189,117 @@ public class JdbcCertificateRealm extends AuthorizingRealm {
 
         return info;
     }
+    
+    /**
+     * The request is checked and recorded for anti-replay protection only
+     * after the credentials matcher has verified its signature, so requests
+     * that are not signed by a known client cannot fill the request log.
+     *
+     * @param token
+     * @param info
+     * @throws AuthenticationException if the signature is invalid or the request is a replay
+     */
+    @Override
+    protected void assertCredentialsMatch(AuthenticationToken token, AuthenticationInfo info) throws AuthenticationException {
+        super.assertCredentialsMatch(token, info);
+        if( token instanceof X509AuthenticationToken && !isNewRequest((X509AuthenticationToken) token) ) {
+            throw new AuthenticationException("Request rejected by anti-replay protection");
+        }
+    }
+    
+    /**
+     * Anti-replay protection: checks that we have not already received a
+     * request with this signature. It should not affect legitimate clients
+     * because if they send the same logical request twice, the timestamp and
+     * nonce would be different which would result in a different digest and
+     * signature and thus would still have be unique.
+     * 
+     * @param xToken
+     * @return true if the request is not a replay and is within the anti-replay protection window
+     */
+    private boolean isNewRequest(X509AuthenticationToken xToken) {
+        Credential credential = (Credential)xToken.getCredentials();
+        RequestLogEntry requestLogEntry = new RequestLogEntry();
+        requestLogEntry.setDigest(Base64.encodeBase64String(credential.getDigest()));
+        requestLogEntry.setSource(xToken.getHost());
+        requestLogEntry.setInstance(localAddress);
+        requestLogEntry.setReceived(new Date());
+        requestLogEntry.setContent(xToken.getSignatureInput().toString());
+        try {
+            // first, look at the date header in the request and compare to our current time; if it's earlier than
+            // the earliest entry in the request log, then we have to reject it in order to prevent replay attacks
+            // of messages that we already deleted from the request log.
+            // clients MUST include a date header in the request and cover it with the signature.
+            // clients SHOULD synchronize their clocks (at least for the requests) with our server clock to avoid rejecting messages unnecessarily
+            if( xToken.getSignatureInput().headers == null || !xToken.getSignatureInput().headers.containsKey("Date") ) {
+                log.debug("request does not include date header");
+                return false;
+            }
+            // second, check if the user has specified an expiration time for the request and enforce it
+            if( xToken.getSignatureInput().headers.containsKey("Expires") ) {
+                Date expires = Rfc822Date.parse(xToken.getSignatureInput().headers.get("Expires"));
+                if( requestLogEntry.getReceived().after(expires) ) {
+                    log.debug("request has expired; must be rejected");
+                    return false;
+                }
+            }
+            Date requestDate = Rfc822Date.parse(xToken.getSignatureInput().headers.get("Date"));
+            // unless the request log is shared in the database, the window and the digests are checked in memory
+            ReplayCache replayCache = ReplayCache.getInstance();
+            if( replayCache != null ) {
+                return replayCache.add(requestLogEntry.getDigest(), requestDate, requestLogEntry.getReceived());
+            }
+            try (LoginDAO dao = MyJdbi.authz()) {
+                // third, ensure that the request is not earlier than the start of our anti-replay protection window (represented by the earliest request received in the request log) 
+                RequestLogEntry earliest = dao.findRequestLogEntryByEarliestDate();
+                if( earliest != null && requestDate.before(earliest.getReceived()) ) {
+                    log.debug("request date is before anti-replay window; must be rejected");
+                    return false;
+                }
+                // fourth, try to insert the request into the log - it will fail if there is already a request with the same digest
+                log.debug("inserting request log entry with digest {} from source {} received at {} by {}", requestLogEntry.getDigest(), requestLogEntry.getSource(), requestLogEntry.getReceived(), requestLogEntry.getInstance());
+                dao.insertRequestLogEntry(requestLogEntry);
+                // so at this point, we have inserted a new request into the request log 
+                // and it's protected from replay because the request digest is in the log so
+                // if a duplicate request comes in then it won't be able to insert (above)
+            }
+            return true;
+        }
+        catch(Exception e) {
+            log.debug("Cannot insert request log entry", e); // probably a duplicate, but could also be database connection issue
+            return false;
+        }
+    }
+    
+    /**
+     * 
+     * @param fingerprint
+     * @return the enabled login certificate with the fingerprint and its user, or null if there is none
+     */
+    private LoginCache.Login<UserLoginCertificate> findLogin(Fingerprint fingerprint) {
+        try (LoginDAO dao = MyJdbi.authz()) {
+            UserLoginCertificate userLoginCertificate = null;
+            if( Sha256Digest.isValid(fingerprint.getBytes())) {
+                userLoginCertificate = dao.findUserLoginCertificateBySha256(fingerprint.getBytes()); 
+            }
+            else if( Sha1Digest.isValid(fingerprint.getBytes())) {
+                userLoginCertificate = dao.findUserLoginCertificateBySha1(fingerprint.getBytes()); 
+            }
+            else {
+                log.error("Unsupported digest length {}", fingerprint.getBytes().length);
+            }
+            if(userLoginCertificate == null || !userLoginCertificate.isEnabled() ) {
+                return null;
+            }
+            User user = dao.findUserById(userLoginCertificate.getUserId());
+            if( user == null ) {
+                return null;
+            }
+            return new LoginCache.Login<>(userLoginCertificate, user, null);
+        } catch (Exception e) {
+            log.debug("doGetAuthenticationInfo error", e);
+            throw new AuthenticationException("Internal server error", e); 
+        }
+    }
         
 }
@@ -56,35 +56,53 @@ public class JdbcPasswordRealm extends AuthorizingRealm {
         for (Username username : usernames) {
             log.debug("doGetAuthorizationInfo for username: {}", username.getUsername());
         }
+        Collection<LoginPasswordId> loginPasswordIds = pc.byType(LoginPasswordId.class);
+        for (LoginPasswordId loginPasswordId : loginPasswordIds) {
+            log.debug("doGetAuthorizationInfo for login password id: {}", loginPasswordId.getLoginPasswordId());
+            LoginCache.Authorization authorization = findAuthorization(loginPasswordId);
+            authzInfo.addRoles(authorization.getRoles());
+            authzInfo.addStringPermissions(authorization.getPermissions());
+        }
+
+        return authzInfo;
+    }
+    
+    private LoginCache.Authorization findAuthorization(LoginPasswordId loginPasswordId) {
+        LoginCache cache = LoginCache.getInstance();
+        String key = "password:" + loginPasswordId.getLoginPasswordId();
+        if (cache != null) {
+            LoginCache.Authorization authorization = cache.getAuthorization(key);
+            if (authorization != null) {
+                return authorization;
+            }
+        }
+        long version = cache == null ? 0 : cache.getVersion();
+        HashSet<String> roleNames = new HashSet<>();
+        HashSet<String> stringPermissions = new HashSet<>();
         try (LoginDAO dao = MyJdbi.authz()) {
-            
-            Collection<LoginPasswordId> loginPasswordIds = pc.byType(LoginPasswordId.class);
-            for (LoginPasswordId loginPasswordId : loginPasswordIds) {
-                log.debug("doGetAuthorizationInfo for login password id: {}", loginPasswordId.getLoginPasswordId());
-                
-                
-                List<Role> roles = dao.findRolesByUserLoginPasswordId(loginPasswordId.getLoginPasswordId());
-                HashSet<String> roleIds = new HashSet<>();
-                for (Role role : roles) {
-                    log.debug("doGetAuthorizationInfo found role: {}", role.getRoleName());
-                    roleIds.add(role.getId().toString());
-                    authzInfo.addRole(role.getRoleName());
-                }
-                if (!roleIds.isEmpty()) {
-                    List<RolePermission> permissions = dao.findRolePermissionsByPasswordRoleIds(roleIds);
-                    for (RolePermission permission : permissions) {
-                        log.debug("doGetAuthorizationInfo found permission: {} {} {}", permission.getPermitDomain(), permission.getPermitAction(), permission.getPermitSelection());
-                        authzInfo.addStringPermission(String.format("%s:%s:%s", permission.getPermitDomain(), permission.getPermitAction(), permission.getPermitSelection()));
-                    }
+            List<Role> roles = dao.findRolesByUserLoginPasswordId(loginPasswordId.getLoginPasswordId());
+            HashSet<String> roleIds = new HashSet<>();
+            for (Role role : roles) {
+                log.debug("doGetAuthorizationInfo found role: {}", role.getRoleName());
+                roleIds.add(role.getId().toString());
+                roleNames.add(role.getRoleName());
+            }
+            if (!roleIds.isEmpty()) {
+                List<RolePermission> permissions = dao.findRolePermissionsByPasswordRoleIds(roleIds);
+                for (RolePermission permission : permissions) {
+                    log.debug("doGetAuthorizationInfo found permission: {} {} {}", permission.getPermitDomain(), permission.getPermitAction(), permission.getPermitSelection());
+                    stringPermissions.add(String.format("%s:%s:%s", permission.getPermitDomain(), permission.getPermitAction(), permission.getPermitSelection()));
                 }
-                
             }
         } catch (Exception e) {
             log.debug("doGetAuthorizationInfo error", e);
             throw new AuthenticationException("Internal server error", e); 
         }
-
-        return authzInfo;
+        LoginCache.Authorization authorization = new LoginCache.Authorization(roleNames, stringPermissions);
+        if (cache != null) {
+            cache.putAuthorization(key, authorization, version);
+        }
+        return authorization;
     }
     
     @Override
@@ -96,50 +114,27 @@ public class JdbcPasswordRealm extends AuthorizingRealm {
             throw new AccountException("Username must be provided");
         }
         log.debug("doGetAuthenticationInfo for username {}", username);
-        UserLoginPassword userLoginPassword;
-        User user;
-        UsernameWithPermissions usernameWithPermissions = null;
-        try (LoginDAO dao = MyJdbi.authz()) {
-            userLoginPassword = dao.findUserLoginPasswordByUsernameEnabled(username, true);
-            if( userLoginPassword != null && userLoginPassword.isEnabled() ) {
-                user = dao.findUserById(userLoginPassword.getUserId());
-                
-                // now get the permissions and associate with the username
-                HashSet<String> stringPermissions = new HashSet<>();
-                List<Role> roles = dao.findRolesByUserLoginPasswordId(userLoginPassword.getId());
-                if (!roles.isEmpty()) {
-                    HashSet<String> roleIds = new HashSet<>();
-                    for(Role role : roles) {
-                        roleIds.add(role.getId().toString());
-                    }
-                    List<RolePermission> permissions = dao.findRolePermissionsByPasswordRoleIds(roleIds);
-                    for (RolePermission permission : permissions) {
-                        log.debug("doGetAuthorizationInfo found permission: {} {} {}", permission.getPermitDomain(), permission.getPermitAction(), permission.getPermitSelection());
-                        stringPermissions.add(String.format("%s:%s:%s", permission.getPermitDomain(), permission.getPermitAction(), permission.getPermitSelection()));
-                    }
-                }
-                
-                usernameWithPermissions = new UsernameWithPermissions(user.getUsername(), stringPermissions);
-                
-                
-            } else {
-                user = null;
+        LoginCache cache = LoginCache.getInstance();
+        LoginCache.Login<UserLoginPassword> login = cache == null ? null : cache.getPasswordLogin(username);
+        if (login == null) {
+            long version = cache == null ? 0 : cache.getVersion();
+            login = findLogin(username);
+            if (login != null && cache != null) {
+                cache.putPasswordLogin(username, login, version);
             }
-        } catch (Exception e) {
-            log.debug("doGetAuthenticationInfo error", e);
-            throw new AuthenticationException("Internal server error", e);
         }
-        if (userLoginPassword == null || user == null ) {
+        if (login == null) {
             return null;
         }
+        UserLoginPassword userLoginPassword = login.getUserLogin();
+        User user = login.getUser();
+        UsernameWithPermissions usernameWithPermissions = new UsernameWithPermissions(user.getUsername(), new HashSet<>(login.getPermissions()));
 
         log.debug("doGetAuthenticationInfo found user login password id {}", userLoginPassword.getId());
         SimplePrincipalCollection principals = new SimplePrincipalCollection();
         principals.add(new UserId(userLoginPassword.getUserId()), getName());
 //        principals.add(new Username(username), getName());
-        if( usernameWithPermissions != null ) {
-            principals.add(usernameWithPermissions, getName());
-        }
+        principals.add(usernameWithPermissions, getName());
         principals.add(new LoginPasswordId(user.getUsername(), userLoginPassword.getUserId(), userLoginPassword.getId()), getName());
 
         //HashedPassword hashedPassword = new HashedPassword();
@@ -151,6 +146,43 @@ public class JdbcPasswordRealm extends AuthorizingRealm {
         return info;
     }
     
+    /**
+     * 
+     * @param username
+     * @return the enabled password login of the user with its permissions, or null if there is none
+     */
+    private LoginCache.Login<UserLoginPassword> findLogin(String username) {
+        try (LoginDAO dao = MyJdbi.authz()) {
+            UserLoginPassword userLoginPassword = dao.findUserLoginPasswordByUsernameEnabled(username, true);
+            if( userLoginPassword == null || !userLoginPassword.isEnabled() ) {
+                return null;
+            }
+            User user = dao.findUserById(userLoginPassword.getUserId());
+            if( user == null ) {
+                return null;
+            }
+                
+            // now get the permissions and associate with the username
+            HashSet<String> stringPermissions = new HashSet<>();
+            List<Role> roles = dao.findRolesByUserLoginPasswordId(userLoginPassword.getId());
+            if (!roles.isEmpty()) {
+                HashSet<String> roleIds = new HashSet<>();
+                for(Role role : roles) {
+                    roleIds.add(role.getId().toString());
+                }
+                List<RolePermission> permissions = dao.findRolePermissionsByPasswordRoleIds(roleIds);
+                for (RolePermission permission : permissions) {
+                    log.debug("doGetAuthorizationInfo found permission: {} {} {}", permission.getPermitDomain(), permission.getPermitAction(), permission.getPermitSelection());
+                    stringPermissions.add(String.format("%s:%s:%s", permission.getPermitDomain(), permission.getPermitAction(), permission.getPermitSelection()));
+                }
+            }
+            return new LoginCache.Login<>(userLoginPassword, user, stringPermissions);
+        } catch (Exception e) {
+            log.debug("doGetAuthenticationInfo error", e);
+            throw new AuthenticationException("Internal server error", e);
+        }
+    }
+    
     private HashedPassword toHashedPassword(UserLoginPassword userLoginPassword) {
         HashedPassword hashedPassword = new HashedPassword();
         hashedPassword.setAlgorithm(userLoginPassword.getAlgorithm());
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.shiro.jdbi;
+
+import com.intel.mtwilson.My;
+import com.intel.mtwilson.cache.VersionedCache;
+import com.intel.mtwilson.user.management.rest.v2.model.User;
+import com.intel.mtwilson.user.management.rest.v2.model.UserLoginCertificate;
+import com.intel.mtwilson.user.management.rest.v2.model.UserLoginPassword;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the logins, roles and permissions that JdbcPasswordRealm and
+ * JdbcCertificateRealm look up in the database, so that clients calling the
+ * API repeatedly with the same credentials are authenticated and authorized
+ * from memory. Credentials are still verified on every request; only the
+ * database lookups are cached.
+ *
+ * Password logins are keyed by username and certificate logins by the hex
+ * fingerprint. Roles and permissions are keyed by the login password or
+ * login certificate id.
+ *
+ * Anything that changes users, logins, roles, role permissions or role
+ * assignments must call invalidateLogins after the change is committed.
+ * The three kinds of entries are kept in VersionedCache instances that
+ * share one version, so clearing the cache discards a login or
+ * authorization that was being loaded at the time. Entries also expire
+ * after the time to live in case a record is changed by another process,
+ * for example the setup console.
+ *
+ * Configuration:
+ * mtwilson.login.cache.enabled (default true)
+ * mtwilson.login.cache.max (default 1000 entries)
+ * mtwilson.login.cache.ttl.seconds (default 60)
+ */
+public class LoginCache {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(LoginCache.class);
+    private final AtomicLong version = new AtomicLong();
+    private final VersionedCache<Login<UserLoginPassword>> passwordLogins;
+    private final VersionedCache<Login<UserLoginCertificate>> certificateLogins;
+    private final VersionedCache<Authorization> authorizations;
+
+    public LoginCache(int maxEntries, long timeToLiveMillis) {
+        this.passwordLogins = new VersionedCache<>("Password login", maxEntries, timeToLiveMillis, version);
+        this.certificateLogins = new VersionedCache<>("Certificate login", maxEntries, timeToLiveMillis, version);
+        this.authorizations = new VersionedCache<>("Login authorization", maxEntries, timeToLiveMillis, version);
+    }
+
+    /**
+     *
+     * @return the shared cache, or null if mtwilson.login.cache.enabled is false
+     */
+    public static LoginCache getInstance() {
+        return LoginCacheHolder.instance;
+    }
+
+    /**
+     * Removes all logins, roles and permissions from the shared cache, if it
+     * is enabled.
+     */
+    public static void invalidateLogins() {
+        LoginCache cache = getInstance();
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * An enabled login and its user.
+     *
+     * @param <T> UserLoginPassword or UserLoginCertificate
+     */
+    public static class Login<T> {
+        private final T userLogin;
+        private final User user;
+        private final Set<String> permissions;
+
+        public Login(T userLogin, User user, Set<String> permissions) {
+            this.userLogin = userLogin;
+            this.user = user;
+            this.permissions = permissions == null ? null : Collections.unmodifiableSet(permissions);
+        }
+
+        public T getUserLogin() {
+            return userLogin;
+        }
+
+        public User getUser() {
+            return user;
+        }
+
+        /**
+         *
+         * @return the permissions of the login, or null if they were not loaded
+         */
+        public Set<String> getPermissions() {
+            return permissions;
+        }
+    }
+
+    /**
+     * The role names and permission strings of a login.
+     */
+    public static class Authorization {
+        private final Set<String> roles;
+        private final Set<String> permissions;
+
+        public Authorization(Set<String> roles, Set<String> permissions) {
+            this.roles = Collections.unmodifiableSet(roles);
+            this.permissions = Collections.unmodifiableSet(permissions);
+        }
+
+        public Set<String> getRoles() {
+            return roles;
+        }
+
+        public Set<String> getPermissions() {
+            return permissions;
+        }
+    }
+
+    /**
+     * Read the version before loading a login or its permissions, and pass
+     * it to the put method.
+     *
+     * @return the current version, which changes whenever the cache is invalidated
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    public Login<UserLoginPassword> getPasswordLogin(String username) {
+        return passwordLogins.get(username);
+    }
+
+    public void putPasswordLogin(String username, Login<UserLoginPassword> login, long version) {
+        passwordLogins.put(username, login, version);
+    }
+
+    public Login<UserLoginCertificate> getCertificateLogin(String fingerprintHex) {
+        return certificateLogins.get(fingerprintHex);
+    }
+
+    public void putCertificateLogin(String fingerprintHex, Login<UserLoginCertificate> login, long version) {
+        certificateLogins.put(fingerprintHex, login, version);
+    }
+
+    /**
+     *
+     * @param loginId login password id or login certificate id
+     * @return the cached roles and permissions of the login, or null
+     */
+    public Authorization getAuthorization(String loginId) {
+        return authorizations.get(loginId);
+    }
+
+    public void putAuthorization(String loginId, Authorization authorization, long version) {
+        authorizations.put(loginId, authorization, version);
+    }
+
+    public void clear() {
+        passwordLogins.clear();
+        certificateLogins.clear();
+        authorizations.clear();
+        log.debug("Cleared login cache");
+    }
+
+    public int size() {
+        return passwordLogins.size() + certificateLogins.size() + authorizations.size();
+    }
+
+    public long getHitCount() {
+        return passwordLogins.getHitCount() + certificateLogins.getHitCount() + authorizations.getHitCount();
+    }
+
+    public long getMissCount() {
+        return passwordLogins.getMissCount() + certificateLogins.getMissCount() + authorizations.getMissCount();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("LoginCache[size=%d, hits=%d, misses=%d]", size(), getHitCount(), getMissCount());
+    }
+
+    private static class LoginCacheHolder {
+        private static final LoginCache instance = createInstance();
+
+        private static LoginCache createInstance() {
+            if (!My.configuration().getConfiguration().getBoolean("mtwilson.login.cache.enabled", true)) {
+                log.info("Login cache is disabled");
+                return null;
+            }
+            int max = My.configuration().getConfiguration().getInt("mtwilson.login.cache.max", 1000);
+            long ttlSeconds = My.configuration().getConfiguration().getLong("mtwilson.login.cache.ttl.seconds", 60);
+            log.debug("Creating login cache with max entries {} time to live {} seconds", max, ttlSeconds);
+            return new LoginCache(max, ttlSeconds * 1000);
+        }
+    }
+}
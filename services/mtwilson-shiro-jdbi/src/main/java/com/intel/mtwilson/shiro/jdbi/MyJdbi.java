@@ -4,13 +4,11 @@
  */
 package com.intel.mtwilson.shiro.jdbi;
 
-import com.intel.dcsg.cpg.jpa.PersistenceManager;
 import com.intel.mtwilson.My;
-import com.intel.mtwilson.MyPersistenceManager;
+import com.intel.mtwilson.MyDataSource;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.Properties;
 import javax.sql.DataSource;
 import org.skife.jdbi.v2.DBI;
 import org.skife.jdbi.v2.tweak.ConnectionFactory;
@@ -25,14 +23,9 @@ public class MyJdbi {
 
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(MyJdbi.class);
 
-    private static class DataSourceHolder {
-        private static final DataSource ds = createDataSource();
-
-        private static DataSource createDataSource() {
-            //#5820: Call to static method 'com.intel.mtwilson.MyPersistenceManager.getASDataJpaProperties' via instance reference.
-            Properties jpaProperties = MyPersistenceManager.getASDataJpaProperties(My.configuration());
-            return PersistenceManager.createDataSource(jpaProperties);
-        }
+    private static class DBIHolder {
+        // the DBI is thread-safe; each DAO opened from it borrows a connection from the shared pool and returns it when closed
+        private static final DBI dbi = new DBI(new DataSourceConnectionFactory(MyDataSource.getASData()));
     }
 
     /*
@@ -57,17 +50,8 @@ public class MyJdbi {
     }
 
     private static DBI getDBI() throws IOException {
-        /*
-         log.debug("MyJdbi (mtwilson-shiro-jdbi) static DBI instance: {}", dbi);
-         if( dbi == null ) {
-         dbi = new DBI(new ExistingConnectionFactory());
-         log.debug("MyJdbi (mtwilson-shiro-jdbi) created new DBI instance: {}", dbi);
-         }
-         return dbi;
-         */
-        // issue #4978: creating new DBI instance for each request using connection pool
-        log.debug("MyJdbi (mtwilson-shiro-jdbi) created new DBI instance");
-        return new DBI(new DataSourceConnectionFactory(DataSourceHolder.ds));
+        // issue #4978: the shared DBI uses the connection pool, not a single existing connection
+        return DBIHolder.dbi;
     }
     
     public static class DataSourceConnectionFactory implements ConnectionFactory {
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.shiro.jdbi;
+
+import com.intel.mtwilson.My;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Anti-replay protection for signed requests without the mw_request_log
+ * database round trips. The digests of requests received within the
+ * anti-replay protection window are kept in memory, split into shards that
+ * are locked separately so concurrent requests rarely wait for each other.
+ * Each shard keeps its digests in the order they were received, so expired
+ * digests are removed from the front of the shard when a request is added.
+ * When a shard is full the oldest digests are removed to make room, so a
+ * burst of requests cannot lock out other clients. Digests are only added
+ * for requests whose signature was verified.
+ *
+ * A request is rejected if its digest was already received within the
+ * window, or if its date is before the start of the window because its
+ * digest may already have been removed. The window starts no earlier than
+ * the time the cache was created, since requests received before a restart
+ * are not known.
+ *
+ * The digests are exact so there are no false positives, but they are only
+ * known to this server. Deployments with more than one server behind a load
+ * balancer must set mtwilson.antireplay.store=database to share the
+ * mw_request_log table.
+ *
+ * Configuration:
+ * mtwilson.antireplay.store (memory or database, default memory)
+ * mtwilson.antireplay.shards (default 16)
+ * mtwilson.antireplay.max (default 1000000 digests)
+ */
+public class ReplayCache {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ReplayCache.class);
+    private final Shard[] shards;
+    private final int maxEntriesPerShard;
+    private final long windowMillis;
+    private final long created;
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    /**
+     *
+     * @param shards number of separately locked shards, rounded up to a power of two
+     * @param maxEntries maximum number of digests kept in all shards
+     * @param windowMillis anti-replay protection window
+     */
+    public ReplayCache(int shards, int maxEntries, long windowMillis) {
+        int count = 1;
+        while (count < shards) {
+            count <<= 1;
+        }
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            this.shards[i] = new Shard();
+        }
+        this.maxEntriesPerShard = Math.max(1, maxEntries / count);
+        this.windowMillis = windowMillis;
+        this.created = System.currentTimeMillis();
+    }
+
+    /**
+     *
+     * @return the shared cache, or null if requests are logged in the database
+     */
+    public static ReplayCache getInstance() {
+        return ReplayCacheHolder.instance;
+    }
+
+    private static class Shard {
+        private final LinkedHashMap<String, Long> received = new LinkedHashMap<>();
+    }
+
+    private Shard getShard(String digest) {
+        int hash = digest.hashCode();
+        hash ^= (hash >>> 16);
+        return shards[hash & (shards.length - 1)];
+    }
+
+    /**
+     *
+     * @param now
+     * @return the earliest request date that is accepted
+     */
+    public long getNotBefore(long now) {
+        return Math.max(created, now - windowMillis);
+    }
+
+    /**
+     * Records the digest of a request unless it was already received within
+     * the anti-replay protection window.
+     *
+     * @param digest base64-encoded digest of the signed request
+     * @param requestDate value of the request's Date header
+     * @param received time the request was received
+     * @return true if the request is accepted, false if it is a replay or is older than the window
+     */
+    public boolean add(String digest, Date requestDate, Date received) {
+        long notBefore = getNotBefore(received.getTime());
+        if (requestDate.getTime() < notBefore) {
+            expired.incrementAndGet();
+            log.debug("request date is before anti-replay window; must be rejected");
+            return false;
+        }
+        Shard shard = getShard(digest);
+        synchronized (shard) {
+            removeExpired(shard, notBefore);
+            if (shard.received.containsKey(digest)) {
+                replayed.incrementAndGet();
+                log.debug("request digest {} was already received; must be rejected", digest);
+                return false;
+            }
+            Iterator<String> oldest = shard.received.keySet().iterator();
+            while (shard.received.size() >= maxEntriesPerShard) {
+                oldest.next();
+                oldest.remove();
+                evicted.incrementAndGet();
+                log.debug("Anti-replay cache is full; removed oldest request digest before the end of the window");
+            }
+            shard.received.put(digest, received.getTime());
+        }
+        accepted.incrementAndGet();
+        return true;
+    }
+
+    private void removeExpired(Shard shard, long notBefore) {
+        Iterator<Map.Entry<String, Long>> it = shard.received.entrySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().getValue() >= notBefore) {
+                break;
+            }
+            it.remove();
+        }
+    }
+
+    /**
+     *
+     * @return number of digests currently in the anti-replay protection window
+     */
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                size += shard.received.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     *
+     * @return fraction of the maximum number of digests currently in use
+     */
+    public double getOccupancy() {
+        return (double) size() / (maxEntriesPerShard * shards.length);
+    }
+
+    public long getAcceptedCount() {
+        return accepted.get();
+    }
+
+    public long getReplayedCount() {
+        return replayed.get();
+    }
+
+    public long getExpiredCount() {
+        return expired.get();
+    }
+
+    /**
+     *
+     * @return number of digests removed before the end of the window because the cache was full
+     */
+    public long getEvictedCount() {
+        return evicted.get();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ReplayCache[size=%d, occupancy=%.3f, accepted=%d, replayed=%d, expired=%d, evicted=%d]", size(), getOccupancy(), getAcceptedCount(), getReplayedCount(), getExpiredCount(), getEvictedCount());
+    }
+
+    private static class ReplayCacheHolder {
+        private static final ReplayCache instance = createInstance();
+
+        private static ReplayCache createInstance() {
+            String store = My.configuration().getConfiguration().getString("mtwilson.antireplay.store", "memory");
+            if ("database".equalsIgnoreCase(store)) {
+                log.info("Anti-replay protection uses the request log in the database");
+                return null;
+            }
+            int shards = My.configuration().getConfiguration().getInt("mtwilson.antireplay.shards", 16);
+            int max = My.configuration().getConfiguration().getInt("mtwilson.antireplay.max", 1000000);
+            int window = My.configuration().getAntiReplayProtectionWindowMilliseconds();
+            log.debug("Creating anti-replay cache with {} shards max entries {} window {}ms", shards, max, window);
+            return new ReplayCache(shards, max, window);
+        }
+    }
+}
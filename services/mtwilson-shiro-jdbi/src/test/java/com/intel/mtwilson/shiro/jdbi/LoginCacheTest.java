@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.shiro.jdbi;
+
+import com.intel.mtwilson.user.management.rest.v2.model.User;
+import com.intel.mtwilson.user.management.rest.v2.model.UserLoginPassword;
+import java.util.Arrays;
+import java.util.HashSet;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class LoginCacheTest {
+
+    private LoginCache.Authorization createAuthorization() {
+        return new LoginCache.Authorization(new HashSet<>(Arrays.asList("admin")), new HashSet<>(Arrays.asList("hosts:search:*", "hosts:store:*")));
+    }
+
+    @Test
+    public void testClear() {
+        LoginCache cache = new LoginCache(10, 60000);
+        LoginCache.Authorization authorization = createAuthorization();
+        LoginCache.Login<UserLoginPassword> login = new LoginCache.Login<>(new UserLoginPassword(), new User(), new HashSet<String>());
+        cache.putAuthorization("password:1", authorization, cache.getVersion());
+        cache.putPasswordLogin("admin", login, cache.getVersion());
+        assertSame(authorization, cache.getAuthorization("password:1"));
+        assertSame(login, cache.getPasswordLogin("admin"));
+        assertNull(cache.getAuthorization("certificate:1"));
+        cache.clear();
+        assertNull(cache.getAuthorization("password:1"));
+        assertNull(cache.getPasswordLogin("admin"));
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void testNotStoredIfInvalidatedWhileLoading() {
+        LoginCache cache = new LoginCache(10, 60000);
+        long version = cache.getVersion();
+        cache.clear();
+        cache.putAuthorization("password:1", createAuthorization(), version);
+        assertNull(cache.getAuthorization("password:1"));
+    }
+
+    @Test
+    public void testExpiredAndFull() throws InterruptedException {
+        LoginCache cache = new LoginCache(1, 50);
+        LoginCache.Authorization authorization = createAuthorization();
+        cache.putAuthorization("password:1", authorization, cache.getVersion());
+        cache.putAuthorization("password:2", authorization, cache.getVersion());
+        assertSame(authorization, cache.getAuthorization("password:1"));
+        assertNull(cache.getAuthorization("password:2"));
+        Thread.sleep(100);
+        assertNull(cache.getAuthorization("password:1"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testPermissionsAreReadOnly() {
+        createAuthorization().getPermissions().add("hosts:delete:*");
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.shiro.jdbi;
+
+import java.util.Date;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class ReplayCacheTest {
+
+    @Test
+    public void testReplayRejected() {
+        ReplayCache cache = new ReplayCache(4, 100, 60000);
+        Date now = new Date();
+        assertTrue(cache.add("digest1", now, now));
+        assertTrue(cache.add("digest2", now, now));
+        assertFalse(cache.add("digest1", now, now));
+        assertEquals(2, cache.size());
+        assertEquals(2, cache.getAcceptedCount());
+        assertEquals(1, cache.getReplayedCount());
+    }
+
+    @Test
+    public void testWindow() throws InterruptedException {
+        ReplayCache cache = new ReplayCache(1, 100, 50);
+        Date before = new Date(System.currentTimeMillis() - 1000);
+        assertFalse(cache.add("digest1", before, new Date()));
+        assertEquals(1, cache.getExpiredCount());
+        Date now = new Date();
+        assertTrue(cache.add("digest2", now, now));
+        Thread.sleep(100);
+        Date later = new Date();
+        assertTrue(cache.add("digest3", later, later));
+        assertEquals(1, cache.size());
+        // the date of a replayed request is now before the window
+        assertFalse(cache.add("digest2", now, later));
+    }
+
+    @Test
+    public void testFullEvictsOldest() {
+        ReplayCache cache = new ReplayCache(1, 2, 60000);
+        Date now = new Date();
+        assertTrue(cache.add("digest1", now, now));
+        assertTrue(cache.add("digest2", now, now));
+        assertTrue(cache.add("digest3", now, now));
+        assertEquals(1, cache.getEvictedCount());
+        assertEquals(1.0, cache.getOccupancy(), 0.001);
+        assertFalse(cache.add("digest2", now, now));
+        assertFalse(cache.add("digest3", now, now));
+    }
+}
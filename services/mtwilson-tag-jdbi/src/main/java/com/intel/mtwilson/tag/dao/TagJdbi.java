@@ -4,7 +4,6 @@
  */
 package com.intel.mtwilson.tag.dao;
 
-import com.intel.dcsg.cpg.jpa.PersistenceManager;
 import com.intel.mtwilson.tag.dao.jdbi.CertificateRequestDAO;
 import com.intel.mtwilson.tag.dao.jdbi.CertificateDAO;
 import com.intel.mtwilson.tag.dao.jdbi.TpmPasswordDAO;
@@ -14,7 +13,7 @@ import com.intel.mtwilson.tag.dao.jdbi.SelectionKvAttributeDAO;
 import com.intel.mtwilson.tag.dao.jdbi.ConfigurationDAO;
 import com.intel.mtwilson.My;
 import com.intel.mtwilson.tag.dao.jdbi.FileDAO;
-import com.intel.mtwilson.MyPersistenceManager;
+import com.intel.mtwilson.MyDataSource;
 import com.intel.mtwilson.jooq.util.JooqContainer;
 import java.io.IOException;
 import java.sql.Connection;
@@ -33,10 +32,11 @@ public class TagJdbi {
 
     private static Logger log = LoggerFactory.getLogger(TagJdbi.class);
     public static DataSource ds = null;
+    private static volatile DBI dbi = null;
 
     synchronized public static void createDataSource() throws IOException {
         if (ds == null) {
-            ds = PersistenceManager.createDataSource(MyPersistenceManager.getASDataJpaProperties(My.configuration()));
+            ds = MyDataSource.getASData();
         }
     }
 
@@ -51,44 +51,55 @@ public class TagJdbi {
         return ds;
     }
 
+    /**
+     * The DBI is thread-safe and shared by all DAOs; each DAO borrows a
+     * connection from the shared pool when it is opened and returns it
+     * when it is closed.
+     *
+     * @return
+     * @throws SQLException
+     */
+    private static DBI getDBI() throws SQLException {
+        if (dbi == null) {
+            synchronized (TagJdbi.class) {
+                if (dbi == null) {
+                    dbi = new DBI(getDataSource());
+                }
+            }
+        }
+        return dbi;
+    }
+
     public static KvAttributeDAO kvAttributeDao() throws SQLException {
-        DBI dbi = new DBI(getDataSource());
-        return dbi.open(KvAttributeDAO.class);
+        return getDBI().open(KvAttributeDAO.class);
     }
 
     public static CertificateRequestDAO certificateRequestDao() throws SQLException {
-        DBI dbi = new DBI(getDataSource());
-        return dbi.open(CertificateRequestDAO.class);
+        return getDBI().open(CertificateRequestDAO.class);
     }
 
     public static CertificateDAO certificateDao() throws SQLException {
-        DBI dbi = new DBI(getDataSource());
-        return dbi.open(CertificateDAO.class);
+        return getDBI().open(CertificateDAO.class);
     }
 
     public static SelectionDAO selectionDao() throws SQLException {
-        DBI dbi = new DBI(getDataSource());
-        return dbi.open(SelectionDAO.class);
+        return getDBI().open(SelectionDAO.class);
     }
 
     public static SelectionKvAttributeDAO selectionKvAttributeDao() throws SQLException {
-        DBI dbi = new DBI(getDataSource());
-        return dbi.open(SelectionKvAttributeDAO.class);
+        return getDBI().open(SelectionKvAttributeDAO.class);
     }
 
     public static ConfigurationDAO configurationDao() throws SQLException {
-        DBI dbi = new DBI(getDataSource());
-        return dbi.open(ConfigurationDAO.class);
+        return getDBI().open(ConfigurationDAO.class);
     }
 
     public static TpmPasswordDAO tpmPasswordDao() throws SQLException {
-        DBI dbi = new DBI(getDataSource());
-        return dbi.open(TpmPasswordDAO.class);
+        return getDBI().open(TpmPasswordDAO.class);
     }
 
     public static FileDAO fileDao() throws SQLException {
-        DBI dbi = new DBI(getDataSource());
-        return dbi.open(FileDAO.class);
+        return getDBI().open(FileDAO.class);
     }
 
     /**
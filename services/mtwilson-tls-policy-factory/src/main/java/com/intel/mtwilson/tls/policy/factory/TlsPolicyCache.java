@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.tls.policy.factory;
+
+import com.intel.dcsg.cpg.tls.policy.TlsPolicy;
+import com.intel.mtwilson.My;
+import com.intel.mtwilson.cache.VersionedCache;
+import com.intel.mtwilson.tls.policy.TlsPolicyDescriptor;
+import com.intel.mtwilson.tls.policy.codec.impl.JsonTlsPolicyWriter;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Keeps the TLS policy descriptors loaded from mw_tls_policy and the
+ * TlsPolicy instances built from them, so that creating a host agent does
+ * not read the stored policy and rebuild its trust manager and keystore for
+ * every attestation. Hosts that share a policy get the same TlsPolicy
+ * instance, which also lets the trust agent client pool reuse their clients.
+ *
+ * Policies chosen by id are keyed by the policy id; policies given as an
+ * inline descriptor are keyed by the SHA-256 of the descriptor's JSON form.
+ * TRUST_FIRST_CERTIFICATE policies are not cached because they change when
+ * the first certificate is saved.
+ *
+ * Each TlsPolicy built by TlsPolicyFactory is also registered with the
+ * digest of its descriptor, so that the trust agent client pool can reuse a
+ * client for a policy that was built again, for example after its entry
+ * expired or when the cache is disabled.
+ *
+ * Anything that changes a mw_tls_policy record must call invalidate with its
+ * id after the change is committed. Descriptors and policies are kept in
+ * VersionedCache instances that share one version, so invalidating a
+ * record discards a descriptor or policy that was being loaded at the time.
+ * Entries also expire after the time to live in case a record is changed
+ * by another process.
+ *
+ * Configuration:
+ * mtwilson.tls.policy.cache.enabled (default true)
+ * mtwilson.tls.policy.cache.max (default 1000 entries)
+ * mtwilson.tls.policy.cache.ttl.seconds (default 600)
+ */
+public class TlsPolicyCache {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(TlsPolicyCache.class);
+    private static final String TRUST_FIRST_CERTIFICATE = "TRUST_FIRST_CERTIFICATE";
+    private static final Map<TlsPolicy, String> descriptorDigests = Collections.synchronizedMap(new WeakHashMap<TlsPolicy, String>());
+    private final AtomicLong version = new AtomicLong();
+    private final VersionedCache<TlsPolicyDescriptor> descriptors;
+    private final VersionedCache<TlsPolicy> policies;
+
+    public TlsPolicyCache(int maxEntries, long timeToLiveMillis) {
+        this.descriptors = new VersionedCache<>("TLS policy descriptor", maxEntries, timeToLiveMillis, version);
+        this.policies = new VersionedCache<>("TLS policy", maxEntries, timeToLiveMillis, version);
+    }
+
+    /**
+     *
+     * @return the shared cache, or null if mtwilson.tls.policy.cache.enabled is false
+     */
+    public static TlsPolicyCache getInstance() {
+        return TlsPolicyCacheHolder.instance;
+    }
+
+    /**
+     * Removes the cached descriptor and policy of a mw_tls_policy record
+     * from the shared cache, if it is enabled.
+     *
+     * @param tlsPolicyId
+     */
+    public static void invalidateTlsPolicy(String tlsPolicyId) {
+        TlsPolicyCache cache = getInstance();
+        if (cache != null) {
+            cache.invalidate(tlsPolicyId);
+        }
+    }
+
+    /**
+     * Remembers the descriptor a policy was built from. TRUST_FIRST_CERTIFICATE
+     * policies are not registered because each instance saves the first
+     * certificate it sees.
+     *
+     * @param tlsPolicy
+     * @param descriptor the descriptor the policy was built from
+     */
+    public static void register(TlsPolicy tlsPolicy, TlsPolicyDescriptor descriptor) {
+        if (tlsPolicy == null || descriptor == null || TRUST_FIRST_CERTIFICATE.equals(descriptor.getPolicyType()) || descriptorDigests.containsKey(tlsPolicy)) {
+            return;
+        }
+        descriptorDigests.put(tlsPolicy, DigestUtils.sha256Hex(new JsonTlsPolicyWriter().write(descriptor)));
+    }
+
+    /**
+     *
+     * @param tlsPolicy
+     * @return the SHA-256 of the JSON form of the descriptor the policy was built from, or null if the policy was not registered
+     */
+    public static String getDescriptorDigest(TlsPolicy tlsPolicy) {
+        return descriptorDigests.get(tlsPolicy);
+    }
+
+    /**
+     *
+     * @param report
+     * @return the key for the TlsPolicy of the report, or null if it should not be cached
+     */
+    public static String getKey(TlsPolicyChoiceReport report) {
+        TlsPolicyDescriptor descriptor = report.getDescriptor();
+        if (descriptor == null || TRUST_FIRST_CERTIFICATE.equals(descriptor.getPolicyType())) {
+            return null;
+        }
+        if (report.getChoice() != null && report.getChoice().getTlsPolicyId() != null && report.getChoice().getTlsPolicyDescriptor() == null) {
+            return "id:" + report.getChoice().getTlsPolicyId();
+        }
+        return "descriptor:" + DigestUtils.sha256Hex(new JsonTlsPolicyWriter().write(descriptor));
+    }
+
+    /**
+     * Read the version before loading a descriptor or building a policy,
+     * and pass it to the put method.
+     *
+     * @return the current version, which changes whenever an entry is invalidated
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     *
+     * @param tlsPolicyId
+     * @return the cached descriptor of the mw_tls_policy record, or null; the descriptor is shared and must not be modified
+     */
+    public TlsPolicyDescriptor getDescriptor(String tlsPolicyId) {
+        return descriptors.get(tlsPolicyId);
+    }
+
+    public void putDescriptor(String tlsPolicyId, TlsPolicyDescriptor descriptor, long version) {
+        descriptors.put(tlsPolicyId, descriptor, version);
+    }
+
+    /**
+     *
+     * @param key from getKey
+     * @return the cached policy, or null
+     */
+    public TlsPolicy getTlsPolicy(String key) {
+        return policies.get(key);
+    }
+
+    public void putTlsPolicy(String key, TlsPolicy tlsPolicy, long version) {
+        policies.put(key, tlsPolicy, version);
+    }
+
+    /**
+     * Removes the cached descriptor and policy of a mw_tls_policy record.
+     * Descriptor-keyed policies do not need to be removed because a changed
+     * descriptor has a different key.
+     *
+     * @param tlsPolicyId
+     */
+    public void invalidate(String tlsPolicyId) {
+        descriptors.invalidate(tlsPolicyId);
+        policies.invalidate("id:" + tlsPolicyId);
+        log.debug("Invalidated cached TLS policy {}", tlsPolicyId);
+    }
+
+    public void clear() {
+        descriptors.clear();
+        policies.clear();
+    }
+
+    public int size() {
+        return policies.size();
+    }
+
+    public long getHitCount() {
+        return descriptors.getHitCount() + policies.getHitCount();
+    }
+
+    public long getMissCount() {
+        return descriptors.getMissCount() + policies.getMissCount();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TlsPolicyCache[size=%d, descriptors=%d, hits=%d, misses=%d]", size(), descriptors.size(), getHitCount(), getMissCount());
+    }
+
+    private static class TlsPolicyCacheHolder {
+        private static final TlsPolicyCache instance = createInstance();
+
+        private static TlsPolicyCache createInstance() {
+            if (!My.configuration().getConfiguration().getBoolean("mtwilson.tls.policy.cache.enabled", true)) {
+                log.info("TLS policy cache is disabled");
+                return null;
+            }
+            int max = My.configuration().getConfiguration().getInt("mtwilson.tls.policy.cache.max", 1000);
+            long ttlSeconds = My.configuration().getConfiguration().getLong("mtwilson.tls.policy.cache.ttl.seconds", 600);
+            log.debug("Creating TLS policy cache with max entries {} time to live {} seconds", max, ttlSeconds);
+            return new TlsPolicyCache(max, ttlSeconds * 1000);
+        }
+    }
+}
@@ -51,7 +51,9 @@ import org.apache.commons.codec.binary.Base64;
  * or getTlsPolicyChoiceReport again you will get newly generated TlsPolicy and
  * TlsPolicyChoiceReport instances.  If you want to re-use those instances you
  * should cache them because creating the TlsPolicy may involve database access
- * to load stored policies.
+ * to load stored policies. Stored policy descriptors and the TlsPolicy
+ * instances built from them are kept in the shared TlsPolicyCache, so
+ * factories for hosts with the same policy return the same TlsPolicy.
  * 
  * The default strategy looks in the following locations, in order:
  * 
@@ -68,6 +70,7 @@ public abstract class TlsPolicyFactory {
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(TlsPolicyFactory.class);
     private static final String INSECURE = "INSECURE";
     private static final String TRUST_FIRST_CERTIFICATE = "TRUST_FIRST_CERTIFICATE";
+    private long cacheVersion; // TlsPolicyCache version when the policy choice was made
     
 //    protected abstract boolean accept(Object tlsPolicySubject);
     protected abstract TlsPolicyProvider getObjectTlsPolicyProvider();
@@ -95,6 +98,8 @@ public abstract class TlsPolicyFactory {
     
     public TlsPolicyChoiceReport getTlsPolicyChoiceReport() {
 //        TlsPolicyChoiceReport report = new TlsPolicyChoiceReport();
+        TlsPolicyCache cache = TlsPolicyCache.getInstance();
+        cacheVersion = cache == null ? 0 : cache.getVersion();
         // find out which policy types are allowed
         Set<String> allowedPolicyTypes = My.configuration().getTlsPolicyAllow();
         // initalize the provider list
@@ -211,10 +216,20 @@ public abstract class TlsPolicyFactory {
         if( !UUID.isValid(tlsPolicyId)) {
             log.warn("Invalid tlsPolicyId: {}", tlsPolicyId);
             return null;
+        }
+        TlsPolicyCache cache = TlsPolicyCache.getInstance();
+        if( cache != null ) {
+            TlsPolicyDescriptor cached = cache.getDescriptor(tlsPolicyId);
+            if( cached != null ) {
+                return cached;
+            }
         }
                     try (TlsPolicyDAO dao = TlsPolicyJdbiFactory.tlsPolicyDAO()) {
                         TlsPolicyRecord tlsPolicyRecord = dao.findTlsPolicyById(UUID.valueOf(tlsPolicyId));
                         TlsPolicyDescriptor tlsPolicyDescriptor = getTlsPolicyDescriptorFromTlsPolicyRecord(tlsPolicyRecord);
+                        if( cache != null ) {
+                            cache.putDescriptor(tlsPolicyId, tlsPolicyDescriptor, cacheVersion);
+                        }
                         return tlsPolicyDescriptor; // could be null
                     }
                     catch(IOException e) {
@@ -226,13 +241,27 @@ public abstract class TlsPolicyFactory {
     /**
      * Subclasses can override this method to process the final tls policy
      * as necessary.  Overriding methods should call this super method
-     * to continue.
+     * to continue. The policy is taken from the TlsPolicyCache if it was
+     * already built for the same policy id or descriptor.
      * @param report
      * @return 
      */
     protected TlsPolicy createTlsPolicy(TlsPolicyChoiceReport report) {
+        TlsPolicyCache cache = TlsPolicyCache.getInstance();
+        String key = cache == null ? null : TlsPolicyCache.getKey(report);
+        if( key != null ) {
+            TlsPolicy cached = cache.getTlsPolicy(key);
+            if( cached != null ) {
+                return cached;
+            }
+        }
 //        return createTlsPolicy(report.getDescriptor());
-        return TlsPolicyFactoryUtil.createTlsPolicy(report.getDescriptor());   //called new TlsPolicyFactoryUtil from common-java for method createTlsPolicy to accommodate for descriptor with value: com.intel.mtwilson.tls.policy.TlsPolicyDescriptor
+        TlsPolicy tlsPolicy = TlsPolicyFactoryUtil.createTlsPolicy(report.getDescriptor());   //called new TlsPolicyFactoryUtil from common-java for method createTlsPolicy to accommodate for descriptor with value: com.intel.mtwilson.tls.policy.TlsPolicyDescriptor
+        TlsPolicyCache.register(tlsPolicy, report.getDescriptor());
+        if( key != null ) {
+            cache.putTlsPolicy(key, tlsPolicy, cacheVersion);
+        }
+        return tlsPolicy;
     }
     
     
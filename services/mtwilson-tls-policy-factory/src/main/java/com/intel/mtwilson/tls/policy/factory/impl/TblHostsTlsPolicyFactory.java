@@ -56,8 +56,10 @@ public class TblHostsTlsPolicyFactory extends TlsPolicyFactory {
 
     @Override
     protected TlsPolicy createTlsPolicy(TlsPolicyChoiceReport report) {
+        if( log.isDebugEnabled() ) {
         try {ObjectMapper mapper = new ObjectMapper();        
         log.debug("TblHostsTlsPolicyFactory createTlsPolicy with report: {}", mapper.writeValueAsString(report));}catch(Exception e){ log.error("TblHostsTlsPolicyFactory createTlsPolicy with report"); }
+        }
         objectTlsPolicyProvider.setTlsPolicyChoice(report.getChoice());
         return super.createTlsPolicy(report);
     }
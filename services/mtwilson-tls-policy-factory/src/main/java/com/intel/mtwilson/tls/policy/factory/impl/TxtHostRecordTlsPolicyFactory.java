@@ -62,8 +62,10 @@ public class TxtHostRecordTlsPolicyFactory extends TlsPolicyFactory {
 
     @Override
     protected TlsPolicy createTlsPolicy(TlsPolicyChoiceReport report) {
+        if( log.isDebugEnabled() ) {
         try {ObjectMapper mapper = new ObjectMapper();        
         log.debug("TxtHostRecordTlsPolicyFactory createTlsPolicy with report: {}", mapper.writeValueAsString(report));}catch(Exception e){ log.error("TxtHostRecordTlsPolicyFactory createTlsPolicy with report"); }
+        }
         objectTlsPolicyProvider.setTlsPolicyChoice(report.getChoice());
         return super.createTlsPolicy(report);
     }
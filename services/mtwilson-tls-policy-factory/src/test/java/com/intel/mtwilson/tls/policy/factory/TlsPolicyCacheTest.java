@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.tls.policy.factory;
+
+import com.intel.dcsg.cpg.tls.policy.TlsPolicy;
+import com.intel.mtwilson.tls.policy.TlsPolicyChoice;
+import com.intel.mtwilson.tls.policy.TlsPolicyDescriptor;
+import com.intel.mtwilson.tls.policy.TlsProtection;
+import java.util.ArrayList;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class TlsPolicyCacheTest {
+    private static final String POLICY_ID = "a4d53a13-4d0b-4d9a-b0a4-5f2b0c8d1e77";
+
+    private TlsPolicyDescriptor createDescriptor(String policyType, String data) {
+        TlsPolicyDescriptor descriptor = new TlsPolicyDescriptor();
+        descriptor.setPolicyType(policyType);
+        descriptor.setProtection(new TlsProtection());
+        descriptor.setData(new ArrayList<String>());
+        if (data != null) {
+            descriptor.getData().add(data);
+        }
+        return descriptor;
+    }
+
+    private TlsPolicyChoiceReport createReport(String tlsPolicyId, TlsPolicyDescriptor inline, TlsPolicyDescriptor effective) {
+        TlsPolicyChoice choice = new TlsPolicyChoice();
+        choice.setTlsPolicyId(tlsPolicyId);
+        choice.setTlsPolicyDescriptor(inline);
+        TlsPolicyChoiceReport report = new TlsPolicyChoiceReport();
+        report.setChoice(choice);
+        report.setDescriptor(effective);
+        return report;
+    }
+
+    private TlsPolicy createTlsPolicy() {
+        return TlsPolicyFactoryUtil.createTlsPolicy(createDescriptor("INSECURE", null));
+    }
+
+    @Test
+    public void testKeys() {
+        TlsPolicyDescriptor stored = createDescriptor("public-key-digest", "sJE8eS1nGYRk6skq2QNEP0uMvg8=");
+        assertEquals("id:" + POLICY_ID, TlsPolicyCache.getKey(createReport(POLICY_ID, null, stored)));
+        String inline = TlsPolicyCache.getKey(createReport(null, stored, stored));
+        assertTrue(inline.startsWith("descriptor:"));
+        assertEquals(inline, TlsPolicyCache.getKey(createReport(null, createDescriptor("public-key-digest", "sJE8eS1nGYRk6skq2QNEP0uMvg8="), stored)));
+        TlsPolicyDescriptor changed = createDescriptor("public-key-digest", "KwqW5tBRvr2mGhIA6oL4A1hgWxM=");
+        assertFalse(inline.equals(TlsPolicyCache.getKey(createReport(null, changed, changed))));
+        TlsPolicyDescriptor first = createDescriptor("TRUST_FIRST_CERTIFICATE", null);
+        assertNull(TlsPolicyCache.getKey(createReport(null, first, first)));
+        assertNull(TlsPolicyCache.getKey(createReport(POLICY_ID, null, null)));
+    }
+
+    @Test
+    public void testDescriptorDigest() {
+        TlsPolicyDescriptor descriptor = createDescriptor("public-key-digest", "sJE8eS1nGYRk6skq2QNEP0uMvg8=");
+        TlsPolicy first = TlsPolicyFactoryUtil.createTlsPolicy(descriptor);
+        TlsPolicy second = TlsPolicyFactoryUtil.createTlsPolicy(descriptor);
+        assertNull(TlsPolicyCache.getDescriptorDigest(first));
+        TlsPolicyCache.register(first, descriptor);
+        TlsPolicyCache.register(second, createDescriptor("public-key-digest", "sJE8eS1nGYRk6skq2QNEP0uMvg8="));
+        assertNotNull(TlsPolicyCache.getDescriptorDigest(first));
+        assertEquals(TlsPolicyCache.getDescriptorDigest(first), TlsPolicyCache.getDescriptorDigest(second));
+        TlsPolicy trustFirst = createTlsPolicy();
+        TlsPolicyCache.register(trustFirst, createDescriptor("TRUST_FIRST_CERTIFICATE", null));
+        assertNull(TlsPolicyCache.getDescriptorDigest(trustFirst));
+    }
+
+    @Test
+    public void testInvalidate() {
+        TlsPolicyCache cache = new TlsPolicyCache(10, 60000);
+        TlsPolicy tlsPolicy = createTlsPolicy();
+        TlsPolicyDescriptor descriptor = createDescriptor("INSECURE", null);
+        cache.putDescriptor(POLICY_ID, descriptor, cache.getVersion());
+        cache.putTlsPolicy("id:" + POLICY_ID, tlsPolicy, cache.getVersion());
+        assertSame(descriptor, cache.getDescriptor(POLICY_ID));
+        assertSame(tlsPolicy, cache.getTlsPolicy("id:" + POLICY_ID));
+        cache.invalidate(POLICY_ID);
+        assertNull(cache.getDescriptor(POLICY_ID));
+        assertNull(cache.getTlsPolicy("id:" + POLICY_ID));
+    }
+
+    @Test
+    public void testNotStoredIfInvalidatedWhileLoading() {
+        TlsPolicyCache cache = new TlsPolicyCache(10, 60000);
+        long version = cache.getVersion();
+        cache.invalidate(POLICY_ID);
+        cache.putDescriptor(POLICY_ID, createDescriptor("INSECURE", null), version);
+        cache.putTlsPolicy("id:" + POLICY_ID, createTlsPolicy(), version);
+        assertNull(cache.getDescriptor(POLICY_ID));
+        assertNull(cache.getTlsPolicy("id:" + POLICY_ID));
+    }
+
+    @Test
+    public void testExpiredAndFull() throws InterruptedException {
+        TlsPolicyCache cache = new TlsPolicyCache(1, 50);
+        TlsPolicy tlsPolicy = createTlsPolicy();
+        cache.putTlsPolicy("id:1", tlsPolicy, cache.getVersion());
+        cache.putTlsPolicy("id:2", tlsPolicy, cache.getVersion());
+        assertSame(tlsPolicy, cache.getTlsPolicy("id:1"));
+        assertNull(cache.getTlsPolicy("id:2"));
+        Thread.sleep(100);
+        assertNull(cache.getTlsPolicy("id:1"));
+        cache.putTlsPolicy("id:2", tlsPolicy, cache.getVersion());
+        assertSame(tlsPolicy, cache.getTlsPolicy("id:2"));
+        assertEquals(2, cache.getHitCount());
+    }
+}
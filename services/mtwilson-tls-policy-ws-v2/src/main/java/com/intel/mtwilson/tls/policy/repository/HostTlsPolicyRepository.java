@@ -23,6 +23,7 @@ import com.intel.mtwilson.tls.policy.jdbi.TlsPolicyJdbiFactory;
 import com.intel.mtwilson.tls.policy.jdbi.TlsPolicyRecord;
 import com.intel.mtwilson.tls.policy.codec.impl.JsonTlsPolicyReader;
 import com.intel.mtwilson.tls.policy.codec.impl.JsonTlsPolicyWriter;
+import com.intel.mtwilson.tls.policy.factory.TlsPolicyCache;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -156,6 +157,7 @@ public class HostTlsPolicyRepository implements DocumentRepository<HostTlsPolicy
         try (TlsPolicyDAO dao = TlsPolicyJdbiFactory.tlsPolicyDAO()) {
             TlsPolicyRecord record = convert(item);
             dao.updateTlsPolicy(record);
+            TlsPolicyCache.invalidateTlsPolicy(item.getId().toString());
         } catch (IOException ex) {
             log.error("HostTlsPolicy:Store - Error during HostTlsPolicy update.", ex);
             throw new RepositoryStoreException(ex, locator);
@@ -201,6 +203,7 @@ public class HostTlsPolicyRepository implements DocumentRepository<HostTlsPolicy
             
             TlsPolicyRecord record = convert(item);
             dao.insertTlsPolicy(record);
+            TlsPolicyCache.invalidateTlsPolicy(item.getId().toString()); // a host may have referred to the id before the policy was created
         } catch (IOException ex) {
             log.error("HostTlsPolicy:Create - Error during HostTlsPolicy creation.", ex);
             throw new RepositoryCreateException(ex, locator);
@@ -217,6 +220,7 @@ public class HostTlsPolicyRepository implements DocumentRepository<HostTlsPolicy
         
         try (TlsPolicyDAO dao = TlsPolicyJdbiFactory.tlsPolicyDAO()) {
             dao.deleteTlsPolicyById(locator.id);
+            TlsPolicyCache.invalidateTlsPolicy(locator.id.toString());
         } catch (IOException ex) {
             log.error("HostTlsPolicy:Delete - Error during HostTlsPolicy deletion.", ex);
             throw new RepositoryDeleteException(ex, locator);
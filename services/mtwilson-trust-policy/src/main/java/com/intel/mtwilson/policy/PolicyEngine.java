@@ -6,44 +6,159 @@ package com.intel.mtwilson.policy;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.intel.mtwilson.policy.fault.RuleNotEvaluated;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * By default rules are applied one after another on the calling thread and
+ * every rule is applied.
+ * 
+ * If a ForkJoinPool is set, the rules are applied in parallel on that pool.
+ * Rules only read the host report so they are independent of each other.
+ * The results are returned in the same order as the rules either way.
+ * 
+ * If fail-fast is enabled, a rule is skipped when every one of its markers
+ * is already untrusted because of another rule; its result has a
+ * RuleNotEvaluated fault instead of the faults it would have found. The 
+ * trust status of each marker is the same as without fail-fast, but the
+ * report includes fewer details about why a marker is untrusted. Rules 
+ * without markers are always applied.
+ * 
+ * The time each rule took is recorded in its result.
+ * 
  * @author jbuhacoff
  */
 @JsonInclude(JsonInclude.Include.NON_EMPTY)
 @JsonIgnoreProperties(ignoreUnknown=true)
 public class PolicyEngine {
     private Logger log = LoggerFactory.getLogger(getClass());
+    private ForkJoinPool forkJoinPool = null;
+    private boolean failFast = false;
+    
+    public PolicyEngine() { }
+    
+    /**
+     * 
+     * @param forkJoinPool to apply rules in parallel, or null to apply them on the calling thread
+     * @param failFast true to skip rules whose markers are already untrusted
+     */
+    public PolicyEngine(ForkJoinPool forkJoinPool, boolean failFast) {
+        this.forkJoinPool = forkJoinPool;
+        this.failFast = failFast;
+    }
+
+    public ForkJoinPool getForkJoinPool() {
+        return forkJoinPool;
+    }
+
+    public void setForkJoinPool(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    public boolean isFailFast() {
+        return failFast;
+    }
+
+    public void setFailFast(boolean failFast) {
+        this.failFast = failFast;
+    }
     
     // this is the normal case - given a list of policies, apply them all, and combine the results into one report.
     public List<RuleResult> applyAll(HostReport hostReport, Rule... rules) {
         log.debug("PolicyEngine.applyAll(... {} rules)", rules.length);
-        ArrayList<RuleResult> list = new ArrayList<RuleResult>();
-        for(Rule rule : rules) {
-            log.debug("Applying rule {}", rule.getClass().getName());
-            RuleResult result = rule.apply(hostReport);
-            list.add(result);
-        }
-        return list;
+        return applyRules(hostReport, Arrays.asList(rules));
     }
     
     public List<RuleResult> applyAll(HostReport hostReport, Set<Rule> rules) {
         log.debug("PolicyEngine.applyAll(set of {} rules)", rules.size());
-        ArrayList<RuleResult> list = new ArrayList<RuleResult>();
+        return applyRules(hostReport, rules);
+    }
+    
+    private List<RuleResult> applyRules(HostReport hostReport, Collection<Rule> rules) {
+        Set<String> untrustedMarkers = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+        ArrayList<RuleResult> list = new ArrayList<RuleResult>(rules.size());
+        if( forkJoinPool == null || rules.size() < 2 ) {
+            for(Rule rule : rules) {
+                list.add(applyRule(hostReport, rule, untrustedMarkers));
+            }
+            return list;
+        }
+        ArrayList<ForkJoinTask<RuleResult>> tasks = new ArrayList<ForkJoinTask<RuleResult>>(rules.size());
         for(Rule rule : rules) {
-            log.debug("Applying rule {}", rule.getClass().getName());
-            RuleResult result = rule.apply(hostReport);
-            list.add(result);
+            tasks.add(forkJoinPool.submit(new RuleTask(hostReport, rule, untrustedMarkers)));
+        }
+        for(ForkJoinTask<RuleResult> task : tasks) {
+            try {
+                list.add(task.get());
+            }
+            catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while applying policy", e);
+            }
+            catch(ExecutionException e) {
+                // same as the sequential case, where the rule's exception would propagate to the caller
+                if( e.getCause() instanceof RuntimeException ) {
+                    throw (RuntimeException)e.getCause();
+                }
+                if( e.getCause() instanceof Error ) {
+                    throw (Error)e.getCause();
+                }
+                throw new IllegalStateException("Cannot apply rule", e.getCause());
+            }
         }
         return list;
     }
     
+    private RuleResult applyRule(HostReport hostReport, Rule rule, Set<String> untrustedMarkers) {
+        String[] markers = rule.getMarkers();
+        if( failFast && markers != null && markers.length > 0 && untrustedMarkers.containsAll(Arrays.asList(markers)) ) {
+            log.debug("Skipping rule {} because markers {} are already untrusted", rule.getClass().getName(), Arrays.toString(markers));
+            RuleResult skipped = new RuleResult(rule);
+            skipped.fault(new RuleNotEvaluated());
+            return skipped;
+        }
+        log.debug("Applying rule {}", rule.getClass().getName());
+        long start = System.nanoTime();
+        RuleResult result = rule.apply(hostReport);
+        long elapsed = (System.nanoTime() - start) / 1000;
+        result.setElapsedMicros(elapsed);
+        log.trace("performance: rule {}: {}us", rule.getClass().getSimpleName(), elapsed);
+        if( !result.isTrusted() && markers != null ) {
+            untrustedMarkers.addAll(Arrays.asList(markers));
+        }
+        return result;
+    }
+    
+    private class RuleTask extends RecursiveTask<RuleResult> {
+        private final HostReport hostReport;
+        private final Rule rule;
+        private final Set<String> untrustedMarkers;
+
+        private RuleTask(HostReport hostReport, Rule rule, Set<String> untrustedMarkers) {
+            this.hostReport = hostReport;
+            this.rule = rule;
+            this.untrustedMarkers = untrustedMarkers;
+        }
+
+        @Override
+        protected RuleResult compute() {
+            return applyRule(hostReport, rule, untrustedMarkers);
+        }
+    }
+    
     // this was formerly called "applyAny" because if ANY ONE of the policies says isTrusted then it's fine. 
     // however,  this is not the right spot to check that... so where do we check it ??? in the app?? that
     // would then be a feature of the app. which is fine.
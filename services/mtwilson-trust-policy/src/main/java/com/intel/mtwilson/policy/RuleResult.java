@@ -33,6 +33,7 @@ public class RuleResult {
     private final transient Logger log = LoggerFactory.getLogger(getClass().getName());
     private final Rule rule;
     private final ArrayList<Fault> faults = new ArrayList<Fault>();
+    private Long elapsedMicros = null;
     
     private RuleResult() { this.rule = null; } // for json deserialization support only
     public RuleResult(Rule rule) {
@@ -78,5 +79,19 @@ public class RuleResult {
     public final boolean isTrusted() {
         return faults.isEmpty();
     }
+    
+    /**
+     * Recorded by the policy engine to show which rules dominate the
+     * evaluation time.
+     * 
+     * @return the time it took to apply the rule, in microseconds, or null if not recorded
+     */
+    public final Long getElapsedMicros() {
+        return elapsedMicros;
+    }
+    
+    public final void setElapsedMicros(Long elapsedMicros) {
+        this.elapsedMicros = elapsedMicros;
+    }
 
 }
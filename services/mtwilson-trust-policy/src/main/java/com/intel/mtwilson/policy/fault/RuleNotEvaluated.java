@@ -0,0 +1,22 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.policy.fault;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.intel.mtwilson.policy.Fault;
+
+/**
+ * Recorded by the policy engine in fail-fast mode for a rule that was
+ * skipped because every marker it applies to was already untrusted.
+ * 
+ */
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+@JsonIgnoreProperties(ignoreUnknown=true)
+public class RuleNotEvaluated extends Fault {
+    public RuleNotEvaluated() {
+        super("Rule was not evaluated because the policy already failed for its markers");
+    }
+}
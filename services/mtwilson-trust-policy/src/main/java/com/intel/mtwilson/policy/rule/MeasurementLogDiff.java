@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.policy.rule;
+
+import com.intel.mtwilson.model.Measurement;
+import com.intel.mtwilson.model.VmMeasurement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Compares the measurements reported by a host or VM with the whitelist
+ * measurements, in time proportional to the number of measurements.
+ *
+ * Measurements are compared by digest, the same way as Measurement.equals
+ * and VmMeasurement.equals: an actual measurement is unexpected if no
+ * whitelist measurement has its digest, and a whitelist measurement is
+ * missing if no actual measurement has its digest. When a label function
+ * is given, an unexpected measurement and a missing measurement with the
+ * same label (ignoring case) are reported as one modified measurement
+ * instead.
+ *
+ * The unexpected, missing and modified lists keep the order of the input.
+ *
+ * @param <T> Measurement or VmMeasurement
+ */
+public class MeasurementLogDiff<T> {
+
+    public static interface LabelFunction<T> {
+        String getLabel(T measurement);
+    }
+
+    public static final LabelFunction<Measurement> MEASUREMENT_LABEL = new LabelFunction<Measurement>() {
+        @Override
+        public String getLabel(Measurement measurement) {
+            return measurement.getLabel();
+        }
+    };
+
+    public static final LabelFunction<VmMeasurement> VM_MEASUREMENT_LABEL = new LabelFunction<VmMeasurement>() {
+        @Override
+        public String getLabel(VmMeasurement measurement) {
+            return measurement.getLabel();
+        }
+    };
+
+    /**
+     * A whitelist measurement and the actual measurement with the same
+     * label but a different digest.
+     *
+     * @param <T>
+     */
+    public static class Modified<T> {
+        private final T expected;
+        private final T actual;
+
+        public Modified(T expected, T actual) {
+            this.expected = expected;
+            this.actual = actual;
+        }
+
+        public T getExpected() {
+            return expected;
+        }
+
+        public T getActual() {
+            return actual;
+        }
+    }
+
+    private final List<T> unexpected;
+    private final List<T> missing;
+    private final List<Modified<T>> modified;
+
+    private MeasurementLogDiff(List<T> unexpected, List<T> missing, List<Modified<T>> modified) {
+        this.unexpected = unexpected;
+        this.missing = missing;
+        this.modified = modified;
+    }
+
+    /**
+     * The whitelist measurements indexed by digest and by label, so that a
+     * whitelist that is compared with many hosts is indexed only once. An
+     * index is not modified after it is created and can be shared by
+     * threads.
+     *
+     * @param <T>
+     */
+    public static class Index<T> {
+        private final List<T> measurements;
+        private final HashSet<T> digests;
+        private final LabelFunction<T> labelFunction;
+        private final HashMap<String, List<Integer>> positionsByLabel;
+
+        /**
+         *
+         * @param expected whitelist measurements
+         * @param labelFunction to match unexpected and missing measurements by label, or null to report them only as unexpected and missing
+         */
+        public Index(Collection<T> expected, LabelFunction<T> labelFunction) {
+            this.measurements = new ArrayList<>(expected);
+            this.digests = new HashSet<>(expected);
+            this.labelFunction = labelFunction;
+            if (labelFunction == null) {
+                this.positionsByLabel = null;
+                return;
+            }
+            this.positionsByLabel = new HashMap<>();
+            for (int i = 0; i < measurements.size(); i++) {
+                String label = labelFunction.getLabel(measurements.get(i));
+                if (label == null) {
+                    continue;
+                }
+                String key = foldCase(label);
+                List<Integer> positions = positionsByLabel.get(key);
+                if (positions == null) {
+                    positions = new ArrayList<>(1);
+                    positionsByLabel.put(key, positions);
+                }
+                positions.add(i);
+            }
+        }
+
+        public int size() {
+            return measurements.size();
+        }
+    }
+
+    /**
+     * Finds the unexpected and missing measurements, without looking for
+     * modified measurements.
+     *
+     * @param <T>
+     * @param actual measurements reported by the host
+     * @param expected whitelist measurements
+     * @return
+     */
+    public static <T> MeasurementLogDiff<T> compare(Collection<T> actual, Collection<T> expected) {
+        return compare(actual, new Index<>(expected, null));
+    }
+
+    /**
+     *
+     * @param <T>
+     * @param actual measurements reported by the host
+     * @param expected whitelist measurements
+     * @param labelFunction to match unexpected and missing measurements by label, or null to report them only as unexpected and missing
+     * @return
+     */
+    public static <T> MeasurementLogDiff<T> compare(Collection<T> actual, Collection<T> expected, LabelFunction<T> labelFunction) {
+        return compare(actual, new Index<>(expected, labelFunction));
+    }
+
+    /**
+     *
+     * @param <T>
+     * @param actual measurements reported by the host
+     * @param expected whitelist measurements
+     * @return
+     */
+    public static <T> MeasurementLogDiff<T> compare(Collection<T> actual, Index<T> expected) {
+        // comparison is done BY HASH VALUE, not by name or any "other info"
+        ArrayList<T> unexpected = new ArrayList<>();
+        for (T item : actual) {
+            if (!expected.digests.contains(item)) {
+                unexpected.add(item);
+            }
+        }
+        HashSet<T> actualSet = new HashSet<>(actual);
+        boolean[] missing = new boolean[expected.measurements.size()];
+        int missingCount = 0;
+        for (int i = 0; i < missing.length; i++) {
+            if (!actualSet.contains(expected.measurements.get(i))) {
+                missing[i] = true;
+                missingCount++;
+            }
+        }
+        if (expected.labelFunction == null || unexpected.isEmpty() || missingCount == 0) {
+            return new MeasurementLogDiff<>(unexpected, select(expected.measurements, missing), Collections.<Modified<T>>emptyList());
+        }
+        ArrayList<Modified<T>> modified = new ArrayList<>();
+        boolean[] modifiedUnexpected = new boolean[unexpected.size()];
+        boolean[] modifiedMissing = new boolean[missing.length];
+        for (int i = 0; i < unexpected.size(); i++) {
+            String label = expected.labelFunction.getLabel(unexpected.get(i));
+            if (label == null) {
+                continue;
+            }
+            List<Integer> positions = expected.positionsByLabel.get(foldCase(label));
+            if (positions == null) {
+                continue;
+            }
+            for (Integer position : positions) {
+                if (missing[position]) {
+                    modified.add(new Modified<>(expected.measurements.get(position), unexpected.get(i)));
+                    modifiedUnexpected[i] = true;
+                    modifiedMissing[position] = true;
+                }
+            }
+        }
+        for (int i = 0; i < missing.length; i++) {
+            missing[i] = missing[i] && !modifiedMissing[i];
+        }
+        return new MeasurementLogDiff<>(retain(unexpected, modifiedUnexpected), select(expected.measurements, missing), modified);
+    }
+
+    private static <T> ArrayList<T> select(List<T> list, boolean[] selected) {
+        ArrayList<T> result = new ArrayList<>();
+        for (int i = 0; i < list.size(); i++) {
+            if (selected[i]) {
+                result.add(list.get(i));
+            }
+        }
+        return result;
+    }
+
+    private static <T> ArrayList<T> retain(List<T> list, boolean[] removed) {
+        ArrayList<T> result = new ArrayList<>(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            if (!removed[i]) {
+                result.add(list.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Two labels have the same key exactly when String.equalsIgnoreCase
+     * returns true for them.
+     */
+    private static String foldCase(String label) {
+        char[] chars = label.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(Character.toUpperCase(chars[i]));
+        }
+        return new String(chars);
+    }
+
+    /**
+     *
+     * @return actual measurements whose digest is not in the whitelist and that were not matched to a missing measurement by label
+     */
+    public List<T> getUnexpected() {
+        return unexpected;
+    }
+
+    /**
+     *
+     * @return whitelist measurements whose digest was not reported and that were not matched to an unexpected measurement by label
+     */
+    public List<T> getMissing() {
+        return missing;
+    }
+
+    public List<Modified<T>> getModified() {
+        return modified;
+    }
+}
@@ -50,8 +50,7 @@ public class PcrEventLogEqualsExcluding extends PcrEventLogEquals {
         while(it.hasNext()) {
             Measurement measurement = it.next();
             Map<String,String> mInfo = measurement.getInfo();
-            log.debug(measurement.getLabel() + " :: " + measurement.getValue().toString() + " :: " + mInfo.values().toString() + 
-                    " :: " + mInfo.keySet().toString());
+            log.debug("{} :: {} :: {} :: {}", measurement.getLabel(), measurement.getValue(), mInfo.values(), mInfo.keySet());
             // examin m.getInfo()  to decide if it's dynamic,   and also if excludeHostSpecificModules is true then exclude host specific modules
             if (excludeHostSpecificModules &&  hostSpecificModules.contains(mInfo.get("ComponentName")))
                 continue;
@@ -74,7 +74,7 @@ public class PcrEventLogIncludes extends BaseRule {
                 }
                 else {
                     HashSet<Measurement> hostActualMissing = new HashSet<Measurement>(expected);
-                    hostActualMissing.removeAll(moduleManifest); // hostActualMissing = expected modules - actual modules = only modules that should be there but aren't 
+                    hostActualMissing.removeAll(new HashSet<Measurement>(moduleManifest)); // hostActualMissing = expected modules - actual modules = only modules that should be there but aren't 
                     if( !hostActualMissing.isEmpty() ) {
                         report.fault(new PcrEventLogMissingExpectedEntries(pcrIndex, hostActualMissing));
                     }   
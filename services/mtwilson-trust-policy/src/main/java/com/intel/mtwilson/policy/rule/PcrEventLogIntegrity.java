@@ -82,8 +82,10 @@ public class PcrEventLogIntegrity extends BaseRule {
                 else {
                     List<Measurement> measurements = eventLog.getEventLog();
                     if( measurements != null ) {
-                        AbstractDigest expectedValue = computeHistory(measurements, pcrBank); // calculate expected' based on history
-                        log.debug("PcrEventLogIntegrity: About to compare {} with {}.", actualValue.getValue().toString(), expectedValue.toString());
+                        AbstractDigest expectedValue = computeHistory(eventLog, pcrBank); // calculate expected' based on history
+                        if( log.isDebugEnabled() ) {
+                            log.debug("PcrEventLogIntegrity: About to compare {} with {}.", actualValue.getValue().toString(), expectedValue.toString());
+                        }
                         // make sure the expected pcr value matches the actual pcr value
                         if( !expectedValue.equals(actualValue.getValue()) ) {
                             report.fault(PcrValueMismatch.newInstance(pcrBank, pcrIndex, expectedValue, expectedValue));
@@ -95,19 +97,14 @@ public class PcrEventLogIntegrity extends BaseRule {
         return report;
     }
     
-    private AbstractDigest computeHistory(List<Measurement> list, DigestAlgorithm bank) {         
+    private AbstractDigest computeHistory(PcrEventLog eventLog, DigestAlgorithm bank) {         
         // start with a default value of zero...  that should be the initial value of every PCR ..  if a pcr is reset after boot the tpm usually sets its starting value at -1 so the end result is different , which we could then catch here when the hashes don't match
-        AbstractDigest result = bank == DigestAlgorithm.SHA256 ? new Sha256Digest(new byte[] {0,0,0,0,0,0,0,0,0,0, 0,0,0,0,0,0,0,0,0,0, 0,0,0,0,0,0,0,0,0,0, 0,0}) : Sha1Digest.ZERO;
-        for(Measurement m : list) {
-            log.debug("computeHistory: About to extend {} with {}.", result.toString(), m.getValue().toString());
-            //result = result.extend(m.getValue());
-            if(bank == DigestAlgorithm.SHA256) {
-                result = ((Sha256Digest)result).extend(m.getValue().toByteArray());
-            } else {
-                result = ((Sha1Digest)result).extend(m.getValue().toByteArray());
-            }
-            log.debug("computeHistory: Result of extension is {}.", result.toString());
+        // the event log remembers the result, so other rules and policies applied to the same host report do not compute it again
+        byte[] result = eventLog.getExtendedValue();
+        if(bank == DigestAlgorithm.SHA256) {
+            return new Sha256Digest(result);
+        } else {
+            return new Sha1Digest(result);
         }
-        return result;
     }
 }
@@ -44,18 +44,15 @@ public class VmMeasurementLogEquals extends BaseRule {
         log.debug("VmMeasurementLogEquals: About to apply the VmMeasurementLogEquals policy");
         RuleResult report = new RuleResult(this);
 
-        ArrayList<VmMeasurement> vmActualUnexpected = new ArrayList<>(actualModules);
-        vmActualUnexpected.removeAll(whitelistModules); 
-
-        ArrayList<VmMeasurement> vmActualMissing = new ArrayList<>(whitelistModules);
-
         log.debug("VmMeasurementLogEquals: About to check VM entries {} against the whitelist which has {} entries.", 
-                actualModules.size(), vmActualMissing.size());
-        log.debug("VmMeasurementLogEquals: Verifying {} against {}", whitelistModules.toString(), actualModules.toString());
+                actualModules.size(), whitelistModules.size());
+        log.debug("VmMeasurementLogEquals: Verifying {} against {}", whitelistModules, actualModules);
 
-        vmActualMissing.removeAll(actualModules);
+        MeasurementLogDiff<VmMeasurement> diff = MeasurementLogDiff.compare(actualModules, whitelistModules, MeasurementLogDiff.VM_MEASUREMENT_LABEL);
+        List<VmMeasurement> vmActualUnexpected = diff.getUnexpected();
+        List<VmMeasurement> vmActualMissing = diff.getMissing();
 
-        raiseFaultForModifiedEntries(vmActualUnexpected, vmActualMissing, report);        
+        raiseFaultForModifiedEntries(diff.getModified(), report);        
                 
         if( !vmActualUnexpected.isEmpty() ) {
             log.debug("VmMeasurementLogEquals : VM is having #{} additional modules compared to the white list.", vmActualUnexpected.size());
@@ -76,27 +73,17 @@ public class VmMeasurementLogEquals extends BaseRule {
     /**
      * This function raises the faults for the modules that were updated. The faults for missing and new modules would be raised
      * by the calling function.
-     * @param vmActualUnexpected
-     * @param vmActualMissing
+     * @param modified
      * @param report 
      */
-    private void raiseFaultForModifiedEntries(ArrayList<VmMeasurement> vmActualUnexpected, ArrayList<VmMeasurement> vmActualMissing, RuleResult report) {
-        ArrayList<VmMeasurement> vmModifiedModules = new ArrayList<>();
-        ArrayList<VmMeasurement> tempVMActualUnexpected = new ArrayList<>(vmActualUnexpected);
-        ArrayList<VmMeasurement> tempVMActualMissing = new ArrayList<>(vmActualMissing);
+    private void raiseFaultForModifiedEntries(List<MeasurementLogDiff.Modified<VmMeasurement>> modified, RuleResult report) {
+        ArrayList<VmMeasurement> vmModifiedModules = new ArrayList<>(modified.size());
         
         try {
-            for (VmMeasurement tempUnexpected : tempVMActualUnexpected) {
-                for (VmMeasurement tempMissing : tempVMActualMissing) {
-                    log.debug("RaiseFaultForModifiedEntries: Comparing module {} with hash {} to module {} with hash {}.", tempUnexpected.getLabel(), 
-                            tempUnexpected.getValue().toString(), tempMissing.getLabel(), tempMissing.getValue().toString());
-                    if (tempUnexpected.getLabel().equalsIgnoreCase(tempMissing.getLabel())) {
-                        log.debug("Adding the entry to the list of modified modules and deleting from the other 2 lists.");
-                        vmModifiedModules.add(tempUnexpected);
-                        vmActualMissing.remove(tempMissing);
-                        vmActualUnexpected.remove(tempUnexpected);
-                    }
-                }
+            for (MeasurementLogDiff.Modified<VmMeasurement> entry : modified) {
+                log.debug("RaiseFaultForModifiedEntries: Module {} has hash {} instead of {}.", entry.getActual().getLabel(), 
+                        entry.getActual().getValue(), entry.getExpected().getValue());
+                vmModifiedModules.add(entry.getActual());
             }                        
                        
             if (!vmModifiedModules.isEmpty()) {
@@ -21,7 +21,6 @@ import com.intel.mtwilson.policy.fault.XmlMeasurementLogValueMismatchEntries;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,6 +49,7 @@ public class XmlMeasurementLogEquals extends BaseRule {
     private Logger log = LoggerFactory.getLogger(getClass());
     private XmlMeasurementLog expected;
     private PcrIndex pcrIndex; 
+    private transient volatile MeasurementLogDiff.Index<Measurement> expectedIndex; // created on first use if not provided
 
     protected XmlMeasurementLogEquals() {
         this.expected = new XmlMeasurementLog(PcrIndex.PCR19);
@@ -60,6 +60,33 @@ public class XmlMeasurementLogEquals extends BaseRule {
         this.pcrIndex = expected.getPcrIndex();
     }
     
+    /**
+     * @param expected
+     * @param expectedIndex index of the expected measurements, which may be shared with other rules for the same whitelist
+     */
+    public XmlMeasurementLogEquals(XmlMeasurementLog expected, MeasurementLogDiff.Index<Measurement> expectedIndex) {
+        this(expected);
+        this.expectedIndex = expectedIndex;
+    }
+    
+    /**
+     * 
+     * @param expected
+     * @return an index of the measurements for comparing them with the measurements of many hosts
+     */
+    public static MeasurementLogDiff.Index<Measurement> createIndex(XmlMeasurementLog expected) {
+        return new MeasurementLogDiff.Index<>(expected.getMeasurements(), MeasurementLogDiff.MEASUREMENT_LABEL);
+    }
+    
+    private MeasurementLogDiff.Index<Measurement> getExpectedIndex() {
+        MeasurementLogDiff.Index<Measurement> index = expectedIndex;
+        if( index == null ) {
+            index = createIndex(expected);
+            expectedIndex = index;
+        }
+        return index;
+    }
+    
     public PcrIndex getPcrIndex() {
         return this.pcrIndex;
     }
@@ -77,27 +104,24 @@ public class XmlMeasurementLogEquals extends BaseRule {
             
         } else {
             // Retrieve the list of modules as measurements from the XML log provided by the host
-            List<Measurement> actualModules = new XmlMeasurementLog(expected.getPcrIndex(), hostReport.pcrManifest.getMeasurementXml()).getMeasurements();
+            List<Measurement> actualModules = hostReport.pcrManifest.getXmlMeasurementLog(expected.getPcrIndex()).getMeasurements();
             log.debug("XmlMeasurementLogEquals: About to apply the XmlMeasurementLogEquals policy for {} entries.", actualModules.size());
             if( actualModules.isEmpty() ) {
                 report.fault(new XmlMeasurementLogMissing());
             }
             else {                    
-                // We will first check if the host provided any additional modules as part of the log
-                // hostActualUnexpected = actual modules - expected modules = only extra modules that shouldn't be there;  
-                // comparison is done BY HASH VALUE,  not by name or any "other info"
-                ArrayList<Measurement> hostActualUnexpected = new ArrayList<>(actualModules);
-                hostActualUnexpected.removeAll(expected.getMeasurements()); 
-
-                ArrayList<Measurement> hostActualMissing = new ArrayList<>(expected.getMeasurements());
-
                 log.debug("XmlMeasurementLogEquals: About to check host entries {} against the whitelist which has {} entries.", 
-                        actualModules.size(), hostActualMissing.size());
-                log.debug("XmlMeasurementLogEquals: Verifying {} against {}", expected.toString(), actualModules.toString());
+                        actualModules.size(), expected.getMeasurements().size());
+                log.debug("XmlMeasurementLogEquals: Verifying {} against {}", expected, actualModules);
 
-                hostActualMissing.removeAll(actualModules); // hostActualMissing = expected modules - actual modules = only modules that should be there but aren't 
+                // hostActualUnexpected = actual modules - expected modules = only extra modules that shouldn't be there;  
+                // hostActualMissing = expected modules - actual modules = only modules that should be there but aren't 
+                // comparison is done BY HASH VALUE,  not by name or any "other info"; modules in both lists with the same name are modified
+                MeasurementLogDiff<Measurement> diff = MeasurementLogDiff.compare(actualModules, getExpectedIndex());
+                List<Measurement> hostActualUnexpected = diff.getUnexpected();
+                List<Measurement> hostActualMissing = diff.getMissing();
 
-                raiseFaultForModifiedEntries(hostActualUnexpected, hostActualMissing, report);
+                raiseFaultForModifiedEntries(diff.getModified(), report);
                 
                 if( !hostActualUnexpected.isEmpty() ) {
                     log.debug("XmlMeasurementLogEquals : Host is having #{} additional modules compared to the white list.", hostActualUnexpected.size());
@@ -117,29 +141,18 @@ public class XmlMeasurementLogEquals extends BaseRule {
         return report;
     }
     
-    private void raiseFaultForModifiedEntries(ArrayList<Measurement> hostActualUnexpected, ArrayList<Measurement> hostActualMissing, RuleResult report) {
-        ArrayList<Measurement> hostModifiedModules = new ArrayList<>();
-        ArrayList<Measurement> tempHostActualUnexpected = new ArrayList<>(hostActualUnexpected);
-        ArrayList<Measurement> tempHostActualMissing = new ArrayList<>(hostActualMissing);
+    private void raiseFaultForModifiedEntries(List<MeasurementLogDiff.Modified<Measurement>> modified, RuleResult report) {
+        ArrayList<Measurement> hostModifiedModules = new ArrayList<>(modified.size());
         
         try {
-            for (Measurement tempUnexpected : tempHostActualUnexpected) {
-                for (Measurement tempMissing : tempHostActualMissing) {
-                    log.debug("RaiseFaultForModifiedEntries: Comparing module {} with hash {} to module {} with hash {}.", tempUnexpected.getLabel(), 
-                            tempUnexpected.getValue().toString(), tempMissing.getLabel(), tempMissing.getValue().toString());
-                    if (tempUnexpected.getLabel().equalsIgnoreCase(tempMissing.getLabel())) {
-                        log.debug("Adding the entry to the list of modified modules and deleting from the other 2 lists.");
-                        
-                        // We are storing the whitelist value and the actual value so that we do not need to compare again when generating the reports.
-                        HashMap<String, String> tempHashMapToAdd = new HashMap<>();
-                        tempHashMapToAdd.put("Actual_Value", tempUnexpected.getValue().toString());
-                        Measurement toMeasurementToAdd = new MeasurementSha1((Sha1Digest)tempMissing.getValue(), tempMissing.getLabel(), tempHashMapToAdd);
-                        
-                        hostModifiedModules.add(toMeasurementToAdd);
-                        hostActualUnexpected.remove(tempUnexpected);
-                        hostActualMissing.remove(tempMissing);
-                    }
-                }
+            for (MeasurementLogDiff.Modified<Measurement> entry : modified) {
+                log.debug("RaiseFaultForModifiedEntries: Module {} has hash {} instead of {}.", entry.getExpected().getLabel(), 
+                        entry.getActual().getValue(), entry.getExpected().getValue());
+                // We are storing the whitelist value and the actual value so that we do not need to compare again when generating the reports.
+                HashMap<String, String> tempHashMapToAdd = new HashMap<>();
+                tempHashMapToAdd.put("Actual_Value", entry.getActual().getValue().toString());
+                Measurement toMeasurementToAdd = new MeasurementSha1((Sha1Digest)entry.getExpected().getValue(), entry.getExpected().getLabel(), tempHashMapToAdd);
+                hostModifiedModules.add(toMeasurementToAdd);
             }                        
             
             if (!hostModifiedModules.isEmpty()) {
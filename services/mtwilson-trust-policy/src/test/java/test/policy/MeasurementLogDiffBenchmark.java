@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package test.policy;
+
+import com.intel.dcsg.cpg.crypto.Sha1Digest;
+import com.intel.mtwilson.model.Measurement;
+import com.intel.mtwilson.model.MeasurementSha1;
+import com.intel.mtwilson.policy.rule.MeasurementLogDiff;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the previous list based comparison in XmlMeasurementLogEquals
+ * (removeAll and a nested loop over the unexpected and missing modules)
+ * with MeasurementLogDiff, for a whitelist where 1% of the modules were
+ * modified, 1% were removed and 1% were added on the host.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=test.policy.MeasurementLogDiffBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MeasurementLogDiffBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private List<Measurement> expected;
+    private List<Measurement> actual;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(size);
+        expected = new ArrayList<>(size);
+        actual = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Measurement module = createMeasurement(random, "/opt/app/file" + i);
+            expected.add(module);
+            if (i % 100 == 1) {
+                actual.add(createMeasurement(random, "/opt/app/file" + i)); // modified
+            } else if (i % 100 == 2) {
+                actual.add(createMeasurement(random, "/opt/app/new" + i)); // removed and another added
+            } else {
+                actual.add(module);
+            }
+        }
+    }
+
+    private Measurement createMeasurement(Random random, String label) {
+        byte[] value = new byte[20];
+        random.nextBytes(value);
+        return new MeasurementSha1(new Sha1Digest(value), label);
+    }
+
+    /**
+     * The comparison used by XmlMeasurementLogEquals before
+     * MeasurementLogDiff, without the debug logging.
+     */
+    @Benchmark
+    public int legacyCompare() {
+        ArrayList<Measurement> unexpected = new ArrayList<>(actual);
+        unexpected.removeAll(expected);
+        ArrayList<Measurement> missing = new ArrayList<>(expected);
+        missing.removeAll(actual);
+        ArrayList<Measurement> modified = new ArrayList<>();
+        ArrayList<Measurement> tempUnexpected = new ArrayList<>(unexpected);
+        ArrayList<Measurement> tempMissing = new ArrayList<>(missing);
+        for (Measurement u : tempUnexpected) {
+            for (Measurement m : tempMissing) {
+                if (u.getLabel().equalsIgnoreCase(m.getLabel())) {
+                    modified.add(m);
+                    unexpected.remove(u);
+                    missing.remove(m);
+                }
+            }
+        }
+        return unexpected.size() + missing.size() + modified.size();
+    }
+
+    @Benchmark
+    public int hashCompare() {
+        MeasurementLogDiff<Measurement> diff = MeasurementLogDiff.compare(actual, expected, MeasurementLogDiff.MEASUREMENT_LABEL);
+        return diff.getUnexpected().size() + diff.getMissing().size() + diff.getModified().size();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(MeasurementLogDiffBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
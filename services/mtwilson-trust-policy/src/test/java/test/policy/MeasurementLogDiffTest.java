@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package test.policy;
+
+import com.intel.dcsg.cpg.crypto.Sha1Digest;
+import com.intel.mtwilson.model.Measurement;
+import com.intel.mtwilson.model.MeasurementSha1;
+import com.intel.mtwilson.policy.rule.MeasurementLogDiff;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class MeasurementLogDiffTest {
+
+    private Measurement measurement(int digest, String label) {
+        byte[] value = new byte[20];
+        value[19] = (byte) digest;
+        return new MeasurementSha1(new Sha1Digest(value), label);
+    }
+
+    @Test
+    public void testCompareByDigest() {
+        Measurement a = measurement(1, "/boot/a");
+        Measurement b = measurement(2, "/boot/b");
+        Measurement c = measurement(3, "/boot/c");
+        List<Measurement> actual = Arrays.asList(a, measurement(2, "renamed"), c);
+        List<Measurement> expected = Arrays.asList(a, b, measurement(4, "/boot/d"));
+        MeasurementLogDiff<Measurement> diff = MeasurementLogDiff.compare(actual, expected);
+        assertEquals(Arrays.asList(c), diff.getUnexpected());
+        assertEquals(1, diff.getMissing().size());
+        assertEquals("/boot/d", diff.getMissing().get(0).getLabel());
+        assertTrue(diff.getModified().isEmpty());
+    }
+
+    @Test
+    public void testModifiedByLabelIgnoringCase() {
+        Measurement a = measurement(1, "/boot/a");
+        List<Measurement> actual = Arrays.asList(a, measurement(5, "/BOOT/B"), measurement(6, "/boot/new"));
+        List<Measurement> expected = Arrays.asList(a, measurement(2, "/boot/b"), measurement(3, "/boot/gone"));
+        MeasurementLogDiff<Measurement> diff = MeasurementLogDiff.compare(actual, expected, MeasurementLogDiff.MEASUREMENT_LABEL);
+        assertEquals(1, diff.getModified().size());
+        assertEquals("/boot/b", diff.getModified().get(0).getExpected().getLabel());
+        assertEquals("/BOOT/B", diff.getModified().get(0).getActual().getLabel());
+        assertEquals(1, diff.getUnexpected().size());
+        assertEquals("/boot/new", diff.getUnexpected().get(0).getLabel());
+        assertEquals(1, diff.getMissing().size());
+        assertEquals("/boot/gone", diff.getMissing().get(0).getLabel());
+    }
+
+    @Test
+    public void testEqual() {
+        List<Measurement> measurements = Arrays.asList(measurement(1, "/boot/a"), measurement(2, "/boot/b"));
+        MeasurementLogDiff<Measurement> diff = MeasurementLogDiff.compare(measurements, measurements, MeasurementLogDiff.MEASUREMENT_LABEL);
+        assertTrue(diff.getUnexpected().isEmpty());
+        assertTrue(diff.getMissing().isEmpty());
+        assertTrue(diff.getModified().isEmpty());
+    }
+}
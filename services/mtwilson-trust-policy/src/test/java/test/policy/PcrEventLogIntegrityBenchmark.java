@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package test.policy;
+
+import com.intel.dcsg.cpg.crypto.DigestAlgorithm;
+import com.intel.dcsg.cpg.crypto.Sha1Digest;
+import com.intel.mtwilson.model.MeasurementSha1;
+import com.intel.mtwilson.model.PcrEventLogSha1;
+import com.intel.mtwilson.model.PcrIndex;
+import com.intel.mtwilson.model.PcrManifest;
+import com.intel.mtwilson.model.PcrSha1;
+import com.intel.mtwilson.policy.HostReport;
+import com.intel.mtwilson.policy.RuleResult;
+import com.intel.mtwilson.policy.rule.PcrEventLogIntegrity;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the previous hash chain computation (a new Sha1Digest for each
+ * extend) with PcrEventLog.getExtendedValue, for the first evaluation of an
+ * event log and for repeated evaluations of the same event log as happens
+ * when several policies are applied to one host report.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=test.policy.PcrEventLogIntegrityBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PcrEventLogIntegrityBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    private List<MeasurementSha1> measurements;
+    private HostReport hostReport;
+    private HostReport freshHostReport;
+    private PcrEventLogIntegrity rule;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(size);
+        measurements = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            byte[] value = new byte[20];
+            random.nextBytes(value);
+            measurements.add(new MeasurementSha1(new Sha1Digest(value), "module" + i));
+        }
+        rule = new PcrEventLogIntegrity(DigestAlgorithm.SHA1, PcrIndex.PCR19);
+        hostReport = createHostReport();
+        rule.apply(hostReport); // memoize
+    }
+
+    @Setup(Level.Invocation)
+    public void setupInvocation() {
+        freshHostReport = createHostReport();
+    }
+
+    private HostReport createHostReport() {
+        PcrManifest pcrManifest = new PcrManifest();
+        pcrManifest.setPcr(new PcrSha1(PcrIndex.PCR19, legacyExtend().toByteArray()));
+        pcrManifest.setPcrEventLog(new PcrEventLogSha1(PcrIndex.PCR19, measurements));
+        HostReport report = new HostReport();
+        report.pcrManifest = pcrManifest;
+        return report;
+    }
+
+    /**
+     * The computation used by PcrEventLogIntegrity before the result was
+     * memoized.
+     */
+    @Benchmark
+    public Sha1Digest legacyExtend() {
+        Sha1Digest result = Sha1Digest.ZERO;
+        for (MeasurementSha1 m : measurements) {
+            result = result.extend(m.getValue().toByteArray());
+        }
+        return result;
+    }
+
+    @Benchmark
+    public RuleResult firstEvaluation() {
+        return rule.apply(freshHostReport);
+    }
+
+    @Benchmark
+    public RuleResult memoizedEvaluation() {
+        return rule.apply(hostReport);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PcrEventLogIntegrityBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
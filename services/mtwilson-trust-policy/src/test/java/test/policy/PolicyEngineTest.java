@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package test.policy;
+
+import com.intel.mtwilson.policy.BaseRule;
+import com.intel.mtwilson.policy.HostReport;
+import com.intel.mtwilson.policy.PolicyEngine;
+import com.intel.mtwilson.policy.RuleResult;
+import com.intel.mtwilson.policy.fault.RuleNotEvaluated;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ */
+public class PolicyEngineTest {
+
+    private static class TestRule extends BaseRule {
+        private final boolean trusted;
+        private final AtomicInteger applied = new AtomicInteger();
+
+        TestRule(boolean trusted, String... markers) {
+            this.trusted = trusted;
+            setMarkers(markers);
+        }
+
+        @Override
+        public RuleResult apply(HostReport hostReport) {
+            applied.incrementAndGet();
+            RuleResult result = new RuleResult(this);
+            if (!trusted) {
+                result.fault("untrusted");
+            }
+            return result;
+        }
+    }
+
+    @Test
+    public void testParallelResultsInRuleOrder() {
+        TestRule[] rules = new TestRule[20];
+        for (int i = 0; i < rules.length; i++) {
+            rules[i] = new TestRule(i % 3 != 0, "BIOS");
+        }
+        PolicyEngine engine = new PolicyEngine(new ForkJoinPool(4), false);
+        List<RuleResult> results = engine.applyAll(new HostReport(), rules);
+        assertEquals(rules.length, results.size());
+        for (int i = 0; i < rules.length; i++) {
+            assertSame(rules[i], results.get(i).getRule());
+            assertEquals(i % 3 != 0, results.get(i).isTrusted());
+            assertNotNull(results.get(i).getElapsedMicros());
+        }
+    }
+
+    @Test
+    public void testFailFastSkipsOnlyUntrustedMarkers() {
+        TestRule biosFails = new TestRule(false, "BIOS");
+        TestRule biosSkipped = new TestRule(true, "BIOS");
+        TestRule vmm = new TestRule(true, "VMM");
+        TestRule both = new TestRule(true, "BIOS", "VMM");
+        PolicyEngine engine = new PolicyEngine(null, true);
+        List<RuleResult> results = engine.applyAll(new HostReport(), biosFails, biosSkipped, vmm, both);
+        assertEquals(4, results.size());
+        assertEquals(0, biosSkipped.applied.get());
+        assertTrue(results.get(1).getFaults().get(0) instanceof RuleNotEvaluated);
+        assertEquals(1, vmm.applied.get());
+        assertTrue(results.get(2).isTrusted());
+        assertEquals(1, both.applied.get()); // VMM is not known to be untrusted
+    }
+
+    @Test
+    public void testWithoutFailFastAllRulesApplied() {
+        TestRule biosFails = new TestRule(false, "BIOS");
+        TestRule bios = new TestRule(true, "BIOS");
+        PolicyEngine engine = new PolicyEngine();
+        engine.applyAll(new HostReport(), biosFails, bios);
+        assertEquals(1, bios.applied.get());
+    }
+}
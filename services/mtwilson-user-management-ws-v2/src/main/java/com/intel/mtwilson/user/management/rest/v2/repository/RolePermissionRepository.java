@@ -14,6 +14,7 @@ import com.intel.mtwilson.repository.RepositoryCreateException;
 import com.intel.mtwilson.repository.RepositoryDeleteException;
 import com.intel.mtwilson.repository.RepositoryException;
 import com.intel.mtwilson.repository.RepositorySearchException;
+import com.intel.mtwilson.shiro.jdbi.LoginCache;
 import com.intel.mtwilson.shiro.jdbi.LoginDAO;
 import com.intel.mtwilson.shiro.jdbi.MyJdbi;
 import java.util.List;
@@ -105,6 +106,7 @@ public class RolePermissionRepository implements DocumentRepository<RolePermissi
                 obj.setPermitAction(item.getPermitAction());
                 obj.setPermitSelection(item.getPermitSelection());
                 loginDAO.insertRolePermission(item.getRoleId(), item.getPermitDomain(), item.getPermitAction(), item.getPermitSelection());
+                LoginCache.invalidateLogins();
                 log.debug("RolePermission:Create - Created the role permission successfully.");
             } else {
                 log.error("RolePermission:Create - RolePermission will not be created since a duplicate already exists.");
@@ -133,6 +135,7 @@ public class RolePermissionRepository implements DocumentRepository<RolePermissi
             for (RolePermission obj : objCollection.getRolePermissions()) {
                 loginDAO.deleteRolePermission(obj.getRoleId(), obj.getPermitDomain(), obj.getPermitAction(), obj.getPermitSelection());
             }
+            LoginCache.invalidateLogins();
         } catch(RepositoryException re) {
             throw re;
         } catch (Exception ex) {
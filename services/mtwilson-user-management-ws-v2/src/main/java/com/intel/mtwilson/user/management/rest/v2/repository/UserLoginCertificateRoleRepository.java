@@ -13,6 +13,7 @@ import com.intel.mtwilson.repository.RepositoryCreateException;
 import com.intel.mtwilson.repository.RepositoryDeleteException;
 import com.intel.mtwilson.repository.RepositoryException;
 import com.intel.mtwilson.repository.RepositorySearchException;
+import com.intel.mtwilson.shiro.jdbi.LoginCache;
 import com.intel.mtwilson.shiro.jdbi.LoginDAO;
 import com.intel.mtwilson.shiro.jdbi.MyJdbi;
 import java.util.List;
@@ -92,6 +93,7 @@ public class UserLoginCertificateRoleRepository implements DocumentRepository<Us
                 obj.setLoginCertificateId(item.getLoginCertificateId());
                 obj.setRoleId(item.getRoleId());
                 loginDAO.insertUserLoginCertificateRole(obj.getLoginCertificateId(), obj.getRoleId());
+                LoginCache.invalidateLogins();
                 log.debug("UserLoginCertificateRole:Create - Created the user login certificate role successfully.");
             } else {
                 log.info("UserLoginCertificateRole:Create - User login certificate role specified already exists.");
@@ -125,6 +127,7 @@ public class UserLoginCertificateRoleRepository implements DocumentRepository<Us
             for (UserLoginCertificateRole obj : objList.getUserLoginCertificateRoles()) {
                 loginDAO.deleteUserLoginCertificateRole(obj.getLoginCertificateId(), obj.getRoleId());
             }
+            LoginCache.invalidateLogins();
         } catch(RepositoryException re) {
             throw re;
         } catch (Exception ex) {
@@ -18,6 +18,7 @@ import com.intel.mtwilson.repository.RepositoryRetrieveException;
 import com.intel.mtwilson.repository.RepositorySearchException;
 import com.intel.mtwilson.repository.RepositoryStoreConflictException;
 import com.intel.mtwilson.repository.RepositoryStoreException;
+import com.intel.mtwilson.shiro.jdbi.LoginCache;
 import com.intel.mtwilson.shiro.jdbi.LoginDAO;
 import com.intel.mtwilson.shiro.jdbi.MyJdbi;
 import com.intel.mtwilson.user.management.rest.v2.model.UserLoginCertificateFilterCriteria;
@@ -105,6 +106,7 @@ public class UserRepository implements DocumentRepository<User, UserCollection,
                 if (item.getLocale() != null)
                     user.setLocale(item.getLocale());
                 loginDAO.updateUser(user.getId(), LocaleUtil.toLanguageTag(user.getLocale()), user.getComment());
+                LoginCache.invalidateLogins();
                 log.debug("User:Store - Updated the user {} successfully.", user.getUsername());
             } else {
                 log.error("User:Store - User will not be updated since it does not exist.");
@@ -135,6 +137,7 @@ public class UserRepository implements DocumentRepository<User, UserCollection,
                 if (item.getLocale() != null)
                     localeTag = LocaleUtil.toLanguageTag(item.getLocale());
                 loginDAO.insertUser(user.getId(), user.getUsername(), localeTag, user.getComment());
+                LoginCache.invalidateLogins();
                 log.debug("User:Create - Created the user {} successfully.", item.getUsername());
             } else {
                 log.error("User:Create - User {} will not be created since a duplicate user already exists.", item.getUsername());
@@ -170,6 +173,7 @@ public class UserRepository implements DocumentRepository<User, UserCollection,
                 log.debug("User:Delete - Deleted the user {} login password entries successfully.", user.getUsername());
                 
                 loginDAO.deleteUser(locator.id);
+                LoginCache.invalidateLogins();
                 log.debug("User:Delete - Deleted the user {} successfully.", user.getUsername());
             } else {
                 log.info("User:Delete - User does not exist in the system.");
@@ -155,6 +155,9 @@ public class MleBO {
             // throw new ASException(e);
             log.error("Error during MLE creation.", e);
             throw new ASException(ErrorCode.WS_MLE_CREATE_ERROR, e.getClass().getSimpleName());
+        } finally {
+            // discard trust policies compiled from the previous whitelist, even if only part of the change was saved
+            MleWhitelistVersion.increment();
         }
 
         return "true";
@@ -177,7 +180,7 @@ public class MleBO {
      * @return
      */
     public String updateMle(MleData mleData, String mleUuid) {
-        TblMle tblMle;
+        TblMle tblMle = null;
         try {
             // Feature: 917 - Support for UUID
             if (mleUuid != null && !mleUuid.isEmpty()) {
@@ -207,6 +210,8 @@ public class MleBO {
             // new ASException(e);
             log.error("Error during MLE update.", e);
             throw new ASException(ErrorCode.WS_MLE_UPDATE_ERROR, e.getClass().getSimpleName());
+        } finally {
+            MleWhitelistVersion.increment(tblMle == null ? null : tblMle.getId());
         }
 
         return "true";
@@ -222,7 +227,7 @@ public class MleBO {
      * @return
      */
     public String deleteMle(String mleName, String mleVersion, String osName, String osVersion, String oemName, String mleUuid) {
-        TblMle tblMle;
+        TblMle tblMle = null;
         try {
             if (mleUuid != null && !mleUuid.isEmpty()) {
                 tblMle = mleJpaController.findTblMleByUUID(mleUuid);
@@ -281,6 +286,8 @@ public class MleBO {
             // throw new ASException(e);
             log.error("Error during MLE deletion.", e);
             throw new ASException(ErrorCode.WS_MLE_DELETE_ERROR, e.getClass().getSimpleName());
+        } finally {
+            MleWhitelistVersion.increment(tblMle == null ? null : tblMle.getId());
         }
 
         return "true";
@@ -777,6 +784,8 @@ public class MleBO {
             // throw new ASException(e);
             log.error("Error during PCR whitelist creation.", e);
             throw new ASException(ErrorCode.WS_PCR_WHITELIST_CREATE_ERROR, e.getClass().getSimpleName());
+        } finally {
+            MleWhitelistVersion.increment();
         }
         return "true";
     }   
@@ -849,6 +858,8 @@ public class MleBO {
             // throw new ASException(e);
             log.error("Error during PCR whitelist update.", e);
             throw new ASException(ErrorCode.WS_PCR_WHITELIST_UPDATE_ERROR, e.getClass().getSimpleName());
+        } finally {
+            MleWhitelistVersion.increment();
         }
         return "true";
     }
@@ -916,6 +927,8 @@ public class MleBO {
             // throw new ASException(e);
             log.error("Error during PCR whitelist deletion.", e);
             throw new ASException(ErrorCode.WS_PCR_WHITELIST_DELETE_ERROR, e.getClass().getSimpleName());
+        } finally {
+            MleWhitelistVersion.increment();
         }
         return "true";
     }
@@ -1072,6 +1085,8 @@ public class MleBO {
             // throw new ASException(e);
             log.error("Error during Module whitelist creation.", e);
             throw new ASException(ErrorCode.WS_MODULE_WHITELIST_CREATE_ERROR, e.getClass().getSimpleName());
+        } finally {
+            MleWhitelistVersion.increment();
         }
         return "true";
     }
@@ -1178,6 +1193,8 @@ public class MleBO {
             // throw new ASException(e);
             log.error("Error during Module whitelist update.", e);
             throw new ASException(ErrorCode.WS_MODULE_WHITELIST_UPDATE_ERROR, e.getClass().getSimpleName());
+        } finally {
+            MleWhitelistVersion.increment();
         }
 
         return "true";
@@ -1265,6 +1282,8 @@ public class MleBO {
             // throw new ASException(e);
             log.error("Error during Module whitelist deletion.", e);
             throw new ASException(ErrorCode.WS_MODULE_WHITELIST_DELETE_ERROR, e.getClass().getSimpleName());
+        } finally {
+            MleWhitelistVersion.increment();
         }
 
         return "true";
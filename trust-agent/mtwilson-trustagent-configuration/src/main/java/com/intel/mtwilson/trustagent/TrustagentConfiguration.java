@@ -23,6 +23,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.commons.codec.DecoderException;
@@ -37,6 +38,9 @@ import org.apache.commons.io.IOUtils;
 public class TrustagentConfiguration {
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(TrustagentConfiguration.class);
     private static final String PASSWORD = "PASSWORD"; // transforms into MTWILSON_PASSWORD, KMS_PASSWORD, etc. environment variables
+    private static final Object loadLock = new Object();
+    private static final AtomicLong reloadCount = new AtomicLong();
+    private static volatile LoadedConfiguration loaded = null;
 
     // Variables such as TRUSTAGENT_HOME, TRUSTAGENT_CONF, etc. for filesystem
     // paths are not defined here; see MyFilesystem instead.
@@ -61,6 +65,7 @@ public class TrustagentConfiguration {
     public final static String TRUSTAGENT_KEYSTORE_PASSWORD = "trustagent.keystore.password";
     public final static String DAA_ENABLED = "daa.enabled"; // default false for 1.2 and 2.0
     public final static String TPM_QUOTE_IPV4 = "tpm.quote.ipv4";
+    public final static String TPM_QUOTE_MEASUREMENT_LOG_CACHE = "tpm.quote.measurement.log.cache"; // default true
     public static final String HARDWARE_UUID = "hardware.uuid";
     public static final String BINDING_KEY_NAME = "bind";
     public static final String BINDING_KEY_SECRET = "binding.key.secret";
@@ -325,6 +330,14 @@ public class TrustagentConfiguration {
         return Boolean.valueOf(conf.get(TPM_QUOTE_IPV4, "true"));
     }
     
+    /**
+     * 
+     * @return true if the module log should be generated once per boot instead of for every quote
+     */
+    public boolean isTpmQuoteMeasurementLogCacheEnabled() {
+        return Boolean.valueOf(conf.get(TPM_QUOTE_MEASUREMENT_LOG_CACHE, "true"));
+    }
+    
     public String getHardwareUuid() {
         return conf.get(HARDWARE_UUID, null);
     }
@@ -354,8 +367,69 @@ public class TrustagentConfiguration {
     }
     
     
+    /**
+     * The configuration and the trustagent.properties file state it was
+     * loaded from.
+     */
+    private static class LoadedConfiguration {
+        private final String path;
+        private final long lastModified;
+        private final long length;
+        private final TrustagentConfiguration configuration;
+
+        private LoadedConfiguration(String path, long lastModified, long length, TrustagentConfiguration configuration) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.configuration = configuration;
+        }
+
+        private boolean isCurrent(File file) {
+            return path.equals(file.getAbsolutePath()) && lastModified == file.lastModified() && length == file.length();
+        }
+    }
+    
+    /**
+     * Returns the configuration from trustagent.properties. The file is
+     * read (and decrypted if it is encrypted) the first time and then only
+     * when its modification time or size changes, so callers on the request
+     * path do not repeat the file I/O and key derivation. The returned
+     * instance is shared and must not be modified.
+     * 
+     * @return the current configuration
+     * @throws IOException 
+     */
     public static TrustagentConfiguration loadConfiguration() throws IOException {
         File file = new File(Folders.configuration() + File.separator + "trustagent.properties");
+        LoadedConfiguration current = loaded;
+        if( current != null && current.isCurrent(file) ) {
+            return current.configuration;
+        }
+        synchronized(loadLock) {
+            current = loaded;
+            if( current != null && current.isCurrent(file) ) {
+                return current.configuration;
+            }
+            // record the file state before reading so a change made while reading causes another reload
+            long lastModified = file.lastModified();
+            long length = file.length();
+            TrustagentConfiguration configuration = readConfiguration(file);
+            loaded = new LoadedConfiguration(file.getAbsolutePath(), lastModified, length, configuration);
+            long count = reloadCount.incrementAndGet();
+            log.debug("Loaded trust agent configuration from {} (load count {})", file.getAbsolutePath(), count);
+            return configuration;
+        }
+    }
+    
+    /**
+     * 
+     * @return number of times the configuration file has been read by loadConfiguration
+     */
+    public static long getReloadCount() {
+        return reloadCount.get();
+    }
+    
+    private static TrustagentConfiguration readConfiguration(File file) throws IOException {
         if( file.exists() ) {
             try(FileInputStream in = new FileInputStream(file)) {
                 String content = IOUtils.toString(in);
@@ -32,15 +32,39 @@ public class GenerateModulesCmd implements ICommand {
 
     Logger log = LoggerFactory.getLogger(getClass().getName());
     private TADataContext context;
+    private MeasurementLogCache cache;
 
     public GenerateModulesCmd(TADataContext context) {
+        this(context, null);
+    }
+
+    /**
+     * 
+     * @param context
+     * @param cache may be null to always run the measure log script
+     */
+    public GenerateModulesCmd(TADataContext context, MeasurementLogCache cache) {
         this.context = context;
+        this.cache = cache;
     }
 
     @Override
     public void execute() throws TAException {
         try {
+            if (cache == null) {
+                getXmlFromMeasureLog();
+                return;
+            }
+            // the measured boot log does not change until the next reboot
+            String key = cache.getModulesKey(RetrieveTcbMeasurement.getTcbMeasurementFile(context));
+            String modules = cache.getModules(key);
+            if (modules != null) {
+                log.debug("Using module information cached for this boot");
+                context.setModules(modules);
+                return;
+            }
             getXmlFromMeasureLog();
+            cache.putModules(key, context.getModules());
 
         } catch (Exception ex) {
             throw new TAException(ErrorCode.ERROR, "Error while getting Module details.", ex);
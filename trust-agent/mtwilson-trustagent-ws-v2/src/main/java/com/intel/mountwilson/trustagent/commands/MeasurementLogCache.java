@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mountwilson.trustagent.commands;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Keeps the module XML produced by GenerateModulesCmd and the TCB
+ * measurement XML read by RetrieveTcbMeasurement in memory so that a quote
+ * request does not need to run the measure log script again.
+ *
+ * The measured boot log cannot change until the next reboot, so the module
+ * XML is kept for the current boot, identified by the kernel boot id (or the
+ * boot time when the boot id is not available). It is also discarded when
+ * the TCB measurement file changes and when an asset tag is written.
+ */
+public class MeasurementLogCache {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(MeasurementLogCache.class);
+    private static final MeasurementLogCache instance = new MeasurementLogCache(new File("/proc/sys/kernel/random/boot_id"), new File("/proc/stat"));
+    private final File bootIdFile;
+    private final File statFile;
+    private volatile Entry modules = null;
+    private volatile Entry tcbMeasurement = null;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public MeasurementLogCache(File bootIdFile, File statFile) {
+        this.bootIdFile = bootIdFile;
+        this.statFile = statFile;
+    }
+
+    public static MeasurementLogCache getInstance() {
+        return instance;
+    }
+
+    private static class Entry {
+        private final String key;
+        private final String value;
+
+        private Entry(String key, String value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     *
+     * @return an identifier of the current boot, or null if it cannot be determined
+     */
+    public String getBootId() {
+        try {
+            if (bootIdFile.exists()) {
+                return FileUtils.readFileToString(bootIdFile, Charset.forName("UTF-8")).trim();
+            }
+            if (statFile.exists()) {
+                for (String line : FileUtils.readLines(statFile, Charset.forName("UTF-8"))) {
+                    if (line.startsWith("btime ")) {
+                        return line.substring(6).trim();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Cannot determine boot id: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     *
+     * @param tcbMeasurementFile may be null if there is no TCB measurement file
+     * @return the cache key for the module XML of the current boot, or null if the boot cannot be identified
+     */
+    public String getModulesKey(File tcbMeasurementFile) {
+        String bootId = getBootId();
+        if (bootId == null) {
+            return null;
+        }
+        return bootId + "|" + getFileKey(tcbMeasurementFile);
+    }
+
+    private String getFileKey(File file) {
+        if (file == null || !file.exists()) {
+            return "none";
+        }
+        return file.getAbsolutePath() + "|" + file.lastModified() + "|" + file.length();
+    }
+
+    /**
+     *
+     * @param key from getModulesKey
+     * @return the cached module XML or null
+     */
+    public String getModules(String key) {
+        return get(modules, key);
+    }
+
+    public void putModules(String key, String value) {
+        if (key != null && value != null) {
+            modules = new Entry(key, value);
+        }
+    }
+
+    /**
+     *
+     * @param file the TCB measurement file
+     * @return the cached content of the file, or null if it is not cached or the file changed
+     */
+    public String getTcbMeasurement(File file) {
+        return get(tcbMeasurement, getFileKey(file));
+    }
+
+    public void putTcbMeasurement(File file, String value) {
+        if (value != null) {
+            tcbMeasurement = new Entry(getFileKey(file), value);
+        }
+    }
+
+    private String get(Entry entry, String key) {
+        if (key == null || entry == null || !entry.key.equals(key)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * Discards the cached module XML and TCB measurement.
+     */
+    public void invalidate() {
+        modules = null;
+        tcbMeasurement = null;
+        log.debug("Measurement log cache invalidated");
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+}
@@ -24,31 +24,63 @@ import org.apache.commons.io.IOUtils;
  */
 public class RetrieveTcbMeasurement implements ICommand {
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(RetrieveTcbMeasurement.class);
+    private static final String DEFAULT_TCB_MEASUREMENT_FILE = "/var/log/trustagent/measurement.xml";
     private TADataContext context;
+    private MeasurementLogCache cache;
 
     public RetrieveTcbMeasurement(TADataContext context) {
+        this(context, null);
+    }
+
+    /**
+     * 
+     * @param context
+     * @param cache may be null to always read the measurement file
+     */
+    public RetrieveTcbMeasurement(TADataContext context, MeasurementLogCache cache) {
         this.context = context;
+        this.cache = cache;
     }
 
     /**
-     * Retrieves the measurement log from the TA node.
      * 
-     * @throws TAException 
+     * @param context
+     * @return the TCB measurement file, or null if it does not exist
      */
-    @Override
-    public void execute() throws TAException {
+    public static File getTcbMeasurementFile(TADataContext context) {
         File tcbMeasurementFile = context.getTcbMeasurementXmlFile();
-        if (!context.getTcbMeasurementXmlFile().exists()) {
-            log.warn("TCB measurement XML file not present at {}.", context.getTcbMeasurementXmlFile().getAbsolutePath());
+        if (!tcbMeasurementFile.exists()) {
             // TODO: Need to make this configurable in tboot-xm so that user can make these changes directly and 
             // we do not need to check at multiple locations.
-            tcbMeasurementFile = new File("/var/log/trustagent/measurement.xml");
-            log.warn("Checking to see if the log file exists at {}.", tcbMeasurementFile.getAbsolutePath());
+            tcbMeasurementFile = new File(DEFAULT_TCB_MEASUREMENT_FILE);
             if (!tcbMeasurementFile.exists()) {
-                log.warn("TCB measurement XML file does not exist at {}.", tcbMeasurementFile.getAbsolutePath());
-                return;
+                return null;
             }  
         } 
+        return tcbMeasurementFile;
+    }
+
+    /**
+     * Retrieves the measurement log from the TA node.
+     * 
+     * @throws TAException 
+     */
+    @Override
+    public void execute() throws TAException {
+        File tcbMeasurementFile = getTcbMeasurementFile(context);
+        if (tcbMeasurementFile == null) {
+            log.warn("TCB measurement XML file does not exist at {} or {}.", context.getTcbMeasurementXmlFile().getAbsolutePath(), DEFAULT_TCB_MEASUREMENT_FILE);
+            return;
+        }
+
+        if (cache != null) {
+            String cached = cache.getTcbMeasurement(tcbMeasurementFile);
+            if (cached != null) {
+                log.debug("Using cached TCB measurement XML from {}", tcbMeasurementFile.getAbsolutePath());
+                context.setTcbMeasurement(cached);
+                return;
+            }
+        }
 
         try {
             log.debug("Processing the TCB measurement XML file @ {}.", tcbMeasurementFile.getAbsolutePath());
@@ -56,6 +88,9 @@ public class RetrieveTcbMeasurement implements ICommand {
                 String tcbMeasurementString = IOUtils.toString(in, Charset.forName("UTF-8"));
                 log.info("TCB measurement XML string: {}", tcbMeasurementString);
                 context.setTcbMeasurement(tcbMeasurementString);
+                if (cache != null) {
+                    cache.putTcbMeasurement(tcbMeasurementFile, tcbMeasurementString);
+                }
             }
         } catch (IOException e) {
             log.warn("IOException, invalid measurement.xml: {}", e.getMessage());
@@ -16,6 +16,7 @@ import com.intel.mtwilson.util.ResourceFinder;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Properties;
+import org.apache.commons.io.FileUtils;
 
 /**
  *
@@ -45,6 +46,7 @@ public class TADataContext {
     private String assetTagHash = null;
     private TpmQuoteResponse tpmQuoteResponse;
     private String sessionId;
+    private File dataFolder;
     private String tcbMeasurement;
     private String selectedPcrBanks;
 
@@ -182,6 +184,9 @@ public class TADataContext {
 
     public String getDataFolder() {
         String path = Folders.repository() + File.separator + getSessionId();
+        if( dataFolder != null ) {
+            return path;
+        }
         File dir = new File(path);
         if( !dir.exists() ) {
             if( dir.mkdirs() ) {
@@ -191,10 +196,29 @@ public class TADataContext {
                 log.error("Error creating data folder {}", path);
             }
         }
+        dataFolder = dir;
         //return Config.getHomeFolder() + File.separator + Config.getInstance().getProperty("data.folder") + File.separator;
         return path;
     }
 
+    /**
+     * Deletes the session data folder and its files, if the folder was
+     * created.
+     */
+    public void deleteDataFolder() {
+        if( dataFolder == null ) {
+            return;
+        }
+        try {
+            FileUtils.deleteDirectory(dataFolder);
+            log.debug("Deleted session data folder {}", dataFolder.getAbsolutePath());
+        }
+        catch(IOException e) {
+            log.error("Error deleting data folder {}: {}", dataFolder.getAbsolutePath(), e.getMessage());
+        }
+        dataFolder = null;
+    }
+
     public void setAIKCertificate(String certBytes) {
         this.AIKCertificate = certBytes;
     }
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.trustagent.ws.v2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records how long each stage of a request took. The stages of one request
+ * can be returned to the client in a Server-Timing header, and the totals
+ * for all requests of the same kind are kept in memory so they can be
+ * inspected without debug logging.
+ */
+public class StageTimer {
+    private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(StageTimer.class);
+    private static final ConcurrentMap<String, StageStatistics> statistics = new ConcurrentHashMap<>();
+    private final String name;
+    private final List<String> stages = new ArrayList<>();
+    private final List<Long> durations = new ArrayList<>();
+    private long t0 = System.nanoTime();
+
+    /**
+     *
+     * @param name the kind of request, for example "tpm.quote"
+     */
+    public StageTimer(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Records the time since the previous stage ended.
+     *
+     * @param stage
+     */
+    public void mark(String stage) {
+        long t1 = System.nanoTime();
+        long elapsedMicros = (t1 - t0) / 1000;
+        t0 = t1;
+        stages.add(stage);
+        durations.add(elapsedMicros);
+        getStatistics(name + "." + stage).add(elapsedMicros);
+        log.debug("performance: after {} ms: {}", elapsedMicros / 1000, stage);
+    }
+
+    /**
+     *
+     * @return the stages in the format of the Server-Timing header, with durations in milliseconds
+     */
+    public String toServerTiming() {
+        StringBuilder header = new StringBuilder();
+        for (int i = 0; i < stages.size(); i++) {
+            if (i > 0) {
+                header.append(", ");
+            }
+            header.append(stages.get(i).replaceAll("[^A-Za-z0-9_.-]", "_"));
+            header.append(";dur=");
+            header.append(String.format(Locale.ROOT, "%.3f", durations.get(i) / 1000.0));
+        }
+        return header.toString();
+    }
+
+    private static StageStatistics getStatistics(String key) {
+        StageStatistics stats = statistics.get(key);
+        if (stats == null) {
+            StageStatistics created = new StageStatistics();
+            stats = statistics.putIfAbsent(key, created);
+            if (stats == null) {
+                stats = created;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     *
+     * @return cumulative statistics for each request stage, keyed by request name and stage
+     */
+    public static Map<String, StageStatistics> getStatistics() {
+        return Collections.unmodifiableMap(statistics);
+    }
+
+    public static class StageStatistics {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalMicros = new AtomicLong();
+        private final AtomicLong maxMicros = new AtomicLong();
+
+        private void add(long micros) {
+            count.incrementAndGet();
+            totalMicros.addAndGet(micros);
+            long max = maxMicros.get();
+            while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+                max = maxMicros.get();
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getTotalMicros() {
+            return totalMicros.get();
+        }
+
+        public long getMaxMicros() {
+            return maxMicros.get();
+        }
+
+        @Override
+        public String toString() {
+            long n = getCount();
+            return String.format("count=%d avg=%dus max=%dus", n, n == 0 ? 0 : getTotalMicros() / n, getMaxMicros());
+        }
+    }
+}
@@ -6,6 +6,7 @@ package com.intel.mtwilson.trustagent.ws.v2;
 
 import com.intel.mountwilson.common.TAConfig;
 import com.intel.mountwilson.common.TAException;
+import com.intel.mountwilson.trustagent.commands.MeasurementLogCache;
 import com.intel.mountwilson.trustagent.commands.SetAssetTag;
 import com.intel.mountwilson.trustagent.commands.SetAssetTagWindows;
 import com.intel.mountwilson.trustagent.data.TADataContext;
@@ -40,6 +41,7 @@ public class Tag {
         TrustagentConfiguration config = new TrustagentConfiguration(TAConfig.getConfiguration());        
         
         Tpm.getModule().setAssetTag(config.getTpmOwnerSecret(), tagInfo.getTag());                
+        MeasurementLogCache.getInstance().invalidate();
         
         log.debug("writeTag returning 204 status");
         response.setStatus(Response.Status.NO_CONTENT.getStatusCode());
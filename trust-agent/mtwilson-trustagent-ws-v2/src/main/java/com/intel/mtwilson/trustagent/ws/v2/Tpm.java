@@ -10,11 +10,11 @@ import com.intel.mountwilson.trustagent.commands.BuildQuoteXMLCmd;
 import com.intel.mountwilson.trustagent.commands.CreateNonceFileCmd;
 import com.intel.mountwilson.trustagent.commands.GenerateModulesCmd;
 import com.intel.mountwilson.trustagent.commands.GenerateQuoteCmd;
+import com.intel.mountwilson.trustagent.commands.MeasurementLogCache;
 import com.intel.mountwilson.trustagent.commands.ReadIdentityCmd;
 import com.intel.mountwilson.trustagent.data.TADataContext;
 import com.intel.mtwilson.launcher.ws.ext.V2;
 import com.intel.dcsg.cpg.crypto.Sha1Digest;
-import com.intel.mountwilson.common.ErrorCode;
 import com.intel.mountwilson.trustagent.commands.ReadAssetTag;
 import com.intel.mountwilson.trustagent.commands.RetrieveTcbMeasurement;
 import com.intel.mtwilson.trustagent.TrustagentConfiguration;
@@ -25,23 +25,18 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.MediaType;
 import com.intel.mtwilson.trustagent.model.TpmQuoteRequest;
 import com.intel.mtwilson.trustagent.model.TpmQuoteResponse;
-import com.intel.mtwilson.util.exec.EscapeUtil;
-import java.io.File;
-import com.intel.mtwilson.util.exec.ExecUtil;
-import com.intel.mtwilson.util.exec.Result;
 import gov.niarl.his.privacyca.TpmModule;
 import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Base64;
-import org.apache.commons.exec.CommandLine;
 import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 
 /**
@@ -52,7 +47,7 @@ import org.apache.commons.lang3.StringUtils;
 @Path("/tpm")
 public class Tpm {
     private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(Tpm.class);
-    private long t0 = System.currentTimeMillis();
+    private final StageTimer timer = new StageTimer("tpm.quote");
     
 
     /*
@@ -66,16 +61,14 @@ public class Tpm {
     */
     
     private void logPerformance(String message) {
-        long t1 = System.currentTimeMillis();
-        log.debug("performance: after {} ms: {}", t1-t0, message);
-        t0 = t1;
+        timer.mark(message);
     }
     
     @POST
     @Path("/quote")
     @Consumes({MediaType.APPLICATION_XML,MediaType.APPLICATION_JSON})
     @Produces({MediaType.APPLICATION_XML,MediaType.APPLICATION_JSON})
-    public TpmQuoteResponse tpmQuote(TpmQuoteRequest tpmQuoteRequest, @Context HttpServletRequest request) throws IOException, TAException {
+    public TpmQuoteResponse tpmQuote(TpmQuoteRequest tpmQuoteRequest, @Context HttpServletRequest request, @Context HttpServletResponse httpResponse) throws IOException, TAException {
         logPerformance("inside tpmQuote");
         /**
          * issue #1038 we will hash this ip address together with the input
@@ -136,53 +129,51 @@ public class Tpm {
         context.setSelectedPCRs(joinIntegers(tpmQuoteRequest.getPcrs(), ' '));
 
         logPerformance("new TADataContext()");
-        new CreateNonceFileCmd(context).execute(); // FileUtils.write to file nonce (binary)
-        logPerformance("CreateNonceFileCmd");
-        new ReadIdentityCmd(context).execute();  // trustagentrepository.getaikcertificate
-        logPerformance("ReadIdentityCmd");
+        try {
+            // only the TPM 1.2 aikquote tool reads the nonce from a file; tpm2_quote and tpmtool take it as an argument
+            if (!osName.toLowerCase().contains("windows") && !"2.0".equals(com.intel.mtwilson.trustagent.tpmmodules.Tpm.getTpmVersion())) {
+                new CreateNonceFileCmd(context).execute(); // FileUtils.write to file nonce (binary)
+                logPerformance("CreateNonceFileCmd");
+            }
+            new ReadIdentityCmd(context).execute();  // trustagentrepository.getaikcertificate
+            logPerformance("ReadIdentityCmd");
 
-        // Get the module information
-        if (!osName.toLowerCase().contains("windows")) {
-            new GenerateModulesCmd(context).execute(); // String moduleXml = getXmlFromMeasureLog(configuration);
-            logPerformance("GenerateModulesCmd");
-            new RetrieveTcbMeasurement(context).execute(); //does nothing if measurement.xml does not exist
-            logPerformance("RetrieveTcbMeasurement");
-        }
-        new GenerateQuoteCmd(context).execute();
-        logPerformance("GenerateQuoteCmd");
-        new BuildQuoteXMLCmd(context).execute();
-        logPerformance("BuildQuoteXMLCmd");
+            // Get the module information
+            if (!osName.toLowerCase().contains("windows")) {
+                MeasurementLogCache measurementLogCache = configuration.isTpmQuoteMeasurementLogCacheEnabled() ? MeasurementLogCache.getInstance() : null;
+                new GenerateModulesCmd(context, measurementLogCache).execute(); // String moduleXml = getXmlFromMeasureLog(configuration);
+                logPerformance("GenerateModulesCmd");
+                new RetrieveTcbMeasurement(context, measurementLogCache).execute(); //does nothing if measurement.xml does not exist
+                logPerformance("RetrieveTcbMeasurement");
+            }
+            new GenerateQuoteCmd(context).execute();
+            logPerformance("GenerateQuoteCmd");
+            new BuildQuoteXMLCmd(context).execute();
+            logPerformance("BuildQuoteXMLCmd");
             
-        // return context.getResponseXML();
-        TpmQuoteResponse response = context.getTpmQuoteResponse();
-        logPerformance("context.getTpmQuoteResponse()");
+            // return context.getResponseXML();
+            TpmQuoteResponse response = context.getTpmQuoteResponse();
+            logPerformance("context.getTpmQuoteResponse()");
 
-        //assetTag 
-        //#6560: Null pointer dereference of 'response' where null is returned from a method
-        if (response != null){
-            response.isTagProvisioned = isTagProvisioned;
-            if (isTagProvisioned) 
-                response.assetTag = assetTagHash;
-        }
+            //assetTag 
+            //#6560: Null pointer dereference of 'response' where null is returned from a method
+            if (response != null){
+                response.isTagProvisioned = isTagProvisioned;
+                if (isTagProvisioned) 
+                    response.assetTag = assetTagHash;
+            }
 
-        // delete temporary session directory
-        if (!osName.toLowerCase().contains("windows")) {
-            CommandLine command = new CommandLine("rm");
-            command.addArgument("-rf");
-            command.addArgument(EscapeUtil.doubleQuoteEscapeShellArgument(context.getDataFolder()));
-            Result result = ExecUtil.execute(command);
-            logPerformance("ExecUtil.execute(command)");
-            if (result.getExitCode() != 0) {
-                log.error("Error running command [{}]: {}", command.getExecutable(), result.getStderr());
-                throw new TAException(ErrorCode.ERROR, result.getStderr());
+            logPerformance("before return response");
+            return response;
+        }
+        finally {
+            // delete temporary session directory, also when the quote failed
+            context.deleteDataFolder();
+            logPerformance("deleteDataFolder");
+            if (httpResponse != null) {
+                httpResponse.setHeader("Server-Timing", timer.toServerTiming());
             }
-            log.debug("command stdout: {}", result.getStdout());
-        } else {
-            // we should use more neutral ways to delete the folder
-            FileUtils.forceDelete(new File(context.getDataFolder())); 
         }
-        logPerformance("before return response");
-        return response;
     }
     
     private String joinIntegers(int[] pcrs, char separator) {
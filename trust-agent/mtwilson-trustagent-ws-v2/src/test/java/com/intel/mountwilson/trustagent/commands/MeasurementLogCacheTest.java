@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mountwilson.trustagent.commands;
+
+import java.io.File;
+import java.io.IOException;
+import org.apache.commons.io.FileUtils;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class MeasurementLogCacheTest {
+
+    private File createTempFile(String content) throws IOException {
+        File file = File.createTempFile("measurementlogcache", ".txt");
+        file.deleteOnExit();
+        FileUtils.writeStringToFile(file, content);
+        return file;
+    }
+
+    @Test
+    public void testModulesCachedForSameBoot() throws IOException {
+        File bootId = createTempFile("boot-1\n");
+        MeasurementLogCache cache = new MeasurementLogCache(bootId, new File("/nonexistent"));
+        String key = cache.getModulesKey(null);
+        assertNull(cache.getModules(key));
+        cache.putModules(key, "modules");
+        assertEquals("modules", cache.getModules(cache.getModulesKey(null)));
+        FileUtils.writeStringToFile(bootId, "boot-2\n");
+        assertNull(cache.getModules(cache.getModulesKey(null)));
+    }
+
+    @Test
+    public void testBootTimeUsedWithoutBootId() throws IOException {
+        File stat = createTempFile("cpu  1 2 3\nbtime 1400000000\nprocesses 100\n");
+        MeasurementLogCache cache = new MeasurementLogCache(new File("/nonexistent"), stat);
+        assertEquals("1400000000", cache.getBootId());
+    }
+
+    @Test
+    public void testNoCachingWithoutBootId() {
+        MeasurementLogCache cache = new MeasurementLogCache(new File("/nonexistent"), new File("/nonexistent"));
+        String key = cache.getModulesKey(null);
+        assertNull(key);
+        cache.putModules(key, "modules");
+        assertNull(cache.getModules(key));
+    }
+
+    @Test
+    public void testTcbMeasurementChangeInvalidatesModules() throws IOException {
+        File bootId = createTempFile("boot-1\n");
+        File tcb = createTempFile("<measurement/>");
+        MeasurementLogCache cache = new MeasurementLogCache(bootId, new File("/nonexistent"));
+        cache.putModules(cache.getModulesKey(tcb), "modules");
+        cache.putTcbMeasurement(tcb, "<measurement/>");
+        assertEquals("<measurement/>", cache.getTcbMeasurement(tcb));
+        FileUtils.writeStringToFile(tcb, "<measurement>changed</measurement>");
+        assertNull(cache.getModules(cache.getModulesKey(tcb)));
+        assertNull(cache.getTcbMeasurement(tcb));
+    }
+
+    @Test
+    public void testInvalidate() throws IOException {
+        File bootId = createTempFile("boot-1\n");
+        MeasurementLogCache cache = new MeasurementLogCache(bootId, new File("/nonexistent"));
+        cache.putModules(cache.getModulesKey(null), "modules");
+        cache.invalidate();
+        assertNull(cache.getModules(cache.getModulesKey(null)));
+    }
+}
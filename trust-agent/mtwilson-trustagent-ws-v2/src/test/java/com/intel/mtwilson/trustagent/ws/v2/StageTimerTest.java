@@ -0,0 +1,36 @@
+/*
+ * Copyright (C) 2014 Intel Corporation
+ * All rights reserved.
+ */
+package com.intel.mtwilson.trustagent.ws.v2;
+
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ */
+public class StageTimerTest {
+
+    @Test
+    public void testServerTimingHeader() throws InterruptedException {
+        StageTimer timer = new StageTimer("test.header");
+        timer.mark("first");
+        Thread.sleep(5);
+        timer.mark("ReadIdentityCmd");
+        timer.mark("context.getTpmQuoteResponse()");
+        String header = timer.toServerTiming();
+        assertTrue(header.startsWith("first;dur="));
+        assertTrue(header.contains(", ReadIdentityCmd;dur="));
+        assertTrue(header.contains(", context.getTpmQuoteResponse__;dur="));
+    }
+
+    @Test
+    public void testStatisticsAccumulate() {
+        for (int i = 0; i < 3; i++) {
+            StageTimer timer = new StageTimer("test.statistics");
+            timer.mark("stage");
+        }
+        assertEquals(3, StageTimer.getStatistics().get("test.statistics.stage").getCount());
+    }
+}